@@ -260,6 +260,7 @@ public class JDBCConfigurationImpl
             "native", "org.apache.openjpa.jdbc.schema.LazySchemaFactory",
             "file", "org.apache.openjpa.jdbc.schema.FileSchemaFactory",
             "table", "org.apache.openjpa.jdbc.schema.TableSchemaFactory",
+            "snapshot", "org.apache.openjpa.jdbc.schema.SnapshotSchemaFactory",
             // deprecated alias
             "db", "org.apache.openjpa.jdbc.schema.TableSchemaFactory",
         };
@@ -146,6 +146,9 @@ public class BatchingPreparedStatementManagerImpl extends
         if (batchedRows == null)
             return;
 
+        if (batchedSql != null && bulkLoad(batchedRows))
+            return;
+
         int batchSize = batchedRows.size();
         if (batchedSql != null &&  batchSize > 0) {
             PreparedStatement ps = null;
@@ -245,6 +248,46 @@ public class BatchingPreparedStatementManagerImpl extends
         }
     }
 
+    /**
+     * Insert the given batched rows with the bulk load facility of the
+     * dictionary if there are at least as many as its bulk load threshold.
+     * Rows of tables with columns assigned by the database are never loaded
+     * in bulk.
+     *
+     * @return true if the rows were written and the batch cleared
+     */
+    protected boolean bulkLoad(List<RowImpl> rows) throws SQLException {
+        int threshold = _dict.getBulkLoadThreshold();
+        if (threshold <= 0 || rows.size() < Math.max(threshold, 2))
+            return false;
+        RowImpl first = rows.get(0);
+        if (first.getAction() != Row.ACTION_INSERT
+            || first.getTable().getAutoAssignedColumns().length > 0)
+            return false;
+
+        try {
+            if (!_dict.bulkLoad(_conn, rows, _store))
+                return false;
+        } catch (SQLException se) {
+            Object failed = null;
+            if (se instanceof ReportingSQLException) {
+                int index = ((ReportingSQLException) se).
+                    getIndexOfFirstFailedObject();
+                if (index >= 0 && index < rows.size())
+                    failed = rows.get(index).getFailedObject();
+            }
+            _batchedSql = null;
+            rows.clear();
+            throw SQLExceptions.getStore(se, failed, _dict);
+        }
+        if (_log.isTraceEnabled())
+            _log.trace(_loc.get("bulk-loaded", String.valueOf(rows.size()),
+                _batchedSql));
+        _batchedSql = null;
+        rows.clear();
+        return true;
+    }
+
     /*
      * Execute an update of a single row.
      */
@@ -41,6 +41,7 @@ import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.meta.FieldMetaData;
 import org.apache.openjpa.util.ApplicationIds;
 import org.apache.openjpa.util.Id;
+import org.apache.openjpa.util.OpenJPAId;
 
 
 /**
@@ -127,12 +128,20 @@ public class FinderQueryImpl
     }
 
     private Object[] getPKValues(OpenJPAStateManager sm, JDBCStore store) {
-        Object[] pks = null;
+        Object[] val = new Object[_pkCols.length];
         Object oid = sm.getObjectId();
+        if (_pkCols.length == 1 && oid instanceof OpenJPAId
+            && _mapping.isOpenJPAIdentity()) {
+            // single column id; no need for an array of the pk values
+            val[0] = _joins[0].getJoinValue(((OpenJPAId) oid).getIdObject(),
+                _pkCols[0], store);
+            return val;
+        }
+
+        Object[] pks = null;
         if (_mapping.getIdentityType() == ClassMetaData.ID_APPLICATION)
             pks = ApplicationIds.toPKValues(oid, _mapping);
 
-        Object[] val = new Object[_pkCols.length];
         int count = 0;
         for (int i = 0; i < _pkCols.length; i++, count++) {
             if (pks == null)
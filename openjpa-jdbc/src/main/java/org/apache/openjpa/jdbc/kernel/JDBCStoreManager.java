@@ -123,6 +123,11 @@ public class JDBCStoreManager implements StoreManager, JDBCStore {
     }
 
     public void setContext(StoreContext ctx, JDBCConfiguration conf) {
+        // a store manager recycled from a closed broker starts over
+        if (_conn != null)
+            _conn.free();
+        _active = false;
+
         _ctx = ctx;
         _conf = conf;
         _dict = _conf.getDBDictionaryInstance();
@@ -1709,6 +1714,7 @@ public class JDBCStoreManager implements StoreManager, JDBCStore {
             if (!_cancelPreparedStatementsPool.isEmpty()) {
                 CancelPreparedStatement res = _cancelPreparedStatementsPool.remove(0);
                 res.initialize(stmnt, conn);
+                res._pooled = false;
                 return res;
             }
         }
@@ -1720,6 +1726,7 @@ public class JDBCStoreManager implements StoreManager, JDBCStore {
             if (!_cancelStatementPool.isEmpty()) {
                 CancelStatement res = _cancelStatementPool.remove(0);
                 res.initialize(stmnt, conn);
+                res._pooled = false;
                 return res;
             }
         }
@@ -1733,6 +1740,9 @@ public class JDBCStoreManager implements StoreManager, JDBCStore {
      */
     private class CancelStatement extends DelegatingStatement {
 
+        // whether closed and returned to the pool
+        private boolean _pooled = false;
+
         public CancelStatement(Statement stmnt, Connection conn) {
             super(stmnt, conn);
         }
@@ -1830,10 +1840,16 @@ public class JDBCStoreManager implements StoreManager, JDBCStore {
 
         @Override
         public void close() throws SQLException {
-        	super.close();
-    		synchronized (_cancelStatementPool) {
-    			_cancelStatementPool.add(this);
-    		}
+            // a second close must not pool the statement twice
+            synchronized (_cancelStatementPool) {
+                if (_pooled)
+                    return;
+                _pooled = true;
+            }
+            super.close();
+            synchronized (_cancelStatementPool) {
+                _cancelStatementPool.add(this);
+            }
         }
     }
 
@@ -1844,6 +1860,9 @@ public class JDBCStoreManager implements StoreManager, JDBCStore {
     private class CancelPreparedStatement extends
             DelegatingPreparedStatement {
 
+        // whether closed and returned to the pool
+        private boolean _pooled = false;
+
         public CancelPreparedStatement(PreparedStatement stmnt,
             Connection conn) {
             super(stmnt, conn);
@@ -1971,10 +1990,16 @@ public class JDBCStoreManager implements StoreManager, JDBCStore {
 
         @Override
         public void close() throws SQLException {
-        	super.close();
-    		synchronized (_cancelPreparedStatementsPool) {
-    			_cancelPreparedStatementsPool.add(this);
-    		}
+            // a second close must not pool the statement twice
+            synchronized (_cancelPreparedStatementsPool) {
+                if (_pooled)
+                    return;
+                _pooled = true;
+            }
+            super.close();
+            synchronized (_cancelPreparedStatementsPool) {
+                _cancelPreparedStatementsPool.add(this);
+            }
         }
     }
 }
@@ -28,11 +28,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.openjpa.jdbc.kernel.exps.CollectionParam;
 import org.apache.openjpa.jdbc.meta.ClassMapping;
 import org.apache.openjpa.jdbc.meta.FieldMapping;
 import org.apache.openjpa.jdbc.meta.MappingRepository;
 import org.apache.openjpa.jdbc.schema.Column;
+import org.apache.openjpa.jdbc.sql.DBDictionary;
 import org.apache.openjpa.jdbc.sql.LogicalUnion;
+import org.apache.openjpa.jdbc.sql.SQLArray;
 import org.apache.openjpa.jdbc.sql.SQLBuffer;
 import org.apache.openjpa.jdbc.sql.SelectExecutor;
 import org.apache.openjpa.jdbc.sql.SelectImpl;
@@ -81,6 +84,10 @@ public class PreparedQueryImpl implements PreparedQuery {
 
     // Position of the user defined parameters in the _params list
     private Map<Object, Integer[]>    _userParamPositions;
+    // IN list elements at the positions of collection parameters and the
+    // most values the IN lists can hold
+    private Map<Object, CollectionParam[]> _userParamElements;
+    private Map<Object, Integer> _userParamCapacity;
     private Map<Integer, Object> _template;
     private SelectImpl select;
 
@@ -185,6 +192,8 @@ public class PreparedQueryImpl implements PreparedQuery {
         select = extractImplementation(selector);
         if (select == null)
             return new PreparedQueryCacheImpl.StrongExclusion(_id, _loc.get("exclude-no-select", _id).getMessage());
+        if (hasInExpression() && !canReuseInExpression(select.getDictionary()))
+            return new PreparedQueryCacheImpl.StrongExclusion(_id, _loc.get("exclude-in-expression", _id).getMessage());
         SQLBuffer buffer = selector.getSQL();
         if (buffer == null)
             return new PreparedQueryCacheImpl.StrongExclusion(_id, _loc.get("exclude-no-sql", _id).getMessage());;
@@ -204,6 +213,23 @@ public class PreparedQueryImpl implements PreparedQuery {
         return null;
     }
 
+    private boolean hasInExpression() {
+        for (int i = 0; i < _exps.length; i++)
+            if (_exps[i].hasInExpression)
+                return true;
+        return false;
+    }
+
+    /**
+     * Whether the SQL of IN expressions with a collection parameter can be
+     * reused for collections of other sizes, because the values are either
+     * bound as an array or padded to a size shared by many collections.
+     */
+    private static boolean canReuseInExpression(DBDictionary dict) {
+        return dict.inClausePadding
+            || (dict.useInClauseArrays && dict.inClauseArraySQL != null);
+    }
+
     /**
      * Extract the underlying SelectExecutor from the given argument, if possible.
      *
@@ -224,8 +250,6 @@ public class PreparedQueryImpl implements PreparedQuery {
         _exps = ((StoreQuery.Executor)executor).getQueryExpressions();
         for (int i = 0; i < _exps.length; i++) {
             QueryExpressions exp = _exps[i];
-            if (exp.hasInExpression)
-                return new Object[]{null, _loc.get("exclude-in-expression", _id)};
             if (isUsingExternalizedParameter(exp)) {
                 return new Object[]{null, _loc.get("exclude-externalized-param", _id)};
             }
@@ -311,7 +335,8 @@ public class PreparedQueryImpl implements PreparedQuery {
      * must be compatible with the user parameters extracted during
      * {@link #initialize(Object) initialization}.
      *
-     * @return 0-based parameter index mapped to corresponding values.
+     * @return 0-based parameter index mapped to corresponding values, or
+     * null if a collection does not fit the IN lists it was compiled into.
      *
      */
     @Override
@@ -342,8 +367,9 @@ public class PreparedQueryImpl implements PreparedQuery {
             if (ImplHelper.isManageable(val)) {
                 setPersistenceCapableParameter(result, val, indices, broker);
             } else if (val instanceof Collection) {
-                setCollectionValuedParameter(result, (Collection)val, indices,
-                    key, broker);
+                if (!setCollectionValuedParameter(result, (Collection)val,
+                    indices, key, broker))
+                    return null;
             } else {
                 for (int j : indices) {
                     if (val instanceof Enum) {
@@ -397,10 +423,21 @@ public class PreparedQueryImpl implements PreparedQuery {
         }
     }
 
-    private void setCollectionValuedParameter(Map<Integer,Object> result,
+    /**
+     * Fill in the values of the given collection parameter.
+     *
+     * @return false if the values can not be bound to the IN lists the
+     * parameter was compiled into
+     */
+    private boolean setCollectionValuedParameter(Map<Integer,Object> result,
         Collection values, Integer[] indices, Object param, Broker broker) {
         int n = values.size();
         Object[] array = values.toArray();
+        CollectionParam[] elems = _userParamElements.get(param);
+        if (elems != null)
+            return setElementParameters(result, array, indices, elems,
+                _userParamCapacity.get(param), broker);
+
         if (n == 0 || n > indices.length || indices.length%n != 0) {
             throw new UserException(_loc.get("uparam-coll-size", param, values,
                 Arrays.toString(indices)));
@@ -414,8 +451,64 @@ public class PreparedQueryImpl implements PreparedQuery {
                 result.put(j, val);
             k++;
         }
+        return true;
+    }
+
+    /**
+     * Bind the given values to the IN list elements or arrays they were
+     * compiled into, converting each to its datastore value the way the
+     * compiled query did. IN lists are filled by repeating the values.
+     *
+     * @return false if the values do not fit
+     */
+    private boolean setElementParameters(Map<Integer,Object> result,
+        Object[] values, Integer[] indices, CollectionParam[] elems,
+        int capacity, Broker broker) {
+        int n = values.length;
+        if (n == 0 || n > capacity)
+            return false;
+        for (Object val : values)
+            if (val == null || ImplHelper.isManageable(val))
+                return false;
+
+        JDBCStore store = (JDBCStore)broker.getStoreManager()
+            .getInnermostDelegate();
+        for (int i = 0; i < indices.length; i++) {
+            Object templ = _template.get(indices[i]);
+            Object val;
+            if (templ instanceof SQLArray)
+                val = toArrayParameter((SQLArray) templ, values, elems[i],
+                    store);
+            else {
+                val = elems[i].toDataStoreValue(store,
+                    values[elems[i].getSlot() % n]);
+                if (val instanceof Object[])
+                    val = null;
+            }
+            if (val == null)
+                return false;
+            result.put(indices[i], val);
+        }
+        return true;
+    }
 
+    /**
+     * Return the array to bind in place of the given one for the given
+     * values, or null if their datastore values are not all of the type of
+     * the elements of the compiled array.
+     */
+    private static SQLArray toArrayParameter(SQLArray array, Object[] values,
+        CollectionParam elem, JDBCStore store) {
+        Class<?> type = array.values[0].getClass();
+        Object[] vals = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            vals[i] = elem.toDataStoreValue(store, values[i]);
+            if (vals[i] == null || vals[i].getClass() != type)
+                return null;
+        }
+        return new SQLArray(array.typeName, vals);
     }
+
     /**
      * Marks the positions and keys of user parameters.
      *
@@ -425,6 +518,8 @@ public class PreparedQueryImpl implements PreparedQuery {
      */
     void setUserParameterPositions(List list) {
         _userParamPositions = new HashMap<>();
+        _userParamElements = new HashMap<>();
+        _userParamCapacity = new HashMap<>();
         List<Integer> positions = new ArrayList<>();
         for (int i = 1; list != null && i < list.size(); i += 2) {
             Object key = ((Parameter)list.get(i)).getParameterKey();
@@ -435,7 +530,35 @@ public class PreparedQueryImpl implements PreparedQuery {
                     positions.add((Integer)list.get(j-1));
             }
             _userParamPositions.put(key, positions.toArray(new Integer[positions.size()]));
+            setElements(list, key, positions.size());
+        }
+    }
+
+    /**
+     * Record the IN list elements or arrays at the positions of the given
+     * key if every position is one, so that collections of any size up to
+     * the shortest of the lists can be bound without recompiling.
+     */
+    private void setElements(List list, Object key, int size) {
+        CollectionParam[] elems = new CollectionParam[size];
+        int capacity = Integer.MAX_VALUE;
+        int k = 0;
+        for (int j = 1; j < list.size(); j += 2) {
+            Parameter param = (Parameter)list.get(j);
+            if (!key.equals(param.getParameterKey()))
+                continue;
+            if (!(param instanceof CollectionParam)
+                || !((CollectionParam) param).canConvertElements())
+                return;
+            CollectionParam elem = (CollectionParam) param;
+            if (elem.getSlot() >= 0)
+                capacity = Math.min(capacity, elem.getSlotCount());
+            else if (!(_template.get(list.get(j-1)) instanceof SQLArray))
+                return;
+            elems[k++] = elem;
         }
+        _userParamElements.put(key, elems);
+        _userParamCapacity.put(key, capacity);
     }
 
     void setParameters(List list) {
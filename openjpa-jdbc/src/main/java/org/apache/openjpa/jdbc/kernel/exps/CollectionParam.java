@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 
+import org.apache.openjpa.jdbc.kernel.JDBCStore;
 import org.apache.openjpa.jdbc.meta.ClassMapping;
 import org.apache.openjpa.jdbc.meta.Discriminator;
 import org.apache.openjpa.jdbc.sql.SQLBuffer;
@@ -50,6 +51,13 @@ public class CollectionParam
     private Class _type = null;
     private int _idx = -1;
     private boolean _container = false;
+    private int _slot = -1;
+    private int _slots = 0;
+
+    // converts elements of the parameter value to datastore values
+    private transient Select _sel = null;
+    private transient Val _val = null;
+    private transient ExpState _valState = null;
 
     /**
      * Constructor. Supply parameter name and type.
@@ -64,9 +72,73 @@ public class CollectionParam
         CollectionParam c = new CollectionParam(this._key, this._type);
         c._idx = this._idx;
         c._container = this._container;
+        c._slot = this._slot;
+        c._slots = this._slots;
+        c._sel = this._sel;
+        c._val = this._val;
+        c._valState = this._valState;
         return c;
     }
 
+    /**
+     * Return a copy of this parameter whose elements are compared to the
+     * given value, so that they can be converted to datastore values the
+     * same way when the parameter is bound again.
+     */
+    public CollectionParam forElementsOf(Select sel, Val val, ExpState state) {
+        CollectionParam c = clone();
+        c._sel = sel;
+        c._val = val;
+        c._valState = state;
+        return c;
+    }
+
+    /**
+     * Whether elements of this parameter can be converted to datastore
+     * values by {@link #toDataStoreValue}.
+     */
+    public boolean canConvertElements() {
+        return _val != null;
+    }
+
+    /**
+     * Convert the given element of the parameter value to the datastore
+     * value it is compared with, as the value it was compiled against did.
+     */
+    public Object toDataStoreValue(JDBCStore store, Object val) {
+        ExpContext ctx = new ExpContext(store, null,
+            store.getFetchConfiguration());
+        return _val.toDataStoreValue(_sel, ctx, _valState, val);
+    }
+
+    /**
+     * Return a copy of this parameter standing for the element at the given
+     * position of an <code>IN</code> list of the given length. The
+     * elements of the parameter value may be repeated to fill the list.
+     */
+    public CollectionParam forSlot(int slot, int slots) {
+        CollectionParam c = clone();
+        c._slot = slot;
+        c._slots = slots;
+        return c;
+    }
+
+    /**
+     * The position of the element this parameter stands for in its
+     * <code>IN</code> list, or -1 if unknown.
+     */
+    public int getSlot() {
+        return _slot;
+    }
+
+    /**
+     * The length of the <code>IN</code> list this parameter is an element
+     * of, or 0 if unknown.
+     */
+    public int getSlotCount() {
+        return _slots;
+    }
+
     @Override
     public Object getParameterKey() {
         return _key;
@@ -27,7 +27,9 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.openjpa.jdbc.schema.Column;
+import org.apache.openjpa.jdbc.sql.DBDictionary;
 import org.apache.openjpa.jdbc.sql.Joins;
+import org.apache.openjpa.jdbc.sql.SQLArray;
 import org.apache.openjpa.jdbc.sql.SQLBuffer;
 import org.apache.openjpa.jdbc.sql.Select;
 import org.apache.openjpa.kernel.exps.ExpressionVisitor;
@@ -130,38 +132,118 @@ class InExpression
 
     /**
      * Based on the inClauseLimit of the DBDictionary, create the needed IN
-     * clauses
+     * clauses. Collection parameters are bound as a single array where the
+     * dictionary supports it, and are otherwise padded to the next power of
+     * two if configured, so that lists of different sizes share SQL.
      */
     private void createInContains(Select sel, ExpContext ctx, ExpState state,
         SQLBuffer buf, List list, Column[] cols) {
 
-        int inClauseLimit = ctx.store.getDBDictionary().inClauseLimit;
+        DBDictionary dict = ctx.store.getDBDictionary();
+        Column col = (cols != null && cols.length == 1) ? cols[0] : null;
+        if (arrayContains(sel, ctx, state, buf, list, col))
+            return;
+        if (dict.inClausePadding && _const instanceof CollectionParam)
+            list = pad(list);
+
+        int inClauseLimit = dict.inClauseLimit;
         if (inClauseLimit <= 0 || list.size() <= inClauseLimit)
-            inContains(sel, ctx, state, buf, list, cols);
+            inContains(sel, ctx, state, buf, list, col, 0, list.size());
         else {
             buf.append("(");
             for (int low = 0, high; low < list.size(); low = high) {
                 if (low > 0)
                     buf.append(" OR ");
                 high = java.lang.Math.min(low + inClauseLimit, list.size());
-                inContains(sel, ctx, state, buf, list.subList(low, high), cols);
+                inContains(sel, ctx, state, buf, list.subList(low, high), col,
+                    low, list.size());
             }
             buf.append(")");
         }
     }
 
+    /**
+     * Repeat the elements of the given list up to the next power of two.
+     */
+    private static List pad(List list) {
+        int size = Integer.highestOneBit(list.size());
+        if (size == list.size())
+            return list;
+        size <<= 1;
+
+        List padded = new ArrayList(size);
+        padded.addAll(list);
+        for (int i = list.size(); i < size; i++)
+            padded.add(list.get(i % list.size()));
+        return padded;
+    }
+
+    /**
+     * Construct a comparison with the given values bound as a single
+     * array parameter if the dictionary supports it and the values
+     * qualify.
+     *
+     * @return false if the values were not bound as an array
+     */
+    private boolean arrayContains(Select sel, ExpContext ctx, ExpState state,
+        SQLBuffer buf, List list, Column col) {
+        DBDictionary dict = ctx.store.getDBDictionary();
+        if (!dict.useInClauseArrays || dict.inClauseArraySQL == null
+            || col == null || !(_const instanceof CollectionParam)
+            || list.isEmpty())
+            return false;
+
+        // only bind values the driver can convert without help
+        Class type = null;
+        for (Object val : list) {
+            if (!(val instanceof Number || val instanceof String))
+                return false;
+            if (type == null)
+                type = val.getClass();
+            else if (type != val.getClass())
+                return false;
+        }
+        SQLArray array = dict.newInClauseArray(col, list.toArray());
+        if (array == null)
+            return false;
+
+        String sql = dict.inClauseArraySQL;
+        int val = sql.indexOf("{0}");
+        int param = sql.indexOf("{1}");
+        if (val == -1 || param < val)
+            return false;
+        buf.append(sql.substring(0, val));
+        _val.appendTo(sel, ctx, state, buf, 0);
+        buf.append(sql.substring(val + 3, param));
+        buf.appendValue(array, col,
+            ((CollectionParam) _const).forElementsOf(sel, _val, state));
+        buf.append(sql.substring(param + 3));
+        return true;
+    }
+
     /**
      * Construct an IN clause with the value of the given collection.
+     *
+     * @param slot the position of the first value in the whole list
+     * @param slots the length of the whole list
      */
     private void inContains(Select sel, ExpContext ctx, ExpState state,
-        SQLBuffer buf, Collection coll, Column[] cols) {
+        SQLBuffer buf, Collection coll, Column col, int slot, int slots) {
         _val.appendTo(sel, ctx, state, buf, 0);
         buf.append(" IN (");
 
-        Column col = (cols != null && cols.length == 1) ? cols[0] : null;
-        for (Iterator itr = coll.iterator(); itr.hasNext();) {
-                buf.appendValue(itr.next(), col, _const instanceof Parameter
-                    ? (Parameter)_const : null);
+        CollectionParam elems = (_const instanceof CollectionParam)
+            ? ((CollectionParam) _const).forElementsOf(sel, _val, state)
+            : null;
+        Parameter param;
+        for (Iterator itr = coll.iterator(); itr.hasNext(); slot++) {
+            if (elems != null)
+                param = elems.forSlot(slot, slots);
+            else if (_const instanceof Parameter)
+                param = (Parameter) _const;
+            else
+                param = null;
+            buf.appendValue(itr.next(), col, param);
             if (itr.hasNext())
                 buf.append(", ");
         }
@@ -89,6 +89,7 @@ import org.apache.openjpa.lib.conf.Configurable;
 import org.apache.openjpa.lib.conf.Configurations;
 import org.apache.openjpa.lib.util.J2DoPrivHelper;
 import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.lib.util.concurrent.CopyOnWriteMap;
 import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.meta.FieldMetaData;
 import org.apache.openjpa.meta.JavaTypes;
@@ -128,6 +129,12 @@ public class MappingRepository extends MetaDataRepository {
         setValidate(VALIDATE_MAPPING, true);
     }
 
+    @Override
+    protected void freeze() {
+        _results = new CopyOnWriteMap<>(_results);
+        super.freeze();
+    }
+
     /**
      * Convenient access to dictionary for mappings.
      */
@@ -130,6 +130,8 @@ public class MappingTool
     private boolean _dropUnused = true;
     private boolean _ignoreErrors = false;
     private boolean _rollbackBeforeDDL = false;
+    private int _reflectionThreads = 1;
+    private boolean _bulkReflection = false;
     private File _file = null;
     private Writer _mappingWriter = null;
     private Writer _schemaWriter = null;
@@ -290,6 +292,42 @@ public class MappingTool
         _pks = pks;
     }
 
+    /**
+     * The number of connections over which the existing schema is read
+     * concurrently. Defaults to 1.
+     */
+    public int getReflectionThreads() {
+        return _reflectionThreads;
+    }
+
+    /**
+     * The number of connections over which the existing schema is read
+     * concurrently. Defaults to 1.
+     *
+     * @see SchemaGenerator#setReflectionThreads
+     */
+    public void setReflectionThreads(int threads) {
+        _reflectionThreads = threads;
+    }
+
+    /**
+     * Whether the existing schema is read with one catalog query per schema
+     * where the dictionary allows. Defaults to false.
+     */
+    public boolean getBulkReflection() {
+        return _bulkReflection;
+    }
+
+    /**
+     * Whether the existing schema is read with one catalog query per schema
+     * where the dictionary allows. Defaults to false.
+     *
+     * @see SchemaGenerator#setBulkReflection
+     */
+    public void setBulkReflection(boolean bulk) {
+        _bulkReflection = bulk;
+    }
+
     /**
      * Whether schema components that are unused by any mapping will be
      * dropped from this tool's {@link SchemaGroup}, and, depending on
@@ -349,6 +387,8 @@ public class MappingTool
         tool.setIndexes(getIndexes());
         tool.setSequences(getSequences());
         tool.setRollbackBeforeDDL(getRollbackBeforeDDL());
+        tool.setReflectionThreads(getReflectionThreads());
+        tool.setBulkReflection(getBulkReflection());
         return tool;
     }
 
@@ -448,6 +488,7 @@ public class MappingTool
                 factory.setPrimaryKeys(getPrimaryKeys());
                 factory.setForeignKeys(getForeignKeys());
                 factory.setIndexes(getIndexes());
+                factory.setBulkReflection(getBulkReflection());
                 _schema = factory;
             }
 
@@ -50,6 +50,7 @@ public class LazySchemaFactory
     private boolean _indexes = false;
     private boolean _pks = false;
     private boolean _fks = false;
+    private boolean _bulk = false;
 
     public boolean getPrimaryKeys() {
         return _pks;
@@ -75,6 +76,20 @@ public class LazySchemaFactory
         _indexes = idx;
     }
 
+    public boolean getBulkReflection() {
+        return _bulk;
+    }
+
+    /**
+     * Whether to read the metadata of all tables of a schema on first access
+     * to one of them. See {@link SchemaGenerator#setBulkReflection}.
+     */
+    public void setBulkReflection(boolean bulk) {
+        _bulk = bulk;
+        if (_gen != null)
+            _gen.setBulkReflection(bulk);
+    }
+
     @Override
     public SchemaGroup readSchema() {
         return this;
@@ -213,6 +228,7 @@ public class LazySchemaFactory
         _conf = (JDBCConfiguration) conf;
         _gen = new SchemaGenerator(_conf);
         _gen.setSchemaGroup(this);
+        _gen.setBulkReflection(_bulk);
     }
 
     @Override
@@ -68,7 +68,7 @@ public abstract class LocalConstraint extends Constraint {
     @Override
     void remove() {
         // remove all columns
-        for (Column c : _cols) {
+        for (Column c : getColumns()) {
             c.removeConstraint(this);
         }
         setColumns(null);
@@ -21,18 +21,27 @@ package org.apache.openjpa.jdbc.schema;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EventObject;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import javax.sql.DataSource;
 
@@ -51,6 +60,10 @@ import org.apache.openjpa.lib.util.Localizer;
  *  Note that tables whose name starts with "OPENJPA_" will be not be added
  * to the database schema. This enables the creation of special tables
  * that will never be dropped by the {@link SchemaTool}.
+ *  The metadata of a list of tables can be read over several connections
+ * at once, see {@link #setReflectionThreads}, and the metadata of whole
+ * schemas can be read and cached with one catalog query each, see
+ * {@link #setBulkReflection}.
  *
  * @author Abe White
  */
@@ -68,8 +81,19 @@ public class SchemaGenerator {
     private boolean _pks = true;
     private boolean _seqs = true;
     private boolean _openjpaTables = true;
+    private int _threads = 1;
+    private boolean _bulk = false;
+    private final String _defaultSchema;
     private SchemaGroup _group = null;
 
+    // metadata read ahead for the tables of the current generate call
+    private Map<DBIdentifier, Object> _prefetched = null;
+
+    // "kind:schema" -> upper case table name -> metadata rows, or null if
+    // the dictionary cannot read the whole schema
+    private final Map<String, Map<String, List<Object>>> _bulkRows =
+        new HashMap<>();
+
     private List<Listener> _listeners = null;
     private int _schemaObjects = 0;
 
@@ -90,6 +114,7 @@ public class SchemaGenerator {
         // cache this now so that if the conn pool only has 1 connection we
         // don't conflict later with the open databasemetadata connection
         _dict = conf.getDBDictionaryInstance();
+        _defaultSchema = conf.getSchema();
 
         // create a table of allowed schema and tables to reflect on
         String[] schemaArray = conf.getSchemasList();
@@ -126,6 +151,10 @@ public class SchemaGenerator {
             QualifiedDBIdentifier path = QualifiedDBIdentifier.getPath(args[i]);
             schema = path.getSchemaName();
             table = path.getIdentifier();
+            // identifiers without a name hash by identity; group all
+            // unqualified tables under one key
+            if (DBIdentifier.isNull(schema))
+                schema = DBIdentifier.NULL;
 
             // if just a schema name, map schema to null
             if (DBIdentifier.isNull(table) && !schemas.containsKey(schema))
@@ -228,6 +257,44 @@ public class SchemaGenerator {
         _openjpaTables = openjpaTables;
     }
 
+    /**
+     * The number of connections over which the metadata of the tables of a
+     * generate call is read concurrently. Defaults to 1.
+     */
+    public int getReflectionThreads() {
+        return _threads;
+    }
+
+    /**
+     * The number of connections over which the metadata of the tables of a
+     * generate call is read concurrently. Defaults to 1. The dictionary
+     * must be able to reflect on several connections at once.
+     */
+    public void setReflectionThreads(int threads) {
+        _threads = Math.max(1, threads);
+    }
+
+    /**
+     * Whether table metadata is read for whole schemas. Defaults to false.
+     */
+    public boolean getBulkReflection() {
+        return _bulk;
+    }
+
+    /**
+     * Whether to read the columns, primary keys, indexes and foreign keys
+     * of a named table as part of one catalog query for all tables of its
+     * schema, as far as the dictionary supports reflecting without a table
+     * name. The rows are kept for the lifetime of this generator, so that
+     * the metadata of further tables of the schema is not read again;
+     * changes made to the database in the meantime are not seen. Only
+     * tables of a named schema, or of the configured default schema, are
+     * read in bulk. Defaults to false.
+     */
+    public void setBulkReflection(boolean bulk) {
+        _bulk = bulk;
+    }
+
     /**
      * Return the current schema group.
      */
@@ -363,14 +430,17 @@ public class SchemaGenerator {
         try {
             if (tableNames == null)
                 generateTables(name, DBIdentifier.NULL, _conn, meta);
-            else
+            else {
+                prefetch(name, tableNames, COLUMNS);
                 for (int i = 0; i < tableNames.length; i++)
                     generateTables(name, tableNames[i], _conn, meta);
+            }
 
             if (_seqs) {
                 generateSequences(name, DBIdentifier.NULL, _conn, meta);
             }
         } finally {
+            _prefetched = null;
             // some databases require a commit after metadata to release locks
             try {
                 _conn.commit();
@@ -410,10 +480,13 @@ public class SchemaGenerator {
         try {
             if (tableNames == null)
                 generatePrimaryKeys(schemaName, null, _conn, meta);
-            else
+            else {
+                prefetch(schemaName, tableNames, PRIMARY_KEYS);
                 for (int i = 0; i < tableNames.length; i++)
                     generatePrimaryKeys(schemaName, tableNames[i], _conn, meta);
+            }
         } finally {
+            _prefetched = null;
             // some databases require a commit after metadata to release locks
             try {
                 _conn.commit();
@@ -452,10 +525,13 @@ public class SchemaGenerator {
         try {
             if (tableNames == null)
                 generateIndexes(schemaName, null, _conn, meta);
-            else
+            else {
+                prefetch(schemaName, tableNames, INDEXES);
                 for (int i = 0; i < tableNames.length; i++)
                     generateIndexes(schemaName, tableNames[i], _conn, meta);
+            }
         } finally {
+            _prefetched = null;
             // some databases require a commit after metadata to release locks
             try {
                 _conn.commit();
@@ -495,10 +571,13 @@ public class SchemaGenerator {
         try {
             if (tableNames == null)
                 generateForeignKeys(schemaName, null, _conn, meta);
-            else
+            else {
+                prefetch(schemaName, tableNames, FOREIGN_KEYS);
                 for (int i = 0; i < tableNames.length; i++)
                     generateForeignKeys(schemaName, tableNames[i], _conn, meta);
+            }
         } finally {
+            _prefetched = null;
             // some databases require a commit after metadata to release locks
             try {
                 _conn.commit();
@@ -529,9 +608,8 @@ public class SchemaGenerator {
         if (_log.isTraceEnabled())
             _log.trace(_loc.get("gen-tables", schemaName, tableName));
 
-        Column[] cols = _dict.getColumns(meta,
-            DBIdentifier.newCatalog(conn.getCatalog()), schemaName,
-            tableName, null, conn);
+        Column[] cols = (Column[]) read(schemaName, tableName, COLUMNS,
+            conn, meta);
 
         // when we want to get all the columns for all tables, we need to build
         // a list of tables to verify because some databases (e.g., Postgres)
@@ -682,9 +760,8 @@ public class SchemaGenerator {
 
         // if the database can't use a table name wildcard, recurse on each
         // concrete table in the requested schema(s)
-        PrimaryKey[] pks = _dict.getPrimaryKeys(meta,
-            DBIdentifier.newCatalog(conn.getCatalog()),
-            schemaName, tableName, conn);
+        PrimaryKey[] pks = (PrimaryKey[]) read(schemaName, tableName,
+            PRIMARY_KEYS, conn, meta);
         Table table;
         if (pks == null && tableName == null) {
             Collection<Table> tables = getTables(schemaName);
@@ -748,8 +825,8 @@ public class SchemaGenerator {
 
         // if the database can't use a table name wildcard, recurse on each
         // concrete table in the requested schema(s)
-        Index[] idxs = _dict.getIndexInfo(meta, DBIdentifier.newCatalog(conn.getCatalog()),
-            schemaName, tableName, false, true, conn);
+        Index[] idxs = (Index[]) read(schemaName, tableName, INDEXES, conn,
+            meta);
         Table table;
         if (idxs == null && tableName == null) {
             Collection<Table> tables = getTables(schemaName);
@@ -829,8 +906,8 @@ public class SchemaGenerator {
 
         // if the database can't use a table name wildcard, recurse on each
         // concrete table in the requested schema(s)
-        ForeignKey[] fks = _dict.getImportedKeys(meta, DBIdentifier.newCatalog(conn.getCatalog()),
-            schemaName, tableName, conn);
+        ForeignKey[] fks = (ForeignKey[]) read(schemaName, tableName,
+            FOREIGN_KEYS, conn, meta);
         Table table;
         if (fks == null && DBIdentifier.isNull(tableName)) {
             Collection<Table> tables = getTables(schemaName);
@@ -984,6 +1061,262 @@ public class SchemaGenerator {
         }
     }
 
+    private static final int COLUMNS = 0;
+    private static final int PRIMARY_KEYS = 1;
+    private static final int INDEXES = 2;
+    private static final int FOREIGN_KEYS = 3;
+
+    /**
+     * Read the metadata of the given kind for the given table, or for all
+     * tables matching the schema if the table name is null. The result is
+     * taken from the rows read ahead or in bulk if possible.
+     */
+    private Object[] read(DBIdentifier schemaName, DBIdentifier tableName,
+        int kind, Connection conn, DatabaseMetaData meta)
+        throws SQLException {
+        if (_prefetched != null && tableName != null
+            && _prefetched.containsKey(tableName))
+            return (Object[]) _prefetched.remove(tableName);
+
+        if (isBulk(schemaName, tableName, kind)) {
+            // unqualified tables are read with the default schema, not
+            // with the tables of the same name in every schema
+            Map<String, List<Object>> rows = getBulkRows(
+                DBIdentifier.isNull(schemaName)
+                ? DBIdentifier.newSchema(_defaultSchema) : schemaName,
+                kind, conn, meta);
+            // tables without rows are read on their own, as the names
+            // reported by the database may not match the configured ones
+            List<Object> tableRows = (rows == null) ? null
+                : rows.get(getBulkKey(tableName));
+            if (tableRows != null)
+                return tableRows.toArray(newArray(kind, tableRows.size()));
+        }
+        return readFromDatabase(schemaName, tableName, kind, conn, meta);
+    }
+
+    private Object[] readFromDatabase(DBIdentifier schemaName,
+        DBIdentifier tableName, int kind, Connection conn,
+        DatabaseMetaData meta)
+        throws SQLException {
+        DBIdentifier catalog = DBIdentifier.newCatalog(conn.getCatalog());
+        switch (kind) {
+            case COLUMNS:
+                return _dict.getColumns(meta, catalog, schemaName,
+                    tableName, null, conn);
+            case PRIMARY_KEYS:
+                return _dict.getPrimaryKeys(meta, catalog, schemaName,
+                    tableName, conn);
+            case INDEXES:
+                return _dict.getIndexInfo(meta, catalog, schemaName,
+                    tableName, false, true, conn);
+            default:
+                return _dict.getImportedKeys(meta, catalog, schemaName,
+                    tableName, conn);
+        }
+    }
+
+    private static Object[] newArray(int kind, int size) {
+        switch (kind) {
+            case COLUMNS:
+                return new Column[size];
+            case PRIMARY_KEYS:
+                return new PrimaryKey[size];
+            case INDEXES:
+                return new Index[size];
+            default:
+                return new ForeignKey[size];
+        }
+    }
+
+    /**
+     * Whether the metadata of the given kind for the given table is read
+     * as part of the metadata of its whole schema.
+     */
+    private boolean isBulk(DBIdentifier schemaName, DBIdentifier tableName,
+        int kind) {
+        if (!_bulk || DBIdentifier.isNull(tableName)
+            || "%".equals(tableName.getName()))
+            return false;
+        if (DBIdentifier.isNull(schemaName) && _defaultSchema == null)
+            return false;
+        switch (kind) {
+            case COLUMNS:
+                return _dict.supportsNullTableForGetColumns;
+            case PRIMARY_KEYS:
+                return _dict.supportsNullTableForGetPrimaryKeys
+                    && !_dict.useGetBestRowIdentifierForPrimaryKeys;
+            case INDEXES:
+                return _dict.supportsNullTableForGetIndexInfo;
+            default:
+                return _dict.supportsNullTableForGetImportedKeys;
+        }
+    }
+
+    private static String getBulkKey(DBIdentifier tableName) {
+        return DBIdentifier.toUpper(tableName.getUnqualifiedName(), true).
+            getName();
+    }
+
+    /**
+     * Return the metadata rows of the given kind for all tables of the
+     * given, named schema by upper case table name, reading them on first
+     * use.
+     * Return null if the dictionary can not read them without a table name.
+     */
+    private synchronized Map<String, List<Object>> getBulkRows(
+        DBIdentifier schemaName, int kind, Connection conn,
+        DatabaseMetaData meta)
+        throws SQLException {
+        String key = kind + ":" + schemaName.getName();
+        if (_bulkRows.containsKey(key))
+            return _bulkRows.get(key);
+
+        if (_log.isTraceEnabled())
+            _log.trace(_loc.get("gen-bulk", schemaName));
+        Object[] all = readFromDatabase(schemaName, null, kind, conn, meta);
+        Map<String, List<Object>> rows = null;
+        if (all != null) {
+            rows = new HashMap<>();
+            DBIdentifier table;
+            List<Object> tableRows;
+            for (int i = 0; i < all.length; i++) {
+                if (all[i] instanceof Column)
+                    table = ((Column) all[i]).getTableIdentifier();
+                else
+                    table = ((Constraint) all[i]).getTableIdentifier();
+                if (DBIdentifier.isNull(table))
+                    continue;
+                tableRows = rows.get(getBulkKey(table));
+                if (tableRows == null) {
+                    tableRows = new ArrayList<>();
+                    rows.put(getBulkKey(table), tableRows);
+                }
+                tableRows.add(all[i]);
+            }
+        }
+        _bulkRows.put(key, rows);
+        return rows;
+    }
+
+    /**
+     * Read the metadata of the given kind for the given tables concurrently
+     * if more than one reflection thread is configured. The rows are
+     * consumed by the following per-table generate calls.
+     */
+    private void prefetch(final DBIdentifier schemaName,
+        DBIdentifier[] tableNames, final int kind)
+        throws SQLException {
+        _prefetched = null;
+        if (_threads < 2 || tableNames.length < 2)
+            return;
+
+        // skip the tables the per-table calls would skip or read in bulk
+        SchemaGroup group = getSchemaGroup();
+        List<DBIdentifier> tables = new ArrayList<>(tableNames.length);
+        for (int i = 0; i < tableNames.length; i++) {
+            if (DBIdentifier.isNull(tableNames[i])
+                || isBulk(schemaName, tableNames[i], kind))
+                continue;
+            if (kind != COLUMNS && group.findTable(QualifiedDBIdentifier.
+                getPath(tableNames[i])) == null)
+                continue;
+            tables.add(tableNames[i]);
+        }
+        if (tables.size() < 2)
+            return;
+
+        int threads = Math.min(_threads, tables.size());
+        if (_log.isTraceEnabled())
+            _log.trace(_loc.get("gen-prefetch", String.valueOf(tables.size()),
+                String.valueOf(threads)));
+
+        // connections are handed from task to task, so that no more than
+        // one connection per thread is opened; one of them is ours
+        final BlockingQueue<Connection> conns = new LinkedBlockingQueue<>();
+        final List<Connection> opened = Collections.synchronizedList
+            (new ArrayList<Connection>());
+        conns.add(_conn);
+        ExecutorService exec = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Object[]>> futures = new ArrayList<>(tables.size());
+            for (final DBIdentifier table : tables) {
+                futures.add(exec.submit(() -> {
+                    Connection conn = conns.poll();
+                    if (conn == null) {
+                        conn = _ds.getConnection();
+                        opened.add(conn);
+                    }
+                    try {
+                        return readFromDatabase(schemaName, table, kind, conn,
+                            conn.getMetaData());
+                    } finally {
+                        conns.add(conn);
+                    }
+                }));
+            }
+
+            Map<DBIdentifier, Object> prefetched = new IdentityHashMap<>();
+            for (int i = 0; i < futures.size(); i++)
+                prefetched.put(tables.get(i), get(futures.get(i)));
+            _prefetched = prefetched;
+        } finally {
+            // after a failure, tasks may still be using the connections,
+            // ours included
+            exec.shutdownNow();
+            awaitTermination(exec);
+            for (Connection conn : opened) {
+                try {
+                    // some databases require a commit after metadata to
+                    // release locks
+                    conn.commit();
+                } catch (SQLException se) {
+                }
+                try {
+                    conn.close();
+                } catch (SQLException se) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for the tasks of the given executor to end, which may take as
+     * long as a metadata call that does not respond to interrupts.
+     */
+    private static void awaitTermination(ExecutorService exec) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (exec.awaitTermination(1, TimeUnit.SECONDS))
+                    break;
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private static Object[] get(Future<Object[]> future)
+        throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(ie.toString(), ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof SQLException)
+                throw (SQLException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new SQLException(cause.toString(), cause);
+        }
+    }
+
     /**
      * Notify any listeners that a schema object was generated. Returns
      * true if generation should continue.
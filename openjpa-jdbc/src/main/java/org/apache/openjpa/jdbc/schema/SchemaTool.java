@@ -116,6 +116,8 @@ public class SchemaTool {
     private boolean _indexes = true;
     private boolean _seqs = true;
     private boolean _rollbackBeforeDDL = true;
+    private int _reflectionThreads = 1;
+    private boolean _bulkReflection = false;
     private PrintWriter _writer = null;
     private SchemaGroup _group = null;
     private SchemaGroup _db = null;
@@ -202,6 +204,42 @@ public class SchemaTool {
         _openjpaTables = openjpaTables;
     }
 
+    /**
+     * The number of connections over which the existing schema is read
+     * concurrently. Defaults to 1.
+     */
+    public int getReflectionThreads() {
+        return _reflectionThreads;
+    }
+
+    /**
+     * The number of connections over which the existing schema is read
+     * concurrently. Defaults to 1.
+     *
+     * @see SchemaGenerator#setReflectionThreads
+     */
+    public void setReflectionThreads(int threads) {
+        _reflectionThreads = threads;
+    }
+
+    /**
+     * Whether the existing schema is read with one catalog query per schema
+     * where the dictionary allows. Defaults to false.
+     */
+    public boolean getBulkReflection() {
+        return _bulkReflection;
+    }
+
+    /**
+     * Whether the existing schema is read with one catalog query per schema
+     * where the dictionary allows. Defaults to false.
+     *
+     * @see SchemaGenerator#setBulkReflection
+     */
+    public void setBulkReflection(boolean bulk) {
+        _bulkReflection = bulk;
+    }
+
     /**
      * If true, tables that appear to be unused will be dropped. Defaults to
      * true.
@@ -1288,6 +1326,8 @@ public class SchemaTool {
             gen.setPrimaryKeys(_pks);
             gen.setForeignKeys(_fks);
             gen.setIndexes(_indexes);
+            gen.setReflectionThreads(_reflectionThreads);
+            gen.setBulkReflection(_bulkReflection);
             if (full)
                 gen.generateSchemas();
             else {
@@ -1297,11 +1337,23 @@ public class SchemaTool {
                 // do exist
                 Collection<DBIdentifier> tables = new LinkedList<>();
                 SchemaGroup group = assertSchemaGroup();
+
+                // start from the tables of a valid schema snapshot
+                SchemaFactory factory = _conf.getSchemaFactoryInstance();
+                SchemaGroup snapshot = null;
+                if (factory instanceof SnapshotSchemaFactory)
+                    snapshot = ((SnapshotSchemaFactory) factory).getSnapshot();
+                if (snapshot != null)
+                    gen.setSchemaGroup(snapshot);
+
                 Schema[] schemas = group.getSchemas();
                 Table[] tabs;
                 for (int i = 0; i < schemas.length; i++) {
                     tabs = schemas[i].getTables();
                     for (int j = 0; j < tabs.length; j++) {
+                        if (snapshot != null
+                            && snapshot.findTable(tabs[j]) != null)
+                            continue;
                         if (DBIdentifier.isNull(tabs[j].getSchemaIdentifier())) {
                             tables.add(tabs[j].getIdentifier());
                         } else {
@@ -1477,6 +1529,12 @@ public class SchemaTool {
      * on existing tables are manipulated. Defaults to true.</li>
      * <li><i>-sequences/-sq &lt;true/t | false/f&gt;</i>: Whether to
      * manipulate sequences. Defaults to true.</li>
+     * <li><i>-reflectionThreads/-rt &lt;number&gt;</i>: The number of
+     * connections over which the existing schema is read concurrently.
+     * Defaults to 1.</li>
+     * <li><i>-bulkReflection/-br &lt;true/t | false/f&gt;</i>: Whether to
+     * read the existing schema with one catalog query per schema where the
+     * database dictionary allows. Defaults to false.</li>
      * <li><i>-record/-r &lt;true/t | false/f&gt;</i>: Set this option to
      * <code>false</code> to prevent writing the schema changes to the
      * current {@link SchemaFactory}.</li>
@@ -1578,6 +1636,10 @@ public class SchemaTool {
             ("indexes", "ix", flags.indexes);
         flags.sequences = opts.removeBooleanProperty
             ("sequences", "sq", flags.sequences);
+        flags.reflectionThreads = opts.removeIntProperty
+            ("reflectionThreads", "rt", flags.reflectionThreads);
+        flags.bulkReflection = opts.removeBooleanProperty
+            ("bulkReflection", "br", flags.bulkReflection);
         flags.record = opts.removeBooleanProperty("record", "r", flags.record);
         String fileName = opts.removeProperty("file", "f", null);
         String schemas = opts.removeProperty("s");
@@ -1623,6 +1685,8 @@ public class SchemaTool {
             gen.setForeignKeys(flags.foreignKeys);
             gen.setSequences(flags.sequences);
             gen.setOpenJPATables(flags.openjpaTables);
+            gen.setReflectionThreads(flags.reflectionThreads);
+            gen.setBulkReflection(flags.bulkReflection);
 
             String schemas = conf.getSchemas();
             if (StringUtil.isEmpty(schemas))
@@ -1686,6 +1750,8 @@ public class SchemaTool {
         tool.setForeignKeys(flags.foreignKeys);
         tool.setIndexes(flags.indexes);
         tool.setOpenJPATables(flags.openjpaTables);
+        tool.setReflectionThreads(flags.reflectionThreads);
+        tool.setBulkReflection(flags.bulkReflection);
         if (args.length > 0)
             tool.setSchemaGroup(parser.getSchemaGroup());
         if (flags.writer != null)
@@ -1728,6 +1794,8 @@ public class SchemaTool {
         public boolean foreignKeys = true;
         public boolean indexes = true;
         public boolean sequences = true;
+        public int reflectionThreads = 1;
+        public boolean bulkReflection = false;
         public boolean record = true;
     }
 }
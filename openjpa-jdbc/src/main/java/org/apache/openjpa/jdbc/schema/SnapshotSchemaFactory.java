@@ -0,0 +1,576 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.schema;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.openjpa.conf.OpenJPAVersion;
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.identifier.DBIdentifier;
+import org.apache.openjpa.jdbc.sql.DBDictionary;
+import org.apache.openjpa.jdbc.sql.SQLExceptions;
+import org.apache.openjpa.lib.conf.Configuration;
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.util.GeneralException;
+
+/**
+ * Factory that keeps a binary snapshot of the database schema in a local
+ * file, so that the tables recorded in it do not have to be reflected
+ * again when the next instance starts. The snapshot is written whenever
+ * the schema is stored, which the {@link SchemaTool} does after
+ * synchronizing the mappings with the database, and it is used in place of
+ * database reflection by the schema tool and for tables loaded at runtime.
+ *  A snapshot is checked against the database before use. If the
+ * {@link DBDictionary#catalogFingerprintSQL} yields the value recorded
+ * with the snapshot, all of its tables are taken as they are. Otherwise
+ * the columns of the recorded tables are read, one query per schema where
+ * the dictionary allows, and compared with the columns recorded for each
+ * table; changed or dropped tables and the tables with foreign keys to
+ * them are discarded and reflected again. Changes limited to indexes or
+ * constraints are only noticed through the catalog fingerprint. Tables not
+ * in the snapshot are read as needed, as by {@link LazySchemaFactory}.
+ *  The snapshot is only kept if a file is set; it is read with a filter
+ * that admits nothing but the schema classes and the values they hold.
+ */
+public class SnapshotSchemaFactory
+    extends LazySchemaFactory {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Localizer _loc = Localizer.forPackage
+        (SnapshotSchemaFactory.class);
+
+    // version of the snapshot layout
+    private static final int FORMAT = 1;
+
+    // classes that may appear in a snapshot; everything else is rejected
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.
+        createFilter("org.apache.openjpa.jdbc.schema.*;"
+        + "org.apache.openjpa.jdbc.identifier.*;"
+        + "org.apache.openjpa.lib.identifier.*;"
+        + "java.lang.String;java.lang.Boolean;java.lang.Character;"
+        + "java.lang.Number;java.lang.Byte;java.lang.Short;"
+        + "java.lang.Integer;java.lang.Long;java.lang.Float;"
+        + "java.lang.Double;java.lang.Enum;java.lang.Object;"
+        + "java.math.BigDecimal;java.math.BigInteger;java.util.Date;"
+        + "java.sql.Date;java.sql.Time;java.sql.Timestamp;"
+        + "java.util.ArrayList;java.util.LinkedList;java.util.HashMap;"
+        + "java.util.LinkedHashMap;java.util.TreeMap;java.util.HashSet;"
+        + "java.util.LinkedHashSet;java.util.TreeSet;java.util.Map$Entry;"
+        + "!*");
+
+    private transient JDBCConfiguration _conf = null;
+    private transient Log _log = null;
+    private String _fileName = null;
+    private String _fingerprintSQL = null;
+
+    // validated snapshot; null if not read yet or there is none
+    private transient SchemaGroup _snapshot = null;
+    private transient String _content = null;
+    private transient boolean _read = false;
+    private transient boolean _copied = false;
+
+    /**
+     * The file holding the snapshot. There is no default; without a file
+     * no snapshot is kept.
+     */
+    public String getFile() {
+        return _fileName;
+    }
+
+    /**
+     * The file holding the snapshot. There is no default; without a file
+     * no snapshot is kept.
+     */
+    public void setFile(String fileName) {
+        _fileName = fileName;
+    }
+
+    /**
+     * SQL returning a single value that changes whenever the schema is
+     * changed. Any <code>{0}</code> in it is replaced by the quoted names of
+     * the schemas in the snapshot. Defaults to the dictionary's
+     * {@link DBDictionary#catalogFingerprintSQL}.
+     */
+    public String getFingerprintSQL() {
+        return _fingerprintSQL;
+    }
+
+    /**
+     * SQL returning a single value that changes whenever the schema is
+     * changed. Any <code>{0}</code> in it is replaced by the quoted names of
+     * the schemas in the snapshot. Defaults to the dictionary's
+     * {@link DBDictionary#catalogFingerprintSQL}.
+     */
+    public void setFingerprintSQL(String sql) {
+        _fingerprintSQL = sql;
+    }
+
+    @Override
+    public void setConfiguration(Configuration conf) {
+        super.setConfiguration(conf);
+        _conf = (JDBCConfiguration) conf;
+        _log = _conf.getLog(JDBCConfiguration.LOG_SCHEMA);
+    }
+
+    @Override
+    public void endConfiguration() {
+        super.endConfiguration();
+        if (_fileName == null && _log.isWarnEnabled())
+            _log.warn(_loc.get("snapshot-no-file"));
+    }
+
+    @Override
+    public SchemaGroup readSchema() {
+        synchronized (this) {
+            if (!_copied) {
+                _copied = true;
+                SchemaGroup snapshot = getSnapshot();
+                if (snapshot != null)
+                    copy(snapshot);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public void storeSchema(SchemaGroup schema) {
+        if (_fileName == null)
+            return;
+
+        // the schema tool stores the schema after every run; there is no
+        // need to check the database again if nothing changed
+        String content = getContent(schema);
+        synchronized (this) {
+            if (content.equals(_content))
+                return;
+        }
+
+        SchemaGroup snapshot = new SchemaGroup();
+        snapshot.copy(schema);
+
+        Object[] data;
+        Connection conn = null;
+        try {
+            conn = _conf.getDataSource2(null).getConnection();
+            data = new Object[]{
+                FORMAT,
+                OpenJPAVersion.VERSION_NUMBER,
+                _conf.getDBDictionaryInstance().getClass().getName(),
+                getCatalogFingerprint(snapshot, conn),
+                getTableFingerprints(snapshot, conn),
+                snapshot,
+            };
+        } catch (SQLException se) {
+            throw SQLExceptions.getStore(se, _conf.getDBDictionaryInstance());
+        } finally {
+            close(conn);
+        }
+
+        // write to a temporary file first so that readers never see a
+        // partial snapshot
+        File file = new File(_fileName);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(
+            new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeObject(data);
+        } catch (IOException ioe) {
+            tmp.delete();
+            throw new GeneralException(ioe);
+        }
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+            tmp.delete();
+            throw new GeneralException(_loc.get("snapshot-write-failed",
+                file.getAbsolutePath()));
+        }
+        if (_log.isInfoEnabled())
+            _log.info(_loc.get("snapshot-written", file.getAbsolutePath(),
+                String.valueOf(countTables(snapshot))));
+
+        synchronized (this) {
+            _snapshot = snapshot;
+            _content = content;
+            _read = true;
+        }
+    }
+
+    /**
+     * Return a copy of the validated snapshot, or null if there is no
+     * usable snapshot. The snapshot is read and validated once.
+     */
+    public SchemaGroup getSnapshot() {
+        synchronized (this) {
+            if (!_read) {
+                _read = true;
+                _snapshot = readSnapshot();
+                if (_snapshot != null)
+                    _content = getContent(_snapshot);
+            }
+            return (_snapshot == null) ? null
+                : (SchemaGroup) _snapshot.clone();
+        }
+    }
+
+    /**
+     * Read the snapshot file and discard the tables that no longer match
+     * the database.
+     */
+    private SchemaGroup readSnapshot() {
+        if (_fileName == null)
+            return null;
+        File file = new File(_fileName);
+        if (!file.isFile())
+            return null;
+
+        Object[] data;
+        try (ObjectInputStream in = new ObjectInputStream(
+            new BufferedInputStream(new FileInputStream(file)))) {
+            in.setObjectInputFilter(FILTER);
+            data = (Object[]) in.readObject();
+        } catch (Exception e) {
+            if (_log.isWarnEnabled())
+                _log.warn(_loc.get("snapshot-unreadable",
+                    file.getAbsolutePath(), e.toString()));
+            return null;
+        }
+
+        if (data.length != 6 || !Integer.valueOf(FORMAT).equals(data[0])
+            || !OpenJPAVersion.VERSION_NUMBER.equals(data[1])
+            || !_conf.getDBDictionaryInstance().getClass().getName().
+                equals(data[2])) {
+            if (_log.isInfoEnabled())
+                _log.info(_loc.get("snapshot-version",
+                    file.getAbsolutePath()));
+            return null;
+        }
+
+        SchemaGroup snapshot = (SchemaGroup) data[5];
+        Connection conn = null;
+        try {
+            conn = _conf.getDataSource2(null).getConnection();
+            String fingerprint = getCatalogFingerprint(snapshot, conn);
+            if (fingerprint != null && fingerprint.equals(data[3])) {
+                if (_log.isInfoEnabled())
+                    _log.info(_loc.get("snapshot-valid",
+                        file.getAbsolutePath(),
+                        String.valueOf(countTables(snapshot))));
+                return snapshot;
+            }
+
+            Map<String, String> cur = getTableFingerprints(snapshot, conn);
+            int stale = removeStaleTables(snapshot,
+                (Map<String, String>) data[4], cur);
+            if (_log.isInfoEnabled())
+                _log.info(_loc.get("snapshot-checked", file.getAbsolutePath(),
+                    String.valueOf(countTables(snapshot)),
+                    String.valueOf(stale)));
+            return snapshot;
+        } catch (SQLException se) {
+            throw SQLExceptions.getStore(se, _conf.getDBDictionaryInstance());
+        } finally {
+            close(conn);
+        }
+    }
+
+    /**
+     * Remove the tables whose fingerprint changed from the given group,
+     * along with the tables that have foreign keys to removed tables, as
+     * removing a table drops the foreign keys to it.
+     *
+     * @return the number of tables removed
+     */
+    private static int removeStaleTables(SchemaGroup group,
+        Map<String, String> recorded, Map<String, String> current) {
+        Set<Table> stale = new HashSet<>();
+        Table[] tables = getTables(group);
+        for (int i = 0; i < tables.length; i++) {
+            String fingerprint = current.get(getKey(tables[i]));
+            if (fingerprint == null
+                || !fingerprint.equals(recorded.get(getKey(tables[i]))))
+                stale.add(tables[i]);
+        }
+
+        ForeignKey[] fks;
+        for (boolean changed = !stale.isEmpty(); changed;) {
+            changed = false;
+            for (int i = 0; i < tables.length; i++) {
+                if (stale.contains(tables[i]))
+                    continue;
+                fks = tables[i].getForeignKeys();
+                for (int j = 0; j < fks.length; j++) {
+                    if (stale.contains(fks[j].getPrimaryKeyTable())) {
+                        stale.add(tables[i]);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        for (Table table : stale)
+            table.getSchema().removeTable(table);
+        return stale.size();
+    }
+
+    /**
+     * Return the value of the catalog fingerprint SQL for the schemas of the
+     * given group, or null if there is none. A null value, or a value of the
+     * form <code>count:time</code> with no objects counted or no time
+     * recorded, tells no change apart and is no fingerprint.
+     */
+    private String getCatalogFingerprint(SchemaGroup group, Connection conn)
+        throws SQLException {
+        String sql = _fingerprintSQL;
+        if (sql == null)
+            sql = _conf.getDBDictionaryInstance().catalogFingerprintSQL;
+        if (sql == null)
+            return null;
+        if (sql.contains("{0}")) {
+            String owners = getOwners(group, conn);
+            if (owners == null)
+                return null;
+            sql = sql.replace("{0}", owners);
+        }
+
+        Statement stmnt = null;
+        ResultSet rs = null;
+        try {
+            stmnt = conn.createStatement();
+            rs = stmnt.executeQuery(sql);
+            String fingerprint = (rs.next()) ? rs.getString(1) : null;
+            if (fingerprint == null || fingerprint.startsWith("0:")
+                || fingerprint.endsWith(":"))
+                return null;
+            return fingerprint;
+        } catch (SQLException se) {
+            // fall back on comparing the tables one by one
+            if (_log.isWarnEnabled())
+                _log.warn(_loc.get("snapshot-fingerprint", sql,
+                    se.toString()));
+            return null;
+        } finally {
+            if (rs != null)
+                try {
+                    rs.close();
+                } catch (SQLException se) {
+                }
+            if (stmnt != null)
+                try {
+                    stmnt.close();
+                } catch (SQLException se) {
+                }
+        }
+    }
+
+    /**
+     * Return the names of the schemas of the given group as a list of SQL
+     * string literals, or null if the group has no tables. The names are
+     * in the case the database stores them in. Tables without a schema
+     * belong to the default schema of the connection.
+     */
+    private String getOwners(SchemaGroup group, Connection conn)
+        throws SQLException {
+        DBDictionary dict = _conf.getDBDictionaryInstance();
+        Set<String> names = new LinkedHashSet<>();
+        Schema[] schemas = group.getSchemas();
+        for (int i = 0; i < schemas.length; i++) {
+            if (schemas[i].getTables().length == 0)
+                continue;
+            DBIdentifier name = schemas[i].getIdentifier();
+            names.add(DBIdentifier.isNull(name) ? getDefaultOwner(conn)
+                : dict.convertSchemaCase(name));
+        }
+        names.remove(null);
+        if (names.isEmpty())
+            return null;
+
+        StringBuilder buf = new StringBuilder();
+        for (String name : names) {
+            if (buf.length() > 0)
+                buf.append(", ");
+            buf.append('\'').append(name.replace("'", "''")).append('\'');
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Return the schema that unqualified tables belong to.
+     */
+    private String getDefaultOwner(Connection conn)
+        throws SQLException {
+        DBDictionary dict = _conf.getDBDictionaryInstance();
+        String owner = _conf.getSchema();
+        if (owner == null)
+            owner = dict.getDefaultSchemaName();
+        if (owner == null)
+            owner = conn.getMetaData().getUserName();
+        return (owner == null) ? null : dict.convertSchemaCase(owner);
+    }
+
+    /**
+     * Read the columns of the tables in the given group and return a
+     * fingerprint of each table's columns by table name. Tables that do
+     * not exist in the database have no entry.
+     */
+    private Map<String, String> getTableFingerprints(SchemaGroup group,
+        Connection conn)
+        throws SQLException {
+        SchemaGenerator gen = new SchemaGenerator(_conf);
+        gen.setBulkReflection(true);
+        DatabaseMetaData meta = conn.getMetaData();
+        Table[] tables = getTables(group);
+        for (int i = 0; i < tables.length; i++)
+            gen.generateTables(tables[i].getSchemaIdentifier(),
+                tables[i].getIdentifier(), conn, meta);
+
+        Map<String, String> fingerprints = new HashMap<>();
+        SchemaGroup db = gen.getSchemaGroup();
+        Table table;
+        for (int i = 0; i < tables.length; i++) {
+            table = db.findTable(tables[i].getQualifiedPath());
+            if (table != null)
+                fingerprints.put(getKey(tables[i]), getFingerprint(table));
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Return a string describing the columns of the given table.
+     */
+    private static String getFingerprint(Table table) {
+        Column[] cols = table.getColumns().clone();
+        Arrays.sort(cols, new Comparator<Column>() {
+            @Override
+            public int compare(Column c1, Column c2) {
+                return c1.getIdentifier().getName().compareTo
+                    (c2.getIdentifier().getName());
+            }
+        });
+
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < cols.length; i++) {
+            buf.append(cols[i].getIdentifier().getName()).append(' ').
+                append(cols[i].getType()).append(' ').
+                append(cols[i].getTypeIdentifier().getName()).append(' ').
+                append(cols[i].getSize()).append(' ').
+                append(cols[i].getDecimalDigits()).append(' ').
+                append(cols[i].isNotNull()).append(' ').
+                append(cols[i].getDefaultString()).append(';');
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Return a string describing the tables, keys and indexes of the given
+     * group, used to tell whether a stored schema differs from the
+     * snapshot.
+     */
+    private static String getContent(SchemaGroup group) {
+        Table[] tables = getTables(group);
+        String[] descs = new String[tables.length];
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < tables.length; i++) {
+            buf.setLength(0);
+            buf.append(getKey(tables[i])).append('(').
+                append(getFingerprint(tables[i])).append(')');
+            if (tables[i].getPrimaryKey() != null)
+                appendColumns(buf.append(" pk"),
+                    tables[i].getPrimaryKey().getColumns());
+            for (ForeignKey fk : tables[i].getForeignKeys()) {
+                appendColumns(buf.append(" fk ").append(fk.getIdentifier().
+                    getName()), fk.getColumns());
+                appendColumns(buf.append(' ').append(fk.
+                    getPrimaryKeyTableIdentifier().getName()),
+                    fk.getPrimaryKeyColumns());
+            }
+            for (Index idx : tables[i].getIndexes())
+                appendColumns(buf.append(" idx ").append(idx.getIdentifier().
+                    getName()).append(idx.isUnique() ? " unique" : ""),
+                    idx.getColumns());
+            descs[i] = buf.toString();
+        }
+        Arrays.sort(descs);
+        return String.join("\n", descs);
+    }
+
+    private static void appendColumns(StringBuilder buf, Column[] cols) {
+        buf.append('(');
+        for (int i = 0; i < cols.length; i++)
+            buf.append((i == 0) ? "" : ",").append(cols[i].getIdentifier().
+                getName());
+        buf.append(')');
+    }
+
+    private static String getKey(Table table) {
+        return DBIdentifier.toUpper(table.getFullIdentifier(), true).getName();
+    }
+
+    private static Table[] getTables(SchemaGroup group) {
+        Schema[] schemas = group.getSchemas();
+        int count = 0;
+        for (int i = 0; i < schemas.length; i++)
+            count += schemas[i].getTables().length;
+
+        Table[] tables = new Table[count];
+        int idx = 0;
+        for (int i = 0; i < schemas.length; i++)
+            for (Table table : schemas[i].getTables())
+                tables[idx++] = table;
+        return tables;
+    }
+
+    private static int countTables(SchemaGroup group) {
+        return getTables(group).length;
+    }
+
+    private static void close(Connection conn) {
+        if (conn == null)
+            return;
+        try {
+            // some databases require a commit after metadata to release locks
+            conn.commit();
+        } catch (SQLException se) {
+        }
+        try {
+            conn.close();
+        } catch (SQLException se) {
+        }
+    }
+}
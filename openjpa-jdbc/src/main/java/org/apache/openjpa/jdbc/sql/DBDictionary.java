@@ -111,6 +111,7 @@ import org.apache.openjpa.lib.identifier.IdentifierRule;
 import org.apache.openjpa.lib.identifier.IdentifierUtil;
 import org.apache.openjpa.lib.jdbc.ConnectionDecorator;
 import org.apache.openjpa.lib.jdbc.LoggingConnectionDecorator;
+import org.apache.openjpa.lib.jdbc.ReportingSQLException;
 import org.apache.openjpa.lib.log.Log;
 import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.lib.util.Localizer.Message;
@@ -235,6 +236,7 @@ public class DBDictionary
     public String validationSQL = null;
     public String closePoolSQL = null;
     public String initializationSQL = null;
+    public String catalogFingerprintSQL = null;
     public int joinSyntax = SYNTAX_SQL92;
     public String outerJoinClause = "LEFT OUTER JOIN";
     public String innerJoinClause = "INNER JOIN";
@@ -312,6 +314,9 @@ public class DBDictionary
     public int maxEmbeddedBlobSize = -1;
     public int maxEmbeddedClobSize = -1;
     public int inClauseLimit = -1;
+    public boolean inClausePadding = false;
+    public boolean useInClauseArrays = false;
+    public String inClauseArraySQL = null;
     public int datePrecision = MILLI;
 
     /**
@@ -493,6 +498,14 @@ public class DBDictionary
     // any positive number = batch limit
     public int batchLimit = NO_BATCH;
 
+    // minimum number of batched inserts into a table to load in bulk:
+    // 0 = never load in bulk
+    public int bulkLoadThreshold = 0;
+
+    // most rows a single INSERT statement may insert, or 0 if the database
+    // does not support inserting multiple rows with one statement
+    public int multiRowInsertLimit = 0;
+
     public final Map<Integer,Set<String>> sqlStateCodes =
         new HashMap<>();
 
@@ -1639,6 +1652,9 @@ public class DBDictionary
             setBigInteger(stmnt, idx, (BigInteger) val, col);
         else if (val instanceof Array)
             setArray(stmnt, idx, (Array) val, col);
+        else if (val instanceof SQLArray)
+            setArray(stmnt, idx, ((SQLArray) val).toArray(
+                stmnt.getConnection()), col);
         else if (val instanceof Blob)
             setBlob(stmnt, idx, (Blob) val, col);
         else if (val instanceof byte[])
@@ -1884,6 +1900,19 @@ public class DBDictionary
         return type;
     }
 
+    /**
+     * Return the values of an <code>IN</code> list on the given column as
+     * an array to bind in place of the parameter of
+     * {@link #inClauseArraySQL}, or null if they can not be bound as an
+     * array.
+     */
+    public SQLArray newInClauseArray(Column col, Object[] values) {
+        String typeName = getTypeName(col.getType());
+        if (typeName == null)
+            return null;
+        return new SQLArray(typeName, values);
+    }
+
     /**
      * Return the preferred database type name for the given column's type
      * from {@link Types}.
@@ -5523,6 +5552,114 @@ public class DBDictionary
         batchLimit = limit;
     }
 
+    /**
+     * Return the bulkLoadThreshold
+     */
+    public int getBulkLoadThreshold() {
+        return bulkLoadThreshold;
+    }
+
+    /**
+     * Set the bulkLoadThreshold value
+     */
+    public void setBulkLoadThreshold(int threshold) {
+        bulkLoadThreshold = threshold;
+    }
+
+    /**
+     * Insert the given rows with the bulk load facility of the database.
+     * All rows are inserts into the same table with the same SQL and none
+     * of them needs a value assigned by the database. This implementation
+     * inserts up to {@link #multiRowInsertLimit} rows with each statement.
+     *
+     * @return false if the rows can not be loaded in bulk, in which case
+     * none of them was written
+     * @throws ReportingSQLException with the index of the first row of the
+     * statement that failed
+     */
+    public boolean bulkLoad(Connection conn, List<RowImpl> rows,
+        JDBCStore store)
+        throws SQLException {
+        if (multiRowInsertLimit <= 1 || rows.size() < 2)
+            return false;
+        RowImpl first = rows.get(0);
+        int params = getBulkLoadParameterCount(first);
+        if (params <= 0)
+            return false;
+
+        // the markers of the values follow the last column name
+        String sql = first.getSQL(this);
+        int idx = sql.lastIndexOf(") VALUES (");
+        if (idx == -1)
+            return false;
+        String values = sql.substring(idx + 9);
+
+        int limit = Math.min(multiRowInsertLimit,
+            Math.max(1, Short.MAX_VALUE / params));
+        String fullSQL = null;
+        for (int low = 0, high; low < rows.size(); low = high) {
+            high = Math.min(low + limit, rows.size());
+            String chunkSQL;
+            if (high - low == limit && fullSQL != null)
+                chunkSQL = fullSQL;
+            else {
+                StringBuilder buf = new StringBuilder(sql.length()
+                    + (values.length() + 2) * (high - low - 1));
+                buf.append(sql);
+                for (int i = low + 1; i < high; i++)
+                    buf.append(", ").append(values);
+                chunkSQL = buf.toString();
+                if (high - low == limit)
+                    fullSQL = chunkSQL;
+            }
+
+            PreparedStatement stmnt = conn.prepareStatement(chunkSQL);
+            try {
+                for (int i = low; i < high; i++)
+                    rows.get(i).flush(stmnt, 1 + (i - low) * params, this,
+                        store);
+                int count = stmnt.executeUpdate();
+                if (count != high - low)
+                    throw new SQLException(_loc.get("bulk-load-count",
+                        String.valueOf(high - low), String.valueOf(count),
+                        chunkSQL).getMessage());
+            } catch (SQLException se) {
+                // the statement fails as a whole; report its first row
+                ReportingSQLException rse = (se instanceof
+                    ReportingSQLException) ? (ReportingSQLException) se
+                    : new ReportingSQLException(se, stmnt, chunkSQL);
+                rse.setIndexOfFirstFailedObject(low);
+                throw rse;
+            } finally {
+                try {
+                    stmnt.close();
+                } catch (SQLException se) {
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the number of parameters the given insert row binds, or -1 if
+     * the row has values that are part of its SQL.
+     */
+    protected int getBulkLoadParameterCount(RowImpl row) {
+        if (row.getAction() != Row.ACTION_INSERT)
+            return -1;
+        Object[] vals = row.getVals();
+        int[] types = row.getTypes();
+        int params = 0;
+        for (int i = 0; i < vals.length; i++) {
+            if (vals[i] == null)
+                continue;
+            if (types[i] == RowImpl.RAW)
+                return -1;
+            params++;
+        }
+        return params;
+    }
+
     /**
      * Validate the batch process. In some cases, we can't batch the statements
      * due to some restrictions. For example, if the GeneratedType=IDENTITY,
@@ -60,6 +60,7 @@ public class DerbyDictionary
 
         allowsAliasInBulkClause = false;
         supportsDeferredConstraints = false;
+        multiRowInsertLimit = 100;
         supportsParameterInSelect = false;
         supportsSelectForUpdate = true;
         supportsDefaultDeleteAction = false;
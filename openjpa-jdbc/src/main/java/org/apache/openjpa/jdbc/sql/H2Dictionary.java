@@ -68,6 +68,8 @@ public class H2Dictionary extends DBDictionary {
         supportsSelectEndIndex = true;
         rangePosition = RANGE_POST_LOCK;
         supportsDeferredConstraints = false;
+        inClauseArraySQL = "{0} IN (UNNEST({1}))";
+        multiRowInsertLimit = 1000;
 
         supportsNullTableForGetPrimaryKeys = true;
         supportsNullTableForGetIndexInfo = true;
@@ -79,6 +79,7 @@ public class HSQLDictionary extends DBDictionary {
         supportsSelectStartIndex = true;
         supportsSelectEndIndex = true;
         supportsDeferredConstraints = false;
+        multiRowInsertLimit = 1000;
 
         doubleTypeName = "NUMERIC";
 
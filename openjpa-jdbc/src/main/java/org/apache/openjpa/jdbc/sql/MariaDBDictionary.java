@@ -97,6 +97,7 @@ public class MariaDBDictionary extends DBDictionary {
         requiresTargetForDelete = true;
         supportsSelectStartIndex = true;
         supportsSelectEndIndex = true;
+        multiRowInsertLimit = 1000;
 
         datePrecision = MICRO;
 
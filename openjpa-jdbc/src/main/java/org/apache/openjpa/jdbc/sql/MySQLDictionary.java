@@ -98,6 +98,7 @@ public class MySQLDictionary
         requiresTargetForDelete = true;
         supportsSelectStartIndex = true;
         supportsSelectEndIndex = true;
+        multiRowInsertLimit = 1000;
 
         datePrecision = MICRO;
 
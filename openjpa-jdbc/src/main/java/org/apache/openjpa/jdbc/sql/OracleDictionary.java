@@ -162,6 +162,9 @@ public class OracleDictionary
     public OracleDictionary() {
         platform = "Oracle";
         validationSQL = "SELECT SYSDATE FROM DUAL";
+        catalogFingerprintSQL = "SELECT COUNT(*) || ':' || "
+            + "TO_CHAR(MAX(LAST_DDL_TIME), 'YYYYMMDDHH24MISS') "
+            + "FROM ALL_OBJECTS WHERE OWNER IN ({0})";
         nextSequenceQuery = "SELECT {0}.NEXTVAL FROM DUAL";
         stringLengthFunction = "LENGTH({0})";
         joinSyntax = SYNTAX_DATABASE;
@@ -173,6 +176,11 @@ public class OracleDictionary
         maxEmbeddedClobSize = 4000;
         inClauseLimit = 1000;
 
+        // the catalog queries below read whole schemas if no table is given
+        supportsNullTableForGetPrimaryKeys = true;
+        supportsNullTableForGetIndexInfo = true;
+        supportsNullTableForGetImportedKeys = true;
+
         supportsDeferredConstraints = true;
         supportsLockingWithDistinctClause = false;
         supportsSelectStartIndex = true;
@@ -18,12 +18,16 @@
  */
 package org.apache.openjpa.jdbc.sql;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.security.AccessController;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -31,6 +35,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
 import java.sql.Types;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -41,6 +47,7 @@ import java.time.OffsetDateTime;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
@@ -72,6 +79,8 @@ public class PostgresDictionary extends DBDictionary {
 
     private static final Localizer _loc = Localizer.forPackage(PostgresDictionary.class);
 
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
 
     private Method dbcpGetDelegate;
     private Method connectionUnwrap;
@@ -143,6 +152,8 @@ public class PostgresDictionary extends DBDictionary {
         rangePosition = RANGE_POST_LOCK;
         requiresAliasForSubselect = true;
         allowsAliasInBulkClause = false;
+        inClauseArraySQL = "{0} = ANY({1})";
+        multiRowInsertLimit = 1000;
 
         // single-quote escape will result in SELECT CURVAL('mysequence')
         lastGeneratedKeyQuery = "SELECT CURRVAL(''{1}_{0}_seq'')";
@@ -927,6 +938,200 @@ public class PostgresDictionary extends DBDictionary {
         }
     }
 
+    /**
+     * Stream the rows through <code>COPY ... FROM STDIN</code> if the copy
+     * API of the driver can be reached and all values have a text form that
+     * matches what binding them as parameters would store; otherwise
+     * fall back to multi-row inserts. The copy API is looked up
+     * reflectively, so that the driver is only needed when rows are copied.
+     */
+    @Override
+    public boolean bulkLoad(Connection conn, List<RowImpl> rows,
+        JDBCStore store)
+        throws SQLException {
+        RowImpl first = rows.get(0);
+        if (getBulkLoadParameterCount(first) <= 0)
+            return false;
+
+        StringBuilder buf = new StringBuilder();
+        for (RowImpl row : rows)
+            if (!appendCopyRow(buf, row))
+                return super.bulkLoad(conn, rows, store);
+        Object copy = getCopyManager(conn);
+        if (copy == null)
+            return super.bulkLoad(conn, rows, store);
+
+        String sql = getCopySQL(first);
+        if (log.isTraceEnabled())
+            log.trace(_loc.get("copy-rows", String.valueOf(rows.size()), sql));
+        long count;
+        try {
+            Method copyIn = copy.getClass().getMethod("copyIn", String.class,
+                InputStream.class);
+            count = ((Number) copyIn.invoke(copy, sql,
+                new ByteArrayInputStream(buf.toString().
+                getBytes(StandardCharsets.UTF_8)))).longValue();
+            if (count != rows.size())
+                throw new SQLException(_loc.get("bulk-load-count",
+                    String.valueOf(rows.size()), String.valueOf(count), sql).
+                    getMessage());
+        } catch (InvocationTargetException ite) {
+            // the copy fails as a whole; report its first row
+            Throwable cause = ite.getCause();
+            SQLException se = (cause instanceof SQLException)
+                ? (SQLException) cause : new SQLException(cause);
+            ReportingSQLException rse = (se instanceof ReportingSQLException)
+                ? (ReportingSQLException) se
+                : new ReportingSQLException(se, null, sql);
+            rse.setIndexOfFirstFailedObject(0);
+            throw rse;
+        } catch (ReflectiveOperationException roe) {
+            throw new SQLException(roe);
+        } catch (SQLException se) {
+            ReportingSQLException rse = new ReportingSQLException(se, null,
+                sql);
+            rse.setIndexOfFirstFailedObject(0);
+            throw rse;
+        }
+        return true;
+    }
+
+    /**
+     * Return the <code>org.postgresql.copy.CopyManager</code> of the driver
+     * connection underlying the given connection, or null if the driver or
+     * its connection can not be reached.
+     */
+    protected Object getCopyManager(Connection conn) {
+        try {
+            Connection inner = (conn instanceof DelegatingConnection)
+                ? ((DelegatingConnection) conn).getInnermostDelegate() : conn;
+            ClassLoader loader = inner.getClass().getClassLoader();
+            if (loader == null)
+                loader = AccessController.doPrivileged(
+                    J2DoPrivHelper.getContextClassLoaderAction());
+            Class<?> pgConn = Class.forName("org.postgresql.PGConnection",
+                false, loader);
+            Object driverConn;
+            if (pgConn.isInstance(inner))
+                driverConn = inner;
+            else if (inner.isWrapperFor(pgConn))
+                driverConn = inner.unwrap(pgConn);
+            else
+                return null;
+            return pgConn.getMethod("getCopyAPI").invoke(driverConn);
+        } catch (Exception e) {
+            if (log.isTraceEnabled())
+                log.trace(_loc.get("copy-unavailable"), e);
+            return null;
+        }
+    }
+
+    private String getCopySQL(RowImpl row) {
+        StringBuilder buf = new StringBuilder();
+        buf.append("COPY ").append(getFullName(row.getTable(), false)).
+            append(" (");
+        Column[] cols = row.getColumns();
+        Object[] vals = row.getVals();
+        boolean hasVal = false;
+        for (int i = 0; i < cols.length; i++) {
+            if (vals[i] == null)
+                continue;
+            if (hasVal)
+                buf.append(", ");
+            buf.append(getColumnDBName(cols[i]));
+            hasVal = true;
+        }
+        return buf.append(") FROM STDIN").toString();
+    }
+
+    /**
+     * Append the values of the given row in the text format of COPY.
+     *
+     * @return false if a value has no text form known to be equivalent to
+     * binding it as a parameter
+     */
+    private boolean appendCopyRow(StringBuilder buf, RowImpl row) {
+        Column[] cols = row.getColumns();
+        Object[] vals = row.getVals();
+        boolean hasVal = false;
+        for (int i = 0; i < cols.length; i++) {
+            if (vals[i] == null)
+                continue;
+            if (hasVal)
+                buf.append('\t');
+            if (!appendCopyValue(buf, vals[i], cols[i]))
+                return false;
+            hasVal = true;
+        }
+        buf.append('\n');
+        return true;
+    }
+
+    private boolean appendCopyValue(StringBuilder buf, Object val, Column col) {
+        if (val == RowImpl.NULL)
+            buf.append("\\N");
+        else if (val instanceof String)
+            appendCopyString(buf, (String) val);
+        else if (val instanceof BigDecimal)
+            buf.append(((BigDecimal) val).toPlainString());
+        else if (val instanceof Integer || val instanceof Long
+            || val instanceof Short || val instanceof Byte
+            || val instanceof BigInteger || val instanceof Double
+            || val instanceof Float)
+            buf.append(val);
+        else if (val instanceof Boolean) {
+            if (col.getType() != Types.BOOLEAN && col.getType() != Types.BIT)
+                return false;
+            buf.append(((Boolean) val) ? 't' : 'f');
+        } else if (val instanceof Character) {
+            if (storeCharsAsNumbers)
+                buf.append((int) ((Character) val).charValue());
+            else
+                appendCopyString(buf, val.toString());
+        } else if (val instanceof java.sql.Date || val instanceof Time
+            || val instanceof Timestamp)
+            buf.append(val);
+        else if (val instanceof Date) {
+            // as converted by setDate
+            long millis = ((Date) val).getTime();
+            if (col.getType() == Types.DATE)
+                buf.append(new java.sql.Date(millis));
+            else if (col.getType() == Types.TIME)
+                buf.append(new Time(millis));
+            else
+                buf.append(new Timestamp(millis));
+        } else if (val instanceof byte[]) {
+            buf.append("\\\\x");
+            for (byte b : (byte[]) val)
+                buf.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+        } else
+            return false;
+        return true;
+    }
+
+    private static void appendCopyString(StringBuilder buf, String str) {
+        char c;
+        for (int i = 0; i < str.length(); i++) {
+            c = str.charAt(i);
+            switch (c) {
+                case '\\':
+                    buf.append("\\\\");
+                    break;
+                case '\t':
+                    buf.append("\\t");
+                    break;
+                case '\n':
+                    buf.append("\\n");
+                    break;
+                case '\r':
+                    buf.append("\\r");
+                    break;
+                default:
+                    buf.append(c);
+            }
+        }
+    }
+
     /**
      * Get the native PostgreSQL Large Object Manager used for LOB handling.
      */
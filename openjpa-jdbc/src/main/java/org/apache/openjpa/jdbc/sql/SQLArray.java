@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.sql;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Values to bind as a single SQL array parameter. Used to bind the
+ * elements of an <code>IN</code> list in one parameter.
+ *
+ * @see DBDictionary#inClauseArraySQL
+ */
+public class SQLArray {
+
+    public final String typeName;
+    public final Object[] values;
+
+    /**
+     * Constructor.
+     *
+     * @param typeName the database type name of the elements
+     * @param values the elements
+     */
+    public SQLArray(String typeName, Object[] values) {
+        this.typeName = typeName;
+        this.values = values;
+    }
+
+    /**
+     * Create the JDBC array to bind.
+     */
+    public Array toArray(Connection conn)
+        throws SQLException {
+        return conn.createArrayOf(typeName, values);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
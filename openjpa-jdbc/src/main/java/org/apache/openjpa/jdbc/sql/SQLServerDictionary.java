@@ -77,6 +77,9 @@ public class SQLServerDictionary extends AbstractSQLServerDictionary {
         supportsNullTableForGetColumns = false;
         requiresAliasForSubselect = true;
         stringLengthFunction = "LEN({0})";
+        catalogFingerprintSQL = "SELECT CAST(COUNT(*) AS VARCHAR(20)) + ':' "
+            + "+ CONVERT(VARCHAR(30), MAX(modify_date), 126) FROM sys.objects "
+            + "WHERE SCHEMA_NAME(schema_id) IN ({0})";
 
         timeWithZoneTypeName = "TIME";
         timestampWithZoneTypeName = "DATETIMEOFFSET";
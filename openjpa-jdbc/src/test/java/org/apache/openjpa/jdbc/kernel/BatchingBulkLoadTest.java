@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.kernel;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.conf.JDBCConfigurationImpl;
+import org.apache.openjpa.jdbc.identifier.DBIdentifier;
+import org.apache.openjpa.jdbc.schema.Column;
+import org.apache.openjpa.jdbc.schema.Table;
+import org.apache.openjpa.jdbc.sql.DBDictionary;
+import org.apache.openjpa.jdbc.sql.HSQLDictionary;
+import org.apache.openjpa.jdbc.sql.PrimaryRow;
+import org.apache.openjpa.jdbc.sql.Row;
+import org.apache.openjpa.jdbc.sql.RowImpl;
+import org.apache.openjpa.meta.JavaTypes;
+import org.apache.openjpa.util.ObjectExistsException;
+import org.apache.openjpa.util.StoreException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+/**
+ * Handing batched inserts to the bulk load facility of the dictionary, and
+ * converting its failures.
+ */
+public class BatchingBulkLoadTest {
+
+    private static int _dbs;
+
+    private JDBCConfiguration _conf;
+    private DBDictionary _dict;
+    private Connection _conn;
+    private BatchingPreparedStatementManagerImpl _mgr;
+    private Table _table;
+    private Column _id;
+
+    @Before
+    public void setUp()
+        throws SQLException {
+        _conf = new JDBCConfigurationImpl(false, false);
+        _dict = new HSQLDictionary();
+        _dict.setConfiguration(_conf);
+        _dict.endConfiguration();
+        _dict.multiRowInsertLimit = 4;
+        _dict.setBulkLoadThreshold(5);
+
+        _conn = DriverManager.getConnection("jdbc:hsqldb:mem:batchload"
+            + _dbs++, "SA", "");
+        execute("CREATE TABLE ITEM (ID INTEGER PRIMARY KEY)");
+        JDBCStore store = Mockito.mock(JDBCStore.class);
+        when(store.getDBDictionary()).thenReturn(_dict);
+        when(store.getConfiguration()).thenReturn(_conf);
+        _mgr = new BatchingPreparedStatementManagerImpl(store, _conn, 100);
+
+        _table = new Table(DBIdentifier.newTable("ITEM"), null);
+        _id = _table.addColumn(DBIdentifier.newColumn("ID"));
+        _id.setType(Types.INTEGER);
+        _id.setJavaType(JavaTypes.INT);
+    }
+
+    @After
+    public void tearDown()
+        throws SQLException {
+        execute("SHUTDOWN");
+        _conn.close();
+    }
+
+    private void execute(String sql)
+        throws SQLException {
+        try (Statement stmnt = _conn.createStatement()) {
+            stmnt.execute(sql);
+        }
+    }
+
+    /**
+     * Return insert rows for the given ids, failing with the name of their
+     * row.
+     */
+    private List<RowImpl> rows(int low, int high)
+        throws SQLException {
+        List<RowImpl> rows = new ArrayList<>();
+        for (int i = low; i < high; i++) {
+            RowImpl row = new PrimaryRow(_table, Row.ACTION_INSERT, null);
+            row.setInt(_id, i);
+            row.setFailedObject("item" + i);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private int count()
+        throws SQLException {
+        try (Statement stmnt = _conn.createStatement();
+            ResultSet rs = stmnt.executeQuery("SELECT COUNT(*) FROM ITEM")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void testBatchBelowThresholdNotLoaded()
+        throws SQLException {
+        List<RowImpl> rows = rows(0, 4);
+        assertFalse(_mgr.bulkLoad(rows));
+        assertEquals(4, rows.size());
+        assertEquals(0, count());
+    }
+
+    @Test
+    public void testBatchLoaded()
+        throws SQLException {
+        List<RowImpl> rows = rows(0, 10);
+        assertTrue(_mgr.bulkLoad(rows));
+        assertTrue(rows.isEmpty());
+        assertEquals(10, count());
+    }
+
+    @Test
+    public void testNotLoadedWhenDisabled()
+        throws SQLException {
+        _dict.setBulkLoadThreshold(0);
+        assertFalse(_mgr.bulkLoad(rows(0, 10)));
+        assertEquals(0, count());
+    }
+
+    @Test
+    public void testTablesWithAutoAssignedColumnsNotLoaded()
+        throws SQLException {
+        List<RowImpl> rows = rows(0, 10);
+        _id.setAutoAssigned(true);
+        assertFalse(_mgr.bulkLoad(rows));
+        assertEquals(10, rows.size());
+        assertEquals(0, count());
+    }
+
+    @Test
+    public void testFailureConvertedWithFirstRowOfStatement()
+        throws SQLException {
+        execute("INSERT INTO ITEM (ID) VALUES (6)");
+        List<RowImpl> rows = rows(0, 10);
+        try {
+            _mgr.bulkLoad(rows);
+            fail();
+        } catch (StoreException se) {
+            // the second statement inserts rows 4 to 7
+            assertTrue(se instanceof ObjectExistsException);
+            assertEquals("item4", se.getFailedObject());
+            assertTrue(se.getCause() instanceof SQLException);
+        }
+        assertTrue(rows.isEmpty());
+        assertEquals(5, count());
+    }
+
+    @Test
+    public void testFailureWithoutStatementIndexConverted()
+        throws SQLException {
+        DBDictionary dict = Mockito.spy(_dict);
+        Mockito.doThrow(new SQLException("broken", "08006")).when(dict).
+            bulkLoad(Mockito.any(Connection.class),
+            Mockito.<List<RowImpl>> any(), Mockito.any(JDBCStore.class));
+        JDBCStore store = Mockito.mock(JDBCStore.class);
+        when(store.getDBDictionary()).thenReturn(dict);
+        when(store.getConfiguration()).thenReturn(_conf);
+        _mgr = new BatchingPreparedStatementManagerImpl(store, _conn, 100);
+
+        List<RowImpl> rows = rows(0, 10);
+        try {
+            _mgr.bulkLoad(rows);
+            fail();
+        } catch (StoreException se) {
+            assertNull(se.getFailedObject());
+        }
+        assertTrue(rows.isEmpty());
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.kernel;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.openjpa.datacache.DataCacheStoreManager;
+import org.apache.openjpa.event.AbstractTransactionListener;
+import org.apache.openjpa.event.CallbackModes;
+import org.apache.openjpa.event.TransactionEvent;
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.conf.JDBCConfigurationImpl;
+import org.apache.openjpa.kernel.Broker;
+import org.apache.openjpa.kernel.DelegatingStoreManager;
+import org.apache.openjpa.kernel.LockManager;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
+import org.apache.openjpa.kernel.StoreManager;
+import org.apache.openjpa.meta.NoneMetaDataFactory;
+import org.apache.openjpa.util.InvalidStateException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Store and lock managers of closed brokers handed to new brokers: however
+ * the previous broker was closed, the next one starts with a clean state.
+ */
+public class BrokerRecycleTest {
+
+    private static int _dbs;
+
+    private Connection _conn;
+    private JDBCConfiguration _conf;
+    private JDBCBrokerFactory _factory;
+
+    @Before
+    public void setUp()
+        throws SQLException {
+        String url = "jdbc:hsqldb:mem:recycle" + _dbs++;
+        _conn = DriverManager.getConnection(url, "SA", "");
+        try (Statement stmnt = _conn.createStatement()) {
+            stmnt.execute("CREATE TABLE T (ID INTEGER PRIMARY KEY)");
+            stmnt.execute("INSERT INTO T VALUES (1)");
+            stmnt.execute("INSERT INTO T VALUES (2)");
+        }
+
+        _conf = newConfiguration(url);
+        _conf.setDataCache("true");
+        _conf.setRemoteCommitProvider("sjvm");
+        _conf.setBrokerImpl("default(RecycleLimit=2)");
+        _factory = new JDBCBrokerFactory(_conf);
+    }
+
+    /**
+     * Return a configuration for the given database without persistent
+     * types.
+     */
+    private static JDBCConfiguration newConfiguration(String url) {
+        JDBCConfiguration conf = new JDBCConfigurationImpl();
+        conf.setConnectionDriverName("org.hsqldb.jdbcDriver");
+        conf.setConnectionURL(url);
+        conf.setConnectionUserName("SA");
+        conf.setConnectionPassword("");
+        conf.setDBDictionary("hsql");
+        conf.setMetaDataFactory(NoneMetaDataFactory.class.getName());
+        return conf;
+    }
+
+    @After
+    public void tearDown()
+        throws SQLException {
+        _factory.close();
+        try (Statement stmnt = _conn.createStatement()) {
+            stmnt.execute("SHUTDOWN");
+        }
+        _conn.close();
+    }
+
+    private Broker newBroker() {
+        return _factory.newBroker();
+    }
+
+    private static JDBCStoreManager getJDBCStore(Broker broker) {
+        return (JDBCStoreManager) broker.getStoreManager().
+            getInnermostDelegate();
+    }
+
+    private static DataCacheStoreManager getDataCacheStore(Broker broker) {
+        StoreManager store = broker.getStoreManager();
+        while (store instanceof DelegatingStoreManager) {
+            if (store instanceof DataCacheStoreManager)
+                return (DataCacheStoreManager) store;
+            store = ((DelegatingStoreManager) store).getDelegate();
+        }
+        fail("no data cache store manager");
+        return null;
+    }
+
+    private static Object get(Object obj, String name)
+        throws Exception {
+        for (Class<?> cls = obj.getClass(); cls != null;
+            cls = cls.getSuperclass()) {
+            try {
+                Field field = cls.getDeclaredField(name);
+                field.setAccessible(true);
+                return field.get(obj);
+            } catch (NoSuchFieldException nsfe) {
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+
+    private static void set(Object obj, String name, Object value)
+        throws Exception {
+        Field field = obj.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(obj, value);
+    }
+
+    /**
+     * Assert that the given broker uses the recycled managers of the
+     * given closed broker, and that they hold none of its state.
+     */
+    private static void assertRecycledClean(Broker closed, Broker broker)
+        throws Exception {
+        assertTrue(closed.isClosed());
+        assertSame(closed.getStoreManager(), broker.getStoreManager());
+        assertSame(closed.getLockManager(), broker.getLockManager());
+
+        JDBCStoreManager store = getJDBCStore(broker);
+        assertSame(broker, store.getContext());
+        assertSame(broker.getLockManager(), store.getLockManager());
+        assertEquals(Boolean.FALSE, get(store, "_active"));
+        assertNull(get(store, "_conn"));
+        assertTrue(((Collection<?>) get(store, "_stmnts")).isEmpty());
+        assertNoDuplicates((List<?>) get(store, "_cancelStatementPool"));
+        assertNoDuplicates((List<?>) get(store,
+            "_cancelPreparedStatementsPool"));
+
+        DataCacheStoreManager cache = getDataCacheStore(broker);
+        assertNull(get(cache, "_inserts"));
+        assertNull(get(cache, "_updates"));
+        assertNull(get(cache, "_deletes"));
+        assertNull(get(cache, "_inline"));
+        assertSame(broker, get(cache, "_ctx"));
+
+        assertSame(broker, get(broker.getLockManager(), "ctx"));
+
+        // the recycled managers work for the new broker
+        assertEquals(2, count(broker));
+        broker.setOptimistic(false);
+        broker.begin();
+        assertEquals(Boolean.TRUE, get(store, "_active"));
+        assertEquals(2, count(broker));
+        broker.commit();
+        assertEquals(Boolean.FALSE, get(store, "_active"));
+    }
+
+    private static void assertNoDuplicates(List<?> pool) {
+        Map<Object, Object> seen = new IdentityHashMap<>();
+        for (Object stmnt : pool)
+            assertNull(seen.put(stmnt, stmnt));
+    }
+
+    private static int count(Broker broker)
+        throws SQLException {
+        Connection conn = (Connection) broker.getConnection();
+        try (Statement stmnt = conn.createStatement();
+            ResultSet rs = stmnt.executeQuery("SELECT COUNT(*) FROM T")) {
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testNotRecycledByDefault() {
+        JDBCBrokerFactory factory = new JDBCBrokerFactory(newConfiguration(
+            "jdbc:hsqldb:mem:recycle" + (_dbs - 1)));
+        try {
+            Broker closed = factory.newBroker();
+            closed.close();
+            Broker broker = factory.newBroker();
+            assertNotSame(closed.getStoreManager(), broker.getStoreManager());
+            assertNotSame(closed.getLockManager(), broker.getLockManager());
+            broker.close();
+        } finally {
+            factory.close();
+        }
+    }
+
+    @Test
+    public void testClosedAfterCommit()
+        throws Exception {
+        Broker closed = newBroker();
+        closed.setOptimistic(false);
+        closed.begin();
+        assertEquals(2, count(closed));
+        closed.commit();
+        closed.close();
+        assertRecycledClean(closed, newBroker());
+    }
+
+    @Test
+    public void testClosedMidTransaction()
+        throws Exception {
+        Broker closed = newBroker();
+        closed.setOptimistic(false);
+        closed.begin();
+        try (Statement stmnt = ((Connection) closed.getConnection()).
+            createStatement()) {
+            stmnt.executeUpdate("INSERT INTO T VALUES (3)");
+        }
+        assertEquals(Boolean.TRUE, get(getJDBCStore(closed), "_active"));
+
+        // a broker in an active local transaction is not closed, so its
+        // managers are not recycled
+        try {
+            closed.close();
+            fail("closed in active transaction");
+        } catch (InvalidStateException ise) {
+        }
+        assertFalse(closed.isClosed());
+        Broker other = newBroker();
+        assertNotSame(closed.getStoreManager(), other.getStoreManager());
+
+        closed.rollback();
+        closed.close();
+        // the insert was rolled back
+        assertRecycledClean(closed, newBroker());
+        other.close();
+    }
+
+    @Test
+    public void testClosedAfterFailedFlush()
+        throws Exception {
+        Broker closed = newBroker();
+        closed.setOptimistic(false);
+        closed.begin();
+        closed.setTransactionListenerCallbackMode(
+            CallbackModes.CALLBACK_RETHROW);
+        closed.addTransactionListener(new AbstractTransactionListener() {
+            @Override
+            public void beforeCommit(TransactionEvent event) {
+                throw new IllegalStateException("flush");
+            }
+        });
+        assertEquals(Boolean.TRUE, get(getJDBCStore(closed), "_active"));
+
+        // changes recorded by an earlier flush of the transaction
+        DataCacheStoreManager cache = getDataCacheStore(closed);
+        set(cache, "_inserts", new ArrayList<OpenJPAStateManager>());
+        set(cache, "_updates", new HashMap<OpenJPAStateManager, Object>());
+        set(cache, "_deletes", new HashSet<OpenJPAStateManager>());
+        // the listener fails the flush on commit, which rolls back
+        try {
+            closed.commit();
+            fail("committed");
+        } catch (RuntimeException re) {
+        }
+        assertFalse(closed.isActive());
+        closed.close();
+        assertRecycledClean(closed, newBroker());
+    }
+
+    @Test
+    public void testClosedWithOpenResult()
+        throws Exception {
+        Broker closed = newBroker();
+        Connection conn = (Connection) closed.getConnection();
+        Statement stmnt = conn.createStatement();
+        ResultSet rs = stmnt.executeQuery("SELECT ID FROM T");
+        assertTrue(rs.next());
+        assertNotNull(get(getJDBCStore(closed), "_conn"));
+        closed.close();
+
+        Broker broker = newBroker();
+        assertRecycledClean(closed, broker);
+
+        // closing the results of the closed broker late, even twice, does
+        // not affect the connection or statements of the new broker
+        Connection current = (Connection) broker.getConnection();
+        rs.close();
+        stmnt.close();
+        stmnt.close();
+        conn.close();
+        assertNotNull(get(getJDBCStore(broker), "_conn"));
+        assertNoDuplicates((List<?>) get(getJDBCStore(broker),
+            "_cancelStatementPool"));
+        Statement first = current.createStatement();
+        Statement second = current.createStatement();
+        assertNotSame(first, second);
+        try (ResultSet rs1 = first.executeQuery("SELECT COUNT(*) FROM T");
+            ResultSet rs2 = second.executeQuery("SELECT ID FROM T")) {
+            assertTrue(rs1.next());
+            assertEquals(2, rs1.getInt(1));
+            assertTrue(rs2.next());
+        }
+        first.close();
+        second.close();
+        current.close();
+        broker.close();
+    }
+
+    @Test
+    public void testStateLeftByClosedBrokerCleared()
+        throws Exception {
+        Broker closed = newBroker();
+        closed.close();
+
+        // whatever state the managers were left with
+        JDBCStoreManager store = getJDBCStore(closed);
+        set(store, "_active", true);
+        DataCacheStoreManager cache = getDataCacheStore(closed);
+        set(cache, "_inserts", Collections.emptyList());
+        set(cache, "_updates", Collections.emptyMap());
+        set(cache, "_deletes", Collections.emptySet());
+        assertRecycledClean(closed, newBroker());
+    }
+
+    @Test
+    public void testRecycleLimit()
+        throws Exception {
+        Broker[] closed = new Broker[3];
+        for (int i = 0; i < closed.length; i++)
+            closed[i] = newBroker();
+        for (int i = 0; i < closed.length; i++)
+            closed[i].close();
+
+        // only the managers of the first two brokers were kept
+        Broker first = newBroker();
+        Broker second = newBroker();
+        Broker third = newBroker();
+        assertSame(closed[0].getStoreManager(), first.getStoreManager());
+        assertSame(closed[1].getStoreManager(), second.getStoreManager());
+        for (Broker broker : closed)
+            assertNotSame(broker.getStoreManager(), third.getStoreManager());
+        LockManager lm = third.getLockManager();
+        assertNotSame(closed[2].getLockManager(), lm);
+    }
+}
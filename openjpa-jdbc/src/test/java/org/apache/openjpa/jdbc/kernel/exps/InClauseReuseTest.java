@@ -0,0 +1,467 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.kernel.exps;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.openjpa.jdbc.kernel.JDBCStoreManager;
+import org.apache.openjpa.jdbc.kernel.PreparedQueryImpl;
+import org.apache.openjpa.jdbc.schema.Column;
+import org.apache.openjpa.jdbc.sql.DBDictionary;
+import org.apache.openjpa.jdbc.sql.SQLArray;
+import org.apache.openjpa.jdbc.sql.SQLBuffer;
+import org.apache.openjpa.jdbc.sql.Select;
+import org.apache.openjpa.kernel.Broker;
+import org.apache.openjpa.kernel.DelegatingStoreManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+/**
+ * IN expressions with a collection parameter compiled into padded lists
+ * or array parameters, and bound again with other collections by a
+ * cached prepared query.
+ */
+public class InClauseReuseTest {
+
+    private static final String KEY = "p";
+    private static final int[] STEPS = { 1, 2, 4, 8, 16 };
+
+    public enum Size {
+        S0, S1, S2, S3, S4, S5, S6, S7, S8, S9, S10, S11, S12, S13, S14,
+        S15, S16, S17, S18, S19
+    }
+
+    /**
+     * Type of an externalized field.
+     */
+    public static class Code {
+
+        private final int _n;
+
+        public Code(int n) {
+            _n = n;
+        }
+
+        public String externalize() {
+            return "C" + _n;
+        }
+    }
+
+    /**
+     * The kinds of fields compared with an IN list, converting their values
+     * to datastore values the way the field strategies do.
+     */
+    private enum Kind {
+        ORDINAL_ENUM(Types.INTEGER) {
+            Object newValue(int i) {
+                return Size.values()[i];
+            }
+
+            Object toDataStoreValue(Object val) {
+                return ((Size) val).ordinal();
+            }
+        },
+        STRING_ENUM(Types.VARCHAR) {
+            Object newValue(int i) {
+                return Size.values()[i];
+            }
+
+            Object toDataStoreValue(Object val) {
+                return ((Size) val).name();
+            }
+        },
+        CONVERTED(Types.BIGINT) {
+            Object newValue(int i) {
+                return Duration.ofSeconds(i);
+            }
+
+            Object toDataStoreValue(Object val) {
+                return ((Duration) val).getSeconds();
+            }
+        },
+        EXTERNALIZED(Types.VARCHAR) {
+            Object newValue(int i) {
+                return new Code(i);
+            }
+
+            Object toDataStoreValue(Object val) {
+                return ((Code) val).externalize();
+            }
+        };
+
+        final int sqlType;
+
+        Kind(int sqlType) {
+            this.sqlType = sqlType;
+        }
+
+        abstract Object newValue(int i);
+
+        abstract Object toDataStoreValue(Object val);
+    }
+
+    private DBDictionary _dict;
+    private JDBCStoreManager _store;
+    private Broker _broker;
+    private Select _sel;
+
+    @Before
+    public void setUp() {
+        _dict = new DBDictionary();
+        _store = Mockito.mock(JDBCStoreManager.class);
+        when(_store.getDBDictionary()).thenReturn(_dict);
+        DelegatingStoreManager delegating = Mockito.mock(
+            DelegatingStoreManager.class);
+        when(delegating.getInnermostDelegate()).thenReturn(_store);
+        _broker = Mockito.mock(Broker.class);
+        when(_broker.getStoreManager()).thenReturn(delegating);
+        _sel = Mockito.mock(Select.class);
+    }
+
+    /**
+     * Return the given number of distinct user values of the given kind,
+     * starting with the given one.
+     */
+    private static List<Object> newValues(Kind kind, int first, int size) {
+        List<Object> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            values.add(kind.newValue(first + i));
+        return values;
+    }
+
+    private static List<Object> toDataStoreValues(Kind kind,
+        List<Object> values) {
+        List<Object> vals = new ArrayList<>(values.size());
+        for (Object val : values)
+            vals.add(kind.toDataStoreValue(val));
+        return vals;
+    }
+
+    /**
+     * Return the path to a single column field of the given kind.
+     */
+    private static PCPath newPath(final Kind kind) {
+        PCPath path = Mockito.mock(PCPath.class);
+        Column col = new Column();
+        col.setType(kind.sqlType);
+        when(path.initialize(any(Select.class), any(ExpContext.class),
+            anyInt())).thenReturn(new ExpState());
+        when(path.length(any(Select.class), any(ExpContext.class),
+            any(ExpState.class))).thenReturn(1);
+        when(path.getColumns(any(ExpState.class))).
+            thenReturn(new Column[]{ col });
+        when(path.toDataStoreValue(any(Select.class), any(ExpContext.class),
+            any(ExpState.class), any())).thenAnswer(new Answer<Object>() {
+                @Override
+                public Object answer(InvocationOnMock invocation) {
+                    return kind.toDataStoreValue(invocation.getArguments()[3]);
+                }
+            });
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ((SQLBuffer) invocation.getArguments()[3]).append("t0.F");
+                return null;
+            }
+        }).when(path).appendTo(any(Select.class), any(ExpContext.class),
+            any(ExpState.class), any(SQLBuffer.class), anyInt());
+        return path;
+    }
+
+    /**
+     * Compile an IN expression on a field of the given kind with the given
+     * collection bound to its parameter.
+     */
+    private SQLBuffer compile(Kind kind, Collection<Object> values) {
+        return compile(newPath(kind), values);
+    }
+
+    private SQLBuffer compile(PCPath path, Collection<Object> values) {
+        CollectionParam param = new CollectionParam(KEY, Collection.class);
+        param.setIndex(0);
+        InExpression exp = new InExpression(path, param);
+        ExpContext ctx = new ExpContext(_store, new Object[]{ values }, null);
+        ExpState state = exp.initialize(_sel, ctx, null);
+        SQLBuffer buf = new SQLBuffer(_dict);
+        exp.appendTo(_sel, ctx, state, buf);
+        return buf;
+    }
+
+    /**
+     * Return a prepared query initialized with the given compiled SQL, as
+     * after the first execution of the query.
+     */
+    private static PreparedQueryImpl prepare(SQLBuffer buf)
+        throws Exception {
+        PreparedQueryImpl pq = new PreparedQueryImpl("q", buf.getSQL(), null);
+        invoke(pq, "setParameters", buf.getParameters());
+        invoke(pq, "setUserParameterPositions", buf.getUserParameters());
+        Field initialized = PreparedQueryImpl.class.getDeclaredField(
+            "_initialized");
+        initialized.setAccessible(true);
+        initialized.set(pq, true);
+        return pq;
+    }
+
+    private static void invoke(PreparedQueryImpl pq, String name, List arg)
+        throws Exception {
+        Method method = PreparedQueryImpl.class.getDeclaredMethod(name,
+            List.class);
+        method.setAccessible(true);
+        method.invoke(pq, arg);
+    }
+
+    private Map<Integer, Object> reparametrize(PreparedQueryImpl pq,
+        List<Object> values) {
+        return pq.reparametrize(Collections.singletonMap(KEY, values),
+            _broker);
+    }
+
+    /**
+     * Return the bound parameters in order of their index.
+     */
+    private static List<Object> toList(Map<Integer, Object> params) {
+        List<Object> list = new ArrayList<>(params.size());
+        for (int i = 0; i < params.size(); i++) {
+            assertTrue(params.containsKey(i));
+            list.add(params.get(i));
+        }
+        return list;
+    }
+
+    private static int countParameters(String sql) {
+        int n = 0;
+        for (int i = sql.indexOf('?'); i != -1; i = sql.indexOf('?', i + 1))
+            n++;
+        return n;
+    }
+
+    @Test
+    public void testPaddedToNextPowerOfTwo() {
+        _dict.inClausePadding = true;
+        for (int size = 1; size <= 17; size++) {
+            SQLBuffer buf = compile(Kind.ORDINAL_ENUM,
+                newValues(Kind.ORDINAL_ENUM, 0, size));
+            int padded = Integer.highestOneBit(size);
+            if (padded < size)
+                padded <<= 1;
+            assertEquals(padded, countParameters(buf.getSQL()));
+
+            // the values are repeated to fill the list
+            List<Object> expected = new ArrayList<>();
+            for (int i = 0; i < padded; i++)
+                expected.add(i % size);
+            assertEquals(expected, buf.getParameters());
+        }
+    }
+
+    @Test
+    public void testNotPaddedByDefault() {
+        for (int size = 1; size <= 9; size++) {
+            SQLBuffer buf = compile(Kind.ORDINAL_ENUM,
+                newValues(Kind.ORDINAL_ENUM, 0, size));
+            assertEquals(size, countParameters(buf.getSQL()));
+        }
+    }
+
+    @Test
+    public void testPaddedListsReused()
+        throws Exception {
+        _dict.inClausePadding = true;
+        for (Kind kind : Kind.values())
+            assertPaddedListsReused(kind);
+    }
+
+    @Test
+    public void testPaddedListsSplitByLimitReused()
+        throws Exception {
+        _dict.inClausePadding = true;
+        _dict.inClauseLimit = 3;
+        for (Kind kind : Kind.values())
+            assertPaddedListsReused(kind);
+    }
+
+    /**
+     * Compile queries with lists below and at each padding step, and bind
+     * them again with lists below, at and above the step.
+     */
+    private void assertPaddedListsReused(Kind kind)
+        throws Exception {
+        for (int step : STEPS) {
+            for (int compiled = step / 2 + 1; compiled <= step; compiled++) {
+                SQLBuffer buf = compile(kind, newValues(kind, 0, compiled));
+                PreparedQueryImpl pq = prepare(buf);
+                for (int size = 1; size <= step + 1; size++)
+                    assertReparametrized(kind, pq, buf, step, size);
+            }
+        }
+    }
+
+    private void assertReparametrized(Kind kind, PreparedQueryImpl pq,
+        SQLBuffer buf, int step, int size) {
+        String msg = kind + " step " + step + " size " + size;
+        // values other than those the query was compiled with
+        List<Object> values = newValues(kind, 3, size);
+        Map<Integer, Object> params = reparametrize(pq, values);
+        if (size > step) {
+            assertNull(msg, params);
+            return;
+        }
+        assertNotNull(msg, params);
+
+        List<Object> bound = toList(params);
+        assertEquals(msg, buf.getParameters().size(), bound.size());
+        List<Object> vals = toDataStoreValues(kind, values);
+        if (size > step / 2) {
+            // the same SQL as compiling the query for the values
+            SQLBuffer fresh = compile(kind, values);
+            assertEquals(msg, buf.getSQL(), fresh.getSQL());
+            assertEquals(msg, fresh.getParameters(), bound);
+        } else {
+            for (int i = 0; i < bound.size(); i++)
+                assertEquals(msg, vals.get(i % size), bound.get(i));
+        }
+    }
+
+    @Test
+    public void testUnfitValuesNotReused()
+        throws Exception {
+        _dict.inClausePadding = true;
+        PreparedQueryImpl pq = prepare(compile(Kind.STRING_ENUM,
+            newValues(Kind.STRING_ENUM, 0, 4)));
+        assertNull(reparametrize(pq, Collections.emptyList()));
+        assertNull(reparametrize(pq, newValues(Kind.STRING_ENUM, 0, 5)));
+        assertNull(reparametrize(pq, Arrays.asList(Size.S1, null)));
+        assertNotNull(reparametrize(pq, Arrays.<Object> asList(Size.S1)));
+    }
+
+    @Test
+    public void testArraysBound()
+        throws Exception {
+        _dict.useInClauseArrays = true;
+        _dict.inClauseArraySQL = "{0} = ANY({1})";
+        for (Kind kind : Kind.values()) {
+            SQLBuffer buf = compile(kind, newValues(kind, 0, 3));
+            assertEquals("t0.F = ANY(?)", buf.getSQL());
+            assertEquals(1, buf.getParameters().size());
+            SQLArray array = (SQLArray) buf.getParameters().get(0);
+            assertEquals(_dict.getTypeName(kind.sqlType), array.typeName);
+            assertEquals(toDataStoreValues(kind, newValues(kind, 0, 3)),
+                Arrays.asList(array.values));
+
+            // any number of values is bound to the one parameter
+            PreparedQueryImpl pq = prepare(buf);
+            for (int size : new int[]{ 1, 2, 3, 4, 17 }) {
+                List<Object> values = newValues(kind, 2, size);
+                Map<Integer, Object> params = reparametrize(pq, values);
+                assertEquals(1, params.size());
+                SQLArray bound = (SQLArray) params.get(0);
+                assertEquals(array.typeName, bound.typeName);
+                assertEquals(toDataStoreValues(kind, values),
+                    Arrays.asList(bound.values));
+            }
+            assertNull(reparametrize(pq, Collections.emptyList()));
+            assertNull(reparametrize(pq, Arrays.asList(kind.newValue(1),
+                null)));
+        }
+    }
+
+    @Test
+    public void testArraysPreferredToPadding()
+        throws Exception {
+        _dict.inClausePadding = true;
+        _dict.useInClauseArrays = true;
+        _dict.inClauseArraySQL = "{0} = ANY({1})";
+        for (Kind kind : Kind.values()) {
+            SQLBuffer buf = compile(kind, newValues(kind, 0, 3));
+            assertEquals("t0.F = ANY(?)", buf.getSQL());
+            PreparedQueryImpl pq = prepare(buf);
+            List<Object> values = newValues(kind, 1, 9);
+            assertEquals(toDataStoreValues(kind, values), Arrays.asList(
+                ((SQLArray) reparametrize(pq, values).get(0)).values));
+        }
+    }
+
+    @Test
+    public void testValuesOfOtherTypesPadded()
+        throws Exception {
+        _dict.inClausePadding = true;
+        _dict.useInClauseArrays = true;
+        _dict.inClauseArraySQL = "{0} = ANY({1})";
+
+        // values the driver can not bind as one array are padded instead
+        PCPath path = newMixedPath();
+        List<Object> values = newValues(Kind.CONVERTED, 0, 3);
+        values.add(Size.S1);
+        SQLBuffer buf = compile(path, values);
+        assertEquals("t0.F IN (?, ?, ?, ?)", buf.getSQL());
+        assertEquals(Arrays.<Object> asList(0L, 1L, 2L, 1),
+            buf.getParameters());
+    }
+
+    @Test
+    public void testArraysNotBoundToValuesOfOtherType()
+        throws Exception {
+        _dict.useInClauseArrays = true;
+        _dict.inClauseArraySQL = "{0} = ANY({1})";
+        PreparedQueryImpl pq = prepare(compile(newMixedPath(),
+            newValues(Kind.CONVERTED, 0, 3)));
+        assertNotNull(reparametrize(pq, newValues(Kind.CONVERTED, 1, 2)));
+        assertNull(reparametrize(pq, Arrays.<Object> asList(Size.S1)));
+        assertNull(reparametrize(pq, Arrays.asList(Kind.CONVERTED.newValue(1),
+            Size.S1)));
+    }
+
+    /**
+     * Return the path to a field converting durations to longs and enums
+     * to their ordinals.
+     */
+    private static PCPath newMixedPath() {
+        PCPath path = newPath(Kind.CONVERTED);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                Object val = invocation.getArguments()[3];
+                if (val instanceof Size)
+                    return Kind.ORDINAL_ENUM.toDataStoreValue(val);
+                return Kind.CONVERTED.toDataStoreValue(val);
+            }
+        }).when(path).toDataStoreValue(any(Select.class),
+            any(ExpContext.class), any(ExpState.class), any());
+        return path;
+    }
+}
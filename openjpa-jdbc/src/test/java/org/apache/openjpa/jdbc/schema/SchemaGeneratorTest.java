@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.schema;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.conf.JDBCConfigurationImpl;
+import org.apache.openjpa.jdbc.identifier.DBIdentifier;
+import org.apache.openjpa.jdbc.sql.HSQLDictionary;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reading table metadata over several connections and for whole schemas
+ * from an in-memory database.
+ */
+public class SchemaGeneratorTest {
+
+    private static final String[] TABLES = {
+        "T0", "T1", "T2", "T3", "T4", "T5" };
+
+    private static int _dbs;
+
+    private Connection _conn;
+    private CountingDataSource _ds;
+    private JDBCConfiguration _conf;
+    private RecordingDictionary _dict;
+
+    @Before
+    public void setUp()
+        throws SQLException {
+        String url = "jdbc:hsqldb:mem:generator" + _dbs++;
+        _conn = DriverManager.getConnection(url, "SA", "");
+        for (int i = 0; i < TABLES.length; i++)
+            execute("CREATE TABLE " + TABLES[i] + " (ID INTEGER PRIMARY KEY, "
+                + "C" + i + " VARCHAR(10))");
+
+        _conf = new JDBCConfigurationImpl();
+        _dict = new RecordingDictionary();
+        _dict.setConfiguration(_conf);
+        _dict.endConfiguration();
+        _conf.setDBDictionary(_dict);
+        _ds = new CountingDataSource(url);
+        _conf.setConnectionFactory(_ds);
+    }
+
+    @After
+    public void tearDown()
+        throws SQLException {
+        execute("SHUTDOWN");
+        _conn.close();
+    }
+
+    private void execute(String sql)
+        throws SQLException {
+        try (Statement stmnt = _conn.createStatement()) {
+            stmnt.execute(sql);
+        }
+    }
+
+    private SchemaGroup generate(int threads, boolean bulk, String... tables)
+        throws SQLException {
+        SchemaGenerator gen = new SchemaGenerator(_conf);
+        gen.setReflectionThreads(threads);
+        gen.setBulkReflection(bulk);
+        DBIdentifier[] names = new DBIdentifier[tables.length];
+        for (int i = 0; i < tables.length; i++)
+            names[i] = DBIdentifier.newTable(tables[i]);
+        gen.generateSchemas(names);
+        return gen.getSchemaGroup();
+    }
+
+    private static Set<String> getColumnNames(SchemaGroup group,
+        String table) {
+        Table found = group.findTable(table);
+        assertNotNull(table, found);
+        Set<String> names = new TreeSet<>();
+        for (Column col : found.getColumns())
+            names.add(col.getIdentifier().getName());
+        return names;
+    }
+
+    @Test
+    public void testParallelReflectionMatchesSerial()
+        throws SQLException {
+        SchemaGroup serial = generate(1, false, TABLES);
+        _dict.reads.clear();
+        _dict.threads.clear();
+        _dict.delay = 50;
+        SchemaGroup parallel = generate(3, false, TABLES);
+
+        for (int i = 0; i < TABLES.length; i++) {
+            assertEquals(new TreeSet<>(Arrays.asList("ID", "C" + i)),
+                getColumnNames(parallel, TABLES[i]));
+            assertEquals(getColumnNames(serial, TABLES[i]),
+                getColumnNames(parallel, TABLES[i]));
+            assertNotNull(parallel.findTable(TABLES[i]).getPrimaryKey());
+        }
+        // each table is read once, on more than one connection
+        assertEquals(_dict.reads.toString(), TABLES.length, _dict.reads.size());
+        assertTrue(_dict.threads.toString(), _dict.threads.size() > 1);
+        assertEquals(0, _ds.open.get());
+    }
+
+    @Test
+    public void testFailureWaitsForRunningReads()
+        throws SQLException {
+        _dict.fail = "T0";
+        _dict.delay = 50;
+        _dict.stall = "T1";
+        try {
+            generate(3, false, TABLES);
+            fail();
+        } catch (SQLException se) {
+            assertEquals("failed T0", se.getMessage());
+        }
+        // the stalled read ended before the connections were closed
+        assertEquals(0, _dict.active.get());
+        assertTrue(_dict.reads.toString(), _dict.reads.contains("T1"));
+        assertEquals(0, _ds.open.get());
+    }
+
+    @Test
+    public void testBulkReflectionOfDefaultSchema()
+        throws SQLException {
+        execute("CREATE SCHEMA OTHER");
+        execute("CREATE TABLE OTHER.T0 (ID INTEGER, SECRET VARCHAR(10))");
+        _conf.setSchema("PUBLIC");
+
+        SchemaGroup group = generate(3, true, "T0", "T1");
+        // only the columns of the default schema, read with one query
+        assertEquals(new TreeSet<>(Arrays.asList("ID", "C0")),
+            getColumnNames(group, "T0"));
+        assertEquals(new TreeSet<>(Arrays.asList("ID", "C1")),
+            getColumnNames(group, "T1"));
+        assertEquals(Collections.singletonList("PUBLIC.*"), _dict.reads);
+        assertEquals(0, _ds.open.get());
+    }
+
+    @Test
+    public void testBulkReflectionOfNamedSchema()
+        throws SQLException {
+        execute("CREATE SCHEMA OTHER");
+        execute("CREATE TABLE OTHER.T0 (ID INTEGER, SECRET VARCHAR(10))");
+
+        SchemaGroup group = generate(1, true, "OTHER.T0", "T0");
+        assertEquals(new TreeSet<>(Arrays.asList("ID", "SECRET")),
+            getColumnNames(group, "OTHER.T0"));
+        // without a default schema, unqualified tables are read one by one
+        assertEquals(Arrays.asList("OTHER.*", "T0"), _dict.reads);
+    }
+
+    @Test
+    public void testBulkReflectionFailure()
+        throws SQLException {
+        _conf.setSchema("PUBLIC");
+        _dict.fail = "*";
+        try {
+            generate(3, true, TABLES);
+            fail();
+        } catch (SQLException se) {
+            assertEquals("failed *", se.getMessage());
+        }
+        assertEquals(0, _ds.open.get());
+    }
+
+    /**
+     * Data source opening a new connection each time, counting those that
+     * are still open.
+     */
+    private static class CountingDataSource implements DataSource {
+
+        final AtomicInteger open = new AtomicInteger();
+        private final String _url;
+
+        CountingDataSource(String url) {
+            _url = url;
+        }
+
+        @Override
+        public Connection getConnection()
+            throws SQLException {
+            final Connection conn = DriverManager.getConnection(_url, "SA",
+                "");
+            open.incrementAndGet();
+            InvocationHandler handler = new InvocationHandler() {
+                private boolean _closed = false;
+
+                @Override
+                public Object invoke(Object proxy, Method method,
+                    Object[] args)
+                    throws Throwable {
+                    if (method.getName().equals("close") && !_closed) {
+                        _closed = true;
+                        open.decrementAndGet();
+                    }
+                    try {
+                        return method.invoke(conn, args);
+                    } catch (InvocationTargetException ite) {
+                        throw ite.getCause();
+                    }
+                }
+            };
+            return (Connection) Proxy.newProxyInstance(
+                SchemaGeneratorTest.class.getClassLoader(),
+                new Class<?>[]{ Connection.class }, handler);
+        }
+
+        @Override
+        public Connection getConnection(String user, String pass)
+            throws SQLException {
+            return getConnection();
+        }
+
+        @Override
+        public PrintWriter getLogWriter() {
+            return null;
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) {
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) {
+        }
+
+        @Override
+        public int getLoginTimeout() {
+            return 0;
+        }
+
+        @Override
+        public Logger getParentLogger()
+            throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> type)
+            throws SQLException {
+            throw new SQLException(type.getName());
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> type) {
+            return false;
+        }
+    }
+
+    /**
+     * Dictionary recording its column reads, and delaying, stalling or
+     * failing them on request.
+     */
+    public static class RecordingDictionary extends HSQLDictionary {
+
+        final List<String> reads = Collections.synchronizedList
+            (new ArrayList<String>());
+        final Set<Thread> threads = Collections.synchronizedSet
+            (new HashSet<Thread>());
+        final AtomicInteger active = new AtomicInteger();
+        volatile long delay;
+        volatile String fail;
+        volatile String stall;
+
+        @Override
+        public Column[] getColumns(DatabaseMetaData meta,
+            DBIdentifier catalog, DBIdentifier schemaName,
+            DBIdentifier tableName, DBIdentifier columnName, Connection conn)
+            throws SQLException {
+            String table = DBIdentifier.isNull(tableName) ? "*"
+                : tableName.getName();
+            reads.add(DBIdentifier.isNull(schemaName) ? table
+                : schemaName.getName() + "." + table);
+            threads.add(Thread.currentThread());
+            active.incrementAndGet();
+            try {
+                sleep(delay);
+                if (table.equals(fail))
+                    throw new SQLException("failed " + table);
+                // like a metadata call that does not respond to interrupts
+                if (table.equals(stall))
+                    sleep(500);
+                return super.getColumns(meta, catalog, schemaName, tableName,
+                    columnName, conn);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+        private static void sleep(long millis) {
+            long end = System.currentTimeMillis() + millis;
+            boolean interrupted = false;
+            for (long left = millis; left > 0;
+                left = end - System.currentTimeMillis()) {
+                try {
+                    Thread.sleep(left);
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+}
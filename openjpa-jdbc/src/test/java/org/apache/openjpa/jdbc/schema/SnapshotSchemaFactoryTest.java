@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.schema;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.conf.JDBCConfigurationImpl;
+import org.apache.openjpa.jdbc.identifier.DBIdentifier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Validation of a schema snapshot against an in-memory database that
+ * changed after the snapshot was taken.
+ */
+public class SnapshotSchemaFactoryTest {
+
+    private static int _dbs;
+
+    @Rule
+    public TemporaryFolder _dir = new TemporaryFolder();
+
+    private String _url;
+    private JDBCConfiguration _conf;
+    private Connection _conn;
+    private File _file;
+
+    @Before
+    public void setUp()
+        throws Exception {
+        _url = "jdbc:hsqldb:mem:snapshot" + _dbs++;
+        _conn = DriverManager.getConnection(_url, "SA", "");
+        execute("CREATE TABLE FP (V VARCHAR(40))");
+        execute("INSERT INTO FP (V) VALUES ('3:1')");
+        execute("CREATE TABLE PARENT (ID INTEGER PRIMARY KEY, "
+            + "NAME VARCHAR(10))");
+        execute("CREATE TABLE CHILD (ID INTEGER PRIMARY KEY, "
+            + "PARENT_ID INTEGER, CONSTRAINT CHILD_FK FOREIGN KEY "
+            + "(PARENT_ID) REFERENCES PARENT (ID))");
+        execute("CREATE TABLE OTHER (ID INTEGER PRIMARY KEY)");
+        _file = new File(_dir.getRoot(), "schema.snapshot");
+    }
+
+    @After
+    public void tearDown()
+        throws SQLException {
+        execute("SHUTDOWN");
+        _conn.close();
+    }
+
+    private void execute(String sql)
+        throws SQLException {
+        try (Statement stmnt = _conn.createStatement()) {
+            stmnt.execute(sql);
+        }
+    }
+
+    private SnapshotSchemaFactory newFactory(String fingerprintSQL,
+        String schema) {
+        _conf = new JDBCConfigurationImpl();
+        _conf.setConnectionDriverName("org.hsqldb.jdbcDriver");
+        _conf.setConnectionURL(_url);
+        _conf.setConnectionUserName("SA");
+        _conf.setConnectionPassword("");
+        _conf.setDBDictionary("hsql");
+        _conf.setSchema(schema);
+
+        SnapshotSchemaFactory factory = new SnapshotSchemaFactory();
+        factory.setConfiguration(_conf);
+        factory.setFile(_file.getPath());
+        factory.setFingerprintSQL(fingerprintSQL);
+        factory.endConfiguration();
+        return factory;
+    }
+
+    /**
+     * Store a snapshot of the test tables as read from the database with
+     * the configuration of the last factory.
+     */
+    private void storeSnapshot(SnapshotSchemaFactory factory)
+        throws SQLException {
+        storeSnapshot(factory, null);
+    }
+
+    /**
+     * Store a snapshot of the test tables as read from the database,
+     * placing them in the given schema if any, as mapping metadata naming
+     * the schema would.
+     */
+    private void storeSnapshot(SnapshotSchemaFactory factory, String schema)
+        throws SQLException {
+        SchemaGenerator gen = new SchemaGenerator(_conf);
+        gen.generateSchemas(new DBIdentifier[]{
+            DBIdentifier.newTable("PARENT"), DBIdentifier.newTable("CHILD"),
+            DBIdentifier.newTable("OTHER") });
+        SchemaGroup group = gen.getSchemaGroup();
+        if (schema != null) {
+            SchemaGroup named = new SchemaGroup();
+            Schema owner = named.addSchema(schema);
+            for (String name : new String[]{ "PARENT", "CHILD", "OTHER" })
+                owner.importTable(group.findTable(name));
+            group = named;
+        }
+        factory.storeSchema(group);
+        assertTrue(_file.isFile());
+    }
+
+    private static Table findTable(SchemaGroup group, String name) {
+        return group.findTable(name);
+    }
+
+    @Test
+    public void testSnapshotTrustedWhileFingerprintMatches()
+        throws SQLException {
+        storeSnapshot(newFactory("SELECT V FROM FP", null));
+        // a change that the fingerprint does not reflect goes unnoticed
+        execute("ALTER TABLE PARENT ADD COLUMN EXTRA INTEGER");
+
+        SchemaGroup snapshot = newFactory("SELECT V FROM FP", null).
+            getSnapshot();
+        assertNotNull(snapshot);
+        Table parent = findTable(snapshot, "PARENT");
+        assertNotNull(parent);
+        assertNull(parent.getColumn(DBIdentifier.newColumn("EXTRA")));
+        assertNotNull(findTable(snapshot, "CHILD"));
+        assertNotNull(findTable(snapshot, "OTHER"));
+    }
+
+    @Test
+    public void testStaleTablesDiscarded()
+        throws SQLException {
+        storeSnapshot(newFactory("SELECT V FROM FP", null));
+        execute("ALTER TABLE PARENT ADD COLUMN EXTRA INTEGER");
+        execute("UPDATE FP SET V = '3:2'");
+
+        SchemaGroup snapshot = newFactory("SELECT V FROM FP", null).
+            getSnapshot();
+        assertNotNull(snapshot);
+        assertNull(findTable(snapshot, "PARENT"));
+        // foreign keys to a discarded table are no longer valid
+        assertNull(findTable(snapshot, "CHILD"));
+        assertNotNull(findTable(snapshot, "OTHER"));
+
+        // tables not in the snapshot are read from the database
+        SnapshotSchemaFactory factory = newFactory("SELECT V FROM FP", null);
+        Table parent = factory.findTable("PARENT");
+        assertNotNull(parent);
+        assertNotNull(parent.getColumn(DBIdentifier.newColumn("EXTRA")));
+    }
+
+    @Test
+    public void testDroppedTablesDiscarded()
+        throws SQLException {
+        storeSnapshot(newFactory(null, null));
+        execute("DROP TABLE OTHER");
+
+        SchemaGroup snapshot = newFactory(null, null).getSnapshot();
+        assertNull(findTable(snapshot, "OTHER"));
+        assertNotNull(findTable(snapshot, "PARENT"));
+        assertNotNull(findTable(snapshot, "CHILD"));
+    }
+
+    @Test
+    public void testEmptyFingerprintForcesCheck()
+        throws SQLException {
+        String[] values = { "0:20261019", "3:", null };
+        for (String value : values) {
+            _file.delete();
+            execute("UPDATE FP SET V = "
+                + ((value == null) ? "NULL" : "'" + value + "'"));
+            storeSnapshot(newFactory("SELECT V FROM FP", null));
+            execute("ALTER TABLE OTHER ADD COLUMN EXTRA INTEGER");
+
+            SchemaGroup snapshot = newFactory("SELECT V FROM FP", null).
+                getSnapshot();
+            assertNull(value, findTable(snapshot, "OTHER"));
+            assertNotNull(value, findTable(snapshot, "PARENT"));
+            execute("ALTER TABLE OTHER DROP COLUMN EXTRA");
+        }
+    }
+
+    @Test
+    public void testOwnersInDatabaseCase()
+        throws SQLException {
+        // the schema is named in lower case, but stored in upper case
+        String sql = "SELECT COUNT(*) || ':1' FROM INFORMATION_SCHEMA.TABLES "
+            + "WHERE TABLE_SCHEMA IN ({0})";
+        storeSnapshot(newFactory(sql, null), "public");
+        execute("ALTER TABLE PARENT ADD COLUMN EXTRA INTEGER");
+
+        // the table count is unchanged, so the fingerprint matches
+        SchemaGroup snapshot = newFactory(sql, null).getSnapshot();
+        Table parent = snapshot.findTable("public.PARENT");
+        assertNotNull(parent);
+        assertNull(parent.getColumn(DBIdentifier.newColumn("EXTRA")));
+
+        // a new table changes it
+        execute("CREATE TABLE ADDED (ID INTEGER)");
+        snapshot = newFactory(sql, null).getSnapshot();
+        assertNull(snapshot.findTable("public.PARENT"));
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.openjpa.jdbc.conf.JDBCConfigurationImpl;
+import org.apache.openjpa.jdbc.identifier.DBIdentifier;
+import org.apache.openjpa.jdbc.schema.Column;
+import org.apache.openjpa.jdbc.schema.Table;
+import org.apache.openjpa.lib.jdbc.ReportingSQLException;
+import org.apache.openjpa.meta.JavaTypes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Loading rows in bulk with multi-row inserts into an in-memory database.
+ */
+public class BulkLoadTest {
+
+    private static int _dbs;
+
+    private final List<String> _prepared = new ArrayList<>();
+    private DBDictionary _dict;
+    private Connection _conn;
+    private Connection _recording;
+    private Table _table;
+    private Column _id;
+    private Column _name;
+
+    @Before
+    public void setUp()
+        throws SQLException {
+        _dict = new HSQLDictionary();
+        _dict.setConfiguration(new JDBCConfigurationImpl(false, false));
+        _dict.endConfiguration();
+        _dict.multiRowInsertLimit = 4;
+
+        _conn = DriverManager.getConnection("jdbc:hsqldb:mem:bulkload"
+            + _dbs++, "SA", "");
+        execute("CREATE TABLE ITEM (ID INTEGER PRIMARY KEY, "
+            + "NAME VARCHAR(20))");
+        _recording = recording(_conn, _prepared);
+
+        _table = new Table(DBIdentifier.newTable("ITEM"), null);
+        _id = _table.addColumn(DBIdentifier.newColumn("ID"));
+        _id.setType(Types.INTEGER);
+        _id.setJavaType(JavaTypes.INT);
+        _name = _table.addColumn(DBIdentifier.newColumn("NAME"));
+        _name.setType(Types.VARCHAR);
+        _name.setJavaType(JavaTypes.STRING);
+    }
+
+    @After
+    public void tearDown()
+        throws SQLException {
+        execute("SHUTDOWN");
+        _conn.close();
+    }
+
+    private void execute(String sql)
+        throws SQLException {
+        try (Statement stmnt = _conn.createStatement()) {
+            stmnt.execute(sql);
+        }
+    }
+
+    /**
+     * Return a connection recording the SQL of the statements it prepares.
+     */
+    static Connection recording(final Connection conn,
+        final List<String> prepared) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getName().equals("prepareStatement"))
+                prepared.add((String) args[0]);
+            try {
+                return method.invoke(conn, args);
+            } catch (InvocationTargetException ite) {
+                throw ite.getCause();
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+            BulkLoadTest.class.getClassLoader(),
+            new Class<?>[]{ Connection.class }, handler);
+    }
+
+    /**
+     * Return insert rows for the given ids.
+     */
+    private List<RowImpl> rows(int low, int high)
+        throws SQLException {
+        List<RowImpl> rows = new ArrayList<>();
+        for (int i = low; i < high; i++) {
+            RowImpl row = new RowImpl(_table, Row.ACTION_INSERT);
+            row.setInt(_id, i);
+            if (i % 3 == 0)
+                row.setNull(_name);
+            else
+                row.setString(_name, "name" + i);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private List<String> loaded()
+        throws SQLException {
+        List<String> loaded = new ArrayList<>();
+        try (Statement stmnt = _conn.createStatement();
+            ResultSet rs = stmnt.executeQuery(
+                "SELECT ID, NAME FROM ITEM ORDER BY ID")) {
+            while (rs.next())
+                loaded.add(rs.getInt(1) + "=" + rs.getString(2));
+        }
+        return loaded;
+    }
+
+    private static List<String> expected(int low, int high) {
+        List<String> expected = new ArrayList<>();
+        for (int i = low; i < high; i++)
+            expected.add(i + "=" + ((i % 3 == 0) ? null : "name" + i));
+        return expected;
+    }
+
+    @Test
+    public void testRowsInsertedInChunks()
+        throws SQLException {
+        assertTrue(_dict.bulkLoad(_recording, rows(0, 10), null));
+        assertEquals(expected(0, 10), loaded());
+
+        String sql = "INSERT INTO ITEM (ID, NAME) VALUES (?, ?)";
+        String chunk = sql + ", (?, ?), (?, ?), (?, ?)";
+        assertEquals(3, _prepared.size());
+        assertEquals(chunk, _prepared.get(0));
+        assertSame(_prepared.get(0), _prepared.get(1));
+        assertEquals(sql + ", (?, ?)", _prepared.get(2));
+    }
+
+    @Test
+    public void testChunksLimitedByParameterCount()
+        throws SQLException {
+        // at most Short.MAX_VALUE parameters in each statement
+        _dict.multiRowInsertLimit = Short.MAX_VALUE;
+        int size = Short.MAX_VALUE / 2 + 10;
+        assertTrue(_dict.bulkLoad(_recording, rows(0, size), null));
+        assertEquals(2, _prepared.size());
+        assertEquals(size, loaded().size());
+    }
+
+    @Test
+    public void testNotLoadedWithoutMultiRowInserts()
+        throws SQLException {
+        _dict.multiRowInsertLimit = 0;
+        assertFalse(_dict.bulkLoad(_recording, rows(0, 10), null));
+        assertTrue(_prepared.isEmpty());
+        assertTrue(loaded().isEmpty());
+    }
+
+    @Test
+    public void testOnlyInsertsLoaded()
+        throws SQLException {
+        List<RowImpl> rows = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            RowImpl row = new RowImpl(_table, Row.ACTION_DELETE);
+            row.whereInt(_id, i);
+            rows.add(row);
+        }
+        assertFalse(_dict.bulkLoad(_recording, rows, null));
+        assertTrue(_prepared.isEmpty());
+    }
+
+    @Test
+    public void testFailureReportsFirstRowOfStatement()
+        throws SQLException {
+        execute("INSERT INTO ITEM (ID, NAME) VALUES (6, 'existing')");
+        try {
+            _dict.bulkLoad(_recording, rows(0, 10), null);
+            fail();
+        } catch (ReportingSQLException rse) {
+            // the second statement inserts rows 4 to 7
+            assertEquals(4, rse.getIndexOfFirstFailedObject());
+            assertEquals(_prepared.get(1), rse.getSQL());
+            assertNotNull(rse.getNextException());
+        }
+        List<String> expected = expected(0, 4);
+        expected.add("6=existing");
+        assertEquals(expected, loaded());
+    }
+}
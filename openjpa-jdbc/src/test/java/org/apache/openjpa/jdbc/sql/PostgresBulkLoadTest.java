@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.sql;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.openjpa.jdbc.conf.JDBCConfigurationImpl;
+import org.apache.openjpa.jdbc.identifier.DBIdentifier;
+import org.apache.openjpa.jdbc.schema.Column;
+import org.apache.openjpa.jdbc.schema.Table;
+import org.apache.openjpa.lib.jdbc.DelegatingConnection;
+import org.apache.openjpa.lib.jdbc.ReportingSQLException;
+import org.apache.openjpa.meta.JavaTypes;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Loading rows in bulk through the copy API of a mocked PostgreSQL driver.
+ */
+public class PostgresBulkLoadTest {
+
+    private final List<String> _copied = new ArrayList<>();
+    private PostgresDictionary _dict;
+    private CopyManager _copy;
+    private Connection _conn;
+    private Table _table;
+    private Column _id;
+    private Column _name;
+    private Column _flag;
+    private Column _data;
+    private long _count = -1;
+
+    @Before
+    public void setUp()
+        throws Exception {
+        _dict = new PostgresDictionary();
+        _dict.setConfiguration(new JDBCConfigurationImpl(false, false));
+        _dict.endConfiguration();
+
+        _copy = Mockito.mock(CopyManager.class);
+        when(_copy.copyIn(anyString(), any(InputStream.class))).thenAnswer(
+            new Answer<Long>() {
+                @Override
+                public Long answer(InvocationOnMock invocation)
+                    throws Exception {
+                    Object[] args = invocation.getArguments();
+                    _copied.add((String) args[0]);
+                    InputStream in = (InputStream) args[1];
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    for (int b; (b = in.read()) != -1;)
+                        out.write(b);
+                    String data = new String(out.toByteArray(),
+                        StandardCharsets.UTF_8);
+                    _copied.add(data);
+                    if (_count >= 0)
+                        return _count;
+                    return (long) data.split("\n").length;
+                }
+            });
+        _conn = Mockito.mock(Connection.class, Mockito.withSettings().
+            extraInterfaces(PGConnection.class));
+        when(((PGConnection) _conn).getCopyAPI()).thenReturn(_copy);
+
+        _table = new Table(DBIdentifier.newTable("item"), null);
+        _id = addColumn("id", Types.INTEGER, JavaTypes.INT);
+        _name = addColumn("name", Types.VARCHAR, JavaTypes.STRING);
+        _flag = addColumn("flag", Types.BOOLEAN, JavaTypes.BOOLEAN);
+        _data = addColumn("data", Types.BINARY, JavaTypes.ARRAY);
+    }
+
+    private Column addColumn(String name, int type, int javaType) {
+        Column col = _table.addColumn(DBIdentifier.newColumn(name));
+        col.setType(type);
+        col.setJavaType(javaType);
+        return col;
+    }
+
+    private List<RowImpl> rows(String... names)
+        throws SQLException {
+        List<RowImpl> rows = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            RowImpl row = new RowImpl(_table, Row.ACTION_INSERT);
+            row.setInt(_id, i);
+            if (names[i] == null)
+                row.setNull(_name);
+            else
+                row.setString(_name, names[i]);
+            row.setBoolean(_flag, i % 2 == 0);
+            row.setBytes(_data, new byte[]{ (byte) i, (byte) 0xab });
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Test
+    public void testRowsCopiedAsText()
+        throws SQLException {
+        assertTrue(_dict.bulkLoad(_conn, rows("plain", null,
+            "tab\tnewline\nreturn\rback\\slash", "été"), null));
+        assertEquals(2, _copied.size());
+        assertEquals("COPY item (id, name, flag, data) FROM STDIN",
+            _copied.get(0));
+        assertEquals("0\tplain\tt\t\\\\x00ab\n"
+            + "1\t\\N\tf\t\\\\x01ab\n"
+            + "2\ttab\\tnewline\\nreturn\\rback\\\\slash\tt\t\\\\x02ab\n"
+            + "3\tété\tf\t\\\\x03ab\n", _copied.get(1));
+        verify(_conn, never()).prepareStatement(anyString());
+    }
+
+    @Test
+    public void testCopyThroughWrappers()
+        throws SQLException {
+        Connection wrapper = Mockito.mock(Connection.class);
+        when(wrapper.isWrapperFor(PGConnection.class)).thenReturn(true);
+        when(wrapper.unwrap(PGConnection.class)).thenReturn((PGConnection)
+            _conn);
+        assertTrue(_dict.bulkLoad(new DelegatingConnection(wrapper),
+            rows("a", "b"), null));
+        assertEquals(2, _copied.size());
+    }
+
+    @Test
+    public void testFallbackWithoutDriverConnection()
+        throws SQLException {
+        Connection conn = Mockito.mock(Connection.class);
+        PreparedStatement stmnt = Mockito.mock(PreparedStatement.class);
+        when(conn.prepareStatement(anyString())).thenReturn(stmnt);
+        when(stmnt.executeUpdate()).thenReturn(3);
+
+        assertTrue(_dict.bulkLoad(conn, rows("a", "b", "c"), null));
+        assertTrue(_copied.isEmpty());
+        verify(conn).prepareStatement("INSERT INTO item (id, name, flag, "
+            + "data) VALUES (?, ?, ?, ?), (?, ?, ?, ?), (?, ?, ?, ?)");
+        verify(stmnt).setInt(9, 2);
+    }
+
+    @Test
+    public void testFallbackForValuesWithoutTextForm()
+        throws SQLException {
+        // booleans stored in other column types are converted on binding
+        _flag.setType(Types.INTEGER);
+        PreparedStatement stmnt = Mockito.mock(PreparedStatement.class);
+        when(_conn.prepareStatement(anyString())).thenReturn(stmnt);
+        when(stmnt.executeUpdate()).thenReturn(2);
+
+        assertTrue(_dict.bulkLoad(_conn, rows("a", "b"), null));
+        assertTrue(_copied.isEmpty());
+        verify(_conn).prepareStatement(anyString());
+    }
+
+    @Test
+    public void testFailureReportsFirstRow()
+        throws Exception {
+        SQLException failure = new SQLException("duplicate key", "23505");
+        Mockito.doThrow(failure).when(_copy).copyIn(anyString(),
+            any(InputStream.class));
+        try {
+            _dict.bulkLoad(_conn, rows("a", "b"), null);
+            fail();
+        } catch (ReportingSQLException rse) {
+            assertEquals(0, rse.getIndexOfFirstFailedObject());
+            assertEquals("23505", rse.getSQLState());
+            assertSame(failure, rse.getNextException());
+            assertEquals("COPY item (id, name, flag, data) FROM STDIN",
+                rse.getSQL());
+        }
+    }
+
+    @Test
+    public void testCountMismatchFails()
+        throws SQLException {
+        _count = 1;
+        try {
+            _dict.bulkLoad(_conn, rows("a", "b"), null);
+            fail();
+        } catch (ReportingSQLException rse) {
+            assertEquals(0, rse.getIndexOfFirstFailedObject());
+        }
+    }
+}
@@ -31,8 +31,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -291,6 +293,31 @@ abstract class AbstractCommand implements JESTCommand {
         return sms;
     }
 
+    /**
+     * Gets the managed instances among the given objects while they are iterated.
+     */
+    protected Iterator<OpenJPAStateManager> toStateManager(final Iterator<?> objects) {
+        return new Iterator<OpenJPAStateManager>() {
+            private OpenJPAStateManager _next;
+
+            @Override
+            public boolean hasNext() {
+                while (_next == null && objects.hasNext())
+                    _next = toStateManager(objects.next());
+                return _next != null;
+            }
+
+            @Override
+            public OpenJPAStateManager next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                OpenJPAStateManager sm = _next;
+                _next = null;
+                return sm;
+            }
+        };
+    }
+
     protected void pushFetchPlan(Object target) {
         if (!hasQualifier(QUALIFIER_PLAN))
             return;
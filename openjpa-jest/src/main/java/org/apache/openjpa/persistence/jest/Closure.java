@@ -40,6 +40,7 @@ import org.apache.openjpa.meta.JavaTypes;
  */
 public class Closure implements Iterable<OpenJPAStateManager> {
     private Set<OpenJPAStateManager> _visited = new LinkedHashSet<>();
+    private Set<String> _encoded;
 
     public Closure(OpenJPAStateManager root) {
         this(Collections.singleton(root));
@@ -51,9 +52,20 @@ public class Closure implements Iterable<OpenJPAStateManager> {
         }
     }
 
+    /**
+     * Computes the closure of the given root without the instances whose {@link #ior identifier} is in the given
+     * set, nor the instances only reachable through them. Those instances have been encoded already.
+     */
+    Closure(OpenJPAStateManager root, Set<String> encoded) {
+        _encoded = encoded;
+        visit(root);
+    }
+
     private void visit(OpenJPAStateManager sm) {
         if (sm == null)
             return;
+        if (_encoded != null && _encoded.contains(ior(sm)))
+            return;
         boolean isVisited = !_visited.add(sm);
         if (isVisited) return;
         BitSet loaded = sm.getLoaded();
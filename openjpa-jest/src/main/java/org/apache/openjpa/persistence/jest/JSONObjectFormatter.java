@@ -29,10 +29,12 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -83,10 +85,39 @@ public class JSONObjectFormatter implements ObjectFormatter<JSON> {
     public JSON writeOut(Collection<OpenJPAStateManager> sms, Metamodel model, String title, String desc,
         String uri, OutputStream out) throws IOException {
         JSON json = encode(sms,model);
-        out.write(json.toString().getBytes());
+        out.write(json.toString().getBytes(StandardCharsets.UTF_8));
         return json;
     }
 
+    /**
+     * Writes the same array as {@link #writeOut(Collection, Metamodel, String, String, String, OutputStream)},
+     * but encodes and writes one member at a time.
+     */
+    @Override
+    public void writeOut(Iterator<OpenJPAStateManager> sms, Metamodel model, String title, String desc,
+        String uri, OutputStream out) throws IOException {
+        StringBuilder tab = new StringBuilder();
+        for (int i = 0; i < 4; i++)
+            tab.append(JSON.SPACE);
+        boolean first = true;
+        StringBuilder buf = new StringBuilder().append(JSON.ARRAY_START);
+        while (sms.hasNext()) {
+            if (!first)
+                buf.append(JSON.MEMBER_SEPARATOR);
+            first = false;
+            buf.append(JSON.NEWLINE).append(tab);
+            JSON json = encodeManagedInstance(sms.next(), new HashSet<OpenJPAStateManager>(), 0, false, model);
+            if (json == null)
+                buf.append((Object) null);
+            else
+                buf.append(json.asString(1));
+            out.write(buf.toString().getBytes(StandardCharsets.UTF_8));
+            buf.setLength(0);
+        }
+        buf.append(JSON.NEWLINE).append(JSON.ARRAY_END);
+        out.write(buf.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
     @Override
     public JSON encode(Collection<OpenJPAStateManager> sms, Metamodel model) {
         return encodeManagedInstances(sms, model);
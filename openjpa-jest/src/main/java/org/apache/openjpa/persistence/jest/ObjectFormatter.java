@@ -22,7 +22,10 @@ package org.apache.openjpa.persistence.jest;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 
 import javax.persistence.metamodel.Metamodel;
 import javax.servlet.http.HttpServletResponse;
@@ -94,6 +97,25 @@ public interface ObjectFormatter<T> {
     T writeOut(Collection<OpenJPAStateManager> objs, Metamodel model,
         String title, String desc, String uri, OutputStream out) throws IOException;
 
+    /**
+     * Encodes the {@link Closure persistent closure} of the managed instances returned by the given iterator,
+     * then write it into the given output stream. An implementation should write each instance as soon as it is
+     * encoded rather than building the complete representation in memory, so that the iterator can be backed by
+     * a streaming query result. By default, the instances are collected and formatted as a collection.
+     *
+     * @param objs the objects to be formatted, iterated once.
+     * @param model a meta-model of managed types, provided for easier introspection if necessary
+     * @param out the output stream
+     * @throws IOException
+     */
+    default void writeOut(Iterator<OpenJPAStateManager> objs, Metamodel model,
+        String title, String desc, String uri, OutputStream out) throws IOException {
+        List<OpenJPAStateManager> sms = new ArrayList<>();
+        while (objs.hasNext())
+            sms.add(objs.next());
+        writeOut(sms, model, title, desc, uri, out);
+    }
+
     /**
      * Encodes the given domain model, then write it into the given output stream.
      *
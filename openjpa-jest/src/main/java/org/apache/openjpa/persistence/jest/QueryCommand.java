@@ -29,10 +29,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
-import javax.persistence.Query;
-
 import org.apache.openjpa.persistence.ArgumentException;
-import org.apache.openjpa.persistence.OpenJPAEntityManager;;
+import org.apache.openjpa.persistence.OpenJPAEntityManager;
+import org.apache.openjpa.persistence.OpenJPAQuery;
 
 /**
  * Executes query.
@@ -46,6 +45,7 @@ class QueryCommand extends AbstractCommand {
     public static final String QUALIFIER_FIRSTRESULT = "first";
     public static final String QUALIFIER_NAMED       = "named";
     public static final String QUALIFIER_SINGLE      = "single";
+    private static final int FETCH_BATCH_SIZE        = 100;
     private static final List<String> _mandatoryArgs   = Arrays.asList(ARG_QUERY);
     private static final List<String> _validQualifiers = Arrays.asList(
         QUALIFIER_FORMAT, QUALIFIER_PLAN, QUALIFIER_NAMED, QUALIFIER_SINGLE,
@@ -76,7 +76,8 @@ class QueryCommand extends AbstractCommand {
         String spec = getMandatoryArgument(ARG_QUERY);
         OpenJPAEntityManager em = ctx.getPersistenceContext();
         try {
-            Query query = isBooleanQualifier(QUALIFIER_NAMED) ? em.createNamedQuery(spec) : em.createQuery(spec);
+            OpenJPAQuery<?> query = isBooleanQualifier(QUALIFIER_NAMED)
+                ? em.createNamedQuery(spec) : em.createQuery(spec);
             if (hasQualifier(QUALIFIER_FIRSTRESULT))
                 query.setFirstResult(Integer.parseInt(getQualifier(QUALIFIER_FIRSTRESULT)));
             if (hasQualifier(QUALIFIER_MAXRESULT))
@@ -87,12 +88,26 @@ class QueryCommand extends AbstractCommand {
             for (Map.Entry<String, String> entry : args.entrySet()) {
                 query.setParameter(entry.getKey(), entry.getValue());
             }
-            getObjectFormatter()
-                .writeOut(toStateManager(isBooleanQualifier(QUALIFIER_SINGLE)
-                 ? Collections.singleton(query.getSingleResult()) : query.getResultList()),
-                 em.getMetamodel(),
-                 _loc.get("query-title").toString(), _loc.get("query-desc").toString(), ctx.getRequestURI(),
-                 ctx.getResponse().getOutputStream());
+            if (isBooleanQualifier(QUALIFIER_SINGLE)) {
+                getObjectFormatter()
+                    .writeOut(toStateManager(Collections.singleton(query.getSingleResult())),
+                     em.getMetamodel(),
+                     _loc.get("query-title").toString(), _loc.get("query-desc").toString(), ctx.getRequestURI(),
+                     ctx.getResponse().getOutputStream());
+            } else {
+                // a large result is fetched in batches rather than at once, and each instance is written
+                // as soon as it is iterated
+                query.getFetchPlan().setFetchBatchSize(FETCH_BATCH_SIZE);
+                try {
+                    getObjectFormatter()
+                        .writeOut(toStateManager(query.getResultList().iterator()),
+                         em.getMetamodel(),
+                         _loc.get("query-title").toString(), _loc.get("query-desc").toString(),
+                         ctx.getRequestURI(), ctx.getResponse().getOutputStream());
+                } finally {
+                    query.closeAll();
+                }
+            }
         } catch (ArgumentException e1) {
             throw new ProcessingException(ctx, e1, _loc.get("query-execution-error", spec), HTTP_BAD_REQUEST);
         } catch (Exception e) {
@@ -48,12 +48,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -68,6 +73,8 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
@@ -107,22 +114,29 @@ public class XMLFormatter implements ObjectFormatter<Document> {
     static {
         try {
             _builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            _transformer = TransformerFactory.newInstance().newTransformer();
+            _transformer = newTransformer();
             SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
             InputStream xsd = XMLFormatter.class.getResourceAsStream(JEST_INSTANCE_XSD);
             _xsd = factory.newSchema(new StreamSource(xsd));
-
-            _transformer.setOutputProperty(OutputKeys.METHOD,     "xml");
-            _transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
-            _transformer.setOutputProperty(OutputKeys.INDENT,     "yes");
-            _transformer.setOutputProperty(OutputKeys.STANDALONE, "no");
-            _transformer.setOutputProperty(OutputKeys.ENCODING,   "UTF-8");
-            _transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Creates a transformer writing indented documents in UTF-8.
+     */
+    private static Transformer newTransformer() throws TransformerConfigurationException {
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.METHOD,     "xml");
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
+        transformer.setOutputProperty(OutputKeys.INDENT,     "yes");
+        transformer.setOutputProperty(OutputKeys.STANDALONE, "no");
+        transformer.setOutputProperty(OutputKeys.ENCODING,   "UTF-8");
+        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+        return transformer;
+    }
+
     @Override
     public String getMimeType() {
         return MIME_TYPE_XML;
@@ -200,6 +214,58 @@ public class XMLFormatter implements ObjectFormatter<Document> {
         return doc;
     }
 
+    /**
+     * Writes the same document as {@link #writeOut(Collection, Metamodel, String, String, String, OutputStream)},
+     * but encodes and writes the closure of one root instance at a time. An instance reachable from more than one
+     * root is written once, with the closure of the root it is first reached from.
+     */
+    @Override
+    public void writeOut(Iterator<OpenJPAStateManager> sms, Metamodel model, String title, String desc,
+        String uri, OutputStream out) throws IOException {
+        String end = "</" + ROOT_ELEMENT_INSTANCE;
+        try {
+            Transformer transformer = newTransformer();
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+
+            // the document without instances, written up to the end tag of its root
+            Document doc = decorate(newDocument(ROOT_ELEMENT_INSTANCE).getOwnerDocument(), title, desc, uri);
+            String shell = toString(doc, transformer);
+            int tail = shell.lastIndexOf(end);
+            writer.write(shell, 0, tail);
+            writer.flush();
+
+            // identifiers of the instances written so far
+            Set<String> encoded = new HashSet<>();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            while (sms.hasNext()) {
+                Element parent = newDocument(ROOT_ELEMENT_INSTANCE);
+                for (OpenJPAStateManager sm : new Closure(sms.next(), encoded)) {
+                    encoded.add(ior(sm));
+                    encodeManagedInstance(sm, parent, false, model);
+                }
+                if (!parent.hasChildNodes())
+                    continue;
+
+                // the instances as indented within the root, without the lines of its tags
+                String closure = toString(parent.getOwnerDocument(), transformer);
+                int start = closure.indexOf('\n') + 1;
+                writer.write(closure, start, closure.lastIndexOf(end) - start);
+                writer.flush();
+            }
+
+            writer.write(shell, tail, shell.length() - tail);
+            writer.flush();
+        } catch (TransformerException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String toString(Document doc, Transformer transformer) throws TransformerException {
+        StringWriter writer = new StringWriter();
+        transformer.transform(new DOMSource(doc), new StreamResult(writer));
+        return writer.toString();
+    }
+
     Document decorate(Document doc, String title, String desc, String uri) {
         Element root = doc.getDocumentElement();
         Element instance = (Element)root.getElementsByTagName(ELEMENT_INSTANCE).item(0);
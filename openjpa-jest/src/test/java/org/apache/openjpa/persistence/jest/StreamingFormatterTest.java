@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.jest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.Metamodel;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.openjpa.enhance.PersistenceCapable;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
+import org.apache.openjpa.kernel.StoreContext;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.meta.JavaTypes;
+import org.apache.openjpa.meta.ValueMetaData;
+import org.apache.openjpa.persistence.meta.Members;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+/**
+ * Query results written by the formatters one instance at a time, which
+ * must produce the same output as the formatted collection of instances.
+ */
+public class StreamingFormatterTest {
+
+    private static final String URI = "http://host/jest/query?q=x";
+    private static final String DESC = "Query result";
+
+    private ClassMetaData _meta;
+    private StoreContext _ctx;
+    private Metamodel _model;
+
+    // two roots sharing a third instance
+    private OpenJPAStateManager _a;
+    private OpenJPAStateManager _b;
+    private OpenJPAStateManager _c;
+
+    @Before
+    public void setUp() {
+        _meta = Mockito.mock(ClassMetaData.class);
+        when(_meta.getDescribedType()).thenReturn((Class) Person.class);
+        FieldMetaData name = newField(0, "name", JavaTypes.STRING,
+            String.class, null);
+        FieldMetaData friend = newField(1, "friend", JavaTypes.PC,
+            Person.class, _meta);
+        when(friend.isDeclaredTypePC()).thenReturn(true);
+        when(_meta.getFields()).thenReturn(new FieldMetaData[]{ name,
+            friend });
+
+        Set<Attribute<?, ?>> attrs = new LinkedHashSet<>();
+        attrs.add(new Members.SingularAttributeImpl<>(null, name));
+        attrs.add(new Members.SingularAttributeImpl<>(null, friend));
+        ManagedType type = Mockito.mock(ManagedType.class);
+        when(type.getAttributes()).thenReturn(attrs);
+        _model = Mockito.mock(Metamodel.class);
+        when(_model.managedType(Person.class)).thenReturn(type);
+
+        _ctx = Mockito.mock(StoreContext.class);
+        _c = newStateManager(3L, "東京", null);
+        _a = newStateManager(1L, "Zoë", _c);
+        _b = newStateManager(2L, "Ann <&>", _c);
+    }
+
+    private static FieldMetaData newField(int index, String name, int type,
+        Class<?> cls, ClassMetaData rel) {
+        FieldMetaData fmd = Mockito.mock(FieldMetaData.class);
+        when(fmd.getIndex()).thenReturn(index);
+        when(fmd.getName()).thenReturn(name);
+        when(fmd.getDeclaredTypeCode()).thenReturn(type);
+        when(fmd.getDeclaredType()).thenReturn((Class) cls);
+        when(fmd.getType()).thenReturn((Class) cls);
+        ValueMetaData vmd = Mockito.mock(ValueMetaData.class);
+        when(vmd.getTypeMetaData()).thenReturn(rel);
+        when(fmd.getElement()).thenReturn(vmd);
+        when(fmd.getValue()).thenReturn(vmd);
+        return fmd;
+    }
+
+    private OpenJPAStateManager newStateManager(long id, String name,
+        OpenJPAStateManager friend) {
+        OpenJPAStateManager sm = Mockito.mock(OpenJPAStateManager.class);
+        PersistenceCapable pc = Mockito.mock(PersistenceCapable.class);
+        when(pc.pcGetStateManager()).thenReturn(sm);
+        when(_ctx.getStateManager(pc)).thenReturn(sm);
+        when(sm.getPersistenceCapable()).thenReturn(pc);
+        when(sm.getMetaData()).thenReturn(_meta);
+        when(sm.getObjectId()).thenReturn(id);
+        when(sm.getGenericContext()).thenReturn(_ctx);
+        BitSet loaded = new BitSet();
+        loaded.set(0, 2);
+        when(sm.getLoaded()).thenReturn(loaded);
+        Object related = (friend == null) ? null
+            : friend.getPersistenceCapable();
+        when(sm.fetch(0)).thenReturn(name);
+        when(sm.fetch(1)).thenReturn(related);
+        return sm;
+    }
+
+    private byte[] writeCollection(ObjectFormatter<?> formatter,
+        List<OpenJPAStateManager> sms)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        formatter.writeOut(sms, _model, null, DESC, URI, out);
+        return out.toByteArray();
+    }
+
+    private byte[] writeStream(ObjectFormatter<?> formatter,
+        List<OpenJPAStateManager> sms)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        formatter.writeOut(sms.iterator(), _model, null, DESC, URI, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Assert that the output written when each instance after the first
+     * is iterated already contains the previous instance.
+     */
+    private void assertIncremental(ObjectFormatter<?> formatter,
+        final String... names)
+        throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Iterator<OpenJPAStateManager> itr = Arrays.asList(_a, _b,
+            _c).iterator();
+        final List<String> written = new ArrayList<>();
+        Iterator<OpenJPAStateManager> sms =
+            new Iterator<OpenJPAStateManager>() {
+            @Override
+            public boolean hasNext() {
+                return itr.hasNext();
+            }
+
+            @Override
+            public OpenJPAStateManager next() {
+                written.add(new String(out.toByteArray(),
+                    StandardCharsets.UTF_8));
+                return itr.next();
+            }
+        };
+        formatter.writeOut(sms, _model, null, DESC, URI, out);
+        assertEquals(3, written.size());
+        assertFalse(written.get(1).contains(names[1]));
+        assertTrue(written.get(1).contains(names[0]));
+        assertTrue(written.get(2).contains(names[1]));
+    }
+
+    @Test
+    public void testJSONStreamedAsCollection()
+        throws Exception {
+        JSONObjectFormatter formatter = new JSONObjectFormatter();
+        List<OpenJPAStateManager> sms = Arrays.asList(_a, _b);
+        byte[] bytes = writeStream(formatter, sms);
+        assertArrayEquals(writeCollection(formatter, sms), bytes);
+
+        String json = new String(bytes, StandardCharsets.UTF_8);
+        assertTrue(json, json.contains("Zoë"));
+        assertTrue(json, json.contains("東京"));
+        assertTrue(json, json.startsWith("["));
+        assertTrue(json, json.endsWith("]"));
+    }
+
+    @Test
+    public void testJSONStreamedIncrementally()
+        throws Exception {
+        assertIncremental(new JSONObjectFormatter(), "Zoë", "Ann <&>");
+    }
+
+    @Test
+    public void testXMLStreamedAsCollection()
+        throws Exception {
+        XMLFormatter formatter = new XMLFormatter();
+        List<OpenJPAStateManager> sms = Arrays.asList(_a, _b);
+        byte[] bytes = writeStream(formatter, sms);
+        assertEquals(new String(writeCollection(formatter, sms),
+            StandardCharsets.UTF_8), new String(bytes,
+            StandardCharsets.UTF_8));
+
+        // the shared instance is written once, after the first root
+        Document doc = DocumentBuilderFactory.newInstance().
+            newDocumentBuilder().parse(new ByteArrayInputStream(bytes));
+        NodeList instances = doc.getElementsByTagName(
+            Constants.ELEMENT_INSTANCE);
+        assertEquals(3, instances.getLength());
+        assertEquals("Person-1", ((org.w3c.dom.Element) instances.item(0)).
+            getAttribute(Constants.ATTR_ID));
+        assertEquals("Person-3", ((org.w3c.dom.Element) instances.item(1)).
+            getAttribute(Constants.ATTR_ID));
+        assertEquals("Person-2", ((org.w3c.dom.Element) instances.item(2)).
+            getAttribute(Constants.ATTR_ID));
+        assertEquals(URI, doc.getElementsByTagName(Constants.ELEMENT_URI).
+            item(0).getTextContent());
+        assertTrue(doc.getDocumentElement().getTextContent().
+            contains("東京"));
+    }
+
+    @Test
+    public void testXMLStreamedIndented()
+        throws Exception {
+        String xml = new String(writeStream(new XMLFormatter(),
+            Collections.singletonList(_c)), StandardCharsets.UTF_8);
+        assertTrue(xml, xml.contains("\n  <" + Constants.ELEMENT_INSTANCE
+            + " "));
+        assertTrue(xml, xml.contains("\n  </" + Constants.ELEMENT_INSTANCE
+            + ">"));
+    }
+
+    @Test
+    public void testXMLStreamedWithoutInstances()
+        throws Exception {
+        XMLFormatter formatter = new XMLFormatter();
+        List<OpenJPAStateManager> sms = Collections.emptyList();
+        assertEquals(new String(writeCollection(formatter, sms),
+            StandardCharsets.UTF_8), new String(writeStream(formatter, sms),
+            StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testXMLStreamedIncrementally()
+        throws Exception {
+        assertIncremental(new XMLFormatter(), "Zoë", "Ann &lt;&amp;&gt;");
+    }
+
+    /**
+     * The type of the instances.
+     */
+    public static class Person {
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.openjpa.conf;
 import org.apache.openjpa.kernel.BrokerImpl;
 import org.apache.openjpa.kernel.FinalizingBrokerImpl;
 import org.apache.openjpa.lib.conf.Configuration;
+import org.apache.openjpa.lib.conf.Configurations;
 import org.apache.openjpa.lib.conf.PluginValue;
 import org.apache.openjpa.util.InternalException;
 
@@ -38,6 +39,7 @@ public class BrokerValue
     public static final String DEFAULT_ALIAS = "default";
 
     private BrokerImpl _templateBroker;
+    private volatile boolean _templateConfigured = false;
 
     public BrokerValue() {
         super(KEY, false);
@@ -50,6 +52,24 @@ public class BrokerValue
         setString(aliases[0]);
     }
 
+    /**
+     * Configure the template broker with the plugin properties once and
+     * return a clone of it. Clones copy the configured options, so that
+     * brokers are not configured through reflection one by one.
+     */
+    @Override
+    public Object instantiate(Class<?> type, Configuration conf,
+        boolean fatal) {
+        BrokerImpl template = getTemplateBroker(getClassName(), type, conf,
+            fatal);
+        if (!_templateConfigured) {
+            Configurations.configureInstance(template, conf, getProperties(),
+                (fatal) ? getProperty() : null);
+            _templateConfigured = true;
+        }
+        return newInstance(getClassName(), type, conf, fatal);
+    }
+
     @Override
     public Object newInstance(String clsName, Class type, Configuration conf,
         boolean fatal) {
@@ -23,6 +23,7 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
@@ -30,6 +31,8 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.openjpa.lib.conf.Configurable;
 import org.apache.openjpa.lib.conf.Configuration;
@@ -61,6 +64,7 @@ public class CacheMarshallerImpl
     private String _inputResourceLocation;
 
     private boolean _consumeErrors = true;
+    private boolean _compress = false;
 
     @Override
     public Object load() {
@@ -72,8 +76,7 @@ public class CacheMarshallerImpl
         Object o = null;
         ObjectInputStream in = null;
         try {
-            in = new ObjectInputStream(new BufferedInputStream(
-                _inputURL.openStream()));
+            in = new ObjectInputStream(openInputStream());
 
             o = in.readObject();
             o = _validationPolicy.getValidData(o);
@@ -108,6 +111,20 @@ public class CacheMarshallerImpl
         return o;
     }
 
+    /**
+     * Open the input URL, transparently decompressing data that was stored
+     * with {@link #setCompress} enabled.
+     */
+    private InputStream openInputStream() throws IOException {
+        InputStream in = new BufferedInputStream(_inputURL.openStream());
+        in.mark(2);
+        int magic = in.read() | (in.read() << 8);
+        in.reset();
+        if (magic == GZIPInputStream.GZIP_MAGIC)
+            in = new BufferedInputStream(new GZIPInputStream(in, 8192));
+        return in;
+    }
+
     private void configure(Object o) {
         if (o instanceof Configurable) {
             ((Configurable) o).setConfiguration(_conf);
@@ -125,11 +142,15 @@ public class CacheMarshallerImpl
         OutputStream out = null;
         try {
             out = new FileOutputStream(_outputFile);
+            if (_compress)
+                out = new GZIPOutputStream(out, 8192);
             ObjectOutputStream oos =
                 new ObjectOutputStream(new BufferedOutputStream(out));
             Object toStore = _validationPolicy.getCacheableData(o);
             oos.writeObject(toStore);
             oos.flush();
+            if (_compress)
+                ((GZIPOutputStream) out).finish();
             out.flush();
             if (_log.isTraceEnabled())
                 _log.trace(_loc.get("cache-marshaller-stored",
@@ -172,6 +193,18 @@ public class CacheMarshallerImpl
         _consumeErrors = consume;
     }
 
+    /**
+     * Whether to compress stored data. Compressed data is detected and read
+     * regardless of this setting. Defaults to false.
+     */
+    public void setCompress(boolean compress) {
+        _compress = compress;
+    }
+
+    public boolean getCompress() {
+        return _compress;
+    }
+
     @Override
     public String getId() {
         return _id;
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.conf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.openjpa.lib.conf.Configuration;
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.lib.util.Base16Encoder;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.MetaDataRepository;
+
+/**
+ * Extends the version and configuration type checks of
+ * {@link OpenJPAVersionAndConfigurationTypeValidationPolicy} with a digest
+ * of the class file of every persistent type in the cached
+ * {@link MetaDataRepository}. Cached metadata is rejected as soon as one
+ * of those class files was changed, removed or can no longer be found, so
+ * that a snapshot built at packaging time can not outlive the classes it
+ * was built from. Class files are read as resources; the types are not
+ * loaded to validate the cache.
+ */
+public class ClassFileValidationPolicy
+    extends OpenJPAVersionAndConfigurationTypeValidationPolicy {
+
+    private static final Localizer _loc = Localizer.forPackage
+        (ClassFileValidationPolicy.class);
+
+    private OpenJPAConfiguration _conf;
+
+    @Override
+    public Object getCacheableData(Object o) {
+        Map<String, String> digests = new TreeMap<>();
+        if (o instanceof Object[]) {
+            Object[] array = (Object[]) o;
+            for (int i = 0; i < array.length; i++)
+                addDigests(array[i], digests);
+        } else
+            addDigests(o, digests);
+
+        return new Object[] {
+            super.getCacheableData(o),
+            digests,
+        };
+    }
+
+    @Override
+    public Object getValidData(Object o) {
+        if (!(o instanceof Object[]))
+            return null;
+        Object[] array = (Object[]) o;
+        if (array.length != 2 || !(array[1] instanceof Map))
+            return null;
+
+        Object valid = super.getValidData(array[0]);
+        if (valid == null)
+            return null;
+
+        ClassLoader loader = _conf.getClassResolverInstance().
+            getClassLoader(getClass(), null);
+        Log log = _conf.getConfigurationLog();
+        Map.Entry entry;
+        for (Iterator itr = ((Map) array[1]).entrySet().iterator();
+            itr.hasNext();) {
+            entry = (Map.Entry) itr.next();
+            if (!(entry.getKey() instanceof String))
+                return null;
+            String name = (String) entry.getKey();
+            if (!digest(loader.getResource(getResourceName(name))).
+                equals(entry.getValue())) {
+                if (log.isInfoEnabled())
+                    log.info(_loc.get("cache-class-changed", name));
+                return null;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Record the class file digests of the persistent types in the given
+     * object if it is a metadata repository.
+     */
+    private static void addDigests(Object o, Map<String, String> digests) {
+        if (!(o instanceof MetaDataRepository))
+            return;
+
+        ClassMetaData[] metas = ((MetaDataRepository) o).getMetaDatas();
+        Class<?> cls;
+        ClassLoader loader;
+        for (int i = 0; i < metas.length; i++) {
+            cls = metas[i].getDescribedType();
+            loader = cls.getClassLoader();
+            if (loader != null)
+                digests.put(cls.getName(), digest(loader.getResource(
+                    getResourceName(cls.getName()))));
+        }
+    }
+
+    private static String getResourceName(String className) {
+        return className.replace('.', '/') + ".class";
+    }
+
+    /**
+     * Return the hex encoded digest of the content at the given URL, or
+     * the empty string if the URL is null or can not be read.
+     */
+    private static String digest(URL url) {
+        if (url == null)
+            return "";
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            // every JRE is required to support SHA-256
+            throw new IllegalStateException(nsae);
+        }
+
+        byte[] buf = new byte[8192];
+        try (InputStream in = url.openStream()) {
+            for (int len; (len = in.read(buf)) != -1;)
+                digest.update(buf, 0, len);
+        } catch (IOException ioe) {
+            return "";
+        }
+        return Base16Encoder.encode(digest.digest());
+    }
+
+    @Override
+    public void setConfiguration(Configuration conf) {
+        super.setConfiguration(conf);
+        _conf = (OpenJPAConfiguration) conf;
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.openjpa.conf;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -27,7 +28,9 @@ import org.apache.openjpa.kernel.Broker;
 import org.apache.openjpa.kernel.BrokerFactory;
 import org.apache.openjpa.kernel.Query;
 import org.apache.openjpa.lib.conf.ConfigurationProvider;
+import org.apache.openjpa.lib.conf.Configurations;
 import org.apache.openjpa.lib.conf.MapConfigurationProvider;
+import org.apache.openjpa.lib.conf.ProductDerivations;
 import org.apache.openjpa.lib.log.Log;
 import org.apache.openjpa.lib.util.Options;
 import org.apache.openjpa.meta.ClassMetaData;
@@ -51,27 +54,65 @@ public class MetaDataCacheMaintenance {
 
     public static void main(String[] args) {
         Options opts = new Options();
-        args = opts.setFromCmdLine(args);
-        boolean devpath = opts.getBooleanProperty("scanDevPath", "ScanDevPath",
-            true);
+        final String[] arguments = opts.setFromCmdLine(args);
+        if (arguments.length != 1) {
+            usage();
+            return;
+        }
+
+        Configurations.runAgainstAllAnchors(opts,
+            new Configurations.Runnable() {
+            @Override
+            public boolean run(Options opts) {
+                return MetaDataCacheMaintenance.run(opts, arguments[0]);
+            }
+        });
+    }
+
+    /**
+     * Perform the given action for the configuration described by
+     * <code>opts</code>. The <code>properties</code> option may name a
+     * configuration resource such as a <code>persistence.xml</code> file,
+     * optionally followed by <code>#</code> and the persistence unit name;
+     * all remaining options override the properties of that resource.
+     *
+     * @return false if the action was not recognized
+     */
+    public static boolean run(Options opts, String action) {
+        boolean devpath = opts.removeBooleanProperty("scanDevPath",
+            "ScanDevPath", true);
+
+        ConfigurationProvider cp = Configurations.loadConfigurationProvider(
+            opts);
+        if (cp == null)
+            cp = new MapConfigurationProvider();
+
+        // qualify the remaining options the way the resource names them
+        // so that they override rather than collide with its properties
+        Map<String, Object> props = cp.getProperties();
+        Map<String, Object> overrides = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : opts.entrySet()) {
+            String key = (String) entry.getKey();
+            if (!props.containsKey(key))
+                key = ProductDerivations.getConfigurationKey(key, props);
+            overrides.put(key, entry.getValue());
+        }
+        cp.addProperties(overrides);
 
-        ConfigurationProvider cp = new MapConfigurationProvider(opts);
         BrokerFactory factory = Bootstrap.newBrokerFactory(cp, null);
         try {
             MetaDataCacheMaintenance maint = new MetaDataCacheMaintenance(
                 factory, devpath);
 
-            if (args.length != 1) {
-                usage();
-                return;
-            }
-
-            if ("store".equals(args[0]))
+            if ("store".equals(action))
                 maint.store();
-            else if ("dump".equals(args[0]))
+            else if ("dump".equals(action))
                 maint.dump();
-            else
+            else {
                 usage();
+                return false;
+            }
+            return true;
         } finally {
             factory.close();
         }
@@ -106,7 +147,8 @@ public class MetaDataCacheMaintenance {
     private static int usage() {
         // START - ALLOW PRINT STATEMENTS
         System.err.println("Usage: java MetaDataCacheMaintenance " +
-            "[-scanDevPath t|f] [-<openjpa.PropertyName> value] store | dump");
+            "[-properties <resource>[#<unit>]] [-scanDevPath t|f] " +
+            "[-<openjpa.PropertyName> value] store | dump");
         // STOP - ALLOW PRINT STATEMENTS
         return -1;
     }
@@ -128,9 +170,11 @@ public class MetaDataCacheMaintenance {
         log.info("The following data will be stored: ");
         log(repos, conf.getQueryCompilationCacheInstance());
 
+        // the configured cache need not be serializable; store its entries
+        Map qcc = conf.getQueryCompilationCacheInstance();
         CacheMarshallersValue.getMarshallerById(conf, getClass().getName())
             .store(new Object[] {
-                repos, conf.getQueryCompilationCacheInstance()
+                repos, qcc == null ? null : new HashMap(qcc)
             });
     }
 
@@ -31,6 +31,7 @@ import org.apache.openjpa.datacache.ConcurrentDataCache;
 import org.apache.openjpa.datacache.ConcurrentQueryCache;
 import org.apache.openjpa.datacache.DataCacheManager;
 import org.apache.openjpa.datacache.DataCacheManagerImpl;
+import org.apache.openjpa.datacache.NearDataCache;
 import org.apache.openjpa.datacache.PartitionedDataCache;
 import org.apache.openjpa.ee.ManagedRuntime;
 import org.apache.openjpa.enhance.RuntimeUnenhancedClassesModes;
@@ -269,6 +270,7 @@ public class OpenJPAConfigurationImpl
             "true", ConcurrentDataCache.class.getName(),
             "concurrent", ConcurrentDataCache.class.getName(),
             "partitioned", PartitionedDataCache.class.getName(),
+            "near", NearDataCache.class.getName(),
         };
         dataCachePlugin.setAliases(aliases);
         dataCachePlugin.setDefault(aliases[0]);
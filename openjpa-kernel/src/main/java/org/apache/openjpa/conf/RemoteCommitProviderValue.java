@@ -29,7 +29,9 @@ import org.apache.openjpa.lib.util.StringUtil;
 /**
  * Value type used to represent a {@link RemoteCommitProvider}. This
  * plugin allows users to specify whether to transmit the ids of added objects
- * in the remote commit events distributed.
+ * and the versions and state of updated objects in the remote commit events
+ * distributed, and over which interval received events are merged before
+ * being applied.
  *
  * @author Abe White
  */
@@ -44,6 +46,9 @@ public class RemoteCommitProviderValue
 
     private Options _opts = null;
     private Boolean _transmitPersIds = null;
+    private Boolean _transmitVersions = null;
+    private Integer _transmitStateMaxFields = null;
+    private Long _coalesceInterval = null;
 
     public RemoteCommitProviderValue() {
         super("RemoteCommitProvider", true);
@@ -55,6 +60,9 @@ public class RemoteCommitProviderValue
         super.setProperties(props);
         _opts = null;
         _transmitPersIds = null;
+        _transmitVersions = null;
+        _transmitStateMaxFields = null;
+        _coalesceInterval = null;
     }
 
     @Override
@@ -62,6 +70,9 @@ public class RemoteCommitProviderValue
         super.setString(str);
         _opts = null;
         _transmitPersIds = null;
+        _transmitVersions = null;
+        _transmitStateMaxFields = null;
+        _coalesceInterval = null;
     }
 
     /**
@@ -92,6 +103,56 @@ public class RemoteCommitProviderValue
         _transmitPersIds = (transmit) ? Boolean.TRUE : Boolean.FALSE;
     }
 
+    /**
+     * Whether to transmit the versions of updated instances in remote commit
+     * events.
+     */
+    public boolean getTransmitVersions() {
+        return Boolean.TRUE.equals(_transmitVersions);
+    }
+
+    /**
+     * Whether to transmit the versions of updated instances in remote commit
+     * events.
+     */
+    public void setTransmitVersions(boolean transmit) {
+        _transmitVersions = (transmit) ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    /**
+     * The maximum number of fields of types whose updated state is
+     * transmitted in remote commit events along with the versions.
+     */
+    public int getTransmitStateMaxFields() {
+        return (_transmitStateMaxFields == null) ? 0
+            : _transmitStateMaxFields.intValue();
+    }
+
+    /**
+     * The maximum number of fields of types whose updated state is
+     * transmitted in remote commit events along with the versions.
+     */
+    public void setTransmitStateMaxFields(int max) {
+        _transmitStateMaxFields = Integer.valueOf(max);
+    }
+
+    /**
+     * The number of milliseconds over which received events are merged
+     * before being applied, or 0 to apply them as they are received.
+     */
+    public long getCoalesceInterval() {
+        return (_coalesceInterval == null) ? 0
+            : _coalesceInterval.longValue();
+    }
+
+    /**
+     * The number of milliseconds over which received events are merged
+     * before being applied, or 0 to apply them as they are received.
+     */
+    public void setCoalesceInterval(long millis) {
+        _coalesceInterval = Long.valueOf(millis);
+    }
+
     /**
      * Instantiate the provider.
      */
@@ -115,6 +176,12 @@ public class RemoteCommitProviderValue
         parseOptions();
         if (_transmitPersIds != null)
             mgr.setTransmitPersistedObjectIds(_transmitPersIds.booleanValue());
+        if (_transmitVersions != null)
+            mgr.setTransmitVersions(_transmitVersions.booleanValue());
+        if (_transmitStateMaxFields != null)
+            mgr.setTransmitStateMaxFields(_transmitStateMaxFields.intValue());
+        if (_coalesceInterval != null)
+            mgr.setCoalesceInterval(_coalesceInterval.longValue());
     }
 
     /**
@@ -138,5 +205,17 @@ public class RemoteCommitProviderValue
             ("transmitPersistedObjectIds", "TransmitPersistedObjectIds", null));
         if (transmit != null)
             _transmitPersIds = Boolean.valueOf (transmit);
+        String versions = StringUtil.trimToNull(_opts.removeProperty
+            ("transmitVersions", "TransmitVersions", null));
+        if (versions != null)
+            _transmitVersions = Boolean.valueOf(versions);
+        String max = StringUtil.trimToNull(_opts.removeProperty
+            ("transmitStateMaxFields", "TransmitStateMaxFields", null));
+        if (max != null)
+            _transmitStateMaxFields = Integer.valueOf(max);
+        String interval = StringUtil.trimToNull(_opts.removeProperty
+            ("coalesceInterval", "CoalesceInterval", null));
+        if (interval != null)
+            _coalesceInterval = Long.valueOf(interval);
 	}
 }
@@ -387,11 +387,68 @@ public abstract class AbstractDataCache extends AbstractConcurrentEventManager
             // drop all the committed OIDs, excepting brand
             // new OIDs. brand new OIDs either won't be in
             // the cache, or if they are, will be more up to date
-            removeAllInternal(event.getUpdatedObjectIds());
+            Map<Object, Object> versions = event.getUpdatedObjectVersions();
+            if (versions.isEmpty())
+                removeAllInternal(event.getUpdatedObjectIds());
+            else
+                removeStaleInternal(event.getUpdatedObjectIds(), versions,
+                    event.getUpdatedObjectData());
             removeAllInternal(event.getDeletedObjectIds());
         }
     }
 
+    /**
+     * Remove the cached data of the given updated oids unless it is at
+     * least as recent as the committed version. Stale data is replaced
+     * with the committed state if it is given.
+     *
+     * @param versions the committed versions of the oids that have one
+     * @param states the committed state of some of the oids
+     */
+    protected void removeStaleInternal(Collection<Object> oids,
+        Map<Object, Object> versions, Map<Object, DataCachePCData> states) {
+        writeLock();
+        try {
+            DataCachePCData cached;
+            DataCachePCData data;
+            Object version;
+            for (Object oid : oids) {
+                cached = getInternal(oid);
+                if (cached == null)
+                    continue;
+
+                version = versions.get(oid);
+                if (version != null && isCurrent(cached.getVersion(), version)) {
+                    if (log.isTraceEnabled())
+                        log.trace(s_loc.get("cache-remote-current", oid));
+                    continue;
+                }
+
+                data = (version == null) ? null : states.get(oid);
+                if (data != null && Objects.equals(data.getCache(), _name))
+                    putInternal(oid, data);
+                else
+                    removeInternal(oid);
+            }
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Whether the given cached version is at least as recent as the given
+     * committed one. Versions that are not comparable are never current.
+     */
+    protected static boolean isCurrent(Object cached, Object committed) {
+        if (cached == null || committed == null)
+            return false;
+        if (cached.equals(committed))
+            return true;
+        return cached.getClass() == committed.getClass()
+            && cached instanceof Comparable
+            && ((Comparable<Object>) cached).compareTo(committed) >= 0;
+    }
+
     /**
      * Invoke when a key is removed from this cache. Propagates the
      * expiration event on to all expiration listeners registered
@@ -89,6 +89,7 @@ public abstract class AbstractQueryCache
 
     private QueryStatistics<QueryKey> _stats;
     private boolean _statsEnabled = false;
+    private int _inlineSize = 0;
 
     public void setEnableStatistics(boolean enable){
         _statsEnabled = enable;
@@ -437,6 +438,25 @@ public abstract class AbstractQueryCache
         return this.evictPolicy;
     }
 
+    /**
+     * The largest number of results for which the cached state of the
+     * result entities is kept along with their ids. Such results are
+     * served even if the entities were evicted from the data cache in the
+     * meantime, and without checking the data cache for them first.
+     * Defaults to 0, caching ids only.
+     */
+    public void setInlineResultSize(int size) {
+        _inlineSize = size;
+    }
+
+    /**
+     * The largest number of results for which the cached state of the
+     * result entities is kept along with their ids.
+     */
+    public int getInlineResultSize() {
+        return _inlineSize;
+    }
+
     /**
      * Updates the entity timestamp map with the current time in milliseconds
      * @param timestampMap -- a map that contains entityname and its last
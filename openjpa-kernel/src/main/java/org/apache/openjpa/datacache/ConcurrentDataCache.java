@@ -18,6 +18,9 @@
  */
 package org.apache.openjpa.datacache;
 
+import java.util.BitSet;
+import java.util.Collection;
+
 import org.apache.openjpa.event.RemoteCommitListener;
 import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.util.CacheMap;
@@ -154,6 +157,35 @@ public class ConcurrentDataCache
         return (DataCachePCData) _cache.remove(key);
     }
 
+    @Override
+    public BitSet removeAll(Collection<Object> keys) {
+        if (keys.size() < 2)
+            return super.removeAll(keys);
+
+        // acquire the lock once for the whole batch instead of per key
+        _cache.writeLock();
+        try {
+            return super.removeAll(keys);
+        } finally {
+            _cache.writeUnlock();
+        }
+    }
+
+    @Override
+    protected void removeAllInternal(Collection<Object> oids) {
+        if (oids.size() < 2) {
+            super.removeAllInternal(oids);
+            return;
+        }
+
+        _cache.writeLock();
+        try {
+            super.removeAllInternal(oids);
+        } finally {
+            _cache.writeUnlock();
+        }
+    }
+
     @Override
     protected void removeAllInternal(Class<?> cls, boolean subs) {
         // The performance in this area can be improved upon, however it seems
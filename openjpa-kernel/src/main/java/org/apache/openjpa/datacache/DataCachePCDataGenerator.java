@@ -231,11 +231,13 @@ public class DataCachePCDataGenerator extends PCDataGenerator {
                 methods[i].setSynchronized(true);
         }
 
-        // add synchronized isLoaded call.
+        // add synchronized isLoaded call unless generated already.
         // public synchronized boolean isLoaded (int field)
         // {
         // 		return super.isLoaded (field);
         // }
+        if (bc.getDeclaredMethod("isLoaded", new Class[]{ int.class }) != null)
+            return;
         BCMethod method = bc.declareMethod("isLoaded", boolean.class,
             new Class[]{ int.class });
         method.setSynchronized(true);
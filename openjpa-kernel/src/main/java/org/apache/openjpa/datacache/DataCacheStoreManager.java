@@ -60,6 +60,8 @@ public class DataCacheStoreManager extends DelegatingStoreManager {
     private DataCacheManager _mgr = null;
     // pc data generator
     private PCDataGenerator _gen = null;
+    // state to load an uncached instance from during findInline
+    private DataCachePCData _inline = null;
 
     /**
      * Constructor.
@@ -72,6 +74,12 @@ public class DataCacheStoreManager extends DelegatingStoreManager {
 
     @Override
     public void setContext(StoreContext ctx) {
+        // a store manager recycled from a closed broker starts over
+        _inserts = null;
+        _updates = null;
+        _deletes = null;
+        _inline = null;
+
         _ctx = ctx;
         _mgr = ctx.getConfiguration().getDataCacheManagerInstance();
         _gen = _mgr.getPCDataGenerator();
@@ -106,6 +114,20 @@ public class DataCacheStoreManager extends DelegatingStoreManager {
         }
     }
 
+    /**
+     * Find the instance with the id of the given state. If the instance has
+     * to be loaded and its data cache does not hold it, it is loaded from
+     * the given state, which is not put in the cache.
+     */
+    public Object findInline(DataCachePCData data, FetchConfiguration fetch) {
+        _inline = data;
+        try {
+            return _ctx.find(data.getId(), fetch, null, null, 0);
+        } finally {
+            _inline = null;
+        }
+    }
+
     /**
      * Evict all members of the given classes.
      */
@@ -370,14 +392,18 @@ public class DataCacheStoreManager extends DelegatingStoreManager {
         CacheStatistics stats = cache.getStatistics();
         boolean fromDatabase = false;
         boolean alreadyCached = data != null;
+        boolean inline = !alreadyCached && _inline != null
+            && _inline.getId().equals(sm.getObjectId());
+        if (inline)
+            data = _inline;
         if (sm.isEmbedded()
          || fetch.getCacheRetrieveMode() == DataCacheRetrieveMode.BYPASS
          || fetch.getCacheStoreMode() == DataCacheStoreMode.REFRESH) {
             // stats -- Skipped reading from the cache, noop
             fromDatabase = super.initialize(sm, state, fetch, edata);
         } else {
-            if (alreadyCached && !isLocking(fetch)) {
-                if (stats.isEnabled()) {
+            if (data != null && !isLocking(fetch)) {
+                if (stats.isEnabled() && alreadyCached) {
                     ((CacheStatisticsSPI)stats).newGet(data.getType(), true);
                 }
                 sm.initialize(data.getType(), state);
@@ -401,13 +427,13 @@ public class DataCacheStoreManager extends DelegatingStoreManager {
             // when we are operating against an Entity that is in some sort of inheritance structure.
             cache = _mgr.selectCache(sm);
             if (cache != null) {
-                cacheStateManager(cache, sm, data);
+                cacheStateManager(cache, sm, inline ? null : data);
                 if (stats.isEnabled()) {
                     ((CacheStatisticsSPI) stats).newPut(sm.getMetaData().getDescribedType());
                 }
             }
         }
-        return fromDatabase || alreadyCached;
+        return fromDatabase || data != null;
     }
 
     private void cacheStateManager(DataCache cache, OpenJPAStateManager sm, DataCachePCData data) {
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.lib.conf.Configurable;
+import org.apache.openjpa.lib.conf.Configuration;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.util.GeneralException;
+import org.apache.openjpa.util.InvalidStateException;
+import org.apache.openjpa.util.OpenJPAId;
+import org.apache.openjpa.util.Serialization;
+
+/**
+ * A {@link SharedCache} that stands in for a remote cache within a single
+ * JVM. All near caches with the same {@link #setRegion region} share the
+ * same data, which is held in serialized form so that every node works on
+ * its own copies as it would with a remote cache. A region is released
+ * when the last cache using it is closed. Useful to test and measure near
+ * caching without a cache server.
+ */
+public class InProcessSharedCache
+    implements SharedCache, Configurable {
+
+    private static final Localizer _loc = Localizer.forPackage
+        (InProcessSharedCache.class);
+
+    private static final Map<String, Region> _regions = new HashMap<>();
+
+    private OpenJPAConfiguration _conf = null;
+    private String _region = null;
+    private Region _data = null;
+
+    /**
+     * The name of the shared region. Defaults to the name of the near
+     * cache qualified by the persistence unit and the database it uses, so
+     * that only the caches of the same unit on the same database share
+     * their data.
+     */
+    public String getRegion() {
+        return _region;
+    }
+
+    /**
+     * The name of the shared region. Defaults to the name of the near
+     * cache qualified by the persistence unit and the database it uses, so
+     * that only the caches of the same unit on the same database share
+     * their data.
+     */
+    public void setRegion(String region) {
+        _region = region;
+    }
+
+    @Override
+    public void setConfiguration(Configuration conf) {
+        _conf = (OpenJPAConfiguration) conf;
+    }
+
+    @Override
+    public void startConfiguration() {
+    }
+
+    @Override
+    public void endConfiguration() {
+    }
+
+    @Override
+    public void initialize(NearDataCache cache) {
+        if (_region == null)
+            _region = getDefaultRegion(cache);
+        synchronized (_regions) {
+            _data = _regions.computeIfAbsent(_region, r -> new Region());
+            _data.users++;
+        }
+    }
+
+    private String getDefaultRegion(NearDataCache cache) {
+        if (_conf == null)
+            return cache.getName();
+        String db = _conf.getConnectionURL();
+        if (db == null)
+            db = _conf.getConnectionFactoryName();
+        return cache.getName() + "@" + _conf.getId() + "@" + db;
+    }
+
+    /**
+     * Return the data of the region.
+     *
+     * @throws InvalidStateException if this cache is closed
+     */
+    private Region getData() {
+        Region data = _data;
+        if (data == null)
+            throw new InvalidStateException(_loc.get("shared-cache-closed",
+                _region));
+        return data;
+    }
+
+    @Override
+    public DataCachePCData get(Object oid) {
+        Entry entry = getData().get(oid);
+        return (entry == null) ? null : fromBytes(entry.bytes);
+    }
+
+    @Override
+    public Map<Object, DataCachePCData> getAll(Collection<Object> oids) {
+        Map<Object, DataCachePCData> datas = new HashMap<>(oids.size());
+        Region data = getData();
+        Entry entry;
+        for (Object oid : oids) {
+            entry = data.get(oid);
+            if (entry != null)
+                datas.put(oid, fromBytes(entry.bytes));
+        }
+        return datas;
+    }
+
+    @Override
+    public void put(DataCachePCData data) {
+        getData().put(data.getId(), new Entry(data));
+    }
+
+    @Override
+    public void putAll(Collection<DataCachePCData> datas) {
+        for (DataCachePCData data : datas)
+            put(data);
+    }
+
+    @Override
+    public void putLoaded(DataCachePCData data) {
+        Object version = data.getVersion();
+        getData().compute(data.getId(), (oid, entry) ->
+            (entry != null && AbstractDataCache.isCurrent(entry.version,
+                version)) ? entry : new Entry(data));
+    }
+
+    @Override
+    public void removeAll(Collection<Object> oids) {
+        Region data = getData();
+        for (Object oid : oids)
+            data.remove(oid);
+    }
+
+    @Override
+    public void removeAll(Class<?> cls, boolean subclasses) {
+        for (Iterator<Object> itr = getData().keySet().iterator();
+            itr.hasNext();) {
+            Object oid = itr.next();
+            Class<?> type = (oid instanceof OpenJPAId)
+                ? ((OpenJPAId) oid).getType() : null;
+            // oids without a type may be of any type
+            if (type == null || type == cls
+                || (subclasses && cls.isAssignableFrom(type)))
+                itr.remove();
+        }
+    }
+
+    @Override
+    public void clear() {
+        getData().clear();
+    }
+
+    @Override
+    public void close() {
+        if (_data == null)
+            return;
+        synchronized (_regions) {
+            if (--_data.users == 0)
+                _regions.remove(_region, _data);
+        }
+        _data = null;
+    }
+
+    private static byte[] toBytes(DataCachePCData data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(data);
+        } catch (IOException ioe) {
+            throw new GeneralException(ioe);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataCachePCData fromBytes(byte[] bytes) {
+        return (DataCachePCData) Serialization.deserialize(bytes, null);
+    }
+
+    /**
+     * The data of a region and the number of caches using it.
+     */
+    private static class Region
+        extends ConcurrentHashMap<Object, Entry> {
+
+        private static final long serialVersionUID = 1L;
+
+        private int users = 0;
+    }
+
+    /**
+     * Serialized data and its version.
+     */
+    private static class Entry {
+
+        private final Object version;
+        private final byte[] bytes;
+
+        Entry(DataCachePCData data) {
+            version = data.getVersion();
+            bytes = toBytes(data);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.openjpa.event.RemoteCommitEvent;
+import org.apache.openjpa.lib.conf.PluginValue;
+import org.apache.openjpa.util.OpenJPAId;
+
+/**
+ * A two-tier {@link DataCache}: a small local cache, managed as by
+ * {@link ConcurrentDataCache}, in front of a {@link SharedCache} that
+ * holds the data on behalf of all nodes. Reads go to the shared tier only
+ * on a local miss, and data found there is copied into the local tier.
+ * Committed data and evictions go to both tiers. Data loaded from the
+ * datastore only reaches the shared tier if it is versioned and more
+ * recent than the data held there, so that a slow load can not replace
+ * newer committed data.
+ *
+ * The node that commits a transaction updates the shared tier itself, so
+ * remote commit events only invalidate local copies on the other nodes.
+ * A {@link org.apache.openjpa.event.RemoteCommitProvider} therefore has to
+ * link all nodes sharing the same shared tier.
+ *
+ * This cache can be configured as a plug-in as follows:
+ * <br>
+ * <code>&lt;property name="openjpa.DataCache"
+ *         value="near(CacheSize=500, SharedCache='com.acme.Tier(Host=x)')"/&gt;</code>
+ * <br>
+ * The default shared tier is {@link InProcessSharedCache}.
+ */
+public class NearDataCache
+    extends ConcurrentDataCache {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] ALIASES = new String[] {
+        "in-process", InProcessSharedCache.class.getName(),
+    };
+
+    private String _sharedPlugin = ALIASES[0];
+    private SharedCache _shared = null;
+    private final CacheStatisticsImpl _localStats = new CacheStatisticsImpl();
+    private final CacheStatisticsImpl _sharedStats =
+        new CacheStatisticsImpl();
+
+    /**
+     * The plugin string of the {@link SharedCache} to use.
+     */
+    public String getSharedCache() {
+        return _sharedPlugin;
+    }
+
+    /**
+     * The plugin string of the {@link SharedCache} to use.
+     */
+    public void setSharedCache(String plugin) {
+        _sharedPlugin = plugin;
+    }
+
+    /**
+     * The shared tier of this cache.
+     */
+    public SharedCache getSharedCacheInstance() {
+        return _shared;
+    }
+
+    /**
+     * Statistics of the local tier. Every read is a read of the local tier.
+     */
+    public CacheStatistics getLocalStatistics() {
+        return _localStats;
+    }
+
+    /**
+     * Statistics of the shared tier. Only local misses are read from the
+     * shared tier.
+     */
+    public CacheStatistics getSharedStatistics() {
+        return _sharedStats;
+    }
+
+    @Override
+    public void setEnableStatistics(boolean enable) {
+        super.setEnableStatistics(enable);
+        if (enable) {
+            _localStats.enable();
+            _sharedStats.enable();
+        }
+    }
+
+    @Override
+    public void initialize(DataCacheManager mgr) {
+        super.initialize(mgr);
+        PluginValue plugin = new PluginValue("SharedCache", false);
+        plugin.setAliases(ALIASES);
+        plugin.setString(_sharedPlugin);
+        _shared = (SharedCache) plugin.instantiate(SharedCache.class, conf);
+        _shared.initialize(this);
+    }
+
+    @Override
+    protected DataCachePCData getInternal(Object key) {
+        DataCachePCData data = super.getInternal(key);
+        if (data != null) {
+            _localStats.newGet(data.getType(), true);
+            return data;
+        }
+        _localStats.newGet(getType(key), false);
+
+        data = _shared.get(key);
+        _sharedStats.newGet(getType(key), data != null);
+        if (data != null && !data.isTimedOut())
+            super.putInternal(key, data);
+        return data;
+    }
+
+    /**
+     * Reads all local misses from the shared tier at once.
+     */
+    @Override
+    public Map<Object, DataCachePCData> getAll(List<Object> keys) {
+        Map<Object, DataCachePCData> result = new HashMap<>(keys.size());
+        List<Object> misses = null;
+        DataCachePCData data;
+        for (Object key : keys) {
+            data = super.getInternal(key);
+            if (data != null && !data.isTimedOut()) {
+                _localStats.newGet(data.getType(), true);
+                result.put(key, data);
+            } else {
+                _localStats.newGet(getType(key), false);
+                if (misses == null)
+                    misses = new ArrayList<>();
+                misses.add(key);
+            }
+        }
+        if (misses == null)
+            return result;
+
+        Map<Object, DataCachePCData> shared = _shared.getAll(misses);
+        for (Object key : misses) {
+            data = shared.get(key);
+            if (data != null && data.isTimedOut())
+                data = null;
+            _sharedStats.newGet(getType(key), data != null);
+            if (data != null)
+                super.putInternal(key, data);
+            result.put(key, data);
+        }
+        return result;
+    }
+
+    /**
+     * Puts of loaded data reach the shared tier only if the data is
+     * versioned, and only replace data of an older version there. Committed
+     * data is written through {@link #putAllInternal}.
+     */
+    @Override
+    protected DataCachePCData putInternal(Object key, DataCachePCData pc) {
+        if (pc.getVersion() != null) {
+            _shared.putLoaded(pc);
+            _sharedStats.newPut(pc.getType());
+        }
+        _localStats.newPut(pc.getType());
+        return super.putInternal(key, pc);
+    }
+
+    @Override
+    protected void putAllInternal(Collection<DataCachePCData> pcs) {
+        if (pcs.isEmpty())
+            return;
+        for (DataCachePCData pc : pcs) {
+            super.putInternal(pc.getId(), pc);
+            _localStats.newPut(pc.getType());
+            _sharedStats.newPut(pc.getType());
+        }
+        _shared.putAll(pcs);
+    }
+
+    @Override
+    protected DataCachePCData removeInternal(Object key) {
+        _shared.removeAll(Collections.singleton(key));
+        return super.removeInternal(key);
+    }
+
+    @Override
+    public BitSet removeAll(Collection<Object> keys) {
+        BitSet set = new BitSet(keys.size());
+        if (keys.isEmpty())
+            return set;
+
+        writeLock();
+        try {
+            int i = 0;
+            for (Object key : keys) {
+                if (super.removeInternal(key) != null)
+                    set.set(i);
+                i++;
+            }
+        } finally {
+            writeUnlock();
+        }
+        _shared.removeAll(keys);
+        return set;
+    }
+
+    @Override
+    protected void removeAllInternal(Collection<Object> oids) {
+        if (oids.isEmpty())
+            return;
+        removeLocal(oids);
+        _shared.removeAll(oids);
+    }
+
+    @Override
+    protected void removeAllInternal(Class<?> cls, boolean subs) {
+        super.removeAllInternal(cls, subs);
+        _shared.removeAll(cls, subs);
+    }
+
+    @Override
+    protected void clearInternal() {
+        super.clearInternal();
+        _shared.clear();
+    }
+
+    /**
+     * Only clears the local tier; the shared data outlives this node.
+     */
+    @Override
+    protected void close(boolean clear) {
+        if (isClosed())
+            return;
+        if (clear)
+            super.clearInternal();
+        super.close(false);
+        if (_shared != null)
+            _shared.close();
+    }
+
+    /**
+     * Invalidate the local copies of the committed instances. The shared
+     * tier was already updated by the committing node.
+     */
+    @Override
+    public void afterCommit(RemoteCommitEvent event) {
+        if (isClosed())
+            return;
+
+        if (event.getPayloadType() == RemoteCommitEvent.PAYLOAD_EXTENTS) {
+            if (!event.getUpdatedTypeNames().isEmpty()
+                || !event.getDeletedTypeNames().isEmpty())
+                super.clearInternal();
+            return;
+        }
+
+        Map<Object, Object> versions = event.getUpdatedObjectVersions();
+        writeLock();
+        try {
+            DataCachePCData cached;
+            for (Object oid : event.getUpdatedObjectIds()) {
+                cached = super.getInternal(oid);
+                if (cached != null
+                    && !isCurrent(cached.getVersion(), versions.get(oid)))
+                    super.removeInternal(oid);
+            }
+            removeLocal(event.getDeletedObjectIds());
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Remove the given oids from the local tier only.
+     */
+    private void removeLocal(Collection<Object> oids) {
+        writeLock();
+        try {
+            for (Object oid : oids)
+                super.removeInternal(oid);
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    private static Class<?> getType(Object oid) {
+        return (oid instanceof OpenJPAId) ? ((OpenJPAId) oid).getType() : null;
+    }
+}
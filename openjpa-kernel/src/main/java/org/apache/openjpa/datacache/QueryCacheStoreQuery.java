@@ -32,12 +32,14 @@ import java.util.TreeMap;
 
 import org.apache.commons.collections4.map.LinkedMap;
 import org.apache.openjpa.datacache.AbstractQueryCache.EvictPolicy;
+import org.apache.openjpa.kernel.DelegatingStoreManager;
 import org.apache.openjpa.kernel.FetchConfiguration;
 import org.apache.openjpa.kernel.LockLevels;
 import org.apache.openjpa.kernel.OpenJPAStateManager;
 import org.apache.openjpa.kernel.QueryContext;
 import org.apache.openjpa.kernel.ResultShape;
 import org.apache.openjpa.kernel.StoreContext;
+import org.apache.openjpa.kernel.StoreManager;
 import org.apache.openjpa.kernel.StoreQuery;
 import org.apache.openjpa.kernel.exps.AggregateListener;
 import org.apache.openjpa.kernel.exps.FilterListener;
@@ -154,7 +156,7 @@ public class QueryCacheStoreQuery
         }
 
         int projs = getContext().getProjectionAliases().length;
-        if (projs == 0) {
+        if (projs == 0 && !(res.get(0) instanceof CachedObjectId)) {
             // We're only going to return the cached results if we have ALL results cached. This could be improved
             // in the future to be a little more intelligent.
             if (getContext().getStoreContext().isCached(res) == false) {
@@ -202,7 +204,7 @@ public class QueryCacheStoreQuery
                 return ((Locale) obj).clone();
             default:
                 if (obj instanceof CachedObjectId)
-                    return fromObjectId(((CachedObjectId) obj).oid, ctx, fc);
+                    return fromCachedObjectId((CachedObjectId) obj, ctx, fc);
                 Object oid = ctx.getObjectId(obj);
                 if (oid != null)
                     return new CachedObjectId(oid);
@@ -223,6 +225,30 @@ public class QueryCacheStoreQuery
         return obj;
     }
 
+    /**
+     * Return the result object for the given cached oid. If the instance
+     * was evicted from the data cache, it is loaded from the cached state
+     * without putting that state back in the data cache.
+     */
+    private static Object fromCachedObjectId(CachedObjectId cached,
+        StoreContext sctx, FetchConfiguration fc) {
+        if (cached.data == null || cached.data.isTimedOut())
+            return fromObjectId(cached.oid, sctx, fc);
+
+        StoreManager store = sctx.getStoreManager();
+        while (!(store instanceof DataCacheStoreManager)
+            && store instanceof DelegatingStoreManager)
+            store = ((DelegatingStoreManager) store).getDelegate();
+        if (!(store instanceof DataCacheStoreManager))
+            return fromObjectId(cached.oid, sctx, fc);
+
+        Object obj = ((DataCacheStoreManager) store).findInline(cached.data,
+            fc);
+        if (obj == null)
+            throw new ObjectNotFoundException(cached.oid);
+        return obj;
+    }
+
     public Object writeReplace()
         throws ObjectStreamException {
         return _query;
@@ -572,8 +598,13 @@ public class QueryCacheStoreQuery
 
         @Override
         public Object get(int idx) {
-            if (!_proj)
-                return fromObjectId(_res.get(idx), _sctx, _fc);
+            if (!_proj) {
+                Object oid = _res.get(idx);
+                if (oid instanceof CachedObjectId)
+                    return fromCachedObjectId((CachedObjectId) oid, _sctx,
+                        _fc);
+                return fromObjectId(oid, _sctx, _fc);
+            }
 
             Object[] cached = (Object[]) _res.get(idx);
             if (cached == null)
@@ -608,6 +639,7 @@ public class QueryCacheStoreQuery
         private final boolean _proj;
         private final QueryKey _qk;
         private final TreeMap<Integer,Object> _data = new TreeMap<>();
+        private final int _inline;
         private boolean _maintainCache = true;
         private int _pos = -1;
 
@@ -624,6 +656,8 @@ public class QueryCacheStoreQuery
             _rop = rop;
             _proj = proj;
             _qk = key;
+            _inline = (_cache instanceof AbstractQueryCache)
+                ? ((AbstractQueryCache) _cache).getInlineResultSize() : 0;
             _cache.addTypesChangedListener(this);
         }
 
@@ -658,15 +692,22 @@ public class QueryCacheStoreQuery
                         Integer index = _pos;
                         if (!_data.containsKey(index)) {
                             Object cached;
+                            boolean inline = _pos < _inline;
                             if (obj == null)
                                 cached = null;
-                            else if (!_proj)
+                            else if (!_proj) {
                                 cached = _sctx.getObjectId(obj);
-                            else {
+                                if (inline && cached != null)
+                                    cached = newCachedObjectId(obj, cached);
+                            } else {
                                 Object[] arr = (Object[]) obj;
                                 Object[] cp = new Object[arr.length];
-                                for (int i = 0; i < arr.length; i++)
+                                for (int i = 0; i < arr.length; i++) {
                                     cp[i] = copyProjection(arr[i], _sctx, null);
+                                    if (inline && cp[i] instanceof CachedObjectId)
+                                        cp[i] = newCachedObjectId(arr[i],
+                                            ((CachedObjectId) cp[i]).oid);
+                                }
                                 cached = cp;
                             }
                             if (cached != null)
@@ -687,6 +728,8 @@ public class QueryCacheStoreQuery
                     if (_maintainCache) {
                         QueryResult res = null;
                         synchronized (this) {
+                            if (_inline > 0 && !isInline())
+                                stripInline();
                             res = new QueryResult(_qk, _data.values());
                             res.setTimestamp(System.currentTimeMillis());
                         }
@@ -700,6 +743,54 @@ public class QueryCacheStoreQuery
             }
         }
 
+        /**
+         * Return a cached oid carrying the data cache state of the given
+         * instance, if it is cached.
+         */
+        private CachedObjectId newCachedObjectId(Object obj, Object oid) {
+            OpenJPAStateManager sm = _sctx.getStateManager(obj);
+            DataCache cache = (sm == null) ? null : _sctx.getConfiguration().
+                getDataCacheManagerInstance().selectCache(sm);
+            DataCachePCData data = (cache == null) ? null : cache.get(oid);
+            if (data == null)
+                return new CachedObjectId(oid);
+            return new CachedObjectId(oid, data);
+        }
+
+        /**
+         * Whether the buffered results may be cached with the state of
+         * their entities: the result has to be small enough, and for
+         * entity results, the state of every entity must be known.
+         */
+        private boolean isInline() {
+            if (_data.size() > _inline)
+                return false;
+            if (_proj)
+                return true;
+            for (Object cached : _data.values())
+                if (((CachedObjectId) cached).data == null)
+                    return false;
+            return true;
+        }
+
+        /**
+         * Replace the cached oids carrying entity state by plain ones.
+         */
+        private void stripInline() {
+            for (Map.Entry<Integer, Object> entry : _data.entrySet()) {
+                if (!_proj) {
+                    if (entry.getValue() instanceof CachedObjectId)
+                        entry.setValue(((CachedObjectId) entry.getValue()).oid);
+                    continue;
+                }
+                Object[] cp = (Object[]) entry.getValue();
+                for (int i = 0; i < cp.length; i++)
+                    if (cp[i] instanceof CachedObjectId
+                        && ((CachedObjectId) cp[i]).data != null)
+                        cp[i] = new CachedObjectId(((CachedObjectId) cp[i]).oid);
+            }
+        }
+
         @Override
         public boolean supportsRandomAccess() {
             return _rop.supportsRandomAccess();
@@ -791,9 +882,18 @@ public class QueryCacheStoreQuery
         private static final long serialVersionUID = 1L;
         public final Object oid;
 
+        // cached state of the instance, if the result is cached inline
+        public final DataCachePCData data;
+
         public CachedObjectId (Object oid)
+        {
+            this(oid, null);
+        }
+
+        public CachedObjectId (Object oid, DataCachePCData data)
         {
             this.oid = oid;
+            this.data = data;
         }
     }
 }
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.openjpa.lib.util.Closeable;
+
+/**
+ * The shared tier of a {@link NearDataCache}: a cache, typically hosted
+ * outside of the JVM, that holds the cached state of persistent instances
+ * on behalf of all the nodes using it. Implementations must hand out
+ * copies of the data they hold, since callers modify the data they
+ * receive. Implementations are instantiated as plugins and may be
+ * {@link org.apache.openjpa.lib.conf.Configurable}.
+ *
+ * @see InProcessSharedCache
+ */
+public interface SharedCache
+    extends Closeable {
+
+    /**
+     * Invoked once before use by the near cache that owns this tier.
+     */
+    void initialize(NearDataCache cache);
+
+    /**
+     * Return a copy of the data stored under the given oid, or null.
+     */
+    DataCachePCData get(Object oid);
+
+    /**
+     * Return copies of the data stored under the given oids, omitting
+     * those that are not cached. Implementations should fetch all of the
+     * data in a single round trip.
+     */
+    Map<Object, DataCachePCData> getAll(Collection<Object> oids);
+
+    /**
+     * Store the given committed data under its oid.
+     */
+    void put(DataCachePCData data);
+
+    /**
+     * Store all of the given committed data. Implementations should store
+     * all of the data in a single round trip.
+     */
+    void putAll(Collection<DataCachePCData> datas);
+
+    /**
+     * Store the given data, loaded from the datastore rather than committed,
+     * unless the data stored under its oid has the same or a more recent
+     * version. Implementations must make the check and the write atomic,
+     * so that data loaded before a concurrent commit can not replace the
+     * committed data.
+     */
+    void putLoaded(DataCachePCData data);
+
+    /**
+     * Remove the data stored under the given oids.
+     */
+    void removeAll(Collection<Object> oids);
+
+    /**
+     * Remove the data of the instances of the given type, and optionally
+     * of its subclasses.
+     */
+    void removeAll(Class<?> cls, boolean subclasses);
+
+    /**
+     * Remove all data.
+     */
+    void clear();
+
+    /**
+     * Free the resources used by this tier. The shared data is not
+     * removed while other nodes use it.
+     */
+    @Override
+    void close();
+}
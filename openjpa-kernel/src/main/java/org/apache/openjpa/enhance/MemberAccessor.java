@@ -0,0 +1,511 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.enhance;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.AccessController;
+
+import org.apache.openjpa.lib.util.J2DoPrivHelper;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.util.InternalException;
+import org.apache.openjpa.util.UserException;
+
+/**
+ * Reads and writes a field, or invokes a getter or setter, through
+ * {@link MethodHandle}s which are resolved once instead of going through
+ * the reflection access checks on every call.  The primitive accessors
+ * avoid boxing when the member is of the requested primitive type.
+ * Instances are obtained and cached through {@link Reflection}.
+ *
+ * @see Reflection#findFieldAccessor
+ * @see Reflection#findGetterAccessor
+ * @see Reflection#findSetterAccessor
+ */
+public final class MemberAccessor {
+
+    private static final Localizer _loc = Localizer.forPackage
+        (MemberAccessor.class);
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Member _member;
+    private final Class<?> _type;
+
+    // handles typed with the member type and with Object
+    private final MethodHandle _get;
+    private final MethodHandle _getObject;
+    private final MethodHandle _set;
+    private final MethodHandle _setObject;
+
+    /**
+     * Create an accessor for the given field, getter or setter.
+     */
+    MemberAccessor(Member member) {
+        _member = member;
+        makeAccessible(member);
+
+        MethodHandle get = null;
+        MethodHandle set = null;
+        try {
+            if (member instanceof Field) {
+                Field field = (Field) member;
+                _type = field.getType();
+                get = LOOKUP.unreflectGetter(field);
+                set = unreflectSetter(field);
+            } else {
+                Method method = (Method) member;
+                if (method.getParameterTypes().length == 0) {
+                    _type = method.getReturnType();
+                    get = LOOKUP.unreflect(method);
+                } else {
+                    _type = method.getParameterTypes()[0];
+                    set = LOOKUP.unreflect(method);
+                }
+            }
+        } catch (IllegalAccessException iae) {
+            throw new UserException(_loc.get("reflect-security", member)).
+                setFatal(true);
+        }
+
+        // static members ignore the target like reflection does
+        if (Modifier.isStatic(member.getModifiers())) {
+            if (get != null)
+                get = MethodHandles.dropArguments(get, 0, Object.class);
+            if (set != null)
+                set = MethodHandles.dropArguments(set, 0, Object.class);
+        }
+
+        if (get != null) {
+            _get = get.asType(MethodType.methodType(_type, Object.class));
+            _getObject = get.asType(MethodType.methodType(Object.class,
+                Object.class));
+        } else
+            _get = _getObject = null;
+
+        if (set != null) {
+            set = set.asType(MethodType.methodType(void.class, Object.class,
+                _type));
+            _set = set;
+            _setObject = set.asType(MethodType.methodType(void.class,
+                Object.class, Object.class));
+        } else
+            _set = _setObject = null;
+    }
+
+    /**
+     * The field or method this accessor uses.
+     */
+    public Member getMember() {
+        return _member;
+    }
+
+    /**
+     * The type of the field, the return type of the getter or the parameter
+     * type of the setter.
+     */
+    public Class<?> getType() {
+        return _type;
+    }
+
+    /**
+     * Suppress the access checks for the member if it is not public. Failing
+     * that, the lookup below reports the problem.
+     */
+    private static void makeAccessible(Member member) {
+        if (Modifier.isPublic(member.getModifiers())
+            && Modifier.isPublic(member.getDeclaringClass().getModifiers()))
+            return;
+        try {
+            AccessController.doPrivileged(J2DoPrivHelper
+                .setAccessibleAction((AccessibleObject) member, true));
+        } catch (RuntimeException re) {
+            // SecurityException or InaccessibleObjectException
+        }
+    }
+
+    /**
+     * Return a setter for the given field, or null if it cannot be written,
+     * as with final fields that cannot be made accessible. Such fields are
+     * often only read, so the failure is reported on the first write.
+     */
+    private static MethodHandle unreflectSetter(Field field) {
+        try {
+            return LOOKUP.unreflectSetter(field);
+        } catch (IllegalAccessException iae) {
+            return null;
+        }
+    }
+
+    private MethodHandle getter() {
+        if (_get == null)
+            throw new InternalException(_member.toString());
+        return _get;
+    }
+
+    private MethodHandle setter() {
+        if (_set == null && _member instanceof Field)
+            throw new UserException(_loc.get("reflect-security", _member)).
+                setFatal(true);
+        if (_set == null)
+            throw new InternalException(_member.toString());
+        return _set;
+    }
+
+    private RuntimeException getException(Object target, Throwable t) {
+        return Reflection.wrapReflectionException(t, _loc.get(
+            (_member instanceof Field) ? "get-field" : "get-method",
+            target, _member));
+    }
+
+    private RuntimeException setException(Object target, Object value,
+        Object type, Throwable t) {
+        return Reflection.wrapReflectionException(t, _loc.get(
+            (_member instanceof Field) ? "set-field" : "set-method",
+            new Object[]{ target, _member, value, type }));
+    }
+
+    /**
+     * Return the value of the member in the given object.
+     */
+    public Object get(Object target) {
+        if (target == null)
+            return null;
+        getter();
+        try {
+            return _getObject.invokeExact(target);
+        } catch (Throwable t) {
+            throw getException(target, t);
+        }
+    }
+
+    /**
+     * Return the value of the member in the given object.
+     */
+    public boolean getBoolean(Object target) {
+        if (target == null)
+            return false;
+        if (_type != boolean.class) {
+            Object o = get(target);
+            return (o == null) ? false : ((Boolean) o).booleanValue();
+        }
+        MethodHandle get = getter();
+        try {
+            return (boolean) get.invokeExact(target);
+        } catch (Throwable t) {
+            throw getException(target, t);
+        }
+    }
+
+    /**
+     * Return the value of the member in the given object.
+     */
+    public byte getByte(Object target) {
+        if (target == null)
+            return (byte) 0;
+        if (_type != byte.class) {
+            Object o = get(target);
+            return (o == null) ? (byte) 0 : ((Number) o).byteValue();
+        }
+        MethodHandle get = getter();
+        try {
+            return (byte) get.invokeExact(target);
+        } catch (Throwable t) {
+            throw getException(target, t);
+        }
+    }
+
+    /**
+     * Return the value of the member in the given object.
+     */
+    public char getChar(Object target) {
+        if (target == null)
+            return (char) 0;
+        if (_type != char.class) {
+            Object o = get(target);
+            return (o == null) ? (char) 0 : ((Character) o).charValue();
+        }
+        MethodHandle get = getter();
+        try {
+            return (char) get.invokeExact(target);
+        } catch (Throwable t) {
+            throw getException(target, t);
+        }
+    }
+
+    /**
+     * Return the value of the member in the given object.
+     */
+    public double getDouble(Object target) {
+        if (target == null)
+            return 0D;
+        if (_type != double.class) {
+            Object o = get(target);
+            return (o == null) ? 0D : ((Number) o).doubleValue();
+        }
+        MethodHandle get = getter();
+        try {
+            return (double) get.invokeExact(target);
+        } catch (Throwable t) {
+            throw getException(target, t);
+        }
+    }
+
+    /**
+     * Return the value of the member in the given object.
+     */
+    public float getFloat(Object target) {
+        if (target == null)
+            return 0F;
+        if (_type != float.class) {
+            Object o = get(target);
+            return (o == null) ? 0F : ((Number) o).floatValue();
+        }
+        MethodHandle get = getter();
+        try {
+            return (float) get.invokeExact(target);
+        } catch (Throwable t) {
+            throw getException(target, t);
+        }
+    }
+
+    /**
+     * Return the value of the member in the given object.
+     */
+    public int getInt(Object target) {
+        if (target == null)
+            return 0;
+        if (_type != int.class) {
+            Object o = get(target);
+            return (o == null) ? 0 : ((Number) o).intValue();
+        }
+        MethodHandle get = getter();
+        try {
+            return (int) get.invokeExact(target);
+        } catch (Throwable t) {
+            throw getException(target, t);
+        }
+    }
+
+    /**
+     * Return the value of the member in the given object.
+     */
+    public long getLong(Object target) {
+        if (target == null)
+            return 0L;
+        if (_type != long.class) {
+            Object o = get(target);
+            return (o == null) ? 0L : ((Number) o).longValue();
+        }
+        MethodHandle get = getter();
+        try {
+            return (long) get.invokeExact(target);
+        } catch (Throwable t) {
+            throw getException(target, t);
+        }
+    }
+
+    /**
+     * Return the value of the member in the given object.
+     */
+    public short getShort(Object target) {
+        if (target == null)
+            return (short) 0;
+        if (_type != short.class) {
+            Object o = get(target);
+            return (o == null) ? (short) 0 : ((Number) o).shortValue();
+        }
+        MethodHandle get = getter();
+        try {
+            return (short) get.invokeExact(target);
+        } catch (Throwable t) {
+            throw getException(target, t);
+        }
+    }
+
+    /**
+     * Set the value of the member in the given object.
+     */
+    public void set(Object target, Object value) {
+        if (target == null)
+            return;
+        setter();
+        try {
+            _setObject.invokeExact(target, value);
+        } catch (Throwable t) {
+            throw setException(target, value,
+                value == null ? "" : value.getClass(), t);
+        }
+    }
+
+    /**
+     * Set the value of the member in the given object.
+     */
+    public void set(Object target, boolean value) {
+        if (_type != boolean.class) {
+            set(target, (Object) Boolean.valueOf(value));
+            return;
+        }
+        if (target == null)
+            return;
+        MethodHandle set = setter();
+        try {
+            set.invokeExact(target, value);
+        } catch (Throwable t) {
+            throw setException(target, value, "boolean", t);
+        }
+    }
+
+    /**
+     * Set the value of the member in the given object.
+     */
+    public void set(Object target, byte value) {
+        if (_type != byte.class) {
+            set(target, (Object) Byte.valueOf(value));
+            return;
+        }
+        if (target == null)
+            return;
+        MethodHandle set = setter();
+        try {
+            set.invokeExact(target, value);
+        } catch (Throwable t) {
+            throw setException(target, value, "byte", t);
+        }
+    }
+
+    /**
+     * Set the value of the member in the given object.
+     */
+    public void set(Object target, char value) {
+        if (_type != char.class) {
+            set(target, (Object) Character.valueOf(value));
+            return;
+        }
+        if (target == null)
+            return;
+        MethodHandle set = setter();
+        try {
+            set.invokeExact(target, value);
+        } catch (Throwable t) {
+            throw setException(target, value, "char", t);
+        }
+    }
+
+    /**
+     * Set the value of the member in the given object.
+     */
+    public void set(Object target, double value) {
+        if (_type != double.class) {
+            set(target, (Object) Double.valueOf(value));
+            return;
+        }
+        if (target == null)
+            return;
+        MethodHandle set = setter();
+        try {
+            set.invokeExact(target, value);
+        } catch (Throwable t) {
+            throw setException(target, value, "double", t);
+        }
+    }
+
+    /**
+     * Set the value of the member in the given object.
+     */
+    public void set(Object target, float value) {
+        if (_type != float.class) {
+            set(target, (Object) Float.valueOf(value));
+            return;
+        }
+        if (target == null)
+            return;
+        MethodHandle set = setter();
+        try {
+            set.invokeExact(target, value);
+        } catch (Throwable t) {
+            throw setException(target, value, "float", t);
+        }
+    }
+
+    /**
+     * Set the value of the member in the given object.
+     */
+    public void set(Object target, int value) {
+        if (_type != int.class) {
+            set(target, (Object) Integer.valueOf(value));
+            return;
+        }
+        if (target == null)
+            return;
+        MethodHandle set = setter();
+        try {
+            set.invokeExact(target, value);
+        } catch (Throwable t) {
+            throw setException(target, value, "int", t);
+        }
+    }
+
+    /**
+     * Set the value of the member in the given object.
+     */
+    public void set(Object target, long value) {
+        if (_type != long.class) {
+            set(target, (Object) Long.valueOf(value));
+            return;
+        }
+        if (target == null)
+            return;
+        MethodHandle set = setter();
+        try {
+            set.invokeExact(target, value);
+        } catch (Throwable t) {
+            throw setException(target, value, "long", t);
+        }
+    }
+
+    /**
+     * Set the value of the member in the given object.
+     */
+    public void set(Object target, short value) {
+        if (_type != short.class) {
+            set(target, (Object) Short.valueOf(value));
+            return;
+        }
+        if (target == null)
+            return;
+        MethodHandle set = setter();
+        try {
+            set.invokeExact(target, value);
+        } catch (Throwable t) {
+            throw setException(target, value, "short", t);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return _member.toString();
+    }
+}
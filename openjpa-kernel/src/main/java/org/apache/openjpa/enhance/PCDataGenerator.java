@@ -52,7 +52,8 @@ import serp.bytecode.LookupSwitchInstruction;
 /**
  * Generates {@link PCData} instances which avoid primitive wrappers
  * to optimize memory use and performance at the cost of slightly higher
- * startup time.
+ * startup time. The loaded fields of types with no more than 64 fields
+ * are tracked in a single <code>long</code> rather than a {@link BitSet}.
  *
  * @author Steve Kim
  * @since 0.3.2
@@ -65,6 +66,9 @@ public class PCDataGenerator
 
     protected static final String POSTFIX = "$openjpapcdata";
 
+    // types with up to this many fields track loaded fields in a long
+    private static final int MAX_MASK_FIELDS = Long.SIZE;
+
     private final Map<Class<?>, DynamicStorage> _generated = new ConcurrentHashMap<>();
     private final OpenJPAConfiguration _conf;
     private final Log _log;
@@ -154,7 +158,7 @@ public class PCDataGenerator
         super.decorate(obj, bc, types);
         ClassMetaData meta = (ClassMetaData) obj;
 
-        enhanceConstructor(bc);
+        enhanceConstructor(bc, meta);
         addBaseFields(bc);
         addImplDataMethods(bc, meta);
         addFieldImplDataMethods(bc, meta);
@@ -177,7 +181,12 @@ public class PCDataGenerator
     /**
      * Enhance constructor to initialize fields
      */
-    private void enhanceConstructor(BCClass bc) {
+    private void enhanceConstructor(BCClass bc, ClassMetaData meta) {
+        if (meta.getFields().length <= MAX_MASK_FIELDS) {
+            addLoadedMask(bc);
+            return;
+        }
+
         BCMethod cons = bc.getDeclaredMethod("<init>", (String[]) null);
         Code code = cons.getCode(false);
         code.afterLast();
@@ -198,6 +207,110 @@ public class PCDataGenerator
         code.calculateMaxLocals();
     }
 
+    /**
+     * Declare the loaded field mask and the methods exposing it.
+     */
+    private void addLoadedMask(BCClass bc) {
+        // private long loaded;
+        BCField loaded = bc.declareField("loaded", long.class);
+        loaded.setAccessFlags(getFieldAccess());
+
+        // public BitSet getLoaded() {
+        // 		return BitSet.valueOf(new long[]{ loaded });
+        // }
+        BCMethod meth = bc.declareMethod("getLoaded", BitSet.class, null);
+        meth.makePublic();
+        Code code = meth.getCode(true);
+        code.constant().setValue(1);
+        code.newarray().setType(long.class);
+        code.dup();
+        code.constant().setValue(0);
+        code.aload().setThis();
+        code.getfield().setField(loaded);
+        code.lastore();
+        code.invokestatic().setMethod(BitSet.class, "valueOf", BitSet.class,
+            new Class[]{ long[].class });
+        code.areturn();
+        code.calculateMaxStack();
+        code.calculateMaxLocals();
+
+        // public boolean isLoaded(int field) {
+        // 		return (loaded & (1L << field)) != 0;
+        // }
+        meth = bc.declareMethod("isLoaded", boolean.class,
+            new Class[]{ int.class });
+        meth.makePublic();
+        code = meth.getCode(true);
+        code.aload().setThis();
+        code.getfield().setField(loaded);
+        code.constant().setValue(1L);
+        code.iload().setParam(0);
+        code.lshl();
+        code.land();
+        code.constant().setValue(0L);
+        code.lcmp();
+        JumpInstruction ifins = code.ifeq();
+        code.constant().setValue(true);
+        code.ireturn();
+        ifins.setTarget(code.constant().setValue(false));
+        code.ireturn();
+        code.calculateMaxStack();
+        code.calculateMaxLocals();
+    }
+
+    /**
+     * Whether the given generated class tracks loaded fields in a long.
+     */
+    private static boolean usesLoadedMask(BCClass bc) {
+        return "long".equals(bc.getDeclaredField("loaded").getTypeName());
+    }
+
+    /**
+     * Push whether the given field is loaded, with the pcdata on the stack.
+     */
+    private void isLoaded(BCClass bc, Code code, int index) {
+        if (usesLoadedMask(bc)) {
+            // (loaded & (1L << index)) != 0
+            code.getfield().setField("loaded", long.class);
+            code.constant().setValue(1L << index);
+            code.land();
+            code.constant().setValue(0L);
+            code.lcmp();
+        } else {
+            // loaded.get(index)
+            code.getfield().setField("loaded", BitSet.class);
+            code.constant().setValue(index);
+            code.invokevirtual().setMethod(BitSet.class, "get",
+                boolean.class, new Class[]{ int.class });
+        }
+    }
+
+    /**
+     * Mark the given field loaded or not, with the pcdata on the stack.
+     */
+    private void setLoaded(BCClass bc, Code code, int index, boolean loaded) {
+        if (usesLoadedMask(bc)) {
+            // loaded |= 1L << index or loaded &= ~(1L << index)
+            code.dup();
+            code.getfield().setField("loaded", long.class);
+            if (loaded) {
+                code.constant().setValue(1L << index);
+                code.lor();
+            } else {
+                code.constant().setValue(~(1L << index));
+                code.land();
+            }
+            code.putfield().setField("loaded", long.class);
+        } else {
+            // loaded.set(index) or loaded.clear(index)
+            code.getfield().setField("loaded", BitSet.class);
+            code.constant().setValue(index);
+            code.invokevirtual().setMethod(BitSet.class,
+                (loaded) ? "set" : "clear", void.class,
+                new Class[]{ int.class });
+        }
+    }
+
     /**
      * Have to load the type since it may not be available to the
      * same classloader (i.e. rar vs. ear). The context classloader
@@ -549,10 +662,7 @@ public class PCDataGenerator
             intermediate = usesIntermediate(fmds[i]);
             setTarget(code.aload().setThis(), jumps);
             // if (loaded.get(i)) or (!loaded.get(i)) depending on inter resp
-            code.getfield().setField("loaded", BitSet.class);
-            code.constant().setValue(i);
-            code.invokevirtual().setMethod(BitSet.class, "get",
-                boolean.class, new Class[]{ int.class });
+            isLoaded(bc, code, i);
             jumps.add(code.ifne());
 
             if (intermediate)
@@ -610,10 +720,7 @@ public class PCDataGenerator
                 boolean.class, new Class[]{ int.class });
             jumps2.add(code.ifeq());
             code.aload().setThis();
-            code.getfield().setField("loaded", BitSet.class);
-            code.constant().setValue(i);
-            code.invokevirtual().setMethod(BitSet.class, "get",
-                boolean.class, new Class[]{ int.class });
+            isLoaded(bc, code, i);
             if (intermediate)
                 jumps.add(code.ifeq());
             else
@@ -826,10 +933,7 @@ public class PCDataGenerator
                 // else if (!loaded.get(index))
                 setTarget(code.aload().setThis(), jumps);
                 jumps.add(elseIns);
-                code.getfield().setField("loaded", BitSet.class);
-                code.constant().setValue(i);
-                code.invokevirtual().setMethod(BitSet.class, "get",
-                    boolean.class, new Class[]{ int.class });
+                isLoaded(bc, code, i);
                 jumps.add(code.ifne());
                 // Object val = sm.getIntermediate(index);
                 // if (val != null)
@@ -871,10 +975,7 @@ public class PCDataGenerator
                 new Class[]{ int.class });
             code.putfield().setField(getFieldName(index), type);
             code.aload().setThis();
-            code.getfield().setField("loaded", BitSet.class);
-            code.constant().setValue(index);
-            code.invokevirtual().setMethod(BitSet.class, "set", void.class,
-                new Class[]{ int.class });
+            setLoaded(bc, code, index, true);
         } else {
             // Object val = toData(sm.getMetaData().getField(index),
             // 		sm.fetchField(index, false), sm.getContext());
@@ -913,16 +1014,10 @@ public class PCDataGenerator
             code.constant().setNull();
             code.astore().setLocal(local);
             code.aload().setThis();
-            code.getfield().setField("loaded", BitSet.class);
-            code.constant().setValue(index);
-            code.invokevirtual().setMethod(BitSet.class, "clear", void.class,
-                new Class[]{ int.class });
+            setLoaded(bc, code, index, false);
             JumpInstruction go2 = code.go2();
             ifins.setTarget(code.aload().setThis());
-            code.getfield().setField("loaded", BitSet.class);
-            code.constant().setValue(index);
-            code.invokevirtual().setMethod(BitSet.class, "set", void.class,
-                new Class[]{ int.class });
+            setLoaded(bc, code, index, true);
             go2.setTarget(code.aload().setThis());
             code.getfield().setField("objects", Object[].class);
             code.constant().setValue(objectCount);
@@ -937,10 +1032,7 @@ public class PCDataGenerator
         code.aload().setParam(0);
         code.constant().setValue(index);
         code.aload().setThis();
-        code.getfield().setField("loaded", BitSet.class);
-        code.constant().setValue(index);
-        code.invokevirtual().setMethod(BitSet.class, "get", boolean.class,
-            new Class[]{ int.class });
+        isLoaded(bc, code, index);
         code.invokevirtual().setMethod("storeImplData", void.class,
             new Class[]{ OpenJPAStateManager.class, int.class, boolean.class });
     }
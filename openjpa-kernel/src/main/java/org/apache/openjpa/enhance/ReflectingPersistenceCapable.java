@@ -23,7 +23,6 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 
 import org.apache.openjpa.conf.OpenJPAConfiguration;
 import org.apache.openjpa.kernel.OpenJPAStateManager;
@@ -96,45 +95,37 @@ public class ReflectingPersistenceCapable
 
     @Override
     public void pcProvideField(int i) {
-        Object value = getValue(i, o);
+        MemberAccessor accessor = getAccessor(i);
         switch (meta.getField(i).getDeclaredTypeCode()) {
             case JavaTypes.BOOLEAN:
-                sm.providedBooleanField(this, i, value == null ? false :
-                    ((Boolean) value).booleanValue());
+                sm.providedBooleanField(this, i, accessor.getBoolean(o));
                 break;
             case JavaTypes.BYTE:
-                sm.providedByteField(this, i, value == null ? 0 :
-                    ((Byte) value).byteValue());
+                sm.providedByteField(this, i, accessor.getByte(o));
                 break;
             case JavaTypes.CHAR:
-                sm.providedCharField(this, i, value == null ? 0 :
-                    ((Character) value).charValue());
+                sm.providedCharField(this, i, accessor.getChar(o));
                 break;
             case JavaTypes.DOUBLE:
-                sm.providedDoubleField(this, i, value == null ? 0 :
-                    ((Double) value).doubleValue());
+                sm.providedDoubleField(this, i, accessor.getDouble(o));
                 break;
             case JavaTypes.FLOAT:
-                sm.providedFloatField(this, i, value == null ? 0 :
-                    ((Float) value).floatValue());
+                sm.providedFloatField(this, i, accessor.getFloat(o));
                 break;
             case JavaTypes.INT:
-                sm.providedIntField(this, i, value == null ? 0 :
-                    ((Integer) value).intValue());
+                sm.providedIntField(this, i, accessor.getInt(o));
                 break;
             case JavaTypes.LONG:
-                sm.providedLongField(this, i, value == null ? 0 :
-                    ((Long) value).longValue());
+                sm.providedLongField(this, i, accessor.getLong(o));
                 break;
             case JavaTypes.SHORT:
-                sm.providedShortField(this, i, value == null ? 0 :
-                    ((Short) value).shortValue());
+                sm.providedShortField(this, i, accessor.getShort(o));
                 break;
             case JavaTypes.STRING:
-                sm.providedStringField(this, i, (String) value);
+                sm.providedStringField(this, i, (String) accessor.get(o));
                 break;
             default:
-                sm.providedObjectField(this, i, value);
+                sm.providedObjectField(this, i, accessor.get(o));
                 break;
         }
     }
@@ -147,37 +138,37 @@ public class ReflectingPersistenceCapable
 
     @Override
     public void pcReplaceField(int i) {
+        MemberAccessor accessor = setAccessor(i);
         switch(meta.getField(i).getDeclaredTypeCode()) {
             case JavaTypes.BOOLEAN:
-                setValue(i, o, Boolean.valueOf(
-                    sm.replaceBooleanField(this, i)));
+                accessor.set(o, sm.replaceBooleanField(this, i));
                 break;
             case JavaTypes.BYTE:
-                setValue(i, o, Byte.valueOf(sm.replaceByteField(this, i)));
+                accessor.set(o, sm.replaceByteField(this, i));
                 break;
             case JavaTypes.CHAR:
-                setValue(i, o, Character.valueOf(sm.replaceCharField(this, i)));
+                accessor.set(o, sm.replaceCharField(this, i));
                 break;
             case JavaTypes.DOUBLE:
-                setValue(i, o, new Double(sm.replaceDoubleField(this, i)));
+                accessor.set(o, sm.replaceDoubleField(this, i));
                 break;
             case JavaTypes.FLOAT:
-                setValue(i, o, new Float(sm.replaceFloatField(this, i)));
+                accessor.set(o, sm.replaceFloatField(this, i));
                 break;
             case JavaTypes.INT:
-                setValue(i, o, Integer.valueOf(sm.replaceIntField(this, i)));
+                accessor.set(o, sm.replaceIntField(this, i));
                 break;
             case JavaTypes.LONG:
-                setValue(i, o, Long.valueOf(sm.replaceLongField(this, i)));
+                accessor.set(o, sm.replaceLongField(this, i));
                 break;
             case JavaTypes.SHORT:
-                setValue(i, o, Short.valueOf(sm.replaceShortField(this, i)));
+                accessor.set(o, sm.replaceShortField(this, i));
                 break;
             case JavaTypes.STRING:
-                setValue(i, o, sm.replaceStringField(this, i));
+                accessor.set(o, (Object) sm.replaceStringField(this, i));
                 break;
             default:
-                setValue(i, o, sm.replaceObjectField(this, i));
+                accessor.set(o, sm.replaceObjectField(this, i));
                 break;
         }
     }
@@ -191,7 +182,7 @@ public class ReflectingPersistenceCapable
     public void pcCopyField(Object fromObject, int i) {
         // this doesn't need switch treatment because we're just
         // reflecting on both sides, bypassing field managers.
-        setValue(i, o, getValue(i, fromObject));
+        setAccessor(i).set(o, getAccessor(i).get(fromObject));
     }
 
     @Override
@@ -296,7 +287,7 @@ public class ReflectingPersistenceCapable
         FieldMetaData[] pkFields = meta.getPrimaryKeyFields();
         Object[] pks = new Object[pkFields.length];
         for (int i = 0; i < pkFields.length; i++)
-            pks[i] = getValue(pkFields[i].getIndex(), o);
+            pks[i] = getAccessor(pkFields[i].getIndex()).get(o);
         return ApplicationIds.fromPKValues(pks, meta);
     }
 
@@ -315,10 +306,9 @@ public class ReflectingPersistenceCapable
 
         FieldMetaData[] pks = meta.getPrimaryKeyFields();
         for (int i = 0; i < pks.length; i++) {
-            Object val = getValue(pks[i].getIndex(), o);
-            Field f = Reflection.findField(target.getClass(), pks[i].getName(),
-                true);
-            Reflection.set(target, f, val);
+            Object val = getAccessor(pks[i].getIndex()).get(o);
+            Reflection.findFieldAccessor(target.getClass(), pks[i].getName(),
+                true).set(target, val);
         }
     }
 
@@ -367,16 +357,15 @@ public class ReflectingPersistenceCapable
         return o;
     }
 
-    private Object getValue(int i, Object o) {
+    /**
+     * Return the accessor used to read the given field.
+     */
+    private MemberAccessor getAccessor(int i) {
         FieldMetaData fmd = meta.getField(i);
-        if (AccessCode.isProperty(fmd.getAccessType())) {
-            Field field = Reflection.findField(meta.getDescribedType(),
+        if (AccessCode.isProperty(fmd.getAccessType()))
+            return Reflection.findFieldAccessor(meta.getDescribedType(),
                 toFieldName(i), true);
-            return Reflection.get(o, field);
-        } else {
-            Field field = (Field) meta.getField(i).getBackingMember();
-            return Reflection.get(o, field);
-        }
+        return Reflection.getAccessor((Field) fmd.getBackingMember());
     }
 
     private String toFieldName(int i) {
@@ -387,22 +376,19 @@ public class ReflectingPersistenceCapable
             return meta.getField(i).getName();
     }
 
-    private void setValue(int i, Object o, Object val) {
+    /**
+     * Return the accessor used to write the given field.
+     */
+    private MemberAccessor setAccessor(int i) {
         FieldMetaData fmd = meta.getField(i);
         if (AccessCode.isProperty(fmd.getAccessType())) {
-            if (!meta.isIntercepting()) {
-                Method meth = Reflection.findSetter(meta.getDescribedType(),
-                    meta.getField(i).getName(), true);
-                Reflection.set(o, meth, val);
-            } else {
-                Field field = Reflection.findField(meta.getDescribedType(),
-                    toFieldName(i), true);
-                Reflection.set(o, field, val);
-            }
-        } else {
-            Field field = (Field) meta.getField(i).getBackingMember();
-            Reflection.set(o, field, val);
+            if (!meta.isIntercepting())
+                return Reflection.findSetterAccessor(meta.getDescribedType(),
+                    fmd.getName(), null, true);
+            return Reflection.findFieldAccessor(meta.getDescribedType(),
+                toFieldName(i), true);
         }
+        return Reflection.getAccessor((Field) fmd.getBackingMember());
     }
 
     private void writeObject(ObjectOutputStream out) throws IOException {
@@ -58,6 +58,35 @@ public class Reflection {
     private static Map<Class<?>, Set<String>> beanPropertiesNameCache =
         new ConcurrentReferenceHashMap(ReferenceStrength.WEAK, ReferenceStrength.HARD);
 
+    // Weak HashMap caches of field/getter/setter accessors
+    private static Map<Class<?>, Map<String, MemberAccessor>> fieldAccessorCache =
+        new ConcurrentReferenceHashMap(ReferenceStrength.WEAK, ReferenceStrength.HARD);
+    private static Map<Class<?>, Map<String, MemberAccessor>> getterAccessorCache =
+        new ConcurrentReferenceHashMap(ReferenceStrength.WEAK, ReferenceStrength.HARD);
+    private static Map<Class<?>, Map<String, MemberAccessor>> setterAccessorCache =
+        new ConcurrentReferenceHashMap(ReferenceStrength.WEAK, ReferenceStrength.HARD);
+
+    private static MemberAccessor getCachedAccessor(
+        Map<Class<?>, Map<String, MemberAccessor>> cache, Class<?> cls,
+        String name) {
+        Map<String, MemberAccessor> clsMap = cache.get(cls);
+        return (clsMap == null) ? null : clsMap.get(name);
+    }
+
+    private static void setCachedAccessor(
+        Map<Class<?>, Map<String, MemberAccessor>> cache, Class<?> cls,
+        String name, MemberAccessor accessor) {
+        Map<String, MemberAccessor> clsMap = cache.get(cls);
+        if (clsMap == null) {
+            // accessors reference their class; hold them softly so that
+            // the weak class keys can still be collected
+            clsMap = new ConcurrentReferenceHashMap(ReferenceStrength.HARD,
+                ReferenceStrength.SOFT);
+            cache.put(cls, clsMap);
+        }
+        clsMap.put(name, accessor);
+    }
+
     private static Method getGetterMethod(Class<?> cls, String prop) {
         Method rtnMethod = null;
         Map<String, Method> clsMap = getterMethodCache.get(cls);
@@ -269,6 +298,66 @@ public class Reflection {
         return null;
     }
 
+    /**
+     * Return the cached accessor for the field with the given name, optionally
+     * throwing an exception if none.
+     */
+    public static MemberAccessor findFieldAccessor(Class cls, String name,
+        boolean mustExist) {
+        MemberAccessor accessor = getCachedAccessor(fieldAccessorCache, cls, name);
+        if (accessor != null)
+            return accessor;
+        Field f = findField(cls, name, mustExist);
+        if (f == null)
+            return null;
+        accessor = new MemberAccessor(f);
+        setCachedAccessor(fieldAccessorCache, cls, name, accessor);
+        return accessor;
+    }
+
+    /**
+     * Return the cached accessor for the given field.
+     */
+    public static MemberAccessor getAccessor(Field field) {
+        return findFieldAccessor(field.getDeclaringClass(), field.getName(),
+            true);
+    }
+
+    /**
+     * Return the cached accessor for the getter method matching the given
+     * property name, optionally throwing an exception if none.
+     */
+    public static MemberAccessor findGetterAccessor(Class cls, String prop,
+        boolean mustExist) {
+        MemberAccessor accessor = getCachedAccessor(getterAccessorCache, cls, prop);
+        if (accessor != null)
+            return accessor;
+        Method m = findGetter(cls, prop, mustExist);
+        if (m == null)
+            return null;
+        accessor = new MemberAccessor(m);
+        setCachedAccessor(getterAccessorCache, cls, prop, accessor);
+        return accessor;
+    }
+
+    /**
+     * Return the cached accessor for the setter method matching the given
+     * property name, optionally throwing an exception if none.
+     */
+    public static MemberAccessor findSetterAccessor(Class cls, String prop,
+        Class param, boolean mustExist) {
+        MemberAccessor accessor = getCachedAccessor(setterAccessorCache, cls, prop);
+        if (accessor != null)
+            return accessor;
+        Method m = (param == null) ? findSetter(cls, prop, mustExist)
+            : findSetter(cls, prop, param, mustExist);
+        if (m == null)
+            return null;
+        accessor = new MemberAccessor(m);
+        setCachedAccessor(setterAccessorCache, cls, prop, accessor);
+        return accessor;
+    }
+
     /**
      * Invokes <code>cls.getDeclaredFields()</code>, and returns the field
      * that matches the <code>name</code> argument.  Avoids the exception
@@ -341,7 +430,7 @@ public class Reflection {
     /**
      * Wrap the given reflection exception as a runtime exception.
      */
-    private static RuntimeException wrapReflectionException(Throwable t, Message message) {
+    static RuntimeException wrapReflectionException(Throwable t, Message message) {
         if (t instanceof InvocationTargetException)
             t = ((InvocationTargetException) t).getTargetException();
         t.initCause(new IllegalArgumentException(message.getMessage()));
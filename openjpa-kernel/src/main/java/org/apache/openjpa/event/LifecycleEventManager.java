@@ -20,14 +20,14 @@ package org.apache.openjpa.event;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.collections4.map.AbstractReferenceMap.ReferenceStrength;
 import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.lib.util.concurrent.ConcurrentReferenceHashMap;
 import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.meta.MetaDataDefaults;
 import org.apache.openjpa.util.InvalidStateException;
@@ -35,11 +35,14 @@ import org.apache.openjpa.util.InvalidStateException;
 /**
  * Manager that can be used to track and notify listeners on lifecycle events.
  *  This class is optimized for event firing rather than for adding and
- * removing listeners, which are O(n) operations. This class also does not
- * maintain perfect set semantics for listeners; it is possible to wind up
- * having the same listener invoked multiple times for a single event if it
- * is added to this manager multiple times with different classes, or with
- * a base class and its subclass.
+ * removing listeners, which copy the registered listeners. Events are fired
+ * without locking: the listeners to notify of each event type are computed
+ * once per source class from an immutable snapshot of the registrations,
+ * and a class without listeners costs a single lookup. This class also does
+ * not maintain perfect set semantics for listeners; it is possible to wind
+ * up having the same listener invoked multiple times for a single event if
+ * it is added to this manager multiple times with different classes, or
+ * with a base class and its subclass.
  *
  * @author Steve Kim
  * @author Abe White
@@ -51,20 +54,26 @@ public class LifecycleEventManager
     private static final long serialVersionUID = 1L;
 
     private static final Exception[] EMPTY_EXCEPTIONS = new Exception[0];
+    private static final Object[] NO_LISTENERS = new Object[0];
+    private static final Object[][] NO_TABLE = new Object[0][];
+
+    // number of event types; types are indexes into per-class tables
+    private static final int TYPES;
+    static {
+        int max = 0;
+        for (int i = 0; i < LifecycleEvent.ALL_EVENTS.length; i++)
+            max = Math.max(max, LifecycleEvent.ALL_EVENTS[i]);
+        TYPES = max + 1;
+    }
 
     private static final Localizer _loc = Localizer.forPackage(
         LifecycleEventManager.class);
 
-    private Map<Class<?>, ListenerList> _classListeners = null;
-    private ListenerList _listeners = null;
-    // odd-element: Listener even-element: Class[]
-    private List<Object> _addListeners = new LinkedList<>();
-    private List<Object> _remListeners = new LinkedList<>();
-    private List<Exception> _exceps = new LinkedList<>();
-    private boolean _firing = false;
-    private boolean _fail = false;
-    private boolean _failFast = false;
-    private boolean _activated = false;  // set to true once modified
+    // replaced as a whole when listeners are added or removed, so that
+    // events fired concurrently see a consistent set of listeners
+    private volatile Listeners _listeners = new Listeners(null, null);
+    private volatile boolean _failFast = false;
+    private volatile boolean _activated = false;  // set to true once modified
 
     /**
      * Whether this LifeCycleEventManager has had at least one listener or callback
@@ -101,51 +110,14 @@ public class LifecycleEventManager
         if (classes != null && classes.length == 0)
             return;
         _activated = true;
-        if (_firing) {
-            _addListeners.add(listener);
-            _addListeners.add(classes);
-            return;
-        }
-
-        if (classes == null) {
-            if (_listeners == null)
-                _listeners = new ListenerList(5);
-            _listeners.add(listener);
-            return;
-        }
-
-        if (_classListeners == null)
-            _classListeners = new HashMap<>();
-        ListenerList listeners;
-        for (int i = 0; i < classes.length; i++) {
-            listeners = _classListeners.get(classes[i]);
-            if (listeners == null) {
-                listeners = new ListenerList(3);
-                _classListeners.put(classes[i], listeners);
-            }
-            listeners.add(listener);
-        }
+        _listeners = _listeners.add(listener, classes);
     }
 
     /**
      * Remove the given listener.
      */
     public synchronized void removeListener(Object listener) {
-        if (_firing) {
-            _remListeners.add(listener);
-            return;
-        }
-
-        if (_listeners != null && _listeners.remove(listener))
-            return;
-        if (_classListeners != null) {
-            ListenerList listeners;
-            for (Iterator<ListenerList> itr = _classListeners.values().iterator();
-                itr.hasNext();) {
-                listeners = itr.next();
-                listeners.remove(listener);
-            }
-        }
+        _listeners = _listeners.remove(listener);
     }
 
     /**
@@ -250,23 +222,25 @@ public class LifecycleEventManager
         ClassMetaData meta, int type) {
         if (meta.getLifecycleMetaData().getIgnoreSystemListeners())
             return false;
-        if (fireEvent(null, source, null, type, _listeners, true, null) == Boolean.TRUE)
+        if (_listeners.get(getSourceType(source, meta), type).length > 0)
             return true;
         ListenerList system = meta.getRepository().getSystemListeners();
-        if (!system.isEmpty() && fireEvent(null, source, null, type, system,
-            true, null) == Boolean.TRUE)
-            return true;
-        if (_classListeners != null) {
-            Class<?> c = source == null ? meta.getDescribedType() : source.getClass();
-            do {
-                if (fireEvent(null, source, null, type, _classListeners.get(c), true, null) == Boolean.TRUE)
-                    return true;
-                c = c.getSuperclass();
-            } while (c != null && c != Object.class);
-        }
+        if (!system.hasListeners(type))
+            return false;
+        for (int i = 0, size = system.size(); i < size; i++)
+            if (size == 1 || respondsTo(system.get(i), type))
+                return true;
         return false;
     }
 
+    /**
+     * Return the class whose listeners are notified of events of the
+     * given source.
+     */
+    private static Class<?> getSourceType(Object source, ClassMetaData meta) {
+        return (source == null) ? meta.getDescribedType() : source.getClass();
+    }
+
     /**
      * Fire lifecycle event to all registered listeners without an argument.
      */
@@ -276,271 +250,378 @@ public class LifecycleEventManager
     }
 
     /**
-     * Fire lifecycle event to all registered listeners.
+     * Fire lifecycle event to all registered listeners. Listeners added or
+     * removed while the event is fired are not considered for it.
      */
-    public synchronized Exception[] fireEvent(Object source, Object related,
+    public Exception[] fireEvent(Object source, Object related,
         ClassMetaData meta, int type) {
-        boolean reentrant = _firing;
-        _firing = true;
-        List<Exception> exceptions = (reentrant) ? new LinkedList<>() : _exceps;
         MetaDataDefaults def = meta.getRepository().getMetaDataFactory().
             getDefaults();
 
+        List<Exception> exceptions = null;
         boolean callbacks = def.getCallbacksBeforeListeners(type);
         if (callbacks)
-            makeCallbacks(source, related, meta, type, exceptions);
-
-        LifecycleEvent ev = (LifecycleEvent) fireEvent(null, source, related,
-            type, _listeners, false, exceptions);
-
-        if (_classListeners != null) {
-            Class<?> c = source == null ? meta.getDescribedType() : source.getClass();
-            do {
-                ev = (LifecycleEvent) fireEvent(ev, source, related, type,
-                    _classListeners.get(c), false, exceptions);
-                c = c.getSuperclass();
-            } while (c != null && c != Object.class);
+            exceptions = makeCallbacks(source, related, meta, type,
+                exceptions);
+
+        // listeners for all classes, then for the source class and its
+        // superclasses, then system listeners
+        Object[] listeners = _listeners.get(getSourceType(source, meta), type);
+        LifecycleEvent ev = null;
+        for (int i = 0; i < listeners.length && !isFailed(exceptions); i++) {
+            if (ev == null)
+                ev = newEvent(source, related, type);
+            exceptions = fireEvent(ev, listeners[i], type, exceptions);
         }
 
-        // make system listeners
         if (!meta.getLifecycleMetaData().getIgnoreSystemListeners()) {
             ListenerList system = meta.getRepository().getSystemListeners();
-            fireEvent(ev, source, related, type, system, false, exceptions);
+            if (system.hasListeners(type)) {
+                Object listener;
+                for (int i = 0, size = system.size();
+                    i < size && !isFailed(exceptions); i++) {
+                    listener = system.get(i);
+                    if (size > 1 && !respondsTo(listener, type))
+                        continue;
+                    if (ev == null)
+                        ev = newEvent(source, related, type);
+                    exceptions = fireEvent(ev, listener, type, exceptions);
+                }
+            }
         }
 
         if (!callbacks)
-            makeCallbacks(source, related, meta, type, exceptions);
-
-        // create return array before clearing exceptions
-        Exception[] ret;
-        if (exceptions.isEmpty())
-            ret = EMPTY_EXCEPTIONS;
-        else
-            ret = exceptions.toArray
-                (new Exception[exceptions.size()]);
-
-        // if this wasn't a reentrant call, catch up with calls to add
-        // and remove listeners made while firing
-        if (!reentrant) {
-            _firing = false;
-            _fail = false;
-            if (!_addListeners.isEmpty())
-                for (Iterator<Object> itr = _addListeners.iterator(); itr.hasNext();)
-                    addListener(itr.next(), (Class[]) itr.next());
-            if (!_remListeners.isEmpty())
-                for (Iterator<Object> itr = _remListeners.iterator(); itr.hasNext();)
-                    removeListener(itr.next());
-            _addListeners.clear();
-            _remListeners.clear();
-            _exceps.clear();
-        }
-        return ret;
+            exceptions = makeCallbacks(source, related, meta, type,
+                exceptions);
+
+        if (exceptions == null || exceptions.isEmpty())
+            return EMPTY_EXCEPTIONS;
+        return exceptions.toArray(new Exception[exceptions.size()]);
+    }
+
+    /**
+     * Whether firing has to stop because of the given exceptions.
+     */
+    private boolean isFailed(List<Exception> exceptions) {
+        return _failFast && exceptions != null && !exceptions.isEmpty();
+    }
+
+    /**
+     * Add the given exception to the given list, which is created if null.
+     */
+    private static List<Exception> addException(List<Exception> exceptions,
+        Exception e) {
+        if (exceptions == null)
+            exceptions = new ArrayList<>(3);
+        exceptions.add(e);
+        return exceptions;
     }
 
     /**
-     * Make callbacks, recording any exceptions in the given collection.
+     * Make callbacks, recording any exceptions in the given list.
+     *
+     * @return the list of exceptions, which may have been created
      */
-    private void makeCallbacks(Object source, Object related,
-        ClassMetaData meta, int type, Collection<Exception> exceptions) {
+    private List<Exception> makeCallbacks(Object source, Object related,
+        ClassMetaData meta, int type, List<Exception> exceptions) {
         // make lifecycle callbacks
         LifecycleCallbacks[] callbacks = meta.getLifecycleMetaData().
             getCallbacks(type);
-        for (int i = 0; !_fail && i < callbacks.length; i++) {
+        for (int i = 0; !isFailed(exceptions) && i < callbacks.length; i++) {
             try {
                 callbacks[i].makeCallback(source, related, type);
             } catch (Exception e) {
-                exceptions.add(e);
-                if (_failFast)
-                    _fail = true;
+                exceptions = addException(exceptions, e);
             }
         }
+        return exceptions;
     }
 
     /**
-     * Fire an event with the given source and type to the given list of
-     * listeners. The event may have already been constructed.
+     * Create the event passed to the listeners of the given type.
      */
-    private Object fireEvent(LifecycleEvent ev, Object source, Object rel,
-        int type, ListenerList listeners, boolean mock, List<Exception> exceptions) {
-        if (listeners == null || !listeners.hasListeners(type))
-            return null;
-
-        Object listener;
-        boolean responds;
-        for (int i = 0, size = listeners.size(); !_fail && i < size; i++) {
-            listener = listeners.get(i);
-            if (size == 1)
-                responds = true;
-            else if (listener instanceof ListenerAdapter) {
-                responds = ((ListenerAdapter) listener).respondsTo(type);
-                if (!responds)
-                    continue;
-            } else {
-                responds = false;
+    private static LifecycleEvent newEvent(Object source, Object rel,
+        int type) {
+        switch (type) {
+            case LifecycleEvent.BEFORE_DETACH:
+            case LifecycleEvent.AFTER_DETACH:
+            case LifecycleEvent.BEFORE_ATTACH:
+            case LifecycleEvent.AFTER_ATTACH:
+            case LifecycleEvent.AFTER_PERSIST_PERFORMED:
+            case LifecycleEvent.BEFORE_UPDATE:
+            case LifecycleEvent.AFTER_UPDATE_PERFORMED:
+            case LifecycleEvent.AFTER_DELETE_PERFORMED:
+                return new LifecycleEvent(source, rel, type);
+            default:
+                return new LifecycleEvent(source, type);
+        }
+    }
+
+    /**
+     * Return whether the given listener responds to events of the given
+     * type.
+     */
+    private static boolean respondsTo(Object listener, int type) {
+        if (listener instanceof ListenerAdapter)
+            return ((ListenerAdapter) listener).respondsTo(type);
+
+        switch (type) {
+            case LifecycleEvent.BEFORE_CLEAR:
+            case LifecycleEvent.AFTER_CLEAR:
+                return listener instanceof ClearListener;
+            case LifecycleEvent.BEFORE_PERSIST:
+            case LifecycleEvent.AFTER_PERSIST:
+                return listener instanceof PersistListener;
+            case LifecycleEvent.BEFORE_DELETE:
+            case LifecycleEvent.AFTER_DELETE:
+                return listener instanceof DeleteListener;
+            case LifecycleEvent.BEFORE_DIRTY:
+            case LifecycleEvent.AFTER_DIRTY:
+            case LifecycleEvent.BEFORE_DIRTY_FLUSHED:
+            case LifecycleEvent.AFTER_DIRTY_FLUSHED:
+                return listener instanceof DirtyListener;
+            case LifecycleEvent.AFTER_LOAD:
+            case LifecycleEvent.AFTER_REFRESH:
+                return listener instanceof LoadListener;
+            case LifecycleEvent.BEFORE_STORE:
+            case LifecycleEvent.AFTER_STORE:
+                return listener instanceof StoreListener;
+            case LifecycleEvent.BEFORE_DETACH:
+            case LifecycleEvent.AFTER_DETACH:
+                return listener instanceof DetachListener;
+            case LifecycleEvent.BEFORE_ATTACH:
+            case LifecycleEvent.AFTER_ATTACH:
+                return listener instanceof AttachListener;
+            case LifecycleEvent.AFTER_PERSIST_PERFORMED:
+                return listener instanceof PostPersistListener;
+            case LifecycleEvent.BEFORE_UPDATE:
+            case LifecycleEvent.AFTER_UPDATE_PERFORMED:
+                return listener instanceof UpdateListener;
+            case LifecycleEvent.AFTER_DELETE_PERFORMED:
+                return listener instanceof PostDeleteListener;
+            default:
+                // let the listener fail with an unknown event
+                return true;
+        }
+    }
+
+    /**
+     * Fire the given event to the given listener, which responds to its type.
+     *
+     * @return the list of exceptions, which may have been created
+     */
+    private List<Exception> fireEvent(LifecycleEvent ev, Object listener,
+        int type, List<Exception> exceptions) {
+        try {
+            switch (type) {
+                case LifecycleEvent.BEFORE_CLEAR:
+                    ((ClearListener) listener).beforeClear(ev);
+                    break;
+                case LifecycleEvent.AFTER_CLEAR:
+                    ((ClearListener) listener).afterClear(ev);
+                    break;
+                case LifecycleEvent.BEFORE_PERSIST:
+                    ((PersistListener) listener).beforePersist(ev);
+                    break;
+                case LifecycleEvent.AFTER_PERSIST:
+                    ((PersistListener) listener).afterPersist(ev);
+                    break;
+                case LifecycleEvent.BEFORE_DELETE:
+                    ((DeleteListener) listener).beforeDelete(ev);
+                    break;
+                case LifecycleEvent.AFTER_DELETE:
+                    ((DeleteListener) listener).afterDelete(ev);
+                    break;
+                case LifecycleEvent.BEFORE_DIRTY:
+                    ((DirtyListener) listener).beforeDirty(ev);
+                    break;
+                case LifecycleEvent.AFTER_DIRTY:
+                    ((DirtyListener) listener).afterDirty(ev);
+                    break;
+                case LifecycleEvent.BEFORE_DIRTY_FLUSHED:
+                    ((DirtyListener) listener).beforeDirtyFlushed(ev);
+                    break;
+                case LifecycleEvent.AFTER_DIRTY_FLUSHED:
+                    ((DirtyListener) listener).afterDirtyFlushed(ev);
+                    break;
+                case LifecycleEvent.AFTER_LOAD:
+                    ((LoadListener) listener).afterLoad(ev);
+                    break;
+                case LifecycleEvent.AFTER_REFRESH:
+                    ((LoadListener) listener).afterRefresh(ev);
+                    break;
+                case LifecycleEvent.BEFORE_STORE:
+                    ((StoreListener) listener).beforeStore(ev);
+                    break;
+                case LifecycleEvent.AFTER_STORE:
+                    ((StoreListener) listener).afterStore(ev);
+                    break;
+                case LifecycleEvent.BEFORE_DETACH:
+                    ((DetachListener) listener).beforeDetach(ev);
+                    break;
+                case LifecycleEvent.AFTER_DETACH:
+                    ((DetachListener) listener).afterDetach(ev);
+                    break;
+                case LifecycleEvent.BEFORE_ATTACH:
+                    ((AttachListener) listener).beforeAttach(ev);
+                    break;
+                case LifecycleEvent.AFTER_ATTACH:
+                    ((AttachListener) listener).afterAttach(ev);
+                    break;
+                case LifecycleEvent.AFTER_PERSIST_PERFORMED:
+                    ((PostPersistListener) listener).afterPersistPerformed(ev);
+                    break;
+                case LifecycleEvent.BEFORE_UPDATE:
+                    ((UpdateListener) listener).beforeUpdate(ev);
+                    break;
+                case LifecycleEvent.AFTER_UPDATE_PERFORMED:
+                    ((UpdateListener) listener).afterUpdatePerformed(ev);
+                    break;
+                case LifecycleEvent.AFTER_DELETE_PERFORMED:
+                    ((PostDeleteListener) listener).afterDeletePerformed(ev);
+                    break;
+                default:
+                    throw new InvalidStateException(_loc.get("unknown-lifecycle-event", Integer.toString(type)));
             }
-            try {
-                switch (type) {
-                    case LifecycleEvent.BEFORE_CLEAR:
-                    case LifecycleEvent.AFTER_CLEAR:
-                        if (responds || listener instanceof ClearListener) {
-                            if (mock)
-                                return Boolean.TRUE;
-                            if (ev == null)
-                                ev = new LifecycleEvent(source, type);
-                            if (type == LifecycleEvent.BEFORE_CLEAR)
-                                ((ClearListener) listener).beforeClear(ev);
-                            else
-                                ((ClearListener) listener).afterClear(ev);
-                        }
-                        break;
-                    case LifecycleEvent.BEFORE_PERSIST:
-                    case LifecycleEvent.AFTER_PERSIST:
-                        if (responds || listener instanceof PersistListener) {
-                            if (mock)
-                                return Boolean.TRUE;
-                            if (ev == null)
-                                ev = new LifecycleEvent(source, type);
-                            if (type == LifecycleEvent.BEFORE_PERSIST)
-                                ((PersistListener) listener).beforePersist(ev);
-                            else
-                                ((PersistListener) listener).afterPersist(ev);
-                        }
-                        break;
-                    case LifecycleEvent.BEFORE_DELETE:
-                    case LifecycleEvent.AFTER_DELETE:
-                        if (responds || listener instanceof DeleteListener) {
-                            if (mock)
-                                return Boolean.TRUE;
-                            if (ev == null)
-                                ev = new LifecycleEvent(source, type);
-                            if (type == LifecycleEvent.BEFORE_DELETE)
-                                ((DeleteListener) listener).beforeDelete(ev);
-                            else
-                                ((DeleteListener) listener).afterDelete(ev);
-                        }
-                        break;
-                    case LifecycleEvent.BEFORE_DIRTY:
-                    case LifecycleEvent.AFTER_DIRTY:
-                    case LifecycleEvent.BEFORE_DIRTY_FLUSHED:
-                    case LifecycleEvent.AFTER_DIRTY_FLUSHED:
-                        if (responds || listener instanceof DirtyListener) {
-                            if (mock)
-                                return Boolean.TRUE;
-                            if (ev == null)
-                                ev = new LifecycleEvent(source, type);
-                            switch (type) {
-                                case LifecycleEvent.BEFORE_DIRTY:
-                                    ((DirtyListener) listener).beforeDirty(ev);
-                                    break;
-                                case LifecycleEvent.AFTER_DIRTY:
-                                    ((DirtyListener) listener).afterDirty(ev);
-                                    break;
-                                case LifecycleEvent.BEFORE_DIRTY_FLUSHED:
-                                    ((DirtyListener) listener)
-                                        .beforeDirtyFlushed(ev);
-                                    break;
-                                case LifecycleEvent.AFTER_DIRTY_FLUSHED:
-                                    ((DirtyListener) listener)
-                                        .afterDirtyFlushed(ev);
-                                    break;
-                            }
-                        }
-                        break;
-                    case LifecycleEvent.AFTER_LOAD:
-                    case LifecycleEvent.AFTER_REFRESH:
-                        if (responds || listener instanceof LoadListener) {
-                            if (mock)
-                                return Boolean.TRUE;
-                            if (ev == null)
-                                ev = new LifecycleEvent(source, type);
-                            if (type == LifecycleEvent.AFTER_LOAD)
-                                ((LoadListener) listener).afterLoad(ev);
-                            else
-                                ((LoadListener) listener).afterRefresh(ev);
-                        }
-                        break;
-                    case LifecycleEvent.BEFORE_STORE:
-                    case LifecycleEvent.AFTER_STORE:
-                        if (responds || listener instanceof StoreListener) {
-                            if (mock)
-                                return Boolean.TRUE;
-                            if (ev == null)
-                                ev = new LifecycleEvent(source, type);
-                            if (type == LifecycleEvent.BEFORE_STORE)
-                                ((StoreListener) listener).beforeStore(ev);
-                            else
-                                ((StoreListener) listener).afterStore(ev);
-                        }
-                        break;
-                    case LifecycleEvent.BEFORE_DETACH:
-                    case LifecycleEvent.AFTER_DETACH:
-                        if (responds || listener instanceof DetachListener) {
-                            if (mock)
-                                return Boolean.TRUE;
-                            if (ev == null)
-                                ev = new LifecycleEvent(source, rel, type);
-                            if (type == LifecycleEvent.BEFORE_DETACH)
-                                ((DetachListener) listener).beforeDetach(ev);
-                            else
-                                ((DetachListener) listener).afterDetach(ev);
-                        }
-                        break;
-                    case LifecycleEvent.BEFORE_ATTACH:
-                    case LifecycleEvent.AFTER_ATTACH:
-                        if (responds || listener instanceof AttachListener) {
-                            if (mock)
-                                return Boolean.TRUE;
-                            if (ev == null)
-                                ev = new LifecycleEvent(source, rel, type);
-                            if (type == LifecycleEvent.BEFORE_ATTACH)
-                                ((AttachListener) listener).beforeAttach(ev);
-                            else
-                                ((AttachListener) listener).afterAttach(ev);
-                        }
-                        break;
-
-                    case LifecycleEvent.AFTER_PERSIST_PERFORMED:
-                        if (responds || listener instanceof PostPersistListener) {
-                            if (mock)
-                                return Boolean.TRUE;
-                            if (ev == null)
-                                ev = new LifecycleEvent(source, rel, type);
-                            ((PostPersistListener) listener).afterPersistPerformed(ev);
-                        }
-                        break;
-                    case LifecycleEvent.BEFORE_UPDATE:
-                    case LifecycleEvent.AFTER_UPDATE_PERFORMED:
-                        if (responds || listener instanceof UpdateListener) {
-                            if (mock)
-                                return Boolean.TRUE;
-                            if (ev == null)
-                                ev = new LifecycleEvent(source, rel, type);
-                            if (type == LifecycleEvent.BEFORE_UPDATE)
-                                ((UpdateListener) listener).beforeUpdate(ev);
-                            else
-                                ((UpdateListener) listener).afterUpdatePerformed(ev);
-                        }
-                        break;
-                    case LifecycleEvent.AFTER_DELETE_PERFORMED:
-                        if (responds || listener instanceof PostDeleteListener){
-                            if (mock)
-                                return Boolean.TRUE;
-                            if (ev == null)
-                                ev = new LifecycleEvent(source, rel, type);
-                            ((PostDeleteListener) listener).afterDeletePerformed(ev);
-                        }
-                        break;
-                    default:
-                        throw new InvalidStateException(_loc.get("unknown-lifecycle-event", Integer.toString(type)));
+        } catch (Exception e) {
+            exceptions = addException(exceptions, e);
+        }
+        return exceptions;
+    }
+
+    /**
+     * Immutable registrations of listeners, with the listeners to notify
+     * of each event type computed lazily per source class.
+     */
+    private static class Listeners
+        implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ListenerList _all;
+        private final Map<Class<?>, ListenerList> _byClass;
+
+        // source class -> listeners by event type, or NO_TABLE if none;
+        // weak keys so that the classes of redeployed units can be unloaded
+        private transient volatile Map<Class<?>, Object[][]> _tables = null;
+
+        Listeners(ListenerList all, Map<Class<?>, ListenerList> byClass) {
+            _all = all;
+            _byClass = byClass;
+        }
+
+        /**
+         * Return a copy of these registrations with the given listener
+         * added for the given classes, or for all classes if null.
+         */
+        Listeners add(Object listener, Class<?>[] classes) {
+            if (classes == null) {
+                ListenerList all = (_all == null) ? new ListenerList(5)
+                    : new ListenerList(_all);
+                all.add(listener);
+                return new Listeners(all, _byClass);
+            }
+
+            Map<Class<?>, ListenerList> byClass = (_byClass == null)
+                ? new HashMap<>() : new HashMap<>(_byClass);
+            ListenerList listeners;
+            for (int i = 0; i < classes.length; i++) {
+                listeners = byClass.get(classes[i]);
+                listeners = (listeners == null) ? new ListenerList(3)
+                    : new ListenerList(listeners);
+                listeners.add(listener);
+                byClass.put(classes[i], listeners);
+            }
+            return new Listeners(_all, byClass);
+        }
+
+        /**
+         * Return a copy of these registrations without the given listener.
+         */
+        Listeners remove(Object listener) {
+            if (_all != null && _all.contains(listener)) {
+                ListenerList all = new ListenerList(_all);
+                all.remove(listener);
+                return new Listeners(all, _byClass);
+            }
+            if (_byClass == null)
+                return this;
+
+            Map<Class<?>, ListenerList> byClass = new HashMap<>(_byClass);
+            boolean removed = false;
+            ListenerList listeners;
+            for (Map.Entry<Class<?>, ListenerList> entry
+                : byClass.entrySet()) {
+                if (entry.getValue().contains(listener)) {
+                    listeners = new ListenerList(entry.getValue());
+                    listeners.remove(listener);
+                    entry.setValue(listeners);
+                    removed = true;
                 }
             }
-            catch (Exception e) {
-                exceptions.add(e);
-                if (_failFast)
-                    _fail = true;
+            return (removed) ? new Listeners(_all, byClass) : this;
+        }
+
+        /**
+         * Return the listeners to notify of events of the given type with
+         * a source of the given class.
+         */
+        Object[] get(Class<?> cls, int type) {
+            if (_all == null && _byClass == null)
+                return NO_LISTENERS;
+
+            Map<Class<?>, Object[][]> tables = _tables;
+            if (tables == null) {
+                tables = new ConcurrentReferenceHashMap(ReferenceStrength.WEAK,
+                    ReferenceStrength.HARD);
+                _tables = tables;
+            }
+            Object[][] table = tables.get(cls);
+            if (table == null) {
+                table = newTable(cls);
+                tables.put(cls, table);
             }
+            return (table == NO_TABLE) ? NO_LISTENERS : table[type];
+        }
+
+        /**
+         * Compute the listeners to notify of each event type for a source
+         * of the given class: listeners for all classes first, then those
+         * for the class itself and for each of its superclasses.
+         */
+        private Object[][] newTable(Class<?> cls) {
+            Object[][] table = null;
+            List<Object> listeners = new ArrayList<>();
+            for (int type = 0; type < TYPES; type++) {
+                listeners.clear();
+                collect(_all, type, listeners);
+                if (_byClass != null) {
+                    Class<?> c = cls;
+                    do {
+                        collect(_byClass.get(c), type, listeners);
+                        c = c.getSuperclass();
+                    } while (c != null && c != Object.class);
+                }
+                if (listeners.isEmpty())
+                    continue;
+
+                if (table == null) {
+                    table = new Object[TYPES][];
+                    Arrays.fill(table, NO_LISTENERS);
+                }
+                table[type] = listeners.toArray();
+            }
+            return (table == null) ? NO_TABLE : table;
+        }
+
+        private static void collect(ListenerList listeners, int type,
+            List<Object> out) {
+            if (listeners == null || !listeners.hasListeners(type))
+                return;
+            for (int i = 0, size = listeners.size(); i < size; i++)
+                if (size == 1 || respondsTo(listeners.get(i), type))
+                    out.add(listeners.get(i));
         }
-        return ev;
     }
 
     /**
@@ -22,8 +22,10 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.io.OptionalDataException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 
 import org.apache.openjpa.kernel.BrokerFactory;
 import org.apache.openjpa.lib.util.Localizer;
@@ -65,6 +67,10 @@ public class RemoteCommitEvent
      */
     public static final int PAYLOAD_LOCAL_STALE_DETECTION = 3;
 
+    // the computed value of the class before versions were added, so that
+    // events are exchanged with nodes running earlier releases
+    private static final long serialVersionUID = 8323065900472910342L;
+
     private static final Localizer s_loc = Localizer.forPackage
         (RemoteCommitEvent.class);
 
@@ -73,6 +79,8 @@ public class RemoteCommitEvent
     private Collection _addClasses = null;
     private Collection _updates = null;
     private Collection _deletes = null;
+    private Map _versions = null;
+    private Map _states = null;
 
     /**
      * Constructor used during externalization.
@@ -102,6 +110,28 @@ public class RemoteCommitEvent
             _deletes = Collections.unmodifiableCollection(deletes);
     }
 
+    /**
+     * Constructor for events that carry the versions and optionally the
+     * committed state of updated instances. All collections and maps will be
+     * proxied with unmodifiable views.
+     *
+     * @param versions map of updated object IDs to their new versions,
+     * or null
+     * @param states map of updated object IDs to their committed
+     * {@link org.apache.openjpa.datacache.DataCachePCData}, or null
+     * @see #RemoteCommitEvent(int, Collection, Collection, Collection,
+     * Collection)
+     */
+    public RemoteCommitEvent(int payloadType, Collection addIds,
+        Collection addClasses, Collection updates, Collection deletes,
+        Map versions, Map states) {
+        this(payloadType, addIds, addClasses, updates, deletes);
+        if (versions != null && !versions.isEmpty())
+            _versions = Collections.unmodifiableMap(versions);
+        if (states != null && !states.isEmpty())
+            _states = Collections.unmodifiableMap(states);
+    }
+
     /**
      * The event PAYLOAD constant.
      */
@@ -145,6 +175,31 @@ public class RemoteCommitEvent
         return (_deletes == null) ? Collections.EMPTY_LIST : _deletes;
     }
 
+    /**
+     * When the event type is not PAYLOAD_EXTENTS, return the new versions
+     * of updated objects keyed on object ID. Updated objects without an
+     * entry have to be treated as changed regardless of the version held
+     * by the receiver.
+     */
+    public Map getUpdatedObjectVersions() {
+        if (_payload == PAYLOAD_EXTENTS)
+            throw new UserException(s_loc.get("extent-only-event"));
+        return (_versions == null) ? Collections.EMPTY_MAP : _versions;
+    }
+
+    /**
+     * When the event type is not PAYLOAD_EXTENTS, return the committed
+     * state of updated objects as
+     * {@link org.apache.openjpa.datacache.DataCachePCData} keyed on object
+     * ID. The state is only transmitted for some of the updated objects,
+     * if any.
+     */
+    public Map getUpdatedObjectData() {
+        if (_payload == PAYLOAD_EXTENTS)
+            throw new UserException(s_loc.get("extent-only-event"));
+        return (_states == null) ? Collections.EMPTY_MAP : _states;
+    }
+
     /**
      * For all event types, return the set of class names for
      * the classes of inserted objects.
@@ -182,6 +237,12 @@ public class RemoteCommitEvent
             out.writeObject(_addIds);
         out.writeObject(_updates);
         out.writeObject(_deletes);
+        // versions and states follow the original payload so that
+        // receivers that do not read them skip them
+        if (_versions != null) {
+            out.writeObject(_versions);
+            out.writeObject(_states);
+        }
     }
 
     @Override
@@ -194,6 +255,12 @@ public class RemoteCommitEvent
                 _addIds = (Collection) in.readObject();
             _updates = (Collection) in.readObject();
             _deletes = (Collection) in.readObject();
+            try {
+                _versions = (Map) in.readObject();
+                _states = (Map) in.readObject();
+            } catch (OptionalDataException ode) {
+                // no versions were sent
+            }
         } catch (ClassNotFoundException cnfe) {
             // ### do something
 		}
@@ -18,19 +18,32 @@
  */
 package org.apache.openjpa.event;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.datacache.DataCache;
+import org.apache.openjpa.datacache.DataCachePCData;
+import org.apache.openjpa.datacache.DataCachePCDataImpl;
 import org.apache.openjpa.kernel.Broker;
 import org.apache.openjpa.kernel.OpenJPAStateManager;
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.lib.log.LogFactoryImpl;
 import org.apache.openjpa.lib.util.Closeable;
 import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.lib.util.concurrent.AbstractConcurrentEventManager;
+import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.util.UserException;
 
 /**
@@ -39,6 +52,13 @@ import org.apache.openjpa.util.UserException;
  * are enabled, this manager should be installed as a transaction listener on
  * all brokers so that it knows when commits are made.
  *
+ * By default, events received from the provider are fired to the listeners
+ * on the receiving thread. With a positive
+ * {@link #setCoalesceInterval coalesce interval}, received events are queued
+ * instead and applied by a background thread, which merges all events
+ * received within the interval so that listeners such as the data and query
+ * caches process a burst of remote commits as a single event.
+ *
  * @author Patrick Linskey
  * @author Abe White
  * @since 0.3.0
@@ -53,13 +73,35 @@ public class RemoteCommitEventManager
     private static final Localizer _loc = Localizer.forPackage
         (RemoteCommitEventManager.class);
 
+    private static final Exception[] EMPTY_EXCEPTIONS = new Exception[0];
+
     private final RemoteCommitProvider _provider;
+    private transient Log _log;
     private boolean _transmitPersIds = false;
+    private boolean _transmitVersions = false;
+    private int _transmitStateMaxFields = 0;
+    private long _coalesceInterval = 0;
+
+    // events received but not yet applied, guarded by _lock
+    private transient Object _lock = new Object();
+    private transient PendingEvents _pending = null;
+    private transient Thread _worker = null;
+    private boolean _closed = false;
+
+    // serializes the application of merged events
+    private transient Object _applyLock = new Object();
+
+    // statistics, guarded by _lock
+    private long _applied = 0;
+    private long _batches = 0;
+    private long _lastLag = 0;
+    private long _maxLag = 0;
 
     /**
      * Constructor. Supply configuration.
      */
     public RemoteCommitEventManager(OpenJPAConfiguration conf) {
+        _log = conf.getLog(OpenJPAConfiguration.LOG_RUNTIME);
         _provider = conf.newRemoteCommitProviderInstance();
         if (_provider != null) {
             _provider.setRemoteCommitEventManager(this);
@@ -96,6 +138,108 @@ public class RemoteCommitEventManager
         _transmitPersIds = transmit;
     }
 
+    /**
+     * Whether the new versions of updated instances will be transmitted,
+     * so that receivers only evict cached data older than the commit.
+     */
+    public boolean getTransmitVersions() {
+        return _transmitVersions;
+    }
+
+    /**
+     * Whether the new versions of updated instances will be transmitted,
+     * so that receivers only evict cached data older than the commit.
+     */
+    public void setTransmitVersions(boolean transmit) {
+        _transmitVersions = transmit;
+    }
+
+    /**
+     * The committed state of updated instances of cached types with at most
+     * this many fields is transmitted along with their versions, so that
+     * receivers can replace their cached data instead of evicting it.
+     * Defaults to 0, transmitting no state.
+     */
+    public int getTransmitStateMaxFields() {
+        return _transmitStateMaxFields;
+    }
+
+    /**
+     * The committed state of updated instances of cached types with at most
+     * this many fields is transmitted along with their versions, so that
+     * receivers can replace their cached data instead of evicting it.
+     * Defaults to 0, transmitting no state.
+     */
+    public void setTransmitStateMaxFields(int max) {
+        _transmitStateMaxFields = max;
+    }
+
+    /**
+     * The number of milliseconds over which received events are merged
+     * before being applied by a background thread. Events are applied
+     * synchronously on the receiving thread if 0, the default.
+     */
+    public long getCoalesceInterval() {
+        return _coalesceInterval;
+    }
+
+    /**
+     * The number of milliseconds over which received events are merged
+     * before being applied by a background thread. Events are applied
+     * synchronously on the receiving thread if 0, the default.
+     */
+    public void setCoalesceInterval(long millis) {
+        _coalesceInterval = Math.max(0, millis);
+    }
+
+    /**
+     * The number of received events waiting to be applied.
+     */
+    public int getPendingEventCount() {
+        synchronized (_lock) {
+            return (_pending == null) ? 0 : _pending.count;
+        }
+    }
+
+    /**
+     * The number of queued events applied so far.
+     */
+    public long getAppliedEventCount() {
+        synchronized (_lock) {
+            return _applied;
+        }
+    }
+
+    /**
+     * The number of merged batches the queued events were applied in.
+     */
+    public long getAppliedBatchCount() {
+        synchronized (_lock) {
+            return _batches;
+        }
+    }
+
+    /**
+     * The milliseconds between the receipt of the oldest event of the last
+     * applied batch and the time the batch was applied.
+     */
+    public long getLastLag() {
+        synchronized (_lock) {
+            return _lastLag;
+        }
+    }
+
+    /**
+     * The largest lag of any applied batch.
+     *
+     * @see #getLastLag
+     */
+    public long getMaxLag() {
+        synchronized (_lock) {
+            return _maxLag;
+        }
+    }
+
     /**
      * Adds an OpenJPA-internal listener to this RemoteCommitEventManager.
      * Listeners so registered will be fired before any that are registered
@@ -122,14 +266,87 @@ public class RemoteCommitEventManager
      */
     @Override
     public void close() {
+        synchronized (_lock) {
+            _closed = true;
+            _lock.notifyAll();
+        }
         if (_provider != null) {
             _provider.close();
+            applyPendingEvents();
             Collection listeners = getListeners();
             for (Iterator itr = listeners.iterator(); itr.hasNext();)
                 ((RemoteCommitListener) itr.next()).close();
         }
     }
 
+    /**
+     * Fire the given event to all listeners, or queue it to be applied
+     * later if a {@link #setCoalesceInterval coalesce interval} is set.
+     * Exceptions thrown by listeners while applying queued events are
+     * logged rather than returned.
+     */
+    @Override
+    public Exception[] fireEvent(Object event) {
+        if (_coalesceInterval <= 0 || !(event instanceof RemoteCommitEvent)
+            || ((RemoteCommitEvent) event).getPayloadType()
+            == RemoteCommitEvent.PAYLOAD_LOCAL_STALE_DETECTION)
+            return super.fireEvent(event);
+
+        synchronized (_lock) {
+            if (_closed)
+                return super.fireEvent(event);
+            if (_pending == null)
+                _pending = new PendingEvents();
+            _pending.add((RemoteCommitEvent) event);
+            if (_worker == null) {
+                _worker = new Thread(new Coalescer(),
+                    "OpenJPA RemoteCommitEventManager");
+                _worker.setDaemon(true);
+                _worker.start();
+            }
+            _lock.notifyAll();
+        }
+        return EMPTY_EXCEPTIONS;
+    }
+
+    /**
+     * Merge all queued events and fire the result to the listeners
+     * immediately.
+     */
+    public void applyPendingEvents() {
+        synchronized (_applyLock) {
+            PendingEvents pending;
+            synchronized (_lock) {
+                pending = _pending;
+                _pending = null;
+            }
+            if (pending == null)
+                return;
+
+            RemoteCommitEvent[] events = pending.toEvents();
+            for (int i = 0; i < events.length; i++) {
+                Exception[] es = super.fireEvent(events[i]);
+                if (es.length > 0 && _log.isWarnEnabled())
+                    _log.warn(_loc.get("remote-listener-ex",
+                        Arrays.asList(es)));
+                if (_log.isTraceEnabled())
+                    for (int j = 0; j < es.length; j++)
+                        _log.trace(es[j]);
+            }
+
+            long lag = System.currentTimeMillis() - pending.received;
+            synchronized (_lock) {
+                _applied += pending.count;
+                _batches++;
+                _lastLag = lag;
+                _maxLag = Math.max(_maxLag, lag);
+            }
+            if (_log.isTraceEnabled())
+                _log.trace(_loc.get("remote-coalesced", pending.count,
+                    events.length, lag));
+        }
+    }
+
     @Override
     protected void fireEvent(Object event, Object listener) {
         RemoteCommitListener listen = (RemoteCommitListener) listener;
@@ -147,7 +364,7 @@ public class RemoteCommitEventManager
         RemoteCommitEvent ev = new RemoteCommitEvent(
             RemoteCommitEvent.PAYLOAD_LOCAL_STALE_DETECTION,
             null, null, Collections.singleton(oid), null);
-        fireEvent(ev);
+        super.fireEvent(ev);
     }
 
     //////////////////////////////////////
@@ -173,6 +390,8 @@ public class RemoteCommitEventManager
         Collection addClassNames = null;
         Collection updates = null;
         Collection deletes = null;
+        Map versions = null;
+        Map states = null;
 
         if (broker.isTrackChangesByType()) {
             payload = RemoteCommitEvent.PAYLOAD_EXTENTS;
@@ -219,13 +438,47 @@ public class RemoteCommitEventManager
                     if (updates == null)
                         updates = new ArrayList();
                     updates.add(oid);
+                    if (_transmitVersions && sm.getVersion() != null) {
+                        if (versions == null)
+                            versions = new HashMap();
+                        versions.put(oid, sm.getVersion());
+                        DataCachePCData data = newPCData(sm, oid);
+                        if (data != null) {
+                            if (states == null)
+                                states = new HashMap();
+                            states.put(oid, data);
+                        }
+                    }
                 }
             }
             if (addClassNames == null && updates == null && deletes == null)
                 return null;
         }
         return new RemoteCommitEvent(payload, persIds, addClassNames, updates,
-            deletes);
+            deletes, versions, states);
+    }
+
+    /**
+     * Return the committed state of the given instance to transmit, or null
+     * if its state is not to be transmitted. State is only transmitted for
+     * fully loaded instances of small cached types whose cache entries do
+     * not time out, since expiration times are not meaningful across JVMs.
+     */
+    private DataCachePCData newPCData(OpenJPAStateManager sm, Object oid) {
+        ClassMetaData meta = sm.getMetaData();
+        int fields = meta.getFields().length;
+        if (fields > _transmitStateMaxFields
+            || meta.getDataCacheTimeout() > 0
+            || sm.getLoaded().cardinality() < fields)
+            return null;
+        DataCache cache = meta.getDataCache();
+        if (cache == null)
+            return null;
+
+        DataCachePCData data = new DataCachePCDataImpl(oid, meta,
+            cache.getName());
+        data.store(sm);
+        return data;
     }
 
     /**
@@ -241,6 +494,168 @@ public class RemoteCommitEventManager
         return names;
     }
 
+    /**
+     * Applies queued events once the coalesce interval of the oldest one
+     * has passed.
+     */
+    private class Coalescer
+        implements Runnable {
+
+        @Override
+        public void run() {
+            while (true) {
+                long wait;
+                synchronized (_lock) {
+                    try {
+                        while (_pending == null && !_closed)
+                            _lock.wait();
+                        if (_closed)
+                            break;
+                        wait = _pending.received + _coalesceInterval
+                            - System.currentTimeMillis();
+                        if (wait > 0) {
+                            // keep collecting events for the rest of
+                            // the interval
+                            _lock.wait(wait);
+                            continue;
+                        }
+                    } catch (InterruptedException ie) {
+                        break;
+                    }
+                }
+                try {
+                    applyPendingEvents();
+                } catch (RuntimeException re) {
+                    if (_log.isWarnEnabled())
+                        _log.warn(_loc.get("remote-listener-ex",
+                            Collections.singletonList(re)));
+                }
+            }
+            synchronized (_lock) {
+                _worker = null;
+            }
+        }
+    }
+
+    /**
+     * The union of the events received since the last application.
+     * Oid and extent events are merged separately since they carry
+     * different payloads.
+     */
+    private static class PendingEvents {
+
+        public final long received = System.currentTimeMillis();
+        public int count = 0;
+
+        private boolean _oids = false;
+        private boolean _withAdds = true;
+        private final Set _addIds = new LinkedHashSet();
+        private final Set _addClasses = new LinkedHashSet();
+        private final Set _updates = new LinkedHashSet();
+        private final Set _deletes = new LinkedHashSet();
+        // latest known version and state of updated oids; oids updated by
+        // an event without a version are evicted regardless
+        private final Map _versions = new HashMap();
+        private final Map _states = new HashMap();
+        private final Set _unversioned = new HashSet();
+
+        private boolean _extents = false;
+        private final Set _extentAdds = new LinkedHashSet();
+        private final Set _extentUpdates = new LinkedHashSet();
+        private final Set _extentDeletes = new LinkedHashSet();
+
+        public void add(RemoteCommitEvent event) {
+            count++;
+            if (event.getPayloadType() == RemoteCommitEvent.PAYLOAD_EXTENTS) {
+                _extents = true;
+                _extentAdds.addAll(event.getPersistedTypeNames());
+                _extentUpdates.addAll(event.getUpdatedTypeNames());
+                _extentDeletes.addAll(event.getDeletedTypeNames());
+                return;
+            }
+
+            _oids = true;
+            if (event.getPayloadType()
+                == RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS)
+                _addIds.addAll(event.getPersistedObjectIds());
+            else
+                _withAdds = false;
+            _addClasses.addAll(event.getPersistedTypeNames());
+            _deletes.addAll(event.getDeletedObjectIds());
+
+            Map versions = event.getUpdatedObjectVersions();
+            Map states = event.getUpdatedObjectData();
+            Object version;
+            Object cur;
+            for (Object oid : event.getUpdatedObjectIds()) {
+                _updates.add(oid);
+                if (_unversioned.contains(oid))
+                    continue;
+
+                version = versions.get(oid);
+                cur = _versions.get(oid);
+                if (version == null || (cur != null && !cur.equals(version)
+                    && compare(cur, version) == 0)) {
+                    _unversioned.add(oid);
+                    _versions.remove(oid);
+                    _states.remove(oid);
+                } else if (cur == null || compare(cur, version) < 0) {
+                    _versions.put(oid, version);
+                    if (states.containsKey(oid))
+                        _states.put(oid, states.get(oid));
+                    else
+                        _states.remove(oid);
+                }
+            }
+        }
+
+        /**
+         * Compare two versions of the same instance: negative if the first
+         * is earlier, positive if it is later and 0 if the order can not
+         * be determined.
+         */
+        private static int compare(Object v1, Object v2) {
+            if (v1.getClass() != v2.getClass()
+                || !(v1 instanceof Comparable))
+                return 0;
+            return ((Comparable) v1).compareTo(v2);
+        }
+
+        /**
+         * Return the merged events. Persisted oids are only included if
+         * all merged oid events carried them.
+         */
+        public RemoteCommitEvent[] toEvents() {
+            List events = new ArrayList(2);
+            if (_oids) {
+                if (_withAdds)
+                    events.add(new RemoteCommitEvent(
+                        RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS, _addIds,
+                        _addClasses, _updates, _deletes, _versions,
+                        _states));
+                else
+                    events.add(new RemoteCommitEvent(
+                        RemoteCommitEvent.PAYLOAD_OIDS, null, _addClasses,
+                        _updates, _deletes, _versions, _states));
+            }
+            if (_extents)
+                events.add(new RemoteCommitEvent(
+                    RemoteCommitEvent.PAYLOAD_EXTENTS, null, _extentAdds,
+                    _extentUpdates, _extentDeletes));
+            return (RemoteCommitEvent[]) events.toArray
+                (new RemoteCommitEvent[events.size()]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // the configured log is not serialized
+        _log = new LogFactoryImpl().getLog(OpenJPAConfiguration.LOG_RUNTIME);
+        _lock = new Object();
+        _applyLock = new Object();
+    }
+
     @Override
     public void beforeCommit(TransactionEvent event) {
     }
@@ -31,7 +31,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.transaction.Status;
@@ -102,6 +104,9 @@ public abstract class AbstractBrokerFactory implements BrokerFactory {
     // weak-ref tracking of open brokers
     private transient Set<Broker> _brokers;
 
+    // store and lock managers of closed brokers kept for reuse
+    private transient volatile BlockingQueue<RecycledManagers> _recycled = null;
+
     // cache the class names loaded from the persistent classes property so
     // that we can re-load them for each new broker
     private transient Collection<String> _pcClassNames = null;
@@ -227,7 +232,15 @@ public abstract class AbstractBrokerFactory implements BrokerFactory {
         assertOpen();
         makeReadOnly();
 
-        DelegatingStoreManager dsm = createDelegatingStoreManager();
+        DelegatingStoreManager dsm;
+        RecycledManagers recycled = (_recycled == null) ? null
+            : _recycled.poll();
+        if (recycled == null)
+            dsm = createDelegatingStoreManager();
+        else {
+            dsm = recycled.store;
+            ((BrokerImpl) broker).setRecycledLockManager(recycled.lock);
+        }
 
         ((BrokerImpl) broker).initialize(this, dsm, managed, connRetainMode, fromDeserialization);
 
@@ -399,6 +412,7 @@ public abstract class AbstractBrokerFactory implements BrokerFactory {
                 if ((broker != null) && (!broker.isClosed()))
                     broker.close();
             }
+            _recycled = null;
 
             if(_conf.metaDataRepositoryAvailable()) {
                 // remove metadata repository from listener list
@@ -798,6 +812,35 @@ public abstract class AbstractBrokerFactory implements BrokerFactory {
      */
     protected void releaseBroker(BrokerImpl broker) {
         _brokers.remove(broker);
+        recycle(broker);
+    }
+
+    /**
+     * Keep the store and lock managers of the given closed broker for reuse
+     * by the next broker created, unless the broker's recycle limit is
+     * reached. The managers hold no state of the closed broker once it has
+     * released its connection, and are given the new broker as their
+     * context on initialization.
+     *
+     * @see BrokerImpl#setRecycleLimit
+     */
+    private void recycle(BrokerImpl broker) {
+        int limit = broker.getRecycleLimit();
+        if (limit <= 0 || _closed || broker.getStoreManager() == null
+            || broker.getLockManager() == null)
+            return;
+
+        if (_recycled == null) {
+            lock();
+            try {
+                if (_recycled == null)
+                    _recycled = new LinkedBlockingQueue<>(limit);
+            } finally {
+                unlock();
+            }
+        }
+        _recycled.offer(new RecycledManagers(broker.getStoreManager(),
+            broker.getLockManager()));
     }
 
     /**
@@ -820,6 +863,20 @@ public abstract class AbstractBrokerFactory implements BrokerFactory {
         _poolKey = key;
     }
 
+    /**
+     * Store and lock manager of a closed broker.
+     */
+    private static class RecycledManagers {
+
+        final DelegatingStoreManager store;
+        final LockManager lock;
+
+        RecycledManagers(DelegatingStoreManager store, LockManager lock) {
+            this.store = store;
+            this.lock = lock;
+        }
+    }
+
     /**
      * Simple synchronization listener to remove completed transactions
      * from our cache.
@@ -57,6 +57,7 @@ import org.apache.openjpa.ee.ManagedRuntime;
 import org.apache.openjpa.enhance.PCRegistry;
 import org.apache.openjpa.enhance.PersistenceCapable;
 import org.apache.openjpa.enhance.Reflection;
+import org.apache.openjpa.enhance.StateManager;
 import org.apache.openjpa.event.LifecycleEvent;
 import org.apache.openjpa.event.LifecycleEventManager;
 import org.apache.openjpa.event.RemoteCommitEventManager;
@@ -69,9 +70,7 @@ import org.apache.openjpa.lib.instrumentation.InstrumentationLevel;
 import org.apache.openjpa.lib.log.Log;
 import org.apache.openjpa.lib.util.J2DoPrivHelper;
 import org.apache.openjpa.lib.util.Localizer;
-import org.apache.openjpa.lib.util.ReferenceHashMap;
 import org.apache.openjpa.lib.util.ReferenceHashSet;
-import org.apache.openjpa.lib.util.ReferenceMap;
 import org.apache.openjpa.lib.util.StringUtil;
 import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.meta.FieldMetaData;
@@ -196,6 +195,7 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
 
     // these are used for method-internal state only
     private transient Map<Object, StateManagerImpl> _loading = null;
+    private transient List<StateManagerImpl> _readOnlyLoading = null;
     private transient Set<Object> _operating = null;
     private transient boolean _operatingDirty = true;
 
@@ -232,6 +232,8 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
     private boolean _syncManaged = false;
     private int _connRetainMode = CONN_RETAIN_DEMAND;
     private boolean _evictDataCache = false;
+    private String _indexedFields = null;
+    private int _recycleLimit = 0;
     private boolean _populateDataCache = true;
     private boolean _largeTransaction = false;
     private int _autoDetach = 0;
@@ -369,7 +371,8 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
         // before initializing them because they may each try to access the
         // other in their initialization
         _store = sm;
-        _lm = _conf.newLockManagerInstance();
+        if (_lm == null)
+            _lm = _conf.newLockManagerInstance();
         _im = _conf.newInverseManagerInstance();
         _spm = _conf.getSavepointManagerInstance();
         _store.setContext(this);
@@ -422,17 +425,21 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
         if (_initializeWasInvoked)
             throw new CloneNotSupportedException();
         else {
-            return super.clone();
+            // each clone of a multithreaded template needs its own lock
+            BrokerImpl clone = (BrokerImpl) super.clone();
+            if (_lock != null)
+                clone._lock = new ReentrantLock();
+            return clone;
         }
     }
 
     /**
      * Create a {@link Map} to be used for the primary managed object cache.
-     * Maps oids to state managers. By default, this creates a
-     * {@link ReferenceMap} with soft values.
+     * Maps oids to state managers. By default, this creates a map with
+     * soft values that stores long and int oids by their primitive value.
      */
     protected Map<?,?> newManagedObjectCache() {
-        return new ReferenceHashMap(ReferenceStrength.HARD, ReferenceStrength.SOFT);
+        return new ManagedObjectMap();
     }
 
     //////////////////////////////////
@@ -733,6 +740,65 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
         _evictDataCache = evict;
     }
 
+    /**
+     * The semicolon-separated full names of the fields whose values are
+     * indexed over the managed instances, or null if none. See
+     * {@link #setIndexedFields}.
+     */
+    public String getIndexedFields() {
+        return _indexedFields;
+    }
+
+    /**
+     * Maintain hash indexes on the values of the given fields of the
+     * managed instances. In-memory queries over the collection returned by
+     * {@link #getManagedObjects} then only evaluate their filter against
+     * the instances found in the index for an equality condition of the
+     * filter on one of the fields. Supply semicolon-separated names of the
+     * form <code>package.Class.field</code>; only fields of primitive,
+     * primitive wrapper, string and enum type are indexed. Must be set
+     * before the broker is initialized.
+     */
+    public void setIndexedFields(String fields) {
+        if (StringUtil.isEmpty(fields))
+            fields = null;
+        _indexedFields = fields;
+    }
+
+    /**
+     * The maximum number of closed brokers whose store and lock managers
+     * the factory keeps for reuse. See {@link #setRecycleLimit}.
+     */
+    public int getRecycleLimit() {
+        return _recycleLimit;
+    }
+
+    /**
+     * Let the factory keep the store and lock managers of up to the given
+     * number of closed brokers, and hand them to the next brokers it
+     * creates instead of building new ones. Defaults to 0, which disables
+     * recycling.
+     */
+    public void setRecycleLimit(int limit) {
+        _recycleLimit = limit;
+    }
+
+    /**
+     * Use the given lock manager of a closed broker instead of a new one.
+     * Must be called before the broker is initialized.
+     */
+    void setRecycledLockManager(LockManager lm) {
+        _lm = lm;
+    }
+
+    /**
+     * Return the indexes on the field values of the managed instances, or
+     * null if no fields are indexed.
+     */
+    ManagedIndex getManagedIndex() {
+        return (_cache == null) ? null : _cache.getIndex();
+    }
+
     @Override
     public boolean getPopulateDataCache() {
         return _populateDataCache;
@@ -1009,6 +1075,8 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
         }
         if (fetch == null)
             fetch = _fc;
+        if (fetch.getReadOnly())
+            return findReadOnly(oid, fetch, exclude, edata, flags, call);
 
         beginOperation(true);
         try {
@@ -1098,6 +1166,86 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
         }
     }
 
+    /**
+     * Find an instance read-only. The instance is loaded without being
+     * cached or enlisted in the transaction, and is detached in place once
+     * the outermost read-only load is complete, so that relations among
+     * the instances loaded together resolve to the same instances.
+     */
+    private Object findReadOnly(Object oid, FetchConfiguration fetch,
+        BitSet exclude, Object edata, int flags, FindCallbacks call) {
+        beginOperation(true);
+        boolean outer = _readOnlyLoading == null;
+        if (outer)
+            _readOnlyLoading = new ArrayList<>();
+        try {
+            assertNontransactionalRead();
+
+            // loaded read-only before, or being loaded?
+            Object pc = _cache.getReadOnly(oid);
+            if (pc != null) {
+                PersistenceCapable cached = ImplHelper.toPersistenceCapable(pc,
+                    _conf);
+                // instances are detached once loading completes
+                StateManager owner = cached.pcGetStateManager();
+                OpenJPAStateManager sm = (owner instanceof OpenJPAStateManager)
+                    ? (OpenJPAStateManager) owner
+                    : new DetachedValueStateManager(cached, this);
+                return call.processReturn(oid, sm);
+            }
+            if (oid instanceof StateManagerId)
+                return call.processReturn(oid, null);
+
+            StateManagerImpl sm = newStateManagerImpl(oid,
+                (flags & OID_COPY) != 0);
+            sm.setReadOnly(true);
+            sm.setLoading(true);
+            try {
+                if (!_store.initialize(sm, PCState.PNONTRANS, fetch, edata)) {
+                    if ((flags & OID_NOVALIDATE) != 0)
+                        throw new ObjectNotFoundException(oid);
+                    return call.processReturn(oid, null);
+                }
+            } finally {
+                sm.setLoading(false);
+            }
+
+            try {
+                sm.load(fetch, StateManagerImpl.LOAD_FGS, exclude, edata,
+                    false);
+            } catch (ObjectNotFoundException onfe) {
+                if ((flags & OID_NODELETED) != 0
+                    || (flags & OID_NOVALIDATE) != 0)
+                    throw onfe;
+                return call.processReturn(oid, null);
+            }
+            return call.processReturn(oid, sm);
+        } catch (OpenJPAException ke) {
+            throw ke;
+        } catch (RuntimeException re) {
+            throw new GeneralException(re);
+        } finally {
+            if (outer) {
+                List<StateManagerImpl> loaded = _readOnlyLoading;
+                _readOnlyLoading = null;
+                if (_dmLite == null)
+                    _dmLite = new DetachManagerLite(_conf);
+                for (StateManagerImpl sm : loaded)
+                    _dmLite.detach(sm);
+            }
+            endOperation();
+        }
+    }
+
+    /**
+     * A read-only state manager has been initialized.
+     */
+    void addReadOnly(StateManagerImpl sm) {
+        if (_readOnlyLoading != null)
+            _readOnlyLoading.add(sm);
+        _cache.addReadOnly(sm);
+    }
+
     /**
      * Initialize a newly-constructed state manager.
      */
@@ -1140,6 +1288,17 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
      */
     protected Object[] findAll(Collection oids, FetchConfiguration fetch,
         BitSet exclude, Object edata, int flags, FindCallbacks call) {
+        // read-only instances are found one at a time
+        if ((fetch == null) ? _fc.getReadOnly() : fetch.getReadOnly()) {
+            if (oids == null)
+                throw new NullPointerException("oids == null");
+            Object[] objs = new Object[oids.size()];
+            int idx = 0;
+            for (Object oid : oids)
+                objs[idx++] = find(oid, fetch, exclude, edata, flags, call);
+            return objs;
+        }
+
         findAllDepth ++;
 
         // throw any exceptions for null oids up immediately
@@ -1366,9 +1525,9 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
                     && !Modifier.isAbstract(cls.getModifiers()))
                     return PCRegistry.newObjectId(cls, (String) val);
 
-                Object[] arr = (val instanceof Object[]) ? (Object[]) val
-                    : new Object[]{ val };
-                return ApplicationIds.fromPKValues(arr, meta);
+                if (val instanceof Object[])
+                    return ApplicationIds.fromPKValues((Object[]) val, meta);
+                return ApplicationIds.fromPKValue(val, meta);
             default:
                 throw new UserException(_loc.get("meta-unknownid", cls));
             }
@@ -3016,6 +3175,8 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
 
             StateManagerImpl sm = newStateManagerImpl(id, meta);
             sm.setOwner((StateManagerImpl) owner, ownerMeta);
+            if (owner != null && ((StateManagerImpl) owner).isReadOnly())
+                sm.setReadOnly(true);
 
             PersistenceCapable copy;
             PCState state;
@@ -3053,7 +3214,8 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
                 }
             } else {
                 copy = PCRegistry.newInstance(type, sm, false);
-                if ((_flags & FLAG_ACTIVE) != 0 && !_optimistic)
+                if ((_flags & FLAG_ACTIVE) != 0 && !_optimistic
+                    && !sm.isReadOnly())
                     state = PCState.ECLEAN;
                 else
                     state = PCState.ENONTRANS;
@@ -4181,12 +4343,44 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
     public Collection getManagedObjects() {
         beginOperation(false);
         try {
-            return new ManagedObjectCollection(getManagedStates());
+            return new ManagedObjectCollection(getManagedStates(),
+                _cache.getIndex());
         } finally {
             endOperation();
         }
     }
 
+    /**
+     * Return the objects of the given result of {@link #getManagedObjects}
+     * whose value of the given field may equal the given value, or null if
+     * the field is not indexed or objects were added to or removed from
+     * the cache since the collection was obtained.
+     *
+     * @see #setIndexedFields
+     */
+    Collection getIndexedObjects(Collection managed, FieldMetaData fmd,
+        Object value) {
+        if (!(managed instanceof ManagedObjectCollection))
+            return null;
+        ManagedObjectCollection coll = (ManagedObjectCollection) managed;
+
+        // the index is read and refreshed under the same lock as the cache
+        // it mirrors
+        lock();
+        try {
+            ManagedIndex index = _cache.getIndex();
+            if (index == null || coll._index != index
+                || coll._mod != index.getModCount())
+                return null;
+
+            Collection states = index.getCandidates(fmd, value);
+            return (states == null) ? null
+                : new ManagedObjectCollection(states);
+        } finally {
+            unlock();
+        }
+    }
+
     @Override
     public Collection getTransactionalObjects() {
         beginOperation(false);
@@ -5253,8 +5447,18 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
 
         private final Collection _states;
 
+        // index and its modification count when the states were copied
+        private final ManagedIndex _index;
+        private final int _mod;
+
         public ManagedObjectCollection(Collection states) {
+            this(states, null);
+        }
+
+        public ManagedObjectCollection(Collection states, ManagedIndex index) {
             _states = states;
+            _index = index;
+            _mod = (index == null) ? 0 : index.getModCount();
         }
 
         public Collection getStateManagers() {
@@ -254,6 +254,25 @@ public class DelegatingFetchConfiguration
         }
     }
 
+    @Override
+    public boolean getReadOnly() {
+        try {
+            return _fetch.getReadOnly();
+        } catch (RuntimeException re) {
+            throw translate(re);
+        }
+    }
+
+    @Override
+    public FetchConfiguration setReadOnly(boolean readOnly) {
+        try {
+            _fetch.setReadOnly(readOnly);
+            return this;
+        } catch (RuntimeException re) {
+            throw translate(re);
+        }
+    }
+
 
     @Override
     public Set getFetchGroups() {
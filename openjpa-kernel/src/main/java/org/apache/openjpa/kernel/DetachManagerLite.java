@@ -23,7 +23,6 @@ import java.util.Collection;
 
 import org.apache.openjpa.conf.OpenJPAConfiguration;
 import org.apache.openjpa.enhance.PersistenceCapable;
-import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.meta.FieldMetaData;
 import org.apache.openjpa.util.Proxy;
 
@@ -48,23 +47,33 @@ public class DetachManagerLite {
     public void detachAll(Collection<StateManagerImpl> states) {
 
         for (StateManagerImpl sm : states) {
-            ClassMetaData cmd = sm.getMetaData();
-            if (sm.isPersistent() && cmd.isDetachable()) {
+            if (sm.isPersistent() && sm.getMetaData().isDetachable()) {
                 PersistenceCapable pc = sm.getPersistenceCapable();
                 if (pc.pcIsDetached() == false) {
-                    // Detach proxy fields.
-                    BitSet loaded = sm.getLoaded();
-                    for (FieldMetaData fmd : cmd.getProxyFields()) {
-                        if (loaded.get(fmd.getIndex())) {
-                            detachProxyField(fmd, pc, sm, _tsm);
-                        }
-                    }
-                    pc.pcReplaceStateManager(null);
+                    detach(sm);
                 }
             }
         }
     }
 
+    /**
+     * Detach the instance of the given StateManager in place, replacing its
+     * loaded proxy fields and removing the StateManager from the instance.
+     *
+     * @param sm
+     *            The StateManager to be detached.
+     */
+    void detach(StateManagerImpl sm) {
+        PersistenceCapable pc = sm.getPersistenceCapable();
+        BitSet loaded = sm.getLoaded();
+        for (FieldMetaData fmd : sm.getMetaData().getProxyFields()) {
+            if (loaded.get(fmd.getIndex())) {
+                detachProxyField(fmd, pc, sm, _tsm);
+            }
+        }
+        pc.pcReplaceStateManager(null);
+    }
+
     /**
      * Detach the provided proxy field.
      *
@@ -663,7 +663,7 @@ public class ExpressionStoreQuery
             Collection coll = q.getContext().getCandidateCollection();
             Iterator itr;
             if (coll != null)
-                itr = coll.iterator();
+                itr = getIndexedCandidates(q, coll, params).iterator();
             else
                 itr = q.getContext().getStoreContext().
                     extentIterator(_meta.getDescribedType(), _subs,
@@ -713,6 +713,28 @@ public class ExpressionStoreQuery
             return rop;
         }
 
+        /**
+         * Narrow the given candidates through the broker's field value
+         * index when they are the broker's managed objects and the filter
+         * has an equality condition on an indexed field.
+         *
+         * @see BrokerImpl#setIndexedFields
+         */
+        private Collection getIndexedCandidates(StoreQuery q, Collection coll,
+            Object[] params) {
+            StoreContext ctx = q.getContext().getStoreContext();
+            if (!(ctx instanceof BrokerImpl)
+                || ((BrokerImpl) ctx).getManagedIndex() == null)
+                return coll;
+
+            Object[] cond = _factory.getEqualityCondition(_exps[0], params);
+            if (cond == null)
+                return coll;
+            Collection indexed = ((BrokerImpl) ctx).getIndexedObjects(coll,
+                (FieldMetaData) cond[0], cond[1]);
+            return (indexed == null) ? coll : indexed;
+        }
+
         @Override
         public String[] getDataStoreActions(StoreQuery q, Object[] params,
             Range range) {
@@ -163,6 +163,21 @@ public interface FetchConfiguration
      */
     FetchConfiguration setExtendedPathLookup(boolean flag);
 
+    /**
+     * Whether instances are loaded read-only. Read-only instances are
+     * returned detached once loaded, without being managed by the context:
+     * their changes are not tracked, no lifecycle events are fired for them
+     * and only the fields of the fetch configuration are loaded. Instances
+     * already managed by the context are not returned; read-only copies
+     * are loaded instead.
+     */
+    boolean getReadOnly();
+
+    /**
+     * Whether instances are loaded read-only.
+     */
+    FetchConfiguration setReadOnly(boolean readOnly);
+
     /**
      * Returns immutable set of names of the fetch groups that this component
      * will use when loading objects. Defaults to the
@@ -81,6 +81,7 @@ public class FetchConfigurationImpl
             populateHintSetter(target, "setLockTimeout", "timeout", int.class, "javax.persistence.lock");
             populateHintSetter(target, "MaxFetchDepth", int.class, prefixes);
             populateHintSetter(target, "QueryTimeout", int.class, prefixes);
+            populateHintSetter(target, "ReadOnly", boolean.class, prefixes);
             populateHintSetter(target, "setQueryTimeout", "timeout", int.class, "javax.persistence.query");
             populateHintSetter(target, "ReadLockLevel", int.class, prefixes);
             populateHintSetter(target, "setReadLockLevel", "ReadLockMode", int.class, prefixes);
@@ -149,6 +150,7 @@ public class FetchConfigurationImpl
         public boolean fetchGroupContainsAll = false;
         public boolean fetchGroupIsPUDefault = false;
         public boolean extendedPathLookup = false;
+        public boolean readOnly = false;
         public DataCacheRetrieveMode cacheRetrieveMode = DataCacheRetrieveMode.USE;
         public DataCacheStoreMode cacheStoreMode = DataCacheStoreMode.USE;
         public boolean cacheNonDefaultFetchPlanQueries = false;
@@ -235,6 +237,7 @@ public class FetchConfigurationImpl
         setQueryCacheEnabled(fetch.getQueryCacheEnabled());
         setFlushBeforeQueries(fetch.getFlushBeforeQueries());
         setExtendedPathLookup(fetch.getExtendedPathLookup());
+        setReadOnly(fetch.getReadOnly());
         setLockTimeout(fetch.getLockTimeout());
         setQueryTimeout(fetch.getQueryTimeout());
         setLockScope(fetch.getLockScope());
@@ -324,6 +327,17 @@ public class FetchConfigurationImpl
         return this;
     }
 
+    @Override
+    public boolean getReadOnly() {
+        return _state.readOnly;
+    }
+
+    @Override
+    public FetchConfiguration setReadOnly(boolean readOnly) {
+        _state.readOnly = readOnly;
+        return this;
+    }
+
     @Override
     public FetchConfiguration setFlushBeforeQueries(int flush) {
         if (flush != DEFAULT
@@ -29,6 +29,7 @@ import java.util.Map;
 
 import org.apache.commons.collections4.map.AbstractReferenceMap.ReferenceStrength;
 import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.lib.util.ReferenceHashMap;
 import org.apache.openjpa.lib.util.ReferenceHashSet;
 import org.apache.openjpa.util.Exceptions;
 import org.apache.openjpa.util.UserException;
@@ -49,7 +50,10 @@ class ManagedCache implements Serializable {
     private Map<Object,StateManagerImpl> _news = null; // tmp id -> new sm
     private Collection<StateManagerImpl> _embeds = null; // embedded/non-persistent sms
     private Collection<StateManagerImpl> _untracked = null; // hard refs to untracked sms
+    private boolean _checking = false; // in the middle of a dirty check
     private BrokerImpl broker;
+    private ManagedIndex _index = null; // indexes on sm field values
+    private transient Map<Object,Object> _readOnly = null; // oid -> read-only pc
 
     /**
      * Constructor; supply primary cache map.
@@ -57,6 +61,16 @@ class ManagedCache implements Serializable {
     ManagedCache(BrokerImpl broker) {
         this.broker = broker;
         _main = (Map<Object, StateManagerImpl>) broker.newManagedObjectCache();
+        if (broker.getIndexedFields() != null)
+            _index = new ManagedIndex(broker.getIndexedFields());
+    }
+
+    /**
+     * Return the indexes on the field values of the cached instances, or
+     * null if no fields are indexed.
+     */
+    ManagedIndex getIndex() {
+        return _index;
     }
 
     /**
@@ -97,6 +111,30 @@ class ManagedCache implements Serializable {
         return sm;
     }
 
+    /**
+     * Return the read-only instance loaded for the given oid, if it has
+     * not been released.
+     */
+    public Object getReadOnly(Object oid) {
+        if (oid == null || _readOnly == null)
+            return null;
+        return _readOnly.get(oid);
+    }
+
+    /**
+     * Remember the instance of the given read-only state manager, so that
+     * loading the same oid read-only again yields the same instance.
+     * Instances are held weakly.
+     */
+    public void addReadOnly(StateManagerImpl sm) {
+        if (sm.getObjectId() == null || sm.isEmbedded())
+            return;
+        if (_readOnly == null)
+            _readOnly = new ReferenceHashMap(ReferenceStrength.HARD,
+                ReferenceStrength.WEAK);
+        _readOnly.put(sm.getObjectId(), sm.getManagedInstance());
+    }
+
     /**
      * Call this method when a new state manager initializes itself.
      */
@@ -111,6 +149,8 @@ class ManagedCache implements Serializable {
             if (_embeds == null)
                 _embeds = new ReferenceHashSet(ReferenceStrength.WEAK);
             _embeds.add(sm);
+            if (_index != null)
+                _index.add(sm);
             return;
         }
 
@@ -120,6 +160,8 @@ class ManagedCache implements Serializable {
             if (_news == null)
                 _news = new HashMap<>();
             _news.put(sm.getId(), sm);
+            if (_index != null)
+                _index.add(sm);
             return;
         }
 
@@ -131,6 +173,8 @@ class ManagedCache implements Serializable {
                 Exceptions.toString(orig.getManagedInstance())))
                 .setFailedObject(sm.getManagedInstance());
         }
+        if (_index != null)
+            _index.add(sm);
     }
 
     /**
@@ -162,14 +206,16 @@ class ManagedCache implements Serializable {
 
         if (_untracked != null)
             _untracked.remove(sm);
+        if (_index != null)
+            _index.remove(sm);
     }
 
     /**
      * An embedded or nonpersistent managed instance has been persisted.
      */
     public void persist(StateManagerImpl sm) {
-        if (_embeds != null)
-            _embeds.remove(sm);
+        if (_embeds != null && _embeds.remove(sm) && _index != null)
+            _index.remove(sm);
     }
 
     /**
@@ -201,6 +247,8 @@ class ManagedCache implements Serializable {
                 _conflicts = new HashMap<>();
             _conflicts.put(sm.getObjectId(), sm);
         }
+        if (_index != null)
+            _index.add(sm);
     }
 
     /**
@@ -222,6 +270,8 @@ class ManagedCache implements Serializable {
                         .setFailedObject(sm.getManagedInstance())
                         .setFatal(true);
                 }
+                if (orig != null && orig != sm && _index != null)
+                    _index.remove(orig);
             }
             return;
         }
@@ -241,6 +291,12 @@ class ManagedCache implements Serializable {
                 sm.getObjectId(), Exceptions.toString(sm.getManagedInstance())))
                     .setFailedObject(sm.getManagedInstance()).setFatal(true);
         }
+        if (_index != null) {
+            // a deleted instance with the same oid is no longer cached
+            if (orig != null && orig != sm)
+                _index.remove(orig);
+            _index.add(sm);
+        }
     }
 
     /**
@@ -288,21 +344,36 @@ class ManagedCache implements Serializable {
             _embeds = null;
         if (_untracked != null)
             _untracked = null;
+        if (_readOnly != null)
+            _readOnly = null;
+        if (_index != null)
+            _index.clear();
     }
 
     /**
      * Clear new instances without permanent oids.
      */
     public void clearNew() {
-        if (_news != null)
+        if (_news != null) {
+            if (_index != null)
+                for (StateManagerImpl sm : _news.values())
+                    _index.remove(sm);
             _news = null;
+        }
     }
 
     void dirtyCheck() {
-        if (_untracked == null)
+        // instances found dirty notify the broker, which asks for another
+        // dirty check; the running one will reach the remaining instances
+        if (_untracked == null || _checking)
             return;
 
-        for (StateManagerImpl sm : _untracked)
-        	sm.dirtyCheck();
+        _checking = true;
+        try {
+            for (StateManagerImpl sm : _untracked)
+                sm.dirtyCheck();
+        } finally {
+            _checking = false;
+        }
     }
 }
@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.kernel;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.collections4.map.AbstractReferenceMap.ReferenceStrength;
+import org.apache.openjpa.lib.util.ReferenceHashMap;
+import org.apache.openjpa.lib.util.ReferenceHashSet;
+import org.apache.openjpa.lib.util.StringUtil;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.meta.JavaTypes;
+
+/**
+ * Hash indexes on the values of selected fields of the instances in a
+ * {@link ManagedCache}, used to find the candidates of in-memory queries
+ * with an equality condition on one of the fields without evaluating the
+ * filter against every managed instance.
+ *
+ * The index is maintained lazily: instances whose indexed fields are
+ * loaded, unloaded or changed are only marked, and their values are read
+ * again on the next lookup. Instances whose field is not loaded and
+ * instances whose changes are not intercepted are returned by every lookup.
+ * State managers are held weakly so that the index does not keep instances
+ * the cache would release.
+ *
+ * Like the cache, the index is updated and read under the broker lock.
+ * State managers report field changes under their own lock, so the marked
+ * instances and the indexed fields of each type are guarded by the index
+ * itself, which never calls out while holding its monitor.
+ *
+ * @see BrokerImpl#setIndexedFields
+ */
+class ManagedIndex
+    implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final BitSet NONE = new BitSet(0);
+
+    private final Set<String> _names = new HashSet<>();
+    private transient Map<ClassMetaData, BitSet> _fields = null;
+    private final Map<String, FieldIndex> _indexes = new HashMap<>();
+    private final Collection<StateManagerImpl> _stale =
+        new ReferenceHashSet(ReferenceStrength.WEAK);
+    private int _mod = 0;
+
+    /**
+     * Constructor; supply the semicolon-separated full names of the fields
+     * to index.
+     */
+    ManagedIndex(String names) {
+        String[] split = StringUtil.split(names, ";", 0);
+        for (int i = 0; i < split.length; i++) {
+            split[i] = split[i].trim();
+            if (split[i].length() > 0)
+                _names.add(split[i]);
+        }
+    }
+
+    /**
+     * Whether values of the given field can be indexed. Only types whose
+     * values are compared by equality in memory qualify.
+     */
+    static boolean isIndexable(FieldMetaData fmd) {
+        switch (fmd.getDeclaredTypeCode()) {
+            case JavaTypes.BOOLEAN:
+            case JavaTypes.BYTE:
+            case JavaTypes.CHAR:
+            case JavaTypes.INT:
+            case JavaTypes.LONG:
+            case JavaTypes.SHORT:
+            case JavaTypes.BOOLEAN_OBJ:
+            case JavaTypes.BYTE_OBJ:
+            case JavaTypes.CHAR_OBJ:
+            case JavaTypes.INT_OBJ:
+            case JavaTypes.LONG_OBJ:
+            case JavaTypes.SHORT_OBJ:
+            case JavaTypes.STRING:
+            case JavaTypes.ENUM:
+                return fmd.getExternalizer() == null;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Return the indexes of the indexed fields of the given type.
+     */
+    private synchronized BitSet getIndexedFields(ClassMetaData meta) {
+        if (_fields == null)
+            _fields = new HashMap<>();
+        BitSet fields = _fields.get(meta);
+        if (fields != null)
+            return fields;
+
+        FieldMetaData[] fmds = meta.getFields();
+        for (int i = 0; i < fmds.length; i++) {
+            if (_names.contains(fmds[i].getFullName(false))
+                && isIndexable(fmds[i])) {
+                if (fields == null)
+                    fields = new BitSet(fmds.length);
+                fields.set(i);
+            }
+        }
+        if (fields == null)
+            fields = NONE;
+        _fields.put(meta, fields);
+        return fields;
+    }
+
+    /**
+     * Modification count, incremented whenever an instance is added to or
+     * removed from the cache.
+     */
+    int getModCount() {
+        return _mod;
+    }
+
+    /**
+     * An instance was added to the cache.
+     */
+    void add(StateManagerImpl sm) {
+        _mod++;
+        if (!getIndexedFields(sm.getMetaData()).isEmpty())
+            markStale(sm);
+    }
+
+    /**
+     * An instance was removed from the cache.
+     */
+    void remove(StateManagerImpl sm) {
+        _mod++;
+        synchronized (this) {
+            _stale.remove(sm);
+        }
+        BitSet fields = getIndexedFields(sm.getMetaData());
+        FieldMetaData[] fmds = sm.getMetaData().getFields();
+        for (int i = fields.nextSetBit(0); i >= 0;
+            i = fields.nextSetBit(i + 1)) {
+            FieldIndex index = _indexes.get(fmds[i].getFullName(false));
+            if (index != null)
+                index.remove(sm);
+        }
+    }
+
+    /**
+     * The given field of the instance was loaded, unloaded or replaced.
+     * A negative field stands for any field.
+     */
+    void changed(StateManagerImpl sm, int field) {
+        BitSet fields = getIndexedFields(sm.getMetaData());
+        if (field < 0 ? !fields.isEmpty() : fields.get(field))
+            markStale(sm);
+    }
+
+    private synchronized void markStale(StateManagerImpl sm) {
+        _stale.add(sm);
+    }
+
+    /**
+     * Return and unmark the instances marked as changed.
+     */
+    private synchronized List<StateManagerImpl> takeStale() {
+        if (_stale.isEmpty())
+            return null;
+        List<StateManagerImpl> stale = new ArrayList<>(_stale);
+        _stale.clear();
+        return stale;
+    }
+
+    /**
+     * Clear the index.
+     */
+    void clear() {
+        _mod++;
+        synchronized (this) {
+            _stale.clear();
+        }
+        _indexes.clear();
+    }
+
+    /**
+     * Return the state managers whose value of the given field may equal
+     * the given value, or null if the field is not indexed. The result
+     * includes all instances whose field value is equal to the given one,
+     * but it may include others as well.
+     */
+    Collection<StateManagerImpl> getCandidates(FieldMetaData fmd,
+        Object value) {
+        if (!isIndexable(fmd) || !_names.contains(fmd.getFullName(false)))
+            return null;
+        value = toKey(fmd, value);
+        if (value == null)
+            return null;
+
+        refresh();
+        FieldIndex index = _indexes.get(fmd.getFullName(false));
+        if (index == null)
+            return new ArrayList<>(0);
+        return index.get(value);
+    }
+
+    /**
+     * Return the given value as an instance of the field type if the
+     * conversion preserves equality as evaluated in memory, else null.
+     */
+    private static Object toKey(FieldMetaData fmd, Object value) {
+        Class<?> type = Filters.wrap(fmd.getDeclaredType());
+        if (value.getClass() == type)
+            return value;
+        if (!(value instanceof Number) || !Number.class.isAssignableFrom(type))
+            return null;
+
+        // NaN converts to zero; -0.0 converts back to 0.0, so look it up
+        // under zero: the candidates are filtered again anyway
+        if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d))
+                return null;
+            if (d == 0)
+                value = (value instanceof Double) ? (Object) 0d : (Object) 0f;
+        }
+
+        // numbers of different types are compared after promotion, so the
+        // converted value has to convert back to the original one
+        Object key = Filters.convert(value, type);
+        if (!value.equals(Filters.convert(key, value.getClass())))
+            return null;
+        return key;
+    }
+
+    /**
+     * Read the indexed values of all instances marked as changed.
+     */
+    private void refresh() {
+        List<StateManagerImpl> stale = takeStale();
+        if (stale == null)
+            return;
+
+        BitSet fields;
+        FieldMetaData[] fmds;
+        String name;
+        FieldIndex index;
+        for (StateManagerImpl sm : stale) {
+            fields = getIndexedFields(sm.getMetaData());
+            fmds = sm.getMetaData().getFields();
+            for (int i = fields.nextSetBit(0); i >= 0;
+                i = fields.nextSetBit(i + 1)) {
+                name = fmds[i].getFullName(false);
+                index = _indexes.get(name);
+                if (index == null) {
+                    index = new FieldIndex();
+                    _indexes.put(name, index);
+                }
+                index.remove(sm);
+                if (sm.isIntercepting() && sm.getLoaded().get(i))
+                    index.put(sm, sm.fetchField(i, false));
+                else
+                    index.putUnknown(sm);
+            }
+        }
+    }
+
+    /**
+     * Index of the values of a single field.
+     */
+    private static class FieldIndex
+        implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        // value -> sms with the value; sm -> value
+        private final Map<Object, Collection<StateManagerImpl>> _values =
+            new HashMap<>();
+        private final Map<StateManagerImpl, Object> _keys =
+            new ReferenceHashMap(ReferenceStrength.WEAK,
+                ReferenceStrength.HARD);
+        private final Collection<StateManagerImpl> _unknown =
+            new ReferenceHashSet(ReferenceStrength.WEAK);
+
+        public void put(StateManagerImpl sm, Object value) {
+            Collection<StateManagerImpl> sms = _values.get(value);
+            if (sms == null) {
+                sms = new ReferenceHashSet(ReferenceStrength.WEAK);
+                _values.put(value, sms);
+            }
+            sms.add(sm);
+            _keys.put(sm, value);
+        }
+
+        public void putUnknown(StateManagerImpl sm) {
+            _unknown.add(sm);
+        }
+
+        public void remove(StateManagerImpl sm) {
+            if (_unknown.remove(sm))
+                return;
+            if (!_keys.containsKey(sm))
+                return;
+
+            Object value = _keys.remove(sm);
+            Collection<StateManagerImpl> sms = _values.get(value);
+            if (sms != null) {
+                sms.remove(sm);
+                if (sms.isEmpty())
+                    _values.remove(value);
+            }
+        }
+
+        public Collection<StateManagerImpl> get(Object value) {
+            Collection<StateManagerImpl> sms = _values.get(value);
+            int size = _unknown.size();
+            if (sms != null)
+                size += sms.size();
+
+            List<StateManagerImpl> result = new ArrayList<>(size);
+            if (sms != null)
+                result.addAll(sms);
+            result.addAll(_unknown);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,483 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.kernel;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.commons.collections4.map.AbstractReferenceMap.ReferenceStrength;
+import org.apache.openjpa.lib.util.ReferenceHashMap;
+import org.apache.openjpa.util.Id;
+import org.apache.openjpa.util.IntId;
+import org.apache.openjpa.util.LongId;
+import org.apache.openjpa.util.OpenJPAId;
+
+/**
+ * Map of oids to managed instances holding its values softly. Oids with
+ * a single long or int value ({@link LongId}, {@link IntId} and datastore
+ * {@link Id}s) are stored by their primitive value in open addressing
+ * tables, one per inheritance hierarchy, instead of in a hash entry of
+ * their own. Lookups compare the primitive values and only fall back on
+ * {@link OpenJPAId#equals} to confirm a match. All other oids, and oids
+ * whose value is already taken by a different type of the hierarchy, are
+ * kept in a {@link ReferenceHashMap}.
+ *
+ * Iterators do not support removal. The map is not thread safe.
+ *
+ * @see BrokerImpl#newManagedObjectCache
+ */
+class ManagedObjectMap
+    extends AbstractMap<Object, Object>
+    implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // type -> table of the type's hierarchy
+    private transient Map<Class<?>, IdTable> _tables;
+    private transient List<IdTable> _tableList;
+    private transient ReferenceQueue<Object> _queue;
+    private transient Map<Object, Object> _other;
+
+    // table of the last type looked up
+    private transient Class<?> _lastType;
+    private transient IdTable _lastTable;
+
+    ManagedObjectMap() {
+        init();
+    }
+
+    private void init() {
+        _tables = new HashMap<>();
+        _tableList = new ArrayList<>();
+        _queue = new ReferenceQueue<>();
+        _other = null;
+        _lastType = null;
+        _lastTable = null;
+    }
+
+    /**
+     * Whether the given oid is stored by its primitive value.
+     */
+    private static boolean isPrimitive(Object key) {
+        Class<?> cls = key.getClass();
+        return (cls == LongId.class || cls == IntId.class || cls == Id.class)
+            && ((OpenJPAId) key).getType() != null;
+    }
+
+    private static long toLong(Object key) {
+        Class<?> cls = key.getClass();
+        if (cls == LongId.class)
+            return ((LongId) key).getId();
+        if (cls == IntId.class)
+            return ((IntId) key).getId();
+        return ((Id) key).getId();
+    }
+
+    /**
+     * Return the table for the given primitive oid, or null if there is
+     * none and <code>create</code> is false. Types of the same hierarchy
+     * share their table, as their oids may equal one another.
+     */
+    private IdTable getTable(OpenJPAId key, boolean create) {
+        Class<?> type = key.getType();
+        if (type == _lastType)
+            return _lastTable;
+
+        IdTable table = _tables.get(type);
+        if (table == null) {
+            Class<?> base = type;
+            while (base.getSuperclass() != null
+                && base.getSuperclass() != Object.class)
+                base = base.getSuperclass();
+            table = _tables.get(base);
+            if (table == null) {
+                if (!create)
+                    return null;
+                table = new IdTable(key.getClass());
+                _tables.put(base, table);
+                _tableList.add(table);
+            }
+            _tables.put(type, table);
+        }
+        _lastType = type;
+        _lastTable = table;
+        return table;
+    }
+
+    /**
+     * Remove the entries whose values were collected.
+     */
+    private void purge() {
+        IdTable table;
+        for (Reference<?> ref; (ref = _queue.poll()) != null;) {
+            table = getTable((OpenJPAId) ((ValueRef) ref).key, false);
+            if (table != null)
+                table.remove((ValueRef) ref);
+        }
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (key == null)
+            return null;
+        purge();
+        if (isPrimitive(key)) {
+            IdTable table = getTable((OpenJPAId) key, false);
+            if (table != null && table.idType == key.getClass()) {
+                ValueRef ref = table.get(toLong(key));
+                if (ref != null && matches(key, ref))
+                    return ref.get();
+            }
+        }
+        return (_other == null) ? null : _other.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Object put(Object key, Object value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        purge();
+        if (isPrimitive(key) && (_other == null || !_other.containsKey(key))) {
+            IdTable table = getTable((OpenJPAId) key, true);
+            if (table.idType == key.getClass()) {
+                long id = toLong(key);
+                ValueRef ref = table.get(id);
+                if (ref == null || ref.get() == null || matches(key, ref)) {
+                    // like a hash map, keep the oid of a replaced entry
+                    Object old = (ref == null) ? null : ref.get();
+                    table.put(id, new ValueRef((old == null) ? key : ref.key,
+                        value, _queue));
+                    return old;
+                }
+            }
+        }
+
+        // other oids, and oids whose value is taken by an oid they do not
+        // equal, e.g. one of a different type of a table-per-class hierarchy
+        if (_other == null)
+            _other = new ReferenceHashMap(ReferenceStrength.HARD,
+                ReferenceStrength.SOFT);
+        return _other.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (key == null)
+            return null;
+        purge();
+        if (isPrimitive(key)) {
+            IdTable table = getTable((OpenJPAId) key, false);
+            if (table != null && table.idType == key.getClass()) {
+                long id = toLong(key);
+                ValueRef ref = table.get(id);
+                if (ref != null && matches(key, ref)) {
+                    table.remove(id);
+                    return ref.get();
+                }
+            }
+        }
+        return (_other == null) ? null : _other.remove(key);
+    }
+
+    /**
+     * Whether the given oid equals the oid of the given entry, evaluated
+     * the way a hash map would.
+     */
+    private static boolean matches(Object key, ValueRef ref) {
+        return key == ref.key || key.equals(ref.key);
+    }
+
+    @Override
+    public int size() {
+        purge();
+        int size = (_other == null) ? 0 : _other.size();
+        for (IdTable table : _tableList)
+            size += table.size;
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void clear() {
+        init();
+    }
+
+    @Override
+    public Set<Entry<Object, Object>> entrySet() {
+        return new AbstractSet<Entry<Object, Object>>() {
+            @Override
+            public Iterator<Entry<Object, Object>> iterator() {
+                return new EntryIterator<Entry<Object, Object>>() {
+                    @Override
+                    protected Entry<Object, Object> next(Object key,
+                        Object value) {
+                        return new SimpleImmutableEntry<>(key, value);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ManagedObjectMap.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return new AbstractCollection<Object>() {
+            @Override
+            public Iterator<Object> iterator() {
+                return new EntryIterator<Object>() {
+                    @Override
+                    protected Object next(Object key, Object value) {
+                        return value;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ManagedObjectMap.this.size();
+            }
+        };
+    }
+
+    private void writeObject(ObjectOutputStream out)
+        throws IOException {
+        out.defaultWriteObject();
+        List<Object> entries = new ArrayList<>();
+        for (Entry<Object, Object> entry : entrySet()) {
+            entries.add(entry.getKey());
+            entries.add(entry.getValue());
+        }
+        out.writeInt(entries.size() / 2);
+        for (Object o : entries)
+            out.writeObject(o);
+    }
+
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        init();
+        for (int i = in.readInt(); i > 0; i--)
+            put(in.readObject(), in.readObject());
+    }
+
+    /**
+     * Soft reference to a value, remembering its oid.
+     */
+    private static class ValueRef
+        extends SoftReference<Object> {
+
+        final Object key;
+
+        ValueRef(Object key, Object value, ReferenceQueue<Object> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Open addressing table of the primitive oid values of a hierarchy,
+     * using linear probing.
+     */
+    private static class IdTable {
+
+        final Class<?> idType;
+        long[] ids = new long[INITIAL_CAPACITY];
+        ValueRef[] refs = new ValueRef[INITIAL_CAPACITY];
+        int size = 0;
+
+        IdTable(Class<?> idType) {
+            this.idType = idType;
+        }
+
+        private static int index(long id, int mask) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+
+        private int indexOf(long id) {
+            int mask = refs.length - 1;
+            for (int i = index(id, mask); refs[i] != null; i = (i + 1) & mask)
+                if (ids[i] == id)
+                    return i;
+            return -1;
+        }
+
+        ValueRef get(long id) {
+            int i = indexOf(id);
+            return (i == -1) ? null : refs[i];
+        }
+
+        void put(long id, ValueRef ref) {
+            int mask = refs.length - 1;
+            int i = index(id, mask);
+            for (; refs[i] != null; i = (i + 1) & mask) {
+                if (ids[i] == id) {
+                    refs[i] = ref;
+                    return;
+                }
+            }
+            ids[i] = id;
+            refs[i] = ref;
+            if (++size * 4 > refs.length * 3)
+                resize();
+        }
+
+        void remove(long id) {
+            int i = indexOf(id);
+            if (i != -1)
+                removeAt(i);
+        }
+
+        void remove(ValueRef ref) {
+            int i = indexOf(toLong(ref.key));
+            if (i != -1 && refs[i] == ref)
+                removeAt(i);
+        }
+
+        /**
+         * Remove the given slot, moving back the entries of the following
+         * run that would no longer be found otherwise.
+         */
+        private void removeAt(int i) {
+            int mask = refs.length - 1;
+            int j = i;
+            int k;
+            while (true) {
+                j = (j + 1) & mask;
+                if (refs[j] == null)
+                    break;
+                k = index(ids[j], mask);
+                // move the entry back unless its home slot lies
+                // cyclically within (i, j]
+                if ((i <= j) ? (i < k && k <= j) : (i < k || k <= j))
+                    continue;
+                ids[i] = ids[j];
+                refs[i] = refs[j];
+                i = j;
+            }
+            refs[i] = null;
+            size--;
+        }
+
+        private void resize() {
+            long[] ids = this.ids;
+            ValueRef[] refs = this.refs;
+            this.ids = new long[ids.length * 2];
+            this.refs = new ValueRef[refs.length * 2];
+            int mask = this.refs.length - 1;
+            int j;
+            for (int i = 0; i < refs.length; i++) {
+                if (refs[i] == null)
+                    continue;
+                j = index(ids[i], mask);
+                while (this.refs[j] != null)
+                    j = (j + 1) & mask;
+                this.ids[j] = ids[i];
+                this.refs[j] = refs[i];
+            }
+        }
+    }
+
+    /**
+     * Iterator over the entries with uncollected values.
+     */
+    private abstract class EntryIterator<E>
+        implements Iterator<E> {
+
+        private final Iterator<Entry<Object, Object>> _others =
+            (_other == null) ? null : _other.entrySet().iterator();
+        private int _table = 0;
+        private int _slot = 0;
+        private Object _key = null;
+        private Object _value = null;
+
+        @Override
+        public boolean hasNext() {
+            if (_value != null)
+                return true;
+
+            Entry<Object, Object> entry;
+            while (_others != null && _others.hasNext()) {
+                entry = _others.next();
+                if (entry.getValue() != null) {
+                    _key = entry.getKey();
+                    _value = entry.getValue();
+                    return true;
+                }
+            }
+
+            IdTable table;
+            ValueRef ref;
+            for (; _table < _tableList.size(); _table++, _slot = 0) {
+                table = _tableList.get(_table);
+                while (_slot < table.refs.length) {
+                    ref = table.refs[_slot++];
+                    if (ref != null && (_value = ref.get()) != null) {
+                        _key = ref.key;
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            E next = next(_key, _value);
+            _key = null;
+            _value = null;
+            return next;
+        }
+
+        protected abstract E next(Object key, Object value);
+    }
+}
@@ -827,15 +827,16 @@ public class ObjectIdStateManager
         FieldMetaData fmd = getMetaData().getField(field);
         Object val = null;
         if (fmd.getBackingMember() instanceof Field)
-            val = Reflection.get(_oid, (Field) fmd.getBackingMember());
+            val = Reflection.getAccessor((Field) fmd.getBackingMember()).
+                get(_oid);
         else if (fmd.getBackingMember() instanceof Method)
             val = Reflection.get(_oid, (Method) fmd.getBackingMember());
         else if (AccessCode.isField(fmd.getDefiningMetaData().getAccessType()))
-            val = Reflection.get(_oid, Reflection.findField(_oid.getClass(),
-                fmd.getName(), true));
+            val = Reflection.findFieldAccessor(_oid.getClass(),
+                fmd.getName(), true).get(_oid);
         else
-            val = Reflection.get(_oid, Reflection.findGetter(_oid.getClass(),
-            fmd.getName(), true));
+            val = Reflection.findGetterAccessor(_oid.getClass(),
+                fmd.getName(), true).get(_oid);
 
         if (fmd.getValue().getEmbeddedMetaData() != null)
             return new ObjectIdStateManager(val, null, fmd);
@@ -863,13 +864,14 @@ public class ObjectIdStateManager
 
         FieldMetaData fmd = getMetaData().getField(field);
         if (fmd.getBackingMember() instanceof Field)
-            Reflection.set(_oid, (Field) fmd.getBackingMember(), val);
+            Reflection.getAccessor((Field) fmd.getBackingMember()).
+                set(_oid, val);
         else if (AccessCode.isField(fmd.getDefiningMetaData().getAccessType()))
-            Reflection.set(_oid, Reflection.findField(_oid.getClass(),
-                fmd.getName(), true), val);
+            Reflection.findFieldAccessor(_oid.getClass(), fmd.getName(),
+                true).set(_oid, val);
         else
-            Reflection.set(_oid, Reflection.findSetter(_oid.getClass(),
-                fmd.getName(), fmd.getDeclaredType(), true), val);
+            Reflection.findSetterAccessor(_oid.getClass(), fmd.getName(),
+                fmd.getDeclaredType(), true).set(_oid, val);
 	}
 
     @Override
@@ -106,6 +106,8 @@ public interface PreparedQuery  {
 	 *
 	 * @param user the map of parameter key and value set by the user on the
 	 * original query.
+	 * @return the parameters, or null if the given values can not be bound
+	 * to the prepared query and the original query must be executed instead.
 	 */
 	Map reparametrize(Map user, Broker broker);
 
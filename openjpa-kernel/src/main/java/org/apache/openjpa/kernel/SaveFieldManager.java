@@ -22,10 +22,17 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.openjpa.enhance.PersistenceCapable;
 import org.apache.openjpa.meta.FieldMetaData;
@@ -43,6 +50,7 @@ public class SaveFieldManager
 
     
     private static final long serialVersionUID = 1L;
+    private static final Object NULL = new Object();
     private final StateManagerImpl _sm;
     private final BitSet _unloaded;
     private BitSet _saved = null;
@@ -52,6 +60,13 @@ public class SaveFieldManager
     // used to track field value during store/fetch cycle
     private Object _field = null;
 
+    // saved values of fields, read from the saved state on first comparison
+    private transient Object[] _values = null;
+    private transient SingleFieldManager _single = null;
+
+    // copies of the loaded values of mutable fields that are not saved
+    private transient Object[] _copies = null;
+
     /**
      * Constructor. Provide {@link StateManagerImpl} of instance to save.
      */
@@ -125,6 +140,10 @@ public class SaveFieldManager
             if (restore == RestoreState.RESTORE_NONE
                 || (mutable && restore == RestoreState.RESTORE_IMMUTABLE)) {
                 _unloaded.set(field);
+                // instances whose changes are not intercepted are dirty
+                // checked; keep a copy to compare against
+                if (mutable && !_sm.isIntercepting())
+                    copy(field);
                 return false;
             }
         }
@@ -136,6 +155,8 @@ public class SaveFieldManager
             _saved = new BitSet(_sm.getMetaData().getFields().length);
 
         _saved.set(field);
+        if (_values != null)
+            _values[field] = null;
 
         // if mutable, return true to indicate that the field needs to be
         // copied by providing and replacing it using this field manager
@@ -180,17 +201,161 @@ public class SaveFieldManager
      * state and in the saved state; otherwise, <code>false</code>.
      */
     public boolean isFieldEqual(int field, Object current) {
-        // if the field is not available, assume that it has changed.
+        // if the field is not available, assume that it has changed,
+        // unless a copy of it was taken
         if (_saved == null || !_saved.get(field))
-            return false;
+            return isCopyEqual(field, current);
         if (!(getState().pcGetStateManager() instanceof StateManagerImpl))
             return false;
 
-        StateManagerImpl sm = (StateManagerImpl) getState().pcGetStateManager();
-        SingleFieldManager single = new SingleFieldManager(sm, sm.getBroker());
-        sm.provideField(getState(), single, field);
-        Object old = single.fetchObjectField(field);
-        return current == old || current != null && current.equals(old);
+        Object old = getSavedValue(field);
+        if (current == old)
+            return true;
+        if (current == null || old == null)
+            return false;
+
+        // saved arrays are copies; compare their content
+        if (current.getClass().isArray())
+            return current.getClass() == old.getClass()
+                && Arrays.deepEquals(new Object[]{ current },
+                new Object[]{ old });
+        return current.equals(old);
+    }
+
+    /**
+     * Record a copy of the current value of the given field, if the field
+     * type can be copied and compared by content.
+     */
+    private void copy(int field) {
+        switch (_sm.getMetaData().getField(field).getDeclaredTypeCode()) {
+            case JavaTypes.DATE:
+            case JavaTypes.ARRAY:
+            case JavaTypes.COLLECTION:
+            case JavaTypes.MAP:
+                break;
+            default:
+                return;
+        }
+
+        if (_copies == null)
+            _copies = new Object[_sm.getMetaData().getFields().length];
+        Object copy = copyValue(_sm.fetchField(field, false));
+        _copies[field] = (copy == null) ? NULL : copy;
+    }
+
+    /**
+     * Return a copy of the given value of a field that can be changed in
+     * place, or null if the value is null or can not be copied. Elements
+     * of collections and maps are not copied.
+     */
+    private static Object copyValue(Object val) {
+        if (val instanceof Date)
+            return ((Date) val).clone();
+        if (val instanceof Object[]) {
+            Object[] arr = ((Object[]) val).clone();
+            for (int i = 0; i < arr.length; i++)
+                if (arr[i] != null && arr[i].getClass().isArray())
+                    arr[i] = copyValue(arr[i]);
+            return arr;
+        }
+        if (val != null && val.getClass().isArray()) {
+            int len = Array.getLength(val);
+            Object arr = Array.newInstance(val.getClass().getComponentType(),
+                len);
+            System.arraycopy(val, 0, arr, 0, len);
+            return arr;
+        }
+        if (val instanceof List)
+            return new ArrayList<>((List) val);
+        if (val instanceof Set)
+            return new HashSet<>((Set) val);
+        if (val instanceof Collection)
+            return new ArrayList<>((Collection) val);
+        if (val instanceof Map)
+            return new HashMap<>((Map) val);
+        return null;
+    }
+
+    /**
+     * Compare the given value of a field to the copy taken when the field
+     * was loaded.
+     */
+    private boolean isCopyEqual(int field, Object current) {
+        Object copy = (_copies == null) ? null : _copies[field];
+        if (copy == null)
+            return false;
+        if (copy == NULL)
+            return current == null;
+        if (current == null)
+            return false;
+
+        if (copy instanceof Date)
+            return current.getClass() == copy.getClass()
+                && current.equals(copy);
+        if (copy.getClass().isArray())
+            return current.getClass() == copy.getClass()
+                && Arrays.deepEquals(new Object[]{ current },
+                new Object[]{ copy });
+        if (copy instanceof List)
+            return current instanceof List && copy.equals(current);
+        if (copy instanceof Set)
+            return current instanceof Set && copy.equals(current);
+        if (copy instanceof Collection) {
+            // no content equality for plain collections; compare the
+            // elements in iteration order
+            return current instanceof Collection
+                && !(current instanceof List || current instanceof Set)
+                && copy.equals(new ArrayList<>((Collection) current));
+        }
+        return current instanceof Map && copy.equals(current);
+    }
+
+    /**
+     * Return the saved value of the given field. Saved values do not change
+     * once saved, so they are only read from the saved state once.
+     */
+    private Object getSavedValue(int field) {
+        if (_values == null)
+            _values = new Object[_sm.getMetaData().getFields().length];
+        Object old = _values[field];
+        if (old == null) {
+            StateManagerImpl sm = (StateManagerImpl) getState().
+                pcGetStateManager();
+            if (_single == null)
+                _single = new SingleFieldManager(sm, sm.getBroker());
+            sm.provideField(getState(), _single, field);
+            old = fetchSavedField(field);
+            _single.clear();
+            _values[field] = (old == null) ? NULL : old;
+        }
+        return (old == NULL) ? null : old;
+    }
+
+    /**
+     * Return the value provided to the transfer field manager, boxing
+     * primitives the way {@link StateManagerImpl#fetchField} does.
+     */
+    private Object fetchSavedField(int field) {
+        switch (_sm.getMetaData().getField(field).getDeclaredTypeCode()) {
+            case JavaTypes.BOOLEAN:
+                return _single.fetchBooleanField(field);
+            case JavaTypes.BYTE:
+                return _single.fetchByteField(field);
+            case JavaTypes.CHAR:
+                return _single.fetchCharField(field);
+            case JavaTypes.DOUBLE:
+                return _single.fetchDoubleField(field);
+            case JavaTypes.FLOAT:
+                return _single.fetchFloatField(field);
+            case JavaTypes.INT:
+                return _single.fetchIntField(field);
+            case JavaTypes.LONG:
+                return _single.fetchLongField(field);
+            case JavaTypes.SHORT:
+                return _single.fetchShortField(field);
+            default:
+                return _single.fetchObjectField(field);
+        }
     }
 
     @Override
@@ -108,6 +108,7 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
     private static final int FLAG_VERSION_UPDATE = 2 << 15;
     private static final int FLAG_DETACHING = 2 << 16;
     private static final int FLAG_EMBED_DEREF = 2 << 17;
+    private static final int FLAG_READ_ONLY = 2 << 18;
 
     private static final Localizer _loc = Localizer.forPackage
         (StateManagerImpl.class);
@@ -260,6 +261,27 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
             _flags &= ~FLAG_LOADING;
     }
 
+    /**
+     * Whether this state manager loads a read-only instance, which is not
+     * cached by the broker and is detached once loaded.
+     *
+     * @see FetchConfiguration#getReadOnly
+     */
+    boolean isReadOnly() {
+        return (_flags & FLAG_READ_ONLY) != 0;
+    }
+
+    /**
+     * Mark this state manager as loading a read-only instance. Must be
+     * called before the state manager is initialized.
+     */
+    void setReadOnly(boolean readOnly) {
+        if (readOnly)
+            _flags |= FLAG_READ_ONLY;
+        else
+            _flags &= ~FLAG_READ_ONLY;
+    }
+
     /**
      * Set or reset the lifecycle state of the managed instance. If the
      * transactional state of the instance changes, it will be enlisted/
@@ -378,8 +400,13 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
         if (_oid instanceof OpenJPAId)
             ((OpenJPAId) _oid).setManagedInstanceType(_meta.getDescribedType());
 
-        // initialize our state and add ourselves to the broker's cache
+        // initialize our state and add ourselves to the broker's cache;
+        // read-only instances are only tracked until they are detached
         setPCState(state);
+        if (isReadOnly()) {
+            _broker.addReadOnly(this);
+            return;
+        }
         if ( _oid == null ||
             _broker.getStateManagerImplById(_oid, false) == null) {
         	_broker.setStateManager(_id, this, BrokerImpl.STATUS_INIT);
@@ -418,6 +445,8 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
      * Fire the given lifecycle event to all listeners.
      */
     private boolean fireLifecycleEvent(int type) {
+        if (isReadOnly())
+            return false;
         if (type == LifecycleEvent.AFTER_PERSIST
                 && _broker.getConfiguration().getCallbackOptionsInstance().getPostPersistCallbackImmediate()) {
             fetchObjectId();
@@ -973,9 +1002,11 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
             // as such. ##### validate?
             if (!fmds[i].isPrimaryKey() && !fmds[i].isVersion()
                 && _loaded.get(i)) {
-                if (!saved.isFieldEqual(i, fetch(i))) {
+                // fields already waiting to be flushed stay dirty
+                if (isFieldDirty(i) && !isFieldFlushed(i))
+                    continue;
+                if (!saved.isFieldEqual(i, fetchField(i, false)))
                     dirty(i);
-                }
             }
         }
     }
@@ -1090,6 +1121,10 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
         if (field != -1 && _meta.getField(field).isPrimaryKey())
             return;
 
+        // read-only instances never become transactional
+        if (isReadOnly())
+            return;
+
         if (_broker.isActive() && !_broker.isTransactionEnding()) {
             if (_broker.getOptimistic())
                 setPCState(_state.beforeOptimisticRead(this, field));
@@ -1234,6 +1269,7 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
             }
         }
         _loaded = loaded;
+        indexChanged(-1);
         _dirty = savepoint.getDirty();
         _flush = savepoint.getFlushed();
         _version = savepoint.getVersion();
@@ -3084,6 +3120,7 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
                     clearFields();
                 else // only unloaded fields were dirtied
                     _loaded.andNot(_loaded);
+                indexChanged(-1);
             }
             // we direct state transitions based on our own getRestoreState
             // method, but to decide whether to actually rollback field
@@ -3096,6 +3133,7 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
 
                 // rollback loaded set
                 _loaded.andNot(_saved.getUnloaded());
+                indexChanged(-1);
             }
         }
         finally {
@@ -3387,6 +3425,17 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
         pc.pcReplaceField(field);
         // Retaining original FM because of the possibility of reentrant calls
         if (beforeFM != null) _fm = beforeFM;
+        indexChanged(field);
+    }
+
+    /**
+     * Notify the broker's field value index, if any, that the given field
+     * may have changed. A negative field stands for any field.
+     */
+    private void indexChanged(int field) {
+        ManagedIndex index = _broker.getManagedIndex();
+        if (index != null)
+            index.changed(this, field);
     }
 
     /**
@@ -3405,10 +3454,18 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
                 _fieldImpl[idx] = null;
         }
 
-        if (isLoaded)
+        if (isLoaded) {
             _loaded.set(field);
-        else
+            // the snapshot of instances that are dirty checked has to
+            // include the fields loaded after it was taken
+            if (_saved != null && !isIntercepting() && !isFieldDirty(field)
+                && _saved.saveField(field)) {
+                provideField(_pc, _saved, field);
+                replaceField(_saved.getState(), _saved, field);
+            }
+        } else
             _loaded.clear(field);
+        indexChanged(field);
     }
 
     /**
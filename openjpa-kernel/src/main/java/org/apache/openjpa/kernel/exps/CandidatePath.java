@@ -23,6 +23,7 @@ import java.util.LinkedList;
 import java.util.ListIterator;
 import java.util.Objects;
 
+import org.apache.openjpa.enhance.PersistenceCapable;
 import org.apache.openjpa.kernel.Broker;
 import org.apache.openjpa.kernel.Filters;
 import org.apache.openjpa.kernel.OpenJPAStateManager;
@@ -95,6 +96,18 @@ public class CandidatePath
         return null;
     }
 
+    /**
+     * Return the field if this path is a single traversal from the
+     * candidate, else null.
+     */
+    FieldMetaData getCandidateField() {
+        if (_correlationVar != null || _actions == null
+            || _actions.size() != 1
+            || !(_actions.getFirst() instanceof Traversal))
+            return null;
+        return ((Traversal) _actions.getFirst()).field;
+    }
+
     /**
      * Cast this path to the given type.
      */
@@ -121,7 +134,7 @@ public class CandidatePath
                 if (action instanceof Traversal
                     && ((Traversal) action).nullTraversal)
                     return null;
-                throw new NullPointerException();
+                throw new NullTraversalException();
             }
 
             // check that the cast is valid
@@ -134,7 +147,10 @@ public class CandidatePath
             // be proxyable
             sm = null;
             tmpBroker = null;
-            if (ImplHelper.isManageable(candidate))
+            if (candidate instanceof PersistenceCapable)
+                sm = (OpenJPAStateManager) ((PersistenceCapable) candidate).
+                    pcGetStateManager();
+            else if (ImplHelper.isManageable(candidate))
                 sm = (OpenJPAStateManager) (ImplHelper.toPersistenceCapable(
                     candidate, ctx.getConfiguration())).
                     pcGetStateManager();
@@ -173,6 +189,22 @@ public class CandidatePath
         return Objects.equals(_actions, ((CandidatePath) other)._actions);
     }
 
+    /**
+     * Thrown when traversing through a null value. Evaluation catches it to
+     * reject the candidate, which happens for every candidate with a null
+     * relation, so it does not fill in a stack trace.
+     */
+    private static class NullTraversalException
+        extends NullPointerException {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
     /**
      * Represents a traversal through a field.
      */
@@ -44,12 +44,21 @@ abstract class CompareExpression
         _val2 = val2;
     }
 
+    public Val getValue1() {
+        return _val1;
+    }
+
+    public Val getValue2() {
+        return _val2;
+    }
+
     @Override
     protected boolean eval(Object candidate, Object orig,
         StoreContext ctx, Object[] params) {
         Object o1 = _val1.eval(candidate, orig, ctx, params);
         Object o2 = _val2.eval(candidate, orig, ctx, params);
-        if (o1 != null && o2 != null) {
+        // values of the same class need no conversion
+        if (o1 != null && o2 != null && o1.getClass() != o2.getClass()) {
             Class c = Filters.promote(o1.getClass(), o2.getClass());
             o1 = Filters.convert(o1, c);
             o2 = Filters.convert(o2, c);
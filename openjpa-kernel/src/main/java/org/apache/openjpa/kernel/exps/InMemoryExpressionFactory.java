@@ -35,6 +35,7 @@ import org.apache.openjpa.kernel.Extent;
 import org.apache.openjpa.kernel.StoreContext;
 import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
 import org.apache.openjpa.util.ImplHelper;
 import org.apache.openjpa.util.UnsupportedException;
 import org.apache.openjpa.util.UserException;
@@ -75,6 +76,54 @@ public class InMemoryExpressionFactory
         return matches((Exp) exps.filter, candidate, ctx, params, 0);
     }
 
+    /**
+     * Return the field and the value of a condition of the form
+     * <code>candidate.field == value</code> that every candidate has to
+     * satisfy to match the filter of the given expressions, where the value
+     * is a non-null literal or parameter. Return null if the filter has no
+     * such condition.
+     */
+    public Object[] getEqualityCondition(QueryExpressions exps,
+        Object[] params) {
+        return getEqualityCondition((Exp) exps.filter, params);
+    }
+
+    private static Object[] getEqualityCondition(Exp exp, Object[] params) {
+        if (exp instanceof AndExpression) {
+            AndExpression and = (AndExpression) exp;
+            Object[] cond = getEqualityCondition(and.getExpression1(), params);
+            if (cond == null)
+                cond = getEqualityCondition(and.getExpression2(), params);
+            return cond;
+        }
+        if (!(exp instanceof EqualExpression))
+            return null;
+
+        EqualExpression eq = (EqualExpression) exp;
+        FieldMetaData fmd = getCandidateField(eq.getValue1());
+        Val val = eq.getValue2();
+        if (fmd == null) {
+            fmd = getCandidateField(eq.getValue2());
+            val = eq.getValue1();
+        }
+        if (fmd == null)
+            return null;
+
+        Object value;
+        if (val instanceof Lit)
+            value = ((Lit) val).getValue();
+        else if (val instanceof Param)
+            value = ((Param) val).getValue(params);
+        else
+            return null;
+        return (value == null) ? null : new Object[]{ fmd, value };
+    }
+
+    private static FieldMetaData getCandidateField(Val val) {
+        return (val instanceof CandidatePath)
+            ? ((CandidatePath) val).getCandidateField() : null;
+    }
+
     /**
      * Recursive method to evaluate the expression for all possible
      * combinations of unbound variables. This method simulates a sequence
@@ -40,6 +40,10 @@ class MatchesExpression
     private final String _multi;
     private final boolean _affirmation;
 
+    // the last pattern and its translation; replaced as a whole so that
+    // concurrent evaluations see a consistent pair
+    private transient volatile Object[] _last = null;
+
     /**
      * Constructor. Supply values to compare.
      */
@@ -59,8 +63,22 @@ class MatchesExpression
         if (o1 == null || o2 == null)
             return false;
 
+        boolean matches = getRegex(o2.toString()).matches(o1.toString());
+        return _affirmation ? matches : !matches;
+    }
+
+    /**
+     * Return the expression for the given pattern. The pattern is the same
+     * for all candidates unless it is a path, so the last translation is
+     * kept.
+     */
+    private SimpleRegex getRegex(String pattern) {
+        Object[] last = _last;
+        if (last != null && last[0].equals(pattern))
+            return (SimpleRegex) last[1];
+
         // case insensitive?
-        String str = o2.toString();
+        String str = pattern;
         int idx = str.indexOf("(?i)");
         boolean uncase = false;
         if (idx != -1) {
@@ -75,10 +93,9 @@ class MatchesExpression
         // sequences into an escape that conforms to the regexp syntax
         str = StringUtil.replace(str, _multi, ".*");
         str = StringUtil.replace(str, _single, ".");
-
         SimpleRegex re = new SimpleRegex(str, uncase);
-        boolean matches = re.matches(o1.toString());
-        return _affirmation ? matches : !matches;
+        _last = new Object[]{ pattern, re };
+        return re;
     }
 }
 
@@ -34,6 +34,10 @@ abstract class MathVal
     private final Val _val1;
     private final Val _val2;
 
+    // the promoted type of the two values, computed on first evaluation
+    // once the types of all parameters are known
+    private transient Class _promoted = null;
+
     /**
      * Constructor. Provide the values to operate on.
      */
@@ -58,7 +62,13 @@ abstract class MathVal
         StoreContext ctx, Object[] params) {
         Object o1 = _val1.eval(candidate, orig, ctx, params);
         Object o2 = _val2.eval(candidate, orig, ctx, params);
-        return operate(o1, _val1.getType(), o2, _val2.getType());
+        Class promoted = _promoted;
+        if (promoted == null) {
+            promoted = getType();
+            _promoted = promoted;
+        }
+        // promoting the promoted type to itself is trivial
+        return operate(o1, promoted, o2, promoted);
     }
 
     /**
@@ -19,6 +19,7 @@
 package org.apache.openjpa.kernel.exps;
 
 import org.apache.openjpa.kernel.StoreContext;
+import org.apache.openjpa.meta.FieldMetaData;
 
 /**
  * Represents a path that begins with a variable or parameter.
@@ -44,6 +45,12 @@ class ValuePath
         return _val.getType();
     }
 
+    @Override
+    FieldMetaData getCandidateField() {
+        // traverses from the value, not the candidate
+        return null;
+    }
+
     @Override
     protected Object eval(Object candidate, Object orig,
         StoreContext ctx, Object[] params) {
@@ -39,11 +39,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import org.apache.openjpa.conf.OpenJPAConfiguration;
 import org.apache.openjpa.conf.OpenJPAConfigurationImpl;
+import org.apache.openjpa.lib.meta.ClassAnnotationIndex;
+import org.apache.openjpa.lib.meta.ClassAnnotationMetaDataFilter;
 import org.apache.openjpa.lib.meta.ClassArgParser;
 import org.apache.openjpa.lib.meta.ClasspathMetaDataIterator;
 import org.apache.openjpa.lib.meta.FileMetaDataIterator;
@@ -83,6 +86,8 @@ public abstract class AbstractCFMetaDataFactory
     protected Collection<String> cpath = null;
 
     private Set<String> _typeNames = null;
+    private boolean _useIndex = false;
+    private int _scanThreads = 1;
     public static final String PERSISTENCE_UNIT_ROOT_URL = "PersistenceUnitRootUrl";
     public static final String MAPPING_FILE_NAMES = "MappingFileNames";
     public static final String JAR_FILE_URLS = "JarFiles";
@@ -176,6 +181,46 @@ public abstract class AbstractCFMetaDataFactory
           : new ArrayList<>(Arrays.asList(StringUtil.split(cpath, ";", 0)));
     }
 
+    /**
+     * Whether to read the persistent types of a directory or jar from its
+     * {@link ClassAnnotationIndex} instead of scanning its classes, if the
+     * directory or jar has an index. The index is not checked against the
+     * classes, so classes added or annotated after it was written are not
+     * found. Defaults to false.
+     */
+    public boolean getUseAnnotationIndex() {
+        return _useIndex;
+    }
+
+    /**
+     * Whether to read the persistent types of a directory or jar from its
+     * {@link ClassAnnotationIndex} instead of scanning its classes, if the
+     * directory or jar has an index. The index is not checked against the
+     * classes, so classes added or annotated after it was written are not
+     * found. Defaults to false.
+     */
+    public void setUseAnnotationIndex(boolean useIndex) {
+        _useIndex = useIndex;
+    }
+
+    /**
+     * The number of threads used to read and filter the entries of a jar
+     * file which is scanned for persistent types. Values less than one use
+     * one thread per available processor. Defaults to 1.
+     */
+    public int getScanThreads() {
+        return _scanThreads;
+    }
+
+    /**
+     * The number of threads used to read and filter the entries of a jar
+     * file which is scanned for persistent types. Values less than one use
+     * one thread per available processor. Defaults to 1.
+     */
+    public void setScanThreads(int threads) {
+        _scanThreads = threads;
+    }
+
     @Override
     public boolean store(ClassMetaData[] metas, QueryMetaData[] queries,
         SequenceMetaData[] seqs, int mode, Map<File,String> output) {
@@ -652,19 +697,27 @@ public abstract class AbstractCFMetaDataFactory
                 file = (File) itr.next();
                 if ((AccessController.doPrivileged(J2DoPrivHelper
                     .isDirectoryAction(file))).booleanValue()) {
+                    if (scanIndex(new File(file,
+                        ClassAnnotationIndex.RESOURCE), names, file))
+                        continue;
                     if (log.isTraceEnabled())
                         log.trace(_loc.get("scanning-directory", file));
                     scan(new FileMetaDataIterator(file, newMetaDataFilter()),
                         cparser, names, true, file);
                 } else if (file.getName().endsWith(".jar")) {
-                    if (log.isTraceEnabled())
-                        log.trace(_loc.get("scanning-jar", file));
                     try {
                         ZipFile zFile = AccessController
                             .doPrivileged(J2DoPrivHelper
                                 .newZipFileAction(file));
+                        if (scanIndex(zFile, names, file)) {
+                            zFile.close();
+                            continue;
+                        }
+                        if (log.isTraceEnabled())
+                            log.trace(_loc.get("scanning-jar", file));
                         scan(new ZipFileMetaDataIterator(zFile,
-                            newMetaDataFilter()), cparser, names, true, file);
+                            newMetaDataFilter(), _scanThreads), cparser,
+                            names, true, file);
                     } catch (PrivilegedActionException pae) {
                         throw (IOException) pae.getException();
                     }
@@ -702,6 +755,9 @@ public abstract class AbstractCFMetaDataFactory
                     } else if ((AccessController
                         .doPrivileged(J2DoPrivHelper.isDirectoryAction(file)))
                         .booleanValue()) {
+                        if (scanIndex(new File(file,
+                            ClassAnnotationIndex.RESOURCE), names, file))
+                            continue;
                         if (log.isTraceEnabled())
                             log.trace(_loc.get("scanning-directory", file));
                         scan(
@@ -765,10 +821,14 @@ public abstract class AbstractCFMetaDataFactory
                 }
                 if ("jar".equals(url.getProtocol())) {
                     if (url.getPath().endsWith("!/")) {
+                        if (scanIndex(new URL(url,
+                            ClassAnnotationIndex.RESOURCE), names, url))
+                            continue;
                         if (log.isTraceEnabled())
                             log.trace(_loc.get("scanning-jar-url", url));
                         scan(new ZipFileMetaDataIterator(url,
-                            newMetaDataFilter()), cparser, names, true, url);
+                            newMetaDataFilter(), _scanThreads), cparser, names,
+                            true, url);
                     } else {
                         if (log.isTraceEnabled())
                             log.trace(_loc.get("scanning-jar-url", url));
@@ -967,6 +1027,90 @@ public abstract class AbstractCFMetaDataFactory
         }
     }
 
+    /**
+     * Read the persistent type names from the given index file if it exists.
+     *
+     * @return whether the index was read
+     */
+    private boolean scanIndex(File index, Set names, Object debugContext)
+        throws IOException {
+        if (!_useIndex || !(AccessController.doPrivileged(J2DoPrivHelper
+            .isFileAction(index))).booleanValue())
+            return false;
+        try {
+            return scanIndex(AccessController.doPrivileged(J2DoPrivHelper
+                .newFileInputStreamAction(index)), names, debugContext);
+        } catch (PrivilegedActionException pae) {
+            throw (FileNotFoundException) pae.getException();
+        }
+    }
+
+    /**
+     * Read the persistent type names from the index in the given jar if it
+     * has one.
+     *
+     * @return whether the index was read
+     */
+    private boolean scanIndex(ZipFile zFile, Set names, Object debugContext)
+        throws IOException {
+        ZipEntry entry = (_useIndex) ? zFile.getEntry(ClassAnnotationIndex
+            .RESOURCE) : null;
+        if (entry == null)
+            return false;
+        return scanIndex(zFile.getInputStream(entry), names, debugContext);
+    }
+
+    /**
+     * Read the persistent type names from the index at the given URL if it
+     * exists.
+     *
+     * @return whether the index was read
+     */
+    private boolean scanIndex(URL index, Set names, Object debugContext)
+        throws IOException {
+        if (!_useIndex)
+            return false;
+        InputStream in;
+        try {
+            in = AccessController.doPrivileged(J2DoPrivHelper
+                .openStreamAction(index));
+        } catch (PrivilegedActionException pae) {
+            // no index
+            return false;
+        }
+        return scanIndex(in, names, debugContext);
+    }
+
+    /**
+     * Read the persistent type names from the given index stream, which is
+     * closed. Only indexes of annotated classes can be used; for any other
+     * metadata filter the stream is closed and false returned.
+     */
+    private boolean scanIndex(InputStream in, Set names, Object debugContext)
+        throws IOException {
+        ClassAnnotationIndex index;
+        MetaDataFilter filter = newMetaDataFilter();
+        try {
+            if (!(filter instanceof ClassAnnotationMetaDataFilter))
+                return false;
+            index = ClassAnnotationIndex.read(in);
+        } finally {
+            in.close();
+        }
+
+        if (log.isTraceEnabled())
+            log.trace(_loc.get("scanning-index", debugContext));
+        List<String> newNames = index.getClassNames
+            (((ClassAnnotationMetaDataFilter) filter).getAnnotationTypeNames());
+        for (String name : newNames)
+            mapPersistentTypeNames(name.replace('.', '/') + ".class",
+                new String[]{ name });
+        if (log.isTraceEnabled())
+            log.trace(_loc.get("scan-found-names", newNames, debugContext));
+        names.addAll(newNames);
+        return true;
+    }
+
     /**
      * Decodes a URL-encoded path string.  For example, an encoded
      * space (%20) is decoded into a normal space (' ') character.
@@ -19,6 +19,8 @@
 package org.apache.openjpa.meta;
 
 import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.util.ArrayList;
@@ -33,7 +35,11 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.openjpa.conf.OpenJPAConfiguration;
 import org.apache.openjpa.enhance.DynamicPersistenceCapable;
@@ -53,6 +59,7 @@ import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.lib.util.MultiClassLoader;
 import org.apache.openjpa.lib.util.Options;
 import org.apache.openjpa.lib.util.StringDistance;
+import org.apache.openjpa.lib.util.concurrent.CopyOnWriteMap;
 import org.apache.openjpa.util.ClassResolver;
 import org.apache.openjpa.util.ImplHelper;
 import org.apache.openjpa.util.InternalException;
@@ -131,7 +138,7 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
 
     // xml mapping
     protected final XMLMetaData[] EMPTY_XMLMETAS;
-    private final Map<Class<?>, XMLMetaData> _xmlmetas = new HashMap<>();
+    private Map<Class<?>, XMLMetaData> _xmlmetas = new HashMap<>();
 
     private transient OpenJPAConfiguration _conf = null;
     private transient Log _log = null;
@@ -144,7 +151,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
 
     // we buffer up any classes that register themselves to prevent
     // reentrancy errors if classes register during a current parse (common)
-    private final Collection<Class<?>> _registered = new HashSet<>();
+    private final Collection<Class<?>> _registered = ConcurrentHashMap.newKeySet();
+
+    // whether registered classes are being processed; lets lookups skip
+    // processRegisteredClasses() without locking once the repository is frozen
+    private volatile boolean _processingRegistered = false;
 
     // set of metadatas we're in the process of resolving
     private final List<ClassMetaData> _resolving = new ArrayList<>();
@@ -157,7 +168,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
 
     protected boolean _preload = false;
     protected boolean _preloadComplete = false;
-    protected boolean _locking = true;
+    private int _preloadThreads = 1;
+
+    // persistent types found by preload(), reused while resolving them
+    private Collection<Class<?>> _preloadTypes = null;
+    protected volatile boolean _locking = true;
     private static final String PRELOAD_STR = "Preload";
 
     // A boolean used to decide whether or not we need to call to PCEnhancer to check whether we have any down level
@@ -308,6 +323,28 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         _preload = l;
     }
 
+    /**
+     * The number of threads used to load and introspect the persistent
+     * classes during {@link #preload}. Only class loading and the reflection
+     * caches are warmed concurrently; the metadata is still parsed and
+     * resolved on the calling thread. Values less than one use one thread
+     * per available processor. Defaults to 1.
+     */
+    public int getPreloadThreads() {
+        return _preloadThreads;
+    }
+
+    /**
+     * The number of threads used to load and introspect the persistent
+     * classes during {@link #preload}. Only class loading and the reflection
+     * caches are warmed concurrently; the metadata is still parsed and
+     * resolved on the calling thread. Values less than one use one thread
+     * per available processor. Defaults to 1.
+     */
+    public void setPreloadThreads(int threads) {
+        _preloadThreads = threads;
+    }
+
 
      /**
      * If the openjpa.MetaDataRepository plugin value Preload=true is set, this method will load all
@@ -345,18 +382,25 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
             _log.trace(_loc.get("repos-initializeEager-found", classes));
         }
 
-        List<Class<?>> loaded = new ArrayList<>();
-        for (String c : classes) {
-            try {
-                Class<?> cls = AccessController.doPrivileged((J2DoPrivHelper.getForNameAction(c, true, multi)));
-                loaded.add(cls);
-                // This call may be unnecessary?
-                _factory.load(cls, MODE_ALL, multi);
-            } catch (PrivilegedActionException pae) {
-                throw new MetaDataException(_loc.get("repos-initializeEager-error"), pae);
-            }
+        long start = System.currentTimeMillis();
+        List<Class<?>> loaded = loadClasses(classes, multi);
+        long parse = System.currentTimeMillis();
+        for (Class<?> cls : loaded) {
+            // This call may be unnecessary?
+            _factory.load(cls, MODE_ALL, multi);
+        }
+        long resolve = System.currentTimeMillis();
+
+        // resolving a type may ask for all persistent types again, e.g. to
+        // look for unresolved subclasses; answer from a single lookup
+        // rather than loading every configured class name for every type
+        _preloadTypes = loadPersistentTypesInternal(false, multi, false);
+        try {
+            resolveAll(multi);
+        } finally {
+            _preloadTypes = null;
         }
-        resolveAll(multi);
+        long xml = System.currentTimeMillis();
 
         // Preload XML MetaData
         for (Class<?> cls : loaded) {
@@ -373,8 +417,116 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         // list.
         PCRegistry.addRegisterClassListener(this);
         processRegisteredClasses(multi);
-        _locking = false;
+        freeze();
         _preloadComplete = true;
+
+        if (_log.isTraceEnabled()) {
+            long end = System.currentTimeMillis();
+            _log.trace(_loc.get("repos-preload-timing", new Object[] {
+                loaded.size(), end - start, parse - start, resolve - parse,
+                xml - resolve, end - xml }));
+        }
+    }
+
+    /**
+     * Stop locking lookups. The lookup maps are replaced by copy-on-write
+     * maps, so that reads are served from immutable snapshots while types,
+     * aliases or identity classes that are registered late are still
+     * published safely. Subclasses that keep lookup maps of their own must
+     * replace them before calling this method.
+     */
+    protected void freeze() {
+        _metas = new CopyOnWriteMap<>(_metas);
+        _oids = new CopyOnWriteMap<>(_oids);
+        _impls = new CopyOnWriteMap<>(_impls);
+        _ifaces = new CopyOnWriteMap<>(_ifaces);
+        _queries = new CopyOnWriteMap<>(_queries);
+        _seqs = new CopyOnWriteMap<>(_seqs);
+        _aliases = new CopyOnWriteMap<>(_aliases);
+        _pawares = new CopyOnWriteMap<>(_pawares);
+        _nonMapped = new CopyOnWriteMap<>(_nonMapped);
+        _metamodel = new CopyOnWriteMap<>(_metamodel);
+        _subs = new CopyOnWriteMap<>(_subs);
+        _xmlmetas = new CopyOnWriteMap<>(_xmlmetas);
+        _locking = false;
+    }
+
+    /**
+     * Load the given persistent classes. When preloading with more than one
+     * thread, the classes are loaded concurrently and their declared members
+     * and annotations are introspected on the loading thread, so that the
+     * reflection data the metadata parsers read afterwards is already
+     * cached. This does not parallelize the parsing or the resolution of
+     * the metadata, which populate this repository on the calling thread.
+     */
+    private List<Class<?>> loadClasses(Collection<String> names,
+        final ClassLoader loader) {
+        int threads = _preloadThreads;
+        if (threads < 1)
+            threads = Runtime.getRuntime().availableProcessors();
+        threads = Math.min(threads, names.size());
+
+        List<Class<?>> loaded = new ArrayList<>(names.size());
+        if (threads <= 1) {
+            for (String name : names)
+                loaded.add(loadClass(name, loader));
+            return loaded;
+        }
+
+        List<Callable<Class<?>>> tasks = new ArrayList<>(names.size());
+        for (final String name : names) {
+            tasks.add(new Callable<Class<?>>() {
+                @Override
+                public Class<?> call() {
+                    Class<?> cls = loadClass(name, loader);
+                    introspect(cls);
+                    return cls;
+                }
+            });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Future<Class<?>> future : pool.invokeAll(tasks))
+                loaded.add(future.get());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new MetaDataException(_loc.get(
+                "repos-initializeEager-error"), ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ee.getCause();
+            throw new MetaDataException(_loc.get(
+                "repos-initializeEager-error"), ee.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return loaded;
+    }
+
+    private static Class<?> loadClass(String name, ClassLoader loader) {
+        try {
+            return AccessController.doPrivileged(
+                J2DoPrivHelper.getForNameAction(name, true, loader));
+        } catch (PrivilegedActionException pae) {
+            throw new MetaDataException(_loc.get("repos-initializeEager-error"),
+                pae);
+        }
+    }
+
+    /**
+     * Read the declared annotations of the given class and of its declared
+     * fields and methods, which the JVM caches per member.
+     */
+    private static void introspect(Class<?> cls) {
+        AccessController.doPrivileged(
+            J2DoPrivHelper.getDeclaredAnnotationsAction(cls));
+        for (Field field : AccessController.doPrivileged(
+            J2DoPrivHelper.getDeclaredFieldsAction(cls)))
+            field.getDeclaredAnnotations();
+        for (Method method : AccessController.doPrivileged(
+            J2DoPrivHelper.getDeclaredMethodsAction(cls)))
+            method.getDeclaredAnnotations();
     }
 
 
@@ -1534,6 +1686,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
 
     private Collection<Class<?>> loadPersistentTypesInternal(boolean devpath, ClassLoader envLoader,
         boolean mustExist) {
+            // the preloaded types omit classes that failed to load, so
+            // callers that require all of them still look them up
+            if (_preloadTypes != null && !devpath && !mustExist)
+                return new ArrayList<>(_preloadTypes);
+
             Set<String> names = getPersistentTypeNames(devpath, envLoader);
             if (names == null || names.isEmpty()) {
                 if (!mustExist)
@@ -1647,8 +1804,25 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      * This method is synchronized to make sure that all data structures are fully updated
      *  before other threads attempt to call this method
      */
-    synchronized Class<?>[] processRegisteredClasses(ClassLoader envLoader) {
+    Class<?>[] processRegisteredClasses(ClassLoader envLoader) {
+        // check the flag after the buffer: a thread that saw the buffer
+        // drained by another thread also sees that it is still processing
+        if (!_locking && _registered.isEmpty() && !_processingRegistered)
+            return EMPTY_CLASSES;
+        return processRegisteredClassesInternal(envLoader);
+    }
+
+    private synchronized Class<?>[] processRegisteredClassesInternal(
+        ClassLoader envLoader) {
+        _processingRegistered = true;
+        try {
+            return processRegisteredClassesLocked(envLoader);
+        } finally {
+            _processingRegistered = false;
+        }
+    }
 
+    private Class<?>[] processRegisteredClassesLocked(ClassLoader envLoader) {
         Class<?>[] reg;
         /*Synchronize `_registered` cache to block MetaDataRepository.register() from adding
          * to the cache while we copy, causing a ConcurrentModificationException
@@ -1806,12 +1980,17 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
             return;
         try {
             if (alias != null) {
-                List<Class<?>> classes = _aliases.get(alias);
-                if (classes == null)
-                    classes = new ArrayList<>(3);
-                if (!classes.contains(cls)) {
-                    classes.add(cls);
-                    _aliases.put(alias, classes);
+                synchronized (_aliases) {
+                    List<Class<?>> classes = _aliases.get(alias);
+                    if (classes == null)
+                        classes = new ArrayList<>(3);
+                    else if (!_locking && !classes.contains(cls))
+                        // lists of a frozen repository are read unlocked
+                        classes = new ArrayList<>(classes);
+                    if (!classes.contains(cls)) {
+                        classes.add(cls);
+                        _aliases.put(alias, classes);
+                    }
                 }
             }
         } catch (IllegalStateException ise) {
@@ -1867,11 +2046,7 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     private void addToCollection(Map<Class<?>, Collection<Class<?>>> map, 
             Class<?> key, Class<?> value, boolean inheritance) {
-        if (_locking) {
-            synchronized (map) {
-                addToCollectionInternal(map, key, value, inheritance);
-            }
-        } else {
+        synchronized (map) {
             addToCollectionInternal(map, key, value, inheritance);
         }
     }
@@ -1879,16 +2054,22 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
     private void addToCollectionInternal(Map<Class<?>, Collection<Class<?>>> map, 
             Class<?> key, Class<?> value, boolean inheritance) {
         Collection<Class<?>> coll = map.get(key);
-        if (coll == null) {
+        if (coll == null || !_locking) {
+            // collections of a frozen repository are read unlocked, so
+            // they are copied rather than modified
+            Collection<Class<?>> copy;
             if (inheritance) {
                 InheritanceComparator comp = new InheritanceComparator();
                 comp.setBase(key);
-                coll = new TreeSet<Class<?>>(comp);
+                copy = new TreeSet<Class<?>>(comp);
             } else
-                coll = new LinkedList<Class<?>>();
-            map.put(key, coll);
-        }
-        coll.add(value);
+                copy = new LinkedList<Class<?>>();
+            if (coll != null)
+                copy.addAll(coll);
+            copy.add(value);
+            map.put(key, copy);
+        } else
+            coll.add(value);
     }
 
     /**
@@ -18,7 +18,6 @@
  */
 package org.apache.openjpa.util;
 
-import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -27,6 +26,7 @@ import java.security.PrivilegedActionException;
 import java.util.Date;
 
 import org.apache.openjpa.enhance.FieldManager;
+import org.apache.openjpa.enhance.MemberAccessor;
 import org.apache.openjpa.enhance.PCRegistry;
 import org.apache.openjpa.enhance.PersistenceCapable;
 import org.apache.openjpa.enhance.Reflection;
@@ -100,11 +100,11 @@ public class ApplicationIds {
         Class<?> oidType = oid.getClass();
         for (int i = 0; i < fmds.length; i++) {
             if (AccessCode.isField(meta.getAccessType()))
-                pks[i] = Reflection.get(oid, Reflection.findField(oidType,
-                    fmds[i].getName(), true));
+                pks[i] = Reflection.findFieldAccessor(oidType,
+                    fmds[i].getName(), true).get(oid);
             else
-                pks[i] = Reflection.get(oid, Reflection.findGetter(oidType,
-                    fmds[i].getName(), true));
+                pks[i] = Reflection.findGetterAccessor(oidType,
+                    fmds[i].getName(), true).get(oid);
         }
         return pks;
     }
@@ -127,6 +127,100 @@ public class ApplicationIds {
     }
 
 
+    /**
+     * Return a new object id constructed from the given primary key value
+     * of a type using OpenJPA identity. Unlike {@link #fromPKValues}, no
+     * array has to be created to hold the single value.
+     */
+    public static Object fromPKValue(Object pk, ClassMetaData meta) {
+        if (meta == null)
+            return null;
+        if (!meta.isOpenJPAIdentity())
+            return fromPKValues(new Object[]{ pk }, meta);
+
+        boolean convert = !meta.getRepository().getConfiguration().
+            getCompatibilityInstance().getStrictIdentityValues();
+        return fromPKValue(pk, meta, convert);
+    }
+
+    /**
+     * Create the OpenJPA identity instance for the given primary key value.
+     */
+    private static Object fromPKValue(Object pk, ClassMetaData meta,
+        boolean convert) {
+        int type = meta.getPrimaryKeyFields()[0].getObjectIdFieldTypeCode();
+        Object val = (convert) ? JavaTypes.convert(pk, type) : pk;
+        switch (type) {
+            case JavaTypes.BYTE:
+            case JavaTypes.BYTE_OBJ:
+                if (!convert && !(val instanceof Byte))
+                    throw new ClassCastException("!(x instanceof Byte)");
+                return new ByteId(meta.getDescribedType(),
+                    val == null ? 0 : ((Number) val).byteValue());
+            case JavaTypes.CHAR:
+            case JavaTypes.CHAR_OBJ:
+                return new CharId(meta.getDescribedType(),
+                    val == null ? 0 : ((Character) val).charValue());
+            case JavaTypes.DOUBLE:
+            case JavaTypes.DOUBLE_OBJ:
+                if (!convert && !(val instanceof Double))
+                    throw new ClassCastException("!(x instanceof Double)");
+                return new DoubleId(meta.getDescribedType(),
+                    val == null ? 0 : ((Number) val).doubleValue());
+            case JavaTypes.FLOAT:
+            case JavaTypes.FLOAT_OBJ:
+                if (!convert && !(val instanceof Float))
+                    throw new ClassCastException("!(x instanceof Float)");
+                return new FloatId(meta.getDescribedType(),
+                    val == null ? 0 : ((Number) val).floatValue());
+            case JavaTypes.INT:
+            case JavaTypes.INT_OBJ:
+                if (!convert && !(val instanceof Integer))
+                    throw new ClassCastException("!(x instanceof Integer)");
+                return new IntId(meta.getDescribedType(),
+                    val == null ? 0 : ((Number) val).intValue());
+            case JavaTypes.LONG:
+            case JavaTypes.LONG_OBJ:
+                if (!convert && !(val instanceof Long))
+                    throw new ClassCastException("!(x instanceof Long)");
+                return new LongId(meta.getDescribedType(),
+                    val == null ? 0 : ((Number) val).longValue());
+            case JavaTypes.SHORT:
+            case JavaTypes.SHORT_OBJ:
+                if (!convert && !(val instanceof Short))
+                    throw new ClassCastException("!(x instanceof Short)");
+                return new ShortId(meta.getDescribedType(),
+                    val == null ? 0 : ((Number) val).shortValue());
+            case JavaTypes.STRING:
+                return new StringId(meta.getDescribedType(), (String) val);
+            case JavaTypes.DATE:
+                return new DateId(meta.getDescribedType(), (Date) val);
+            case JavaTypes.OID:
+            case JavaTypes.OBJECT:
+                return new ObjectId(meta.getDescribedType(), val);
+            case JavaTypes.BIGDECIMAL:
+                if (!convert && !(val instanceof BigDecimal))
+                    throw new ClassCastException(
+                        "!(x instanceof BigDecimal)");
+                return new BigDecimalId(meta.getDescribedType(),
+                    (BigDecimal)val);
+            case JavaTypes.BIGINTEGER:
+                if (!convert && !(val instanceof BigInteger))
+                    throw new ClassCastException(
+                        "!(x instanceof BigInteger)");
+                return new BigIntegerId(meta.getDescribedType(),
+                    (BigInteger)val);
+            case JavaTypes.BOOLEAN:
+            case JavaTypes.BOOLEAN_OBJ:
+                if (!convert && !(val instanceof Boolean))
+                    throw new ClassCastException("!(x instanceof Boolean)");
+                return new BooleanId(meta.getDescribedType(),
+                    val == null ? false : (Boolean)val);
+            default:
+                throw new InternalException();
+        }
+    }
+
     /**
      * Return a new object id constructed from the given primary key values.
      * Values for PC primary key fields should be the primary key value or
@@ -139,79 +233,8 @@ public class ApplicationIds {
 
         boolean convert = !meta.getRepository().getConfiguration().
             getCompatibilityInstance().getStrictIdentityValues();
-        if (meta.isOpenJPAIdentity()) {
-            int type = meta.getPrimaryKeyFields()[0].getObjectIdFieldTypeCode();
-            Object val = (convert) ? JavaTypes.convert(pks[0], type) : pks[0];
-            switch (type) {
-                case JavaTypes.BYTE:
-                case JavaTypes.BYTE_OBJ:
-                    if (!convert && !(val instanceof Byte))
-                        throw new ClassCastException("!(x instanceof Byte)");
-                    return new ByteId(meta.getDescribedType(),
-                        val == null ? 0 : ((Number) val).byteValue());
-                case JavaTypes.CHAR:
-                case JavaTypes.CHAR_OBJ:
-                    return new CharId(meta.getDescribedType(),
-                        val == null ? 0 : ((Character) val).charValue());
-                case JavaTypes.DOUBLE:
-                case JavaTypes.DOUBLE_OBJ:
-                    if (!convert && !(val instanceof Double))
-                        throw new ClassCastException("!(x instanceof Double)");
-                    return new DoubleId(meta.getDescribedType(),
-                        val == null ? 0 : ((Number) val).doubleValue());
-                case JavaTypes.FLOAT:
-                case JavaTypes.FLOAT_OBJ:
-                    if (!convert && !(val instanceof Float))
-                        throw new ClassCastException("!(x instanceof Float)");
-                    return new FloatId(meta.getDescribedType(),
-                        val == null ? 0 : ((Number) val).floatValue());
-                case JavaTypes.INT:
-                case JavaTypes.INT_OBJ:
-                    if (!convert && !(val instanceof Integer))
-                        throw new ClassCastException("!(x instanceof Integer)");
-                    return new IntId(meta.getDescribedType(),
-                        val == null ? 0 : ((Number) val).intValue());
-                case JavaTypes.LONG:
-                case JavaTypes.LONG_OBJ:
-                    if (!convert && !(val instanceof Long))
-                        throw new ClassCastException("!(x instanceof Long)");
-                    return new LongId(meta.getDescribedType(),
-                        val == null ? 0 : ((Number) val).longValue());
-                case JavaTypes.SHORT:
-                case JavaTypes.SHORT_OBJ:
-                    if (!convert && !(val instanceof Short))
-                        throw new ClassCastException("!(x instanceof Short)");
-                    return new ShortId(meta.getDescribedType(),
-                        val == null ? 0 : ((Number) val).shortValue());
-                case JavaTypes.STRING:
-                    return new StringId(meta.getDescribedType(), (String) val);
-                case JavaTypes.DATE:
-                    return new DateId(meta.getDescribedType(), (Date) val);
-                case JavaTypes.OID:
-                case JavaTypes.OBJECT:
-                    return new ObjectId(meta.getDescribedType(), val);
-                case JavaTypes.BIGDECIMAL:
-                    if (!convert && !(val instanceof BigDecimal))
-                        throw new ClassCastException(
-                            "!(x instanceof BigDecimal)");
-                    return new BigDecimalId(meta.getDescribedType(),
-                        (BigDecimal)val);
-                case JavaTypes.BIGINTEGER:
-                    if (!convert && !(val instanceof BigInteger))
-                        throw new ClassCastException(
-                            "!(x instanceof BigInteger)");
-                    return new BigIntegerId(meta.getDescribedType(),
-                        (BigInteger)val);
-                case JavaTypes.BOOLEAN:
-                case JavaTypes.BOOLEAN_OBJ:
-                    if (!convert && !(val instanceof Boolean))
-                        throw new ClassCastException("!(x instanceof Boolean)");
-                    return new BooleanId(meta.getDescribedType(),
-                        val == null ? false : (Boolean)val);
-                default:
-                    throw new InternalException();
-            }
-        }
+        if (meta.isOpenJPAIdentity())
+            return fromPKValue(pks[0], meta, convert);
 
         // copy pks to oid
         if (!Modifier.isAbstract(meta.getDescribedType().getModifiers())) {
@@ -245,11 +268,11 @@ public class ApplicationIds {
             val = (convert) ? JavaTypes.convert(pks[i],
                 fmds[i].getObjectIdFieldTypeCode()) : pks[i];
             if (AccessCode.isField(meta.getAccessType()))
-                Reflection.set(copy, Reflection.findField(oidType,
-                    fmds[i].getName(), true), val);
+                Reflection.findFieldAccessor(oidType,
+                    fmds[i].getName(), true).set(copy, val);
             else
-                Reflection.set(copy, Reflection.findSetter(oidType,
-                    fmds[i].getName(), fmds[i].getDeclaredType(), true), val);
+                Reflection.findSetterAccessor(oidType, fmds[i].getName(),
+                    fmds[i].getDeclaredType(), true).set(copy, val);
         }
 
         if (meta.isObjectIdTypeShared())
@@ -377,21 +400,21 @@ public class ApplicationIds {
             throw new GeneralException(t);
         }
 
-        Field field;
+        MemberAccessor field;
         Object val;
         for (int i = 0; i < fmds.length; i++) {
             if (fmds[i].getManagement() != FieldMetaData.MANAGE_PERSISTENT)
                 continue;
 
             if (AccessCode.isField(meta.getAccessType())) {
-                    field = Reflection.findField(oidType, fmds[i].getName(),
-                        true);
-                    Reflection.set(copy, field, Reflection.get(oid, field));
+                    field = Reflection.findFieldAccessor(oidType,
+                        fmds[i].getName(), true);
+                    field.set(copy, field.get(oid));
                 } else { // property
-                    val = Reflection.get(oid, Reflection.findGetter(oidType,
-                        fmds[i].getName(), true));
-                    Reflection.set(copy, Reflection.findSetter(oidType, fmds[i].
-                        getName(), fmds[i].getObjectIdFieldType(), true), val);
+                    val = Reflection.findGetterAccessor(oidType,
+                        fmds[i].getName(), true).get(oid);
+                    Reflection.findSetterAccessor(oidType, fmds[i].getName(),
+                        fmds[i].getObjectIdFieldType(), true).set(copy, val);
                 }
             }
             return copy;
@@ -409,10 +432,10 @@ public class ApplicationIds {
         ClassMetaData meta = fmd.getDefiningMetaData();
         Class<?> oidType = oid.getClass();
         if (AccessCode.isField(meta.getAccessType()))
-            return Reflection.get(oid, Reflection.findField(oidType,
-                fmd.getName(), true));
-        return Reflection.get(oid, Reflection.findGetter(oidType, fmd.getName(),
-            true));
+            return Reflection.findFieldAccessor(oidType, fmd.getName(), true).
+                get(oid);
+        return Reflection.findGetterAccessor(oidType, fmd.getName(), true).
+            get(oid);
     }
 
     /**
@@ -512,8 +535,8 @@ public class ApplicationIds {
             if (((ObjectId)id).getId() == null)
                 return false;
             Class<?> idClass = ((ObjectId)id).getId().getClass();
-            val = Reflection.get(key,
-                    Reflection.findField(idClass, mappedByIdFieldName, true));
+            val = Reflection.findFieldAccessor(idClass, mappedByIdFieldName,
+                    true).get(key);
         } else
             val = key;
 
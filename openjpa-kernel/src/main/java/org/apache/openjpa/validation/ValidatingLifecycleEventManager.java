@@ -18,17 +18,27 @@
  */
 package org.apache.openjpa.validation;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
 import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.enhance.PersistenceCapable;
 import org.apache.openjpa.event.LifecycleEvent;
 import org.apache.openjpa.event.LifecycleEventManager;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
 import org.apache.openjpa.lib.conf.Configurable;
 import org.apache.openjpa.lib.conf.Configuration;
 import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.util.ImplHelper;
 
 /**
  * An extension of LifecycleEventManager which adds validation capabilities for
  * specific lifecycle events.  Validation occurs after firing all lifecycle
  * events and callbacks.
+ *  Instances about to be updated can be validated on their changed fields
+ * only, see {@link #setValidateDirtyFieldsOnly}.
  *
  */
 public class ValidatingLifecycleEventManager extends LifecycleEventManager
@@ -38,6 +48,7 @@ public class ValidatingLifecycleEventManager extends LifecycleEventManager
     private OpenJPAConfiguration _conf = null;
     private Validator _validator = null;
     protected boolean _validationEnabled = true;
+    private boolean _validateDirtyFieldsOnly = false;
 
     /**
      * Constructor which accepts a reference to the validator to use.  If null,
@@ -122,7 +133,7 @@ public class ValidatingLifecycleEventManager extends LifecycleEventManager
         // If a validator is provided and the source object should be validated,
         // validate it and return any exceptions
         if (_validationEnabled && _validator != null && _validator.validating(source, type)) {
-            ValidationException vex = _validator.validate(source, type);
+            ValidationException vex = validate(source, type);
             if (vex != null) {
                 if (evx == null || evx.length == 0) {
                     evx = new Exception[1];
@@ -141,6 +152,52 @@ public class ValidatingLifecycleEventManager extends LifecycleEventManager
         return evx;
     }
 
+    /**
+     * Validate the given instance for the given event.
+     */
+    private ValidationException validate(Object source, int type) {
+        if (type == LifecycleEvent.BEFORE_UPDATE && _validateDirtyFieldsOnly) {
+            String[] props = getUpdatedProperties(source);
+            if (props != null)
+                return (props.length == 0) ? null
+                    : _validator.validateProperties(source, props, type);
+        }
+        return _validator.validate(source, type);
+    }
+
+    /**
+     * Return the names of the loaded properties of the given instance that
+     * are about to be updated, or null if the whole instance has to be
+     * validated.
+     */
+    private String[] getUpdatedProperties(Object source) {
+        PersistenceCapable pc = ImplHelper.toPersistenceCapable(source, _conf);
+        if (pc == null
+            || !(pc.pcGetStateManager() instanceof OpenJPAStateManager))
+            return null;
+        OpenJPAStateManager sm = (OpenJPAStateManager) pc.pcGetStateManager();
+        BitSet fields = ImplHelper.getUpdateFields(sm);
+        if (fields == null)
+            return null;
+
+        FieldMetaData[] fmds = sm.getMetaData().getFields();
+        BitSet loaded = sm.getLoaded();
+        List<String> props = new ArrayList<>(fields.cardinality());
+        for (int i = fields.nextSetBit(0); i >= 0;
+            i = fields.nextSetBit(i + 1)) {
+            if (!loaded.get(i))
+                continue;
+            // changes within embedded values only dirty the owning field,
+            // and their constraints are not cascaded to when validating a
+            // single property
+            if (fmds[i].isEmbeddedPC() || fmds[i].getElement().isEmbeddedPC()
+                || fmds[i].getKey().isEmbeddedPC())
+                return null;
+            props.add(fmds[i].getName());
+        }
+        return props.toArray(new String[props.size()]);
+    }
+
     /**
      * Whether this LifeCycleEventManager has had at least one listener or callback
      * registered.  Used for a quick test when firing events.
@@ -160,4 +217,24 @@ public class ValidatingLifecycleEventManager extends LifecycleEventManager
         _validationEnabled = enabled;
         return val;
     }
+
+    /**
+     * Whether instances about to be updated are only validated on the
+     * properties whose fields are dirty. Defaults to false.
+     */
+    public boolean getValidateDirtyFieldsOnly() {
+        return _validateDirtyFieldsOnly;
+    }
+
+    /**
+     * Whether instances about to be updated are only validated on the
+     * properties whose fields are dirty, rather than on all their
+     * properties. Unloaded fields are never validated then, and
+     * constraints of unchanged properties, including cascaded ones, are
+     * not evaluated. Instances with a dirty embedded field are validated
+     * in full. Defaults to false.
+     */
+    public void setValidateDirtyFieldsOnly(boolean dirtyOnly) {
+        _validateDirtyFieldsOnly = dirtyOnly;
+    }
 }
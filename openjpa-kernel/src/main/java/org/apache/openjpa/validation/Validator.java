@@ -48,6 +48,29 @@ public interface Validator {
     <T> ValidationException validateProperty(T arg0,
             String property, int event);
 
+    /**
+     * Validates the given properties of a given instance. By default each
+     * property is validated in turn and the exception of the first property
+     * with constraint violations is returned.
+     *
+     * @param <T> The instance to validate
+     * @param arg0 The class, of type T to validate
+     * @param properties The properties to validate
+     * @param event The event id
+     * @return ValidationException if the validator produces one or more
+     *         constraint violations on any of the properties.
+     */
+    default <T> ValidationException validateProperties(T arg0,
+            String[] properties, int event) {
+        for (int i = 0; i < properties.length; i++) {
+            ValidationException vex = validateProperty(arg0, properties[i],
+                event);
+            if (vex != null)
+                return vex;
+        }
+        return null;
+    }
+
     /**
      * Validates a value based upon the constraints applied to a given class
      * attribute.
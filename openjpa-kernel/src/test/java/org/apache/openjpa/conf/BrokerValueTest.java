@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.conf;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.openjpa.kernel.BrokerImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.*;
+
+/**
+ * Brokers cloned from the template broker, which is configured with the
+ * plugin properties once.
+ */
+public class BrokerValueTest {
+
+    private static final int[] INTS = { 1, 2, 3, 4, 0 };
+
+    private OpenJPAConfiguration _conf;
+    private BrokerValue _value;
+
+    @Before
+    public void setUp() {
+        _conf = Mockito.mock(OpenJPAConfiguration.class,
+            Mockito.RETURNS_DEEP_STUBS);
+        _value = new BrokerValue();
+    }
+
+    private BrokerImpl newBroker() {
+        return (BrokerImpl) _value.instantiate(BrokerImpl.class, _conf, true);
+    }
+
+    /**
+     * Return a value other than the default for each property of the
+     * broker that can be set before the broker is initialized, keyed on
+     * the property name.
+     */
+    private static Map<String, Object> newValues()
+        throws Exception {
+        Map<String, Object> values = new TreeMap<>();
+        BrokerImpl defaults = new BrokerImpl();
+        for (Method setter : BrokerImpl.class.getMethods()) {
+            if (!setter.getName().startsWith("set")
+                || setter.getParameterTypes().length != 1
+                || Modifier.isStatic(setter.getModifiers()))
+                continue;
+            String name = setter.getName().substring(3);
+            Method getter = getGetter(name);
+            if (getter == null)
+                continue;
+
+            Object value = newValue(defaults, setter, getter);
+            if (value != null)
+                values.put(name, value);
+        }
+        return values;
+    }
+
+    private static Method getGetter(String name) {
+        for (String prefix : new String[]{ "get", "is" }) {
+            try {
+                return BrokerImpl.class.getMethod(prefix + name);
+            } catch (NoSuchMethodException nsme) {
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return a value of the property other than its default which the
+     * setter accepts, or null if there is none. Some properties can only
+     * be read or changed once the broker has a configuration.
+     */
+    private static Object newValue(BrokerImpl defaults, Method setter,
+        Method getter)
+        throws Exception {
+        Object def;
+        try {
+            def = getter.invoke(defaults);
+        } catch (InvocationTargetException ite) {
+            return null;
+        }
+        Class<?> type = setter.getParameterTypes()[0];
+        Object[] candidates;
+        if (type == boolean.class)
+            candidates = new Object[]{ !((Boolean) def) };
+        else if (type == int.class) {
+            candidates = new Object[INTS.length];
+            for (int i = 0; i < INTS.length; i++)
+                candidates[i] = INTS[i];
+        } else if (type == String.class)
+            candidates = new Object[]{ "p.C.f" };
+        else
+            return null;
+
+        BrokerImpl broker = new BrokerImpl();
+        for (Object candidate : candidates) {
+            if (candidate.equals(def))
+                continue;
+            try {
+                setter.invoke(broker, candidate);
+            } catch (InvocationTargetException ite) {
+                continue;
+            }
+            if (candidate.equals(getter.invoke(broker)))
+                return candidate;
+        }
+        return null;
+    }
+
+    @Test
+    public void testPluginPropertiesReachClones()
+        throws Exception {
+        Map<String, Object> values = newValues();
+        // properties brokers are commonly configured with
+        for (String name : new String[]{ "AutoDetach", "DetachedNew",
+            "IndexedFields", "RecycleLimit", "Multithreaded",
+            "PopulateDataCache", "EvictFromDataCache" })
+            assertTrue(name, values.containsKey(name));
+
+        StringBuilder props = new StringBuilder();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (props.length() > 0)
+                props.append(", ");
+            props.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        _value.setString(BrokerValue.NON_FINALIZING_ALIAS + "("
+            + props + ")");
+
+        BrokerImpl first = newBroker();
+        BrokerImpl second = newBroker();
+        assertNotSame(first, second);
+        for (BrokerImpl broker : new BrokerImpl[]{ first, second }) {
+            for (Map.Entry<String, Object> entry : values.entrySet())
+                assertEquals(entry.getKey(), entry.getValue(),
+                    getGetter(entry.getKey()).invoke(broker));
+        }
+    }
+
+    @Test
+    public void testClonesChangedIndependently() {
+        _value.setString(BrokerValue.NON_FINALIZING_ALIAS
+            + "(IndexedFields=p.C.f)");
+        BrokerImpl first = newBroker();
+        BrokerImpl second = newBroker();
+        first.setIndexedFields("p.C.g");
+        first.setDetachedNew(false);
+        assertEquals("p.C.f", second.getIndexedFields());
+        assertTrue(second.isDetachedNew());
+        assertEquals("p.C.f", newBroker().getIndexedFields());
+    }
+
+    @Test
+    public void testClonesOfMultithreadedTemplateHaveOwnLocks()
+        throws Exception {
+        _value.setString(BrokerValue.NON_FINALIZING_ALIAS
+            + "(Multithreaded=true)");
+        BrokerImpl first = newBroker();
+        final BrokerImpl second = newBroker();
+        assertTrue(second.getMultithreaded());
+
+        first.lock();
+        try {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    second.lock();
+                    second.unlock();
+                }
+            };
+            thread.start();
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+        } finally {
+            first.unlock();
+        }
+    }
+}
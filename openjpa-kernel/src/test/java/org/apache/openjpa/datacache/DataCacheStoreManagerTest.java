@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import org.apache.openjpa.kernel.DataCacheRetrieveMode;
+import org.apache.openjpa.kernel.DataCacheStoreMode;
+import org.apache.openjpa.kernel.FetchConfiguration;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
+import org.apache.openjpa.kernel.PCState;
+import org.apache.openjpa.kernel.StoreContext;
+import org.apache.openjpa.kernel.StoreManager;
+import org.apache.openjpa.util.LongId;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Loading instances from state kept outside of the data cache.
+ */
+public class DataCacheStoreManagerTest {
+
+    private final LongId _oid = new LongId(Object.class, 1);
+    private final Object _pc = new Object();
+    private StoreContext _ctx;
+    private StoreManager _delegate;
+    private DataCache _cache;
+    private OpenJPAStateManager _sm;
+    private FetchConfiguration _fetch;
+    private DataCachePCData _data;
+    private DataCacheStoreManager _store;
+
+    @Before
+    public void setUp() {
+        _ctx = Mockito.mock(StoreContext.class, Mockito.RETURNS_DEEP_STUBS);
+        _delegate = Mockito.mock(StoreManager.class);
+        _cache = Mockito.mock(DataCache.class);
+        _sm = Mockito.mock(OpenJPAStateManager.class);
+        when(_sm.getObjectId()).thenReturn(_oid);
+        DataCacheManager mgr = _ctx.getConfiguration().
+            getDataCacheManagerInstance();
+        when(mgr.selectCache(_sm)).thenReturn(_cache);
+        when(_cache.getStatistics()).
+            thenReturn(Mockito.mock(CacheStatistics.class));
+
+        _fetch = Mockito.mock(FetchConfiguration.class);
+        when(_fetch.getCacheRetrieveMode()).
+            thenReturn(DataCacheRetrieveMode.USE);
+        when(_fetch.getCacheStoreMode()).thenReturn(DataCacheStoreMode.USE);
+
+        _data = Mockito.mock(DataCachePCData.class);
+        when(_data.getId()).thenReturn(_oid);
+        when(_data.getType()).thenReturn((Class) Object.class);
+
+        _store = new DataCacheStoreManager(_delegate);
+        _store.setContext(_ctx);
+
+        // finding the instance initializes a new state manager for it
+        when(_ctx.find(eq(_oid), eq(_fetch), any(), any(), anyInt())).
+            thenAnswer(new Answer<Object>() {
+                @Override
+                public Object answer(InvocationOnMock inv) {
+                    return _store.initialize(_sm, PCState.PCLEAN, _fetch,
+                        null) ? _pc : null;
+                }
+            });
+    }
+
+    @Test
+    public void testEvictedInstanceLoadedFromInlineState() {
+        assertSame(_pc, _store.findInline(_data, _fetch));
+        verify(_sm).initialize(Object.class, PCState.PCLEAN);
+        verify(_data).load(_sm, _fetch, null);
+        verify(_delegate, never()).initialize(_sm, PCState.PCLEAN, _fetch,
+            null);
+        // the kept state does not revive the evicted cache entry
+        verify(_cache, never()).put(any(DataCachePCData.class));
+        verify(_cache, never()).update(any(DataCachePCData.class));
+    }
+
+    @Test
+    public void testCachedStatePreferred() {
+        DataCachePCData cached = Mockito.mock(DataCachePCData.class);
+        when(cached.getType()).thenReturn((Class) Object.class);
+        when(_cache.get(_oid)).thenReturn(cached);
+
+        assertSame(_pc, _store.findInline(_data, _fetch));
+        verify(cached).load(_sm, _fetch, null);
+        verify(_data, never()).load(_sm, _fetch, null);
+    }
+
+    @Test
+    public void testInlineStateOnlyUsedDuringFind() {
+        _store.findInline(_data, _fetch);
+        Mockito.reset(_data);
+        when(_ctx.getPopulateDataCache()).thenReturn(false);
+        when(_delegate.initialize(_sm, PCState.PCLEAN, _fetch, null)).
+            thenReturn(true);
+
+        assertTrue(_store.initialize(_sm, PCState.PCLEAN, _fetch, null));
+        verify(_delegate).initialize(_sm, PCState.PCLEAN, _fetch, null);
+        verify(_data, never()).load(_sm, _fetch, null);
+    }
+}
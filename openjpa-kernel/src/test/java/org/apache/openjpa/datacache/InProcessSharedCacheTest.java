@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.util.InvalidStateException;
+import org.apache.openjpa.util.LongId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+public class InProcessSharedCacheTest {
+
+    private static class Base {
+    }
+
+    private static class Sub extends Base {
+    }
+
+    private static class Other {
+    }
+
+    private final List<InProcessSharedCache> _caches = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        _caches.add(newCache());
+    }
+
+    @After
+    public void tearDown() {
+        for (InProcessSharedCache cache : _caches)
+            cache.close();
+    }
+
+    private InProcessSharedCache newCache() {
+        return newCache(null, null, null);
+    }
+
+    /**
+     * Return a cache configured for the given unit and database, unless
+     * both are null, using the given region if any.
+     */
+    private InProcessSharedCache newCache(String unit, String url,
+        String region) {
+        NearDataCache near = Mockito.mock(NearDataCache.class);
+        when(near.getName()).thenReturn("test");
+        InProcessSharedCache cache = new InProcessSharedCache();
+        if (unit != null || url != null) {
+            OpenJPAConfiguration conf = Mockito.mock(
+                OpenJPAConfiguration.class);
+            when(conf.getId()).thenReturn(unit);
+            when(conf.getConnectionURL()).thenReturn(url);
+            cache.setConfiguration(conf);
+        }
+        cache.setRegion(region);
+        cache.initialize(near);
+        return cache;
+    }
+
+    private static DataCachePCData newData(Class<?> type, long id,
+        Object version) {
+        ClassMetaData meta = Mockito.mock(ClassMetaData.class);
+        when(meta.getDescribedType()).thenReturn((Class) type);
+        when(meta.getFields()).thenReturn(new FieldMetaData[0]);
+        DataCachePCData data = new DataCachePCDataImpl(new LongId(type, id),
+            meta);
+        data.setVersion(version);
+        return data;
+    }
+
+    @Test
+    public void testLoadedDataDoesNotReplaceNewerData() {
+        InProcessSharedCache cache = _caches.get(0);
+        DataCachePCData committed = newData(Base.class, 1, 5);
+        cache.put(committed);
+
+        cache.putLoaded(newData(Base.class, 1, 4));
+        assertEquals(5, cache.get(committed.getId()).getVersion());
+        cache.putLoaded(newData(Base.class, 1, 5));
+        assertEquals(5, cache.get(committed.getId()).getVersion());
+        cache.putLoaded(newData(Base.class, 1, 6));
+        assertEquals(6, cache.get(committed.getId()).getVersion());
+
+        // loaded data fills in missing entries
+        DataCachePCData loaded = newData(Base.class, 2, 1);
+        cache.putLoaded(loaded);
+        assertEquals(1, cache.get(loaded.getId()).getVersion());
+
+        // committed data always replaces what is stored
+        cache.put(newData(Base.class, 1, 3));
+        assertEquals(3, cache.get(committed.getId()).getVersion());
+    }
+
+    @Test
+    public void testRemoveAllOfType() {
+        InProcessSharedCache cache = _caches.get(0);
+        DataCachePCData base = newData(Base.class, 1, 1);
+        DataCachePCData sub = newData(Sub.class, 2, 1);
+        DataCachePCData other = newData(Other.class, 3, 1);
+        cache.put(base);
+        cache.put(sub);
+        cache.put(other);
+
+        cache.removeAll(Base.class, false);
+        assertNull(cache.get(base.getId()));
+        assertNotNull(cache.get(sub.getId()));
+        assertNotNull(cache.get(other.getId()));
+
+        cache.put(base);
+        cache.removeAll(Base.class, true);
+        assertNull(cache.get(base.getId()));
+        assertNull(cache.get(sub.getId()));
+        assertNotNull(cache.get(other.getId()));
+    }
+
+    @Test
+    public void testRegionReleasedByLastCache() {
+        InProcessSharedCache first = _caches.get(0);
+        InProcessSharedCache second = newCache();
+        DataCachePCData data = newData(Base.class, 1, 1);
+        first.put(data);
+        assertNotNull(second.get(data.getId()));
+
+        // data outlives the close of one of the caches sharing it
+        first.close();
+        assertNotNull(second.get(data.getId()));
+
+        second.close();
+        InProcessSharedCache third = newCache();
+        _caches.add(third);
+        assertNull(third.get(data.getId()));
+    }
+
+    @Test
+    public void testDefaultRegionScopedByConfiguration() {
+        InProcessSharedCache first = newCache("unit", "jdbc:db1", null);
+        _caches.add(first);
+        DataCachePCData data = newData(Base.class, 1, 1);
+        first.put(data);
+
+        InProcessSharedCache node = newCache("unit", "jdbc:db1", null);
+        _caches.add(node);
+        assertNotNull(node.get(data.getId()));
+        InProcessSharedCache otherDB = newCache("unit", "jdbc:db2", null);
+        _caches.add(otherDB);
+        assertNull(otherDB.get(data.getId()));
+        InProcessSharedCache otherUnit = newCache("other", "jdbc:db1", null);
+        _caches.add(otherUnit);
+        assertNull(otherUnit.get(data.getId()));
+        assertNull(_caches.get(0).get(data.getId()));
+    }
+
+    @Test
+    public void testNamedRegionShared() {
+        InProcessSharedCache first = newCache("unit", "jdbc:db1", "shared");
+        _caches.add(first);
+        InProcessSharedCache second = newCache("other", "jdbc:db2", "shared");
+        _caches.add(second);
+        DataCachePCData data = newData(Base.class, 1, 1);
+        first.put(data);
+        assertNotNull(second.get(data.getId()));
+        assertEquals("shared", second.getRegion());
+    }
+
+    @Test
+    public void testClosedCacheFails() {
+        InProcessSharedCache cache = newCache();
+        DataCachePCData data = newData(Base.class, 1, 1);
+        cache.put(data);
+        cache.close();
+        // closing again has no effect
+        cache.close();
+        try {
+            cache.get(data.getId());
+            fail();
+        } catch (InvalidStateException ise) {
+            assertTrue(ise.getMessage(), ise.getMessage().contains("test"));
+        }
+        try {
+            cache.put(data);
+            fail();
+        } catch (InvalidStateException ise) {
+        }
+        assertNotNull(_caches.get(0).get(data.getId()));
+    }
+}
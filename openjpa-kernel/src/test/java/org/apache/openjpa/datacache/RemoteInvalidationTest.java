@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.event.RemoteCommitEvent;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.util.LongId;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+/**
+ * Invalidation of cached data by remote commits: data at least as recent
+ * as the committed version is kept, older data is replaced with the
+ * committed state if it was sent, and evicted otherwise.
+ */
+public class RemoteInvalidationTest {
+
+    private static final String NAME = "cache";
+
+    private ConcurrentDataCache _cache;
+    private ClassMetaData _meta;
+    private long _ids = 0;
+
+    @Before
+    public void setUp() {
+        OpenJPAConfiguration conf = Mockito.mock(OpenJPAConfiguration.class,
+            Mockito.RETURNS_DEEP_STUBS);
+        _cache = new ConcurrentDataCache();
+        _cache.setConfiguration(conf);
+        _cache.setName(NAME);
+        _cache.initialize(Mockito.mock(DataCacheManager.class));
+
+        _meta = Mockito.mock(ClassMetaData.class);
+        when(_meta.getDescribedType()).thenReturn((Class) Object.class);
+        when(_meta.getFields()).thenReturn(new FieldMetaData[1]);
+    }
+
+    private DataCachePCData newData(Object oid, Object version,
+        String value) {
+        return newData(oid, version, value, NAME);
+    }
+
+    private DataCachePCData newData(Object oid, Object version,
+        String value, String cache) {
+        DataCachePCDataImpl data = new DataCachePCDataImpl(oid, _meta, cache);
+        data.setData(0, value);
+        data.setVersion(version);
+        return data;
+    }
+
+    /**
+     * Cache data of the given version and return its oid.
+     */
+    private Object cache(Object version) {
+        Object oid = new LongId(Object.class, ++_ids);
+        _cache.put(newData(oid, version, "cached"));
+        return oid;
+    }
+
+    /**
+     * Apply a remote commit updating the given oid to the given version,
+     * with the given committed state if any.
+     */
+    private void update(Object oid, Object version, DataCachePCData state) {
+        Map<Object, Object> versions = new HashMap<>();
+        versions.put(oid, version);
+        Map<Object, Object> states = new HashMap<>();
+        if (state != null)
+            states.put(oid, state);
+        _cache.afterCommit(new RemoteCommitEvent(
+            RemoteCommitEvent.PAYLOAD_OIDS, null, null,
+            Collections.singleton(oid), null, versions, states));
+    }
+
+    private Object getCached(Object oid) {
+        DataCachePCData data = _cache.get(oid);
+        return (data == null) ? null : data.getData(0);
+    }
+
+    @Test
+    public void testCurrentDataKept() {
+        Object same = cache(3);
+        Object newer = cache(4);
+        update(same, 3, null);
+        update(newer, 3, newData(newer, 3, "committed"));
+        assertEquals("cached", getCached(same));
+        assertEquals("cached", getCached(newer));
+        assertEquals(4, _cache.get(newer).getVersion());
+    }
+
+    @Test
+    public void testStaleDataEvicted() {
+        Object oid = cache(2);
+        update(oid, 3, null);
+        assertNull(_cache.get(oid));
+    }
+
+    @Test
+    public void testStaleDataReplacedWithState() {
+        Object oid = cache(2);
+        update(oid, 3, newData(oid, 3, "committed"));
+        assertEquals("committed", getCached(oid));
+        assertEquals(3, _cache.get(oid).getVersion());
+
+        // state of another cache is not used
+        oid = cache(2);
+        update(oid, 3, newData(oid, 3, "committed", "other"));
+        assertNull(_cache.get(oid));
+    }
+
+    @Test
+    public void testUncachedDataNotAdded() {
+        Object oid = new LongId(Object.class, 100);
+        update(oid, 3, newData(oid, 3, "committed"));
+        assertNull(_cache.get(oid));
+    }
+
+    @Test
+    public void testTimestampVersions() {
+        Object older = cache(new java.sql.Timestamp(1000));
+        Object newer = cache(new java.sql.Timestamp(3000));
+        update(older, new java.sql.Timestamp(2000), null);
+        update(newer, new java.sql.Timestamp(2000), null);
+        assertNull(_cache.get(older));
+        assertEquals("cached", getCached(newer));
+    }
+
+    @Test
+    public void testUnorderedVersionsEvicted() {
+        // versions of other types or that can not be compared are never
+        // considered current unless equal
+        Object otherType = cache(5L);
+        update(otherType, 3, null);
+        assertNull(_cache.get(otherType));
+
+        Object unversioned = cache(null);
+        update(unversioned, 3, null);
+        assertNull(_cache.get(unversioned));
+
+        Object[] v1 = new Object[]{ 1 };
+        Object incomparable = cache(v1);
+        update(incomparable, new Object[]{ 1 }, null);
+        assertNull(_cache.get(incomparable));
+
+        Object equal = cache(Arrays.asList(1, 2));
+        update(equal, Arrays.asList(1, 2), null);
+        assertEquals("cached", getCached(equal));
+    }
+
+    @Test
+    public void testOidsWithoutVersionEvicted() {
+        Object versioned = cache(3);
+        Object unversioned = cache(3);
+        Object deleted = cache(3);
+        _cache.afterCommit(new RemoteCommitEvent(
+            RemoteCommitEvent.PAYLOAD_OIDS, null, null,
+            Arrays.asList(versioned, unversioned),
+            Collections.singleton(deleted),
+            Collections.singletonMap(versioned, 3), null));
+        assertEquals("cached", getCached(versioned));
+        assertNull(_cache.get(unversioned));
+        assertNull(_cache.get(deleted));
+    }
+
+    @Test
+    public void testEventsWithoutVersionsEvict() {
+        // events of senders not transmitting versions, or of earlier
+        // releases
+        Object oid = cache(3);
+        _cache.afterCommit(new RemoteCommitEvent(
+            RemoteCommitEvent.PAYLOAD_OIDS, null, null,
+            Collections.singleton(oid), null));
+        assertNull(_cache.get(oid));
+    }
+}
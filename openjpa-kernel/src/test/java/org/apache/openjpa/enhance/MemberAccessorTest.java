@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.enhance;
+
+import org.apache.openjpa.util.UserException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Field accessors of instance and static fields, including final fields
+ * that can be read but not written.
+ */
+public class MemberAccessorTest {
+
+    @Test
+    public void testFieldReadAndWritten() {
+        Holder holder = new Holder();
+        MemberAccessor accessor = Reflection.findFieldAccessor(Holder.class,
+            "value", true);
+        accessor.set(holder, 3);
+        assertEquals(3, holder.value);
+        assertEquals(3, accessor.getInt(holder));
+        accessor.set(holder, (Object) 4);
+        assertEquals(4, accessor.get(holder));
+    }
+
+    @Test
+    public void testFinalFieldWritten() {
+        Holder holder = new Holder();
+        MemberAccessor accessor = Reflection.findFieldAccessor(Holder.class,
+            "fixed", true);
+        assertEquals(1L, accessor.getLong(holder));
+        accessor.set(holder, 2L);
+        assertEquals(2L, accessor.getLong(holder));
+    }
+
+    @Test
+    public void testStaticFieldReadAndWritten() {
+        MemberAccessor accessor = Reflection.findFieldAccessor(Holder.class,
+            "count", true);
+        accessor.set(new Holder(), 5);
+        assertEquals(5, Holder.count);
+        assertEquals(5, accessor.getInt(new Holder()));
+        assertEquals(5, accessor.get(new Holder()));
+    }
+
+    @Test
+    public void testPublicFinalFieldOnlyRead() {
+        // public members are not made accessible, so the final field
+        // cannot be written through a method handle
+        Constant constant = new Constant();
+        MemberAccessor accessor = Reflection.findFieldAccessor(
+            Constant.class, "id", true);
+        assertEquals(7, accessor.get(constant));
+        assertEquals(7, accessor.getInt(constant));
+        try {
+            accessor.set(constant, 8);
+            fail("final field written");
+        } catch (UserException ue) {
+            assertTrue(ue.isFatal());
+        }
+        assertEquals(7, constant.id);
+    }
+
+    private static class Holder {
+
+        private static int count;
+
+        private int value;
+        private final long fixed;
+
+        Holder() {
+            fixed = 1L;
+        }
+    }
+
+    public static class Constant {
+
+        public final int id;
+
+        public Constant() {
+            id = 7;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.enhance;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.BitSet;
+
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.datacache.DataCachePCDataGenerator;
+import org.apache.openjpa.kernel.AbstractPCData;
+import org.apache.openjpa.kernel.FetchConfiguration;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
+import org.apache.openjpa.kernel.PCData;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.meta.JavaTypes;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Loaded fields of generated {@link PCData} instances, tracked in a long
+ * for types of up to 64 fields and in a {@link BitSet} for larger types.
+ * Even fields are <code>int</code>s and odd fields are strings.
+ */
+public class PCDataGeneratorTest {
+
+    private ClassMetaData _meta;
+
+    /**
+     * Generate a pcdata for a type with the given number of fields.
+     */
+    private AbstractPCData generate(PCDataGenerator gen, int fields) {
+        _meta = Mockito.mock(ClassMetaData.class);
+        when(_meta.getDescribedType()).thenReturn((Class) getClass());
+        FieldMetaData[] fmds = new FieldMetaData[fields];
+        for (int i = 0; i < fields; i++) {
+            fmds[i] = Mockito.mock(FieldMetaData.class);
+            int type = (i % 2 == 0) ? JavaTypes.INT : JavaTypes.STRING;
+            when(fmds[i].getIndex()).thenReturn(i);
+            when(fmds[i].getTypeCode()).thenReturn(type);
+            when(fmds[i].getDeclaredTypeCode()).thenReturn(type);
+            when(fmds[i].usesImplData()).thenReturn(Boolean.FALSE);
+            when(_meta.getField(i)).thenReturn(fmds[i]);
+        }
+        when(_meta.getFields()).thenReturn(fmds);
+        return (AbstractPCData) gen.generatePCData("oid", _meta);
+    }
+
+    private AbstractPCData generate(int fields) {
+        return generate(new PCDataGenerator(newConfiguration()), fields);
+    }
+
+    private static OpenJPAConfiguration newConfiguration() {
+        return Mockito.mock(OpenJPAConfiguration.class,
+            Mockito.RETURNS_DEEP_STUBS);
+    }
+
+    private static BitSet bits(int... indexes) {
+        BitSet bits = new BitSet();
+        for (int index : indexes)
+            bits.set(index);
+        return bits;
+    }
+
+    /**
+     * A state manager whose fields of the given indexes are loaded.
+     */
+    private OpenJPAStateManager newStateManager(BitSet loaded) {
+        OpenJPAStateManager sm = Mockito.mock(OpenJPAStateManager.class);
+        when(sm.getMetaData()).thenReturn(_meta);
+        when(sm.getLoaded()).thenReturn(loaded);
+        for (int i = loaded.nextSetBit(0); i >= 0;
+            i = loaded.nextSetBit(i + 1)) {
+            if (i % 2 == 0)
+                when(sm.fetchInt(i)).thenReturn(i + 1000);
+            else
+                when(sm.fetchField(i, false)).thenReturn("v" + i);
+        }
+        return sm;
+    }
+
+    private static void assertLoaded(AbstractPCData data, int fields,
+        BitSet loaded) {
+        assertEquals(loaded, data.getLoaded());
+        for (int i = 0; i < fields; i++)
+            assertEquals("field " + i, loaded.get(i), data.isLoaded(i));
+    }
+
+    private static Class<?> getLoadedFieldType(PCData data)
+        throws Exception {
+        return data.getClass().getDeclaredField("loaded").getType();
+    }
+
+    @Test
+    public void testLoadedFieldType()
+        throws Exception {
+        assertEquals(long.class, getLoadedFieldType(generate(63)));
+        assertEquals(long.class, getLoadedFieldType(generate(64)));
+        assertEquals(BitSet.class, getLoadedFieldType(generate(65)));
+    }
+
+    @Test
+    public void testStoreAndLoad63Fields() {
+        assertStoreAndLoad(63, bits(0, 1, 31, 32, 61, 62));
+    }
+
+    @Test
+    public void testStoreAndLoad64Fields() {
+        assertStoreAndLoad(64, bits(0, 1, 31, 32, 62, 63));
+    }
+
+    @Test
+    public void testStoreAndLoad65Fields() {
+        assertStoreAndLoad(65, bits(0, 1, 31, 32, 62, 63, 64));
+    }
+
+    private void assertStoreAndLoad(int fields, BitSet loaded) {
+        AbstractPCData data = generate(fields);
+        assertLoaded(data, fields, new BitSet());
+
+        data.store(newStateManager(loaded));
+        assertLoaded(data, fields, loaded);
+
+        // load all fields into a new instance
+        OpenJPAStateManager sm = newStateManager(new BitSet());
+        FetchConfiguration fetch = Mockito.mock(FetchConfiguration.class);
+        when(fetch.requiresFetch(any(FieldMetaData.class))).thenReturn
+            (FetchConfiguration.FETCH_LOAD);
+        data.load(sm, fetch, null);
+        for (int i = 0; i < fields; i++) {
+            if (i % 2 == 0 && loaded.get(i))
+                verify(sm).storeInt(i, i + 1000);
+            else if (i % 2 == 0)
+                verify(sm, never()).storeInt(eq(i), anyInt());
+            else if (loaded.get(i))
+                verify(sm).storeField(i, "v" + i);
+            else
+                verify(sm, never()).storeField(eq(i), anyString());
+        }
+
+        // load requested fields, leaving those not cached
+        sm = newStateManager(new BitSet());
+        BitSet requested = bits(2, 32, 63, fields - 1);
+        data.load(sm, requested, fetch, null);
+        BitSet expected = (BitSet) requested.clone();
+        expected.andNot(loaded);
+        assertEquals(expected, requested);
+        if (loaded.get(63))
+            verify(sm).storeField(63, "v63");
+        verify(sm).storeInt(32, 1032);
+        verify(sm, never()).storeInt(eq(2), anyInt());
+    }
+
+    @Test
+    public void testStoreGivenFields() {
+        AbstractPCData data = generate(64);
+        BitSet loaded = bits(0, 1, 62, 63);
+        OpenJPAStateManager sm = newStateManager(loaded);
+        data.store(sm, bits(1, 63));
+        assertLoaded(data, 64, bits(1, 63));
+        data.store(sm, bits(0, 62));
+        assertLoaded(data, 64, loaded);
+
+        data = generate(65);
+        data.store(newStateManager(bits(64)), bits(64));
+        assertLoaded(data, 65, bits(64));
+    }
+
+    @Test
+    public void testUncacheableFieldUnloaded() {
+        for (int fields = 64; fields <= 65; fields++) {
+            AbstractPCData data = generate(new DataCachePCDataGenerator
+                (newConfiguration()), fields);
+            BitSet loaded = bits(0, 1, 62, 63);
+            data.store(newStateManager(loaded));
+            assertLoaded(data, fields, bits(0, 1, 62, 63));
+
+            // a value that can not be cached clears the loaded field
+            when(_meta.getField(63).isLRS()).thenReturn(true);
+            data.store(newStateManager(loaded));
+            assertLoaded(data, fields, bits(0, 1, 62));
+        }
+    }
+
+    @Test
+    public void testDataCacheIsLoadedSynchronized()
+        throws Exception {
+        for (int fields = 63; fields <= 65; fields++) {
+            AbstractPCData data = generate(new DataCachePCDataGenerator
+                (newConfiguration()), fields);
+            int count = 0;
+            for (Method method : data.getClass().getDeclaredMethods()) {
+                if (!"isLoaded".equals(method.getName()))
+                    continue;
+                count++;
+                assertTrue(Modifier.isSynchronized(method.getModifiers()));
+            }
+            assertEquals(1, count);
+
+            data.store(newStateManager(bits(0, fields - 1)));
+            assertTrue(data.isLoaded(0));
+            assertTrue(data.isLoaded(fields - 1));
+            assertFalse(data.isLoaded(fields - 2));
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.openjpa.event.LifecycleEventManager.ListenerList;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.LifecycleMetaData;
+import org.apache.openjpa.meta.MetaDataRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.when;
+
+/**
+ * Dispatch of events to listeners registered for all classes and for
+ * classes of a hierarchy.
+ */
+public class LifecycleEventManagerTest {
+
+    public static class Base {
+    }
+
+    public static class Sub extends Base {
+    }
+
+    public static class Leaf extends Sub {
+    }
+
+    public static class Other {
+    }
+
+    private final List<String> _fired = new ArrayList<>();
+    private ClassMetaData _meta;
+    private LifecycleEventManager _mgr;
+
+    @Before
+    public void setUp() {
+        _meta = Mockito.mock(ClassMetaData.class, Mockito.RETURNS_DEEP_STUBS);
+        LifecycleMetaData lmd = _meta.getLifecycleMetaData();
+        when(lmd.getCallbacks(anyInt())).
+            thenReturn(new LifecycleCallbacks[0]);
+        when(lmd.getIgnoreSystemListeners()).thenReturn(false);
+        MetaDataRepository repos = _meta.getRepository();
+        when(repos.getSystemListeners()).thenReturn(new ListenerList(1));
+        _mgr = new LifecycleEventManager();
+    }
+
+    private List<String> persist(Object source) {
+        _fired.clear();
+        assertEquals(0, _mgr.fireEvent(source, _meta,
+            LifecycleEvent.BEFORE_PERSIST).length);
+        return _fired;
+    }
+
+    @Test
+    public void testSuperclassListenersNotified() {
+        _mgr.addListener(new Recorder("base"), new Class<?>[]{ Base.class });
+        _mgr.addListener(new Recorder("sub"), new Class<?>[]{ Sub.class });
+        _mgr.addListener(new Recorder("leaf"), new Class<?>[]{ Leaf.class });
+        _mgr.addListener(new Recorder("all"), null);
+        _mgr.addListener(new Recorder("other"), new Class<?>[]{ Other.class });
+
+        // listeners for all classes first, then from the class upwards
+        assertEquals(Arrays.asList("all", "leaf", "sub", "base"),
+            persist(new Leaf()));
+        assertEquals(Arrays.asList("all", "sub", "base"), persist(new Sub()));
+        assertEquals(Arrays.asList("all", "base"), persist(new Base()));
+        assertEquals(Arrays.asList("all", "other"), persist(new Other()));
+        assertEquals(Arrays.asList("all"), persist(new Object()));
+    }
+
+    @Test
+    public void testListenerForSeveralClassesOfHierarchy() {
+        Recorder listener = new Recorder("both");
+        _mgr.addListener(listener, new Class<?>[]{ Base.class, Sub.class });
+        assertEquals(Arrays.asList("both", "both"), persist(new Sub()));
+        assertEquals(Arrays.asList("both"), persist(new Base()));
+
+        _mgr.removeListener(listener);
+        assertEquals(Collections.emptyList(), persist(new Sub()));
+        assertFalse(_mgr.hasPersistListeners(new Sub(), _meta));
+    }
+
+    @Test
+    public void testOnlyRespondingListenersNotified() {
+        _mgr.addListener(new Recorder("persist"), new Class<?>[]{ Base.class });
+        _mgr.addListener(new DeleteRecorder("delete"), null);
+        _mgr.addListener(new Adapter("adapter", LifecycleEvent.BEFORE_DELETE),
+            new Class<?>[]{ Sub.class });
+
+        assertEquals(Arrays.asList("persist"), persist(new Sub()));
+        _fired.clear();
+        _mgr.fireEvent(new Sub(), _meta, LifecycleEvent.BEFORE_DELETE);
+        assertEquals(Arrays.asList("delete", "adapter"), _fired);
+        _fired.clear();
+        _mgr.fireEvent(new Base(), _meta, LifecycleEvent.BEFORE_DELETE);
+        assertEquals(Arrays.asList("delete"), _fired);
+
+        assertTrue(_mgr.hasPersistListeners(new Leaf(), _meta));
+        assertFalse(_mgr.hasPersistListeners(new Other(), _meta));
+        assertTrue(_mgr.hasDeleteListeners(new Other(), _meta));
+        assertFalse(_mgr.hasLoadListeners(new Other(), _meta));
+    }
+
+    @Test
+    public void testSourceTypeFromMetaData() {
+        _mgr.addListener(new Recorder("sub"), new Class<?>[]{ Sub.class });
+        when(_meta.getDescribedType()).thenReturn((Class) Leaf.class);
+        assertTrue(_mgr.hasPersistListeners(null, _meta));
+        when(_meta.getDescribedType()).thenReturn((Class) Base.class);
+        assertFalse(_mgr.hasPersistListeners(null, _meta));
+    }
+
+    @Test
+    public void testListenersAddedWhileFiring() {
+        _mgr.addListener(new Recorder("first") {
+            @Override
+            public void beforePersist(LifecycleEvent event) {
+                super.beforePersist(event);
+                _mgr.addListener(new Recorder("added"),
+                    new Class<?>[]{ Base.class });
+            }
+        }, null);
+
+        assertEquals(Arrays.asList("first"), persist(new Sub()));
+        assertEquals(Arrays.asList("first", "added"), persist(new Sub()));
+    }
+
+    @Test
+    public void testFailFast() {
+        _mgr.addListener(new Recorder("failing") {
+            @Override
+            public void beforePersist(LifecycleEvent event) {
+                super.beforePersist(event);
+                throw new IllegalStateException();
+            }
+        }, null);
+        _mgr.addListener(new Recorder("base"), new Class<?>[]{ Base.class });
+
+        _fired.clear();
+        assertEquals(1, _mgr.fireEvent(new Sub(), _meta,
+            LifecycleEvent.BEFORE_PERSIST).length);
+        assertEquals(Arrays.asList("failing", "base"), _fired);
+
+        _mgr.setFailFast(true);
+        _fired.clear();
+        assertEquals(1, _mgr.fireEvent(new Sub(), _meta,
+            LifecycleEvent.BEFORE_PERSIST).length);
+        assertEquals(Arrays.asList("failing"), _fired);
+    }
+
+    @Test
+    public void testSourceClassesNotRetained()
+        throws Exception {
+        _mgr.addListener(new Recorder("base"), new Class<?>[]{ Base.class });
+        WeakReference<Class<?>> ref = fireForReloadedLeaf();
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+    }
+
+    /**
+     * Fire an event for an instance of {@link Leaf} defined by a loader of
+     * its own, returning a reference to that class.
+     */
+    private WeakReference<Class<?>> fireForReloadedLeaf()
+        throws Exception {
+        Class<?> leaf = new LeafLoader().loadClass(Leaf.class.getName());
+        assertNotSame(Leaf.class, leaf);
+        assertEquals(Arrays.asList("base"),
+            persist(leaf.getConstructor().newInstance()));
+        return new WeakReference<Class<?>>(leaf);
+    }
+
+    /**
+     * Loader defining its own copy of {@link Leaf}.
+     */
+    private static class LeafLoader extends ClassLoader {
+
+        LeafLoader() {
+            super(LifecycleEventManagerTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve)
+            throws ClassNotFoundException {
+            if (!name.equals(Leaf.class.getName()))
+                return super.loadClass(name, resolve);
+
+            String file = name.replace('.', '/') + ".class";
+            try (InputStream in = getParent().getResourceAsStream(file)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[1024];
+                for (int n; (n = in.read(buf)) != -1;)
+                    out.write(buf, 0, n);
+                byte[] bytes = out.toByteArray();
+                return defineClass(name, bytes, 0, bytes.length);
+            } catch (IOException ioe) {
+                throw new ClassNotFoundException(name, ioe);
+            }
+        }
+    }
+
+    /**
+     * Persist listener recording its name when notified.
+     */
+    private class Recorder extends AbstractLifecycleListener {
+
+        private final String _name;
+
+        Recorder(String name) {
+            _name = name;
+        }
+
+        @Override
+        public void beforePersist(LifecycleEvent event) {
+            _fired.add(_name);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other == this;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+
+    /**
+     * Delete listener recording its name when notified.
+     */
+    private class DeleteRecorder implements DeleteListener {
+
+        private final String _name;
+
+        DeleteRecorder(String name) {
+            _name = name;
+        }
+
+        @Override
+        public void beforeDelete(LifecycleEvent event) {
+            _fired.add(_name);
+        }
+
+        @Override
+        public void afterDelete(LifecycleEvent event) {
+        }
+    }
+
+    /**
+     * Adapter for all listener types responding to a single event type.
+     */
+    private class Adapter extends AbstractLifecycleListener
+        implements LifecycleEventManager.ListenerAdapter {
+
+        private final String _name;
+        private final int _type;
+
+        Adapter(String name, int type) {
+            _name = name;
+            _type = type;
+        }
+
+        @Override
+        public boolean respondsTo(int eventType) {
+            return eventType == _type;
+        }
+
+        @Override
+        protected void eventOccurred(LifecycleEvent event) {
+            _fired.add(_name);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.lib.log.Log;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Remote commit events applied synchronously, or merged and applied by
+ * the background thread of the manager.
+ */
+public class RemoteCommitEventManagerTest {
+
+    private static final String WORKER = "OpenJPA RemoteCommitEventManager";
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private Log _log;
+    private RemoteCommitProvider _provider;
+    private RemoteCommitEventManager _mgr;
+    private Recorder _listener;
+
+    @Before
+    public void setUp() {
+        _log = Mockito.mock(Log.class);
+        when(_log.isWarnEnabled()).thenReturn(true);
+        _provider = Mockito.mock(RemoteCommitProvider.class);
+        _mgr = new RemoteCommitEventManager(newConfiguration(_provider));
+        _listener = new Recorder();
+        _mgr.addListener(_listener);
+    }
+
+    private OpenJPAConfiguration newConfiguration(
+        RemoteCommitProvider provider) {
+        OpenJPAConfiguration conf = Mockito.mock(OpenJPAConfiguration.class);
+        when(conf.getLog(OpenJPAConfiguration.LOG_RUNTIME)).thenReturn(_log);
+        when(conf.newRemoteCommitProviderInstance()).thenReturn(provider);
+        return conf;
+    }
+
+    @After
+    public void tearDown()
+        throws Exception {
+        _mgr.close();
+        // the background thread ends once the manager is closed
+        for (int i = 0; i < 500 && isWorkerAlive(); i++)
+            Thread.sleep(10);
+        assertFalse(isWorkerAlive());
+    }
+
+    private static boolean isWorkerAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+            if (WORKER.equals(thread.getName()) && thread.isAlive())
+                return true;
+        return false;
+    }
+
+    private static RemoteCommitEvent updated(Object... oids) {
+        return new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_OIDS, null,
+            null, Arrays.asList(oids), null);
+    }
+
+    private static RemoteCommitEvent updated(Map<Object, Object> versions,
+        Object... oids) {
+        return new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_OIDS, null,
+            null, Arrays.asList(oids), null, versions, null);
+    }
+
+    private static List<Object> list(Collection coll) {
+        return new ArrayList<Object>(coll);
+    }
+
+    @Test
+    public void testAppliedSynchronouslyByDefault() {
+        RemoteCommitEvent event = updated("a");
+        assertEquals(0, _mgr.fireEvent(event).length);
+        assertEquals(1, _listener.events.size());
+        assertSame(event, _listener.events.peek());
+        assertSame(Thread.currentThread(), _listener.threads.get(0));
+        assertEquals(0, _mgr.getAppliedEventCount());
+        assertFalse(isWorkerAlive());
+    }
+
+    @Test
+    public void testEventsCoalesced()
+        throws Exception {
+        _mgr.setCoalesceInterval(200);
+        _mgr.fireEvent(updated("a", "b"));
+        _mgr.fireEvent(new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_OIDS,
+            null, Arrays.asList("p.A"), Arrays.asList("c", "a"),
+            Arrays.asList("d")));
+        _mgr.fireEvent(updated("e"));
+        assertTrue(_listener.events.isEmpty());
+        assertEquals(3, _mgr.getPendingEventCount());
+
+        RemoteCommitEvent event = _listener.events.poll(5, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals(WORKER, _listener.threads.get(0).getName());
+        assertEquals(RemoteCommitEvent.PAYLOAD_OIDS, event.getPayloadType());
+        // in the order first received
+        assertEquals(Arrays.asList("a", "b", "c", "e"),
+            list(event.getUpdatedObjectIds()));
+        assertEquals(Arrays.asList("d"), list(event.getDeletedObjectIds()));
+        assertEquals(Arrays.asList("p.A"),
+            list(event.getPersistedTypeNames()));
+
+        assertNull(_listener.events.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(0, _mgr.getPendingEventCount());
+        assertEquals(3, _mgr.getAppliedEventCount());
+        assertEquals(1, _mgr.getAppliedBatchCount());
+        assertTrue(_mgr.getLastLag() >= 0);
+        assertTrue(_mgr.getMaxLag() >= _mgr.getLastLag());
+    }
+
+    @Test
+    public void testBatchesAppliedInOrder()
+        throws Exception {
+        _mgr.setCoalesceInterval(50);
+        for (int i = 0; i < 5; i++) {
+            _mgr.fireEvent(updated("b" + i));
+            Thread.sleep(80);
+        }
+        List<Object> oids = new ArrayList<>();
+        for (int i = 0; i < 500 && oids.size() < 5; i++) {
+            RemoteCommitEvent event = _listener.events.poll(10,
+                TimeUnit.MILLISECONDS);
+            if (event != null)
+                oids.addAll(event.getUpdatedObjectIds());
+        }
+        assertEquals(Arrays.asList("b0", "b1", "b2", "b3", "b4"), oids);
+        assertEquals(5, _mgr.getAppliedEventCount());
+    }
+
+    @Test
+    public void testPayloadsMergedSeparately() {
+        _mgr.setCoalesceInterval(HOUR);
+        _mgr.fireEvent(new RemoteCommitEvent(
+            RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS, Arrays.asList("n"),
+            Arrays.asList("p.A"), Arrays.asList("a"), null));
+        _mgr.fireEvent(new RemoteCommitEvent(
+            RemoteCommitEvent.PAYLOAD_EXTENTS, null, null,
+            Arrays.asList("p.B"), Arrays.asList("p.C")));
+        _mgr.fireEvent(new RemoteCommitEvent(
+            RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS, Arrays.asList("m"),
+            null, null, null));
+        _mgr.applyPendingEvents();
+
+        assertEquals(2, _listener.events.size());
+        RemoteCommitEvent oids = _listener.events.poll();
+        assertEquals(RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS,
+            oids.getPayloadType());
+        assertEquals(Arrays.asList("n", "m"),
+            list(oids.getPersistedObjectIds()));
+        assertEquals(Arrays.asList("a"), list(oids.getUpdatedObjectIds()));
+        RemoteCommitEvent extents = _listener.events.poll();
+        assertEquals(Arrays.asList("p.B"),
+            list(extents.getUpdatedTypeNames()));
+        assertEquals(Arrays.asList("p.C"),
+            list(extents.getDeletedTypeNames()));
+
+        // added oids are only sent if all merged events carried them
+        _mgr.fireEvent(new RemoteCommitEvent(
+            RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS, Arrays.asList("n"),
+            null, null, null));
+        _mgr.fireEvent(updated("a"));
+        _mgr.applyPendingEvents();
+        assertEquals(RemoteCommitEvent.PAYLOAD_OIDS,
+            _listener.events.poll().getPayloadType());
+    }
+
+    @Test
+    public void testLatestVersionsKept() {
+        _mgr.setCoalesceInterval(HOUR);
+        Map<Object, Object> first = new HashMap<>();
+        first.put("a", 2);
+        first.put("b", 5);
+        first.put("c", 1);
+        first.put("d", 1);
+        Map<Object, Object> second = new HashMap<>();
+        second.put("a", 3);
+        second.put("b", 4);
+        second.put("c", 1L);
+        _mgr.fireEvent(updated(first, "a", "b", "c", "d"));
+        _mgr.fireEvent(updated(second, "a", "b", "c", "d"));
+        _mgr.applyPendingEvents();
+
+        // oids updated without a version or with versions that can not be
+        // ordered are evicted regardless
+        Map versions = _listener.events.poll().getUpdatedObjectVersions();
+        Map<Object, Object> expected = new HashMap<>();
+        expected.put("a", 3);
+        expected.put("b", 5);
+        assertEquals(expected, versions);
+    }
+
+    @Test
+    public void testStaleDetectionAppliedSynchronously() {
+        _mgr.setCoalesceInterval(HOUR);
+        _mgr.fireLocalStaleNotification("a");
+        _mgr.fireEvent(new RemoteCommitEvent(
+            RemoteCommitEvent.PAYLOAD_LOCAL_STALE_DETECTION, null, null,
+            Arrays.asList("b"), null));
+        assertEquals(2, _listener.events.size());
+        assertEquals(0, _mgr.getPendingEventCount());
+    }
+
+    @Test
+    public void testCloseDrainsPendingEvents() {
+        _mgr.setCoalesceInterval(HOUR);
+        _mgr.fireEvent(updated("a"));
+        _mgr.fireEvent(updated("b"));
+        assertTrue(isWorkerAlive());
+        _mgr.close();
+
+        verify(_provider).close();
+        assertEquals(Arrays.<Object> asList("event", "close"),
+            _listener.calls);
+        assertEquals(Arrays.asList("a", "b"),
+            list(_listener.events.poll().getUpdatedObjectIds()));
+
+        // events received after closing are applied synchronously
+        _mgr.fireEvent(updated("c"));
+        assertEquals(Arrays.asList("c"),
+            list(_listener.events.poll().getUpdatedObjectIds()));
+        assertEquals(0, _mgr.getPendingEventCount());
+    }
+
+    @Test
+    public void testListenerFailuresLogged()
+        throws Exception {
+        _mgr.setCoalesceInterval(10);
+        _listener.fail = true;
+        _mgr.fireEvent(updated("a"));
+        assertNotNull(_listener.events.poll(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 500 && _mgr.getAppliedBatchCount() == 0; i++)
+            Thread.sleep(10);
+        verify(_log, atLeastOnce()).warn(any());
+
+        // the background thread goes on applying events
+        _listener.fail = false;
+        _mgr.fireEvent(updated("b"));
+        assertEquals(Arrays.asList("b"), list(_listener.events.poll(5,
+            TimeUnit.SECONDS).getUpdatedObjectIds()));
+    }
+
+    @Test
+    public void testDeserializedManagerApplies()
+        throws Exception {
+        RemoteCommitEventManager mgr = new RemoteCommitEventManager(
+            newConfiguration(null));
+        mgr.setCoalesceInterval(HOUR);
+        mgr.setTransmitVersions(true);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(mgr);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+            new ByteArrayInputStream(bytes.toByteArray()))) {
+            mgr = (RemoteCommitEventManager) in.readObject();
+        }
+        assertEquals(HOUR, mgr.getCoalesceInterval());
+        assertTrue(mgr.getTransmitVersions());
+
+        try {
+            mgr.fireEvent(updated("a"));
+            assertEquals(1, mgr.getPendingEventCount());
+            mgr.applyPendingEvents();
+            assertEquals(0, mgr.getPendingEventCount());
+            assertEquals(1, mgr.getAppliedEventCount());
+        } finally {
+            mgr.close();
+        }
+    }
+
+    /**
+     * Listener recording the events it is notified of.
+     */
+    private static class Recorder
+        implements RemoteCommitListener {
+
+        public final BlockingQueue<RemoteCommitEvent> events =
+            new LinkedBlockingQueue<>();
+        public final List<Thread> threads =
+            Collections.synchronizedList(new ArrayList<Thread>());
+        public final List<Object> calls =
+            Collections.synchronizedList(new ArrayList<Object>());
+        public volatile boolean fail = false;
+
+        @Override
+        public void afterCommit(RemoteCommitEvent event) {
+            calls.add("event");
+            threads.add(Thread.currentThread());
+            events.add(event);
+            if (fail)
+                throw new IllegalStateException("fail");
+        }
+
+        @Override
+        public void close() {
+            calls.add("close");
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.openjpa.datacache.DataCachePCData;
+import org.apache.openjpa.datacache.DataCachePCDataImpl;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.util.LongId;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+/**
+ * Serialization of remote commit events between nodes sending and
+ * receiving versions and nodes running earlier releases.
+ */
+public class RemoteCommitEventTest {
+
+    private static final String CURRENT = RemoteCommitEvent.class.getName();
+    private static final String LEGACY =
+        org.apache.openjpa.event.legacy.RemoteCommitEvent.class.getName();
+    private static final String NEXT = "next";
+
+    private static final Object OID1 = new LongId(Object.class, 1);
+    private static final Object OID2 = new LongId(Object.class, 2);
+    private static final Object OID3 = new LongId(Object.class, 3);
+
+    /**
+     * Write the given event followed by another object, as a provider
+     * writing several objects to one stream does.
+     */
+    private static byte[] write(Object event)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(event);
+            out.writeObject(NEXT);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read the event of the given stream as an instance of the class of
+     * the given name, whatever the class that wrote it.
+     */
+    private static Object read(byte[] bytes, final String cls)
+        throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(
+            new ByteArrayInputStream(bytes)) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+                if (CURRENT.equals(desc.getName())
+                    || LEGACY.equals(desc.getName()))
+                    return Class.forName(cls);
+                return super.resolveClass(desc);
+            }
+        }) {
+            Object event = in.readObject();
+            assertEquals(NEXT, in.readObject());
+            return event;
+        }
+    }
+
+    private static DataCachePCData newData(Object oid, Object version) {
+        ClassMetaData meta = Mockito.mock(ClassMetaData.class);
+        when(meta.getDescribedType()).thenReturn((Class) Object.class);
+        when(meta.getFields()).thenReturn(new FieldMetaData[2]);
+        DataCachePCDataImpl data = new DataCachePCDataImpl(oid, meta,
+            "cache");
+        data.setData(0, "a");
+        data.setData(1, 2);
+        data.setVersion(version);
+        return data;
+    }
+
+    private static RemoteCommitEvent newVersionedEvent() {
+        Map<Object, Object> versions = new HashMap<>();
+        versions.put(OID1, 2);
+        versions.put(OID2, 5);
+        Map<Object, Object> states = new HashMap<>();
+        states.put(OID1, newData(OID1, 2));
+        return new RemoteCommitEvent(
+            RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS, Arrays.asList(OID3),
+            Arrays.asList("p.A"), Arrays.asList(OID1, OID2),
+            Arrays.asList(OID3), versions, states);
+    }
+
+    private static void assertOids(RemoteCommitEvent event) {
+        assertEquals(RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS,
+            event.getPayloadType());
+        assertEquals(Arrays.asList(OID3),
+            list(event.getPersistedObjectIds()));
+        assertEquals(Arrays.asList("p.A"),
+            list(event.getPersistedTypeNames()));
+        assertEquals(Arrays.asList(OID1, OID2),
+            list(event.getUpdatedObjectIds()));
+        assertEquals(Arrays.asList(OID3), list(event.getDeletedObjectIds()));
+    }
+
+    private static Object list(Collection coll) {
+        return Arrays.asList(coll.toArray());
+    }
+
+    @Test
+    public void testSerialVersionOfEarlierReleases() {
+        assertEquals(ObjectStreamClass.lookup(
+            org.apache.openjpa.event.legacy.RemoteCommitEvent.class).
+            getSerialVersionUID(), ObjectStreamClass.lookup(
+            RemoteCommitEvent.class).getSerialVersionUID());
+    }
+
+    @Test
+    public void testVersionsRoundTrip()
+        throws Exception {
+        RemoteCommitEvent event = (RemoteCommitEvent) read(
+            write(newVersionedEvent()), CURRENT);
+        assertOids(event);
+        assertEquals(2, event.getUpdatedObjectVersions().size());
+        assertEquals(2, event.getUpdatedObjectVersions().get(OID1));
+        assertEquals(5, event.getUpdatedObjectVersions().get(OID2));
+
+        assertEquals(Collections.singleton(OID1),
+            event.getUpdatedObjectData().keySet());
+        DataCachePCData data = (DataCachePCData) event.getUpdatedObjectData().
+            get(OID1);
+        assertEquals(OID1, data.getId());
+        assertEquals("cache", data.getCache());
+        assertEquals(2, data.getVersion());
+        assertEquals("a", data.getData(0));
+        assertEquals(2, data.getData(1));
+    }
+
+    @Test
+    public void testWithoutVersionsRoundTrip()
+        throws Exception {
+        RemoteCommitEvent event = (RemoteCommitEvent) read(write(
+            new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_OIDS, null,
+                null, Arrays.asList(OID1), null)), CURRENT);
+        assertEquals(RemoteCommitEvent.PAYLOAD_OIDS, event.getPayloadType());
+        assertEquals(Arrays.asList(OID1), list(event.getUpdatedObjectIds()));
+        assertTrue(event.getDeletedObjectIds().isEmpty());
+        assertTrue(event.getUpdatedObjectVersions().isEmpty());
+        assertTrue(event.getUpdatedObjectData().isEmpty());
+    }
+
+    @Test
+    public void testExtentsRoundTrip()
+        throws Exception {
+        RemoteCommitEvent event = (RemoteCommitEvent) read(write(
+            new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_EXTENTS, null,
+                Arrays.asList("p.A"), Arrays.asList("p.B"), null)), CURRENT);
+        assertEquals(Arrays.asList("p.A"),
+            list(event.getPersistedTypeNames()));
+        assertEquals(Arrays.asList("p.B"), list(event.getUpdatedTypeNames()));
+        assertTrue(event.getDeletedTypeNames().isEmpty());
+    }
+
+    @Test
+    public void testEventOfEarlierReleaseRead()
+        throws Exception {
+        byte[] bytes = write(new org.apache.openjpa.event.legacy.
+            RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS,
+            Arrays.asList(OID3), Arrays.asList("p.A"),
+            Arrays.asList(OID1, OID2), Arrays.asList(OID3)));
+        RemoteCommitEvent event = (RemoteCommitEvent) read(bytes, CURRENT);
+        assertOids(event);
+        // updated instances are evicted whatever their cached version
+        assertTrue(event.getUpdatedObjectVersions().isEmpty());
+        assertTrue(event.getUpdatedObjectData().isEmpty());
+
+        bytes = write(new org.apache.openjpa.event.legacy.RemoteCommitEvent(
+            RemoteCommitEvent.PAYLOAD_OIDS, null, null, null,
+            Arrays.asList(OID1)));
+        event = (RemoteCommitEvent) read(bytes, CURRENT);
+        assertTrue(event.getUpdatedObjectIds().isEmpty());
+        assertEquals(Arrays.asList(OID1), list(event.getDeletedObjectIds()));
+        assertTrue(event.getUpdatedObjectVersions().isEmpty());
+    }
+
+    @Test
+    public void testEventReadByEarlierRelease()
+        throws Exception {
+        // the versions and states are skipped
+        org.apache.openjpa.event.legacy.RemoteCommitEvent event =
+            (org.apache.openjpa.event.legacy.RemoteCommitEvent) read(
+            write(newVersionedEvent()), LEGACY);
+        assertEquals(RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS, event.payload);
+        assertEquals(Arrays.asList(OID3), list(event.addIds));
+        assertEquals(Arrays.asList("p.A"), list(event.addClasses));
+        assertEquals(Arrays.asList(OID1, OID2), list(event.updates));
+        assertEquals(Arrays.asList(OID3), list(event.deletes));
+
+        event = (org.apache.openjpa.event.legacy.RemoteCommitEvent) read(
+            write(new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_OIDS, null,
+                null, Arrays.asList(OID1), null)), LEGACY);
+        assertEquals(RemoteCommitEvent.PAYLOAD_OIDS, event.payload);
+        assertEquals(Arrays.asList(OID1), list(event.updates));
+        assertNull(event.deletes);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event.legacy;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Collection;
+
+/**
+ * The serialized form of {@link org.apache.openjpa.event.RemoteCommitEvent}
+ * as sent and received by nodes running releases before versions were
+ * added. Streams are mapped between the two classes by name.
+ */
+public class RemoteCommitEvent
+    implements Externalizable {
+
+    private static final long serialVersionUID = 8323065900472910342L;
+
+    public int payload;
+    public Collection addIds;
+    public Collection addClasses;
+    public Collection updates;
+    public Collection deletes;
+
+    public RemoteCommitEvent() {
+    }
+
+    public RemoteCommitEvent(int payload, Collection addIds,
+        Collection addClasses, Collection updates, Collection deletes) {
+        this.payload = payload;
+        this.addIds = addIds;
+        this.addClasses = addClasses;
+        this.updates = updates;
+        this.deletes = deletes;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out)
+        throws IOException {
+        out.writeInt(payload);
+        out.writeObject(addClasses);
+        if (payload == org.apache.openjpa.event.RemoteCommitEvent.
+            PAYLOAD_OIDS_WITH_ADDS)
+            out.writeObject(addIds);
+        out.writeObject(updates);
+        out.writeObject(deletes);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in)
+        throws IOException {
+        try {
+            payload = in.readInt();
+            addClasses = (Collection) in.readObject();
+            if (payload == org.apache.openjpa.event.RemoteCommitEvent.
+                PAYLOAD_OIDS_WITH_ADDS)
+                addIds = (Collection) in.readObject();
+            updates = (Collection) in.readObject();
+            deletes = (Collection) in.readObject();
+        } catch (ClassNotFoundException cnfe) {
+            throw new IOException(cnfe);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.kernel;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.meta.JavaTypes;
+import org.apache.openjpa.util.LongId;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Lookups in the field value indexes of the managed instances of a broker.
+ */
+public class ManagedIndexTest {
+
+    private static final String NAME = "T.name";
+    private static final String NUMBER = "T.number";
+    private static final String OTHER = "T.other";
+
+    private FieldMetaData _name;
+    private FieldMetaData _number;
+    private ClassMetaData _meta;
+    private ManagedIndex _index;
+    private long _ids = 0;
+
+    @Before
+    public void setUp() {
+        _name = newField(NAME, JavaTypes.STRING, String.class);
+        _number = newField(NUMBER, JavaTypes.INT, int.class);
+        FieldMetaData[] fmds = new FieldMetaData[]{ _name, _number,
+            newField(OTHER, JavaTypes.STRING, String.class) };
+        _meta = Mockito.mock(ClassMetaData.class);
+        when(_meta.getFields()).thenReturn(fmds);
+        _index = new ManagedIndex(NAME + "; " + NUMBER);
+    }
+
+    private static FieldMetaData newField(String name, int typeCode,
+        Class<?> type) {
+        FieldMetaData fmd = Mockito.mock(FieldMetaData.class);
+        when(fmd.getFullName(false)).thenReturn(name);
+        when(fmd.getDeclaredTypeCode()).thenReturn(typeCode);
+        when(fmd.getDeclaredType()).thenReturn((Class) type);
+        return fmd;
+    }
+
+    /**
+     * Return a persistent state manager whose name and number fields are
+     * loaded with the given values.
+     */
+    private StateManagerImpl newInstance(String name, int number) {
+        StateManagerImpl sm = Mockito.mock(StateManagerImpl.class);
+        when(sm.getMetaData()).thenReturn(_meta);
+        when(sm.getObjectId()).thenReturn(new LongId(Object.class, ++_ids));
+        when(sm.isPersistent()).thenReturn(true);
+        when(sm.isIntercepting()).thenReturn(true);
+        BitSet loaded = new BitSet();
+        loaded.set(0, 3);
+        when(sm.getLoaded()).thenReturn(loaded);
+        setValue(sm, name, number);
+        return sm;
+    }
+
+    private static void setValue(StateManagerImpl sm, String name,
+        int number) {
+        when(sm.fetchField(0, false)).thenReturn(name);
+        when(sm.fetchField(1, false)).thenReturn(number);
+    }
+
+    private static void assertCandidates(Collection<?> actual,
+        Object... expected) {
+        assertEquals(new HashSet<>(Arrays.asList(expected)),
+            new HashSet<>(actual));
+        assertEquals(expected.length, actual.size());
+    }
+
+    @Test
+    public void testLookup() {
+        StateManagerImpl a = newInstance("a", 1);
+        StateManagerImpl b = newInstance("b", 1);
+        _index.add(a);
+        _index.add(b);
+
+        assertCandidates(_index.getCandidates(_name, "a"), a);
+        assertCandidates(_index.getCandidates(_name, "c"));
+        assertCandidates(_index.getCandidates(_number, 1), a, b);
+        assertNull(_index.getCandidates(_meta.getFields()[2], "a"));
+
+        _index.remove(a);
+        assertCandidates(_index.getCandidates(_name, "a"));
+        assertCandidates(_index.getCandidates(_number, 1), b);
+    }
+
+    @Test
+    public void testStaleMarking() {
+        StateManagerImpl a = newInstance("a", 1);
+        _index.add(a);
+        assertCandidates(_index.getCandidates(_name, "a"), a);
+        verify(a, times(1)).fetchField(0, false);
+
+        // values are only read again for instances marked as changed
+        setValue(a, "b", 2);
+        assertCandidates(_index.getCandidates(_name, "a"), a);
+        _index.changed(a, 2);
+        assertCandidates(_index.getCandidates(_name, "a"), a);
+        verify(a, times(1)).fetchField(0, false);
+
+        _index.changed(a, 0);
+        assertCandidates(_index.getCandidates(_name, "a"));
+        assertCandidates(_index.getCandidates(_name, "b"), a);
+        assertCandidates(_index.getCandidates(_number, 2), a);
+        verify(a, times(2)).fetchField(0, false);
+
+        // any field
+        setValue(a, "c", 3);
+        _index.changed(a, -1);
+        assertCandidates(_index.getCandidates(_name, "c"), a);
+        assertCandidates(_index.getCandidates(_number, 2));
+    }
+
+    @Test
+    public void testUnknownValuesReturned() {
+        StateManagerImpl a = newInstance("a", 1);
+        StateManagerImpl unloaded = newInstance("a", 1);
+        unloaded.getLoaded().clear(0);
+        StateManagerImpl untracked = newInstance("a", 1);
+        when(untracked.isIntercepting()).thenReturn(false);
+        _index.add(a);
+        _index.add(unloaded);
+        _index.add(untracked);
+
+        // instances whose value is not known are candidates for any value
+        assertCandidates(_index.getCandidates(_name, "b"), unloaded,
+            untracked);
+        assertCandidates(_index.getCandidates(_name, "a"), a, unloaded,
+            untracked);
+        assertCandidates(_index.getCandidates(_number, 2), untracked);
+        verify(unloaded, never()).fetchField(0, false);
+        verify(untracked, never()).fetchField(anyInt(), anyBoolean());
+
+        unloaded.getLoaded().set(0);
+        _index.changed(unloaded, 0);
+        assertCandidates(_index.getCandidates(_name, "b"), untracked);
+        assertCandidates(_index.getCandidates(_name, "a"), a, unloaded,
+            untracked);
+
+        _index.remove(untracked);
+        assertCandidates(_index.getCandidates(_name, "b"));
+    }
+
+    @Test
+    public void testNumericConversion() {
+        StateManagerImpl zero = newInstance("a", 0);
+        StateManagerImpl two = newInstance("a", 2);
+        _index.add(zero);
+        _index.add(two);
+
+        assertCandidates(_index.getCandidates(_number, 2L), two);
+        assertCandidates(_index.getCandidates(_number, (short) 2), two);
+        assertCandidates(_index.getCandidates(_number, 2d), two);
+        assertCandidates(_index.getCandidates(_number, 0d), zero);
+        assertCandidates(_index.getCandidates(_number, -0d), zero);
+        assertCandidates(_index.getCandidates(_number, -0f), zero);
+
+        // values that do not convert to an int without loss
+        assertNull(_index.getCandidates(_number, 2.5d));
+        assertNull(_index.getCandidates(_number, Double.NaN));
+        assertNull(_index.getCandidates(_number, Float.NaN));
+        assertNull(_index.getCandidates(_number,
+            Double.POSITIVE_INFINITY));
+        assertNull(_index.getCandidates(_number, Long.MAX_VALUE));
+        assertNull(_index.getCandidates(_number, "2"));
+        assertNull(_index.getCandidates(_name, 2));
+    }
+
+    @Test
+    public void testModCount() {
+        StateManagerImpl a = newInstance("a", 1);
+        int mod = _index.getModCount();
+        _index.add(a);
+        assertEquals(++mod, _index.getModCount());
+        _index.changed(a, 0);
+        _index.getCandidates(_name, "a");
+        assertEquals(mod, _index.getModCount());
+        _index.remove(a);
+        assertEquals(++mod, _index.getModCount());
+        _index.clear();
+        assertEquals(++mod, _index.getModCount());
+    }
+
+    @Test
+    public void testBrokerSnapshots() {
+        BrokerImpl broker = newBroker();
+        StateManagerImpl a = newInstance("a", 1);
+        StateManagerImpl b = newInstance("b", 1);
+        broker.setStateManager(a.getObjectId(), a, BrokerImpl.STATUS_INIT);
+        broker.setStateManager(b.getObjectId(), b, BrokerImpl.STATUS_INIT);
+
+        Collection managed = broker.getManagedObjects();
+        assertNotNull(broker.getIndexedObjects(managed, _name, "a"));
+        assertEquals(1, broker.getIndexedObjects(managed, _name, "a").size());
+        assertNull(broker.getIndexedObjects(managed, _meta.getFields()[2],
+            "a"));
+        assertNull(broker.getIndexedObjects(Collections.emptyList(), _name,
+            "a"));
+
+        // the snapshot is out of date once the cache changes
+        StateManagerImpl c = newInstance("a", 1);
+        broker.setStateManager(c.getObjectId(), c, BrokerImpl.STATUS_INIT);
+        assertNull(broker.getIndexedObjects(managed, _name, "a"));
+        managed = broker.getManagedObjects();
+        assertEquals(2, broker.getIndexedObjects(managed, _name, "a").size());
+
+        broker.setStateManager(a.getObjectId(), a,
+            BrokerImpl.STATUS_TRANSIENT);
+        assertNull(broker.getIndexedObjects(managed, _name, "a"));
+        managed = broker.getManagedObjects();
+        assertEquals(1, broker.getIndexedObjects(managed, _name, "a").size());
+    }
+
+    private BrokerImpl newBroker() {
+        AbstractBrokerFactory factory = Mockito.mock(
+            AbstractBrokerFactory.class, Mockito.RETURNS_DEEP_STUBS);
+        OpenJPAConfiguration conf = Mockito.mock(OpenJPAConfiguration.class,
+            Mockito.RETURNS_DEEP_STUBS);
+        when(factory.getConfiguration()).thenReturn(conf);
+        when(conf.getFetchGroupsList()).thenReturn(new String[0]);
+        DelegatingStoreManager store = Mockito.mock(
+            DelegatingStoreManager.class);
+        when(store.newFetchConfiguration()).
+            thenReturn(new FetchConfigurationImpl());
+
+        BrokerImpl broker = new BrokerImpl();
+        broker.setIndexedFields(NAME);
+        broker.initialize(factory, store, false, 0, false);
+        return broker;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.kernel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.openjpa.util.Id;
+import org.apache.openjpa.util.IntId;
+import org.apache.openjpa.util.LongId;
+import org.apache.openjpa.util.StringId;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Equivalence of {@link ManagedObjectMap} with a {@link HashMap} under
+ * random operations on mixed oids. The values stay strongly reachable
+ * from the reference map, so none of them is collected.
+ *
+ * The random oids belong to a single chain of subclasses and match
+ * subclass ids, so that oid equality is an equivalence relation. Oids of
+ * sibling types, or oids that do not match subclass ids, do not compare
+ * symmetrically or transitively, and which of several such entries a
+ * hash map finds depends on the order they were added in.
+ */
+public class ManagedObjectMapTest {
+
+    private static class Base {
+    }
+
+    private static class Sub extends Base {
+    }
+
+    private static class Sibling extends Base {
+    }
+
+    private static class Other {
+    }
+
+    private static final Class<?>[] TYPES = {
+        Base.class, Sub.class, Other.class };
+
+    private final Map<Object, Object> _expected = new HashMap<>();
+    private final ManagedObjectMap _map = new ManagedObjectMap();
+
+    /**
+     * Return a random oid of a random type. Values are drawn from the given
+     * range, so that equal oids and oids sharing a value recur.
+     */
+    private static Object newKey(Random rand, int range) {
+        Class<?> type = TYPES[rand.nextInt(TYPES.length)];
+        long value = rand.nextInt(range);
+        if (rand.nextInt(8) == 0)
+            value += Integer.MAX_VALUE;
+        switch (rand.nextInt(6)) {
+            case 0:
+            case 1:
+                return new LongId(type, value);
+            case 2:
+                return new IntId(type, (int) value);
+            case 3:
+                return new Id(type, value);
+            case 4:
+                return new StringId(type, String.valueOf(value));
+            default:
+                return "key" + value;
+        }
+    }
+
+    private void assertEquivalent(String msg) {
+        assertEquals(msg, _expected.size(), _map.size());
+        assertEquals(msg, _expected.isEmpty(), _map.isEmpty());
+        for (Map.Entry<Object, Object> entry : _expected.entrySet())
+            assertSame(msg, entry.getValue(), _map.get(entry.getKey()));
+
+        // the map keeps the same key instances as the reference map
+        Map<Object, Object> entries = new IdentityHashMap<>();
+        for (Map.Entry<Object, Object> entry : _map.entrySet())
+            assertNull(msg, entries.put(entry.getKey(), entry.getValue()));
+        assertEquals(msg, new IdentityHashMap<>(_expected), entries);
+        assertEquals(msg, _expected.size(), _map.values().size());
+    }
+
+    private void fuzz(long seed, int ops, int range) {
+        Random rand = new Random(seed);
+        Object key;
+        Object value;
+        String msg;
+        for (int i = 0; i < ops; i++) {
+            key = newKey(rand, range);
+            msg = "seed " + seed + ", op " + i + ", key " + key;
+            switch (rand.nextInt(5)) {
+                case 0:
+                case 1:
+                    value = new Object();
+                    assertSame(msg, _expected.put(key, value),
+                        _map.put(key, value));
+                    break;
+                case 2:
+                    assertSame(msg, _expected.remove(key), _map.remove(key));
+                    break;
+                case 3:
+                    assertSame(msg, _expected.get(key), _map.get(key));
+                    assertEquals(msg, _expected.containsKey(key),
+                        _map.containsKey(key));
+                    break;
+                default:
+                    if (rand.nextInt(range) == 0) {
+                        _expected.clear();
+                        _map.clear();
+                    }
+            }
+            if (i % (ops / 20) == 0)
+                assertEquivalent(msg);
+        }
+        assertEquivalent("seed " + seed);
+    }
+
+    @Test
+    public void testRandomOperationsOnFewValues() {
+        // oids of different types and classes collide on the same values
+        for (long seed = 0; seed < 50; seed++) {
+            fuzz(seed, 2000, 8);
+            _expected.clear();
+            _map.clear();
+        }
+    }
+
+    @Test
+    public void testRandomOperationsWithRehash() {
+        // tables grow well beyond their initial capacity and shrink again
+        for (long seed = 0; seed < 10; seed++)
+            fuzz(seed, 20000, 5000);
+    }
+
+    @Test
+    public void testRemovalWithinProbeRuns() {
+        Object[] values = new Object[4096];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new Object();
+            _map.put(new LongId(Base.class, i), values[i]);
+        }
+        // removing every other value breaks up the runs of probed slots
+        for (int i = 0; i < values.length; i += 2)
+            assertSame(values[i], _map.remove(new LongId(Sub.class, i)));
+        assertEquals(values.length / 2, _map.size());
+        for (int i = 0; i < values.length; i++)
+            assertSame((i % 2 == 0) ? null : values[i],
+                _map.get(new LongId(Base.class, i)));
+    }
+
+    @Test
+    public void testSiblingTypesSharingValues() {
+        // e.g. the types of a table-per-class hierarchy
+        Object sub = new LongId(Sub.class, 1);
+        Object sibling = new LongId(Sibling.class, 1);
+        Object subValue = new Object();
+        Object siblingValue = new Object();
+        assertNull(_map.put(sub, subValue));
+        assertNull(_map.put(sibling, siblingValue));
+        assertEquals(2, _map.size());
+        assertSame(subValue, _map.get(new LongId(Sub.class, 1)));
+        assertSame(siblingValue, _map.get(new LongId(Sibling.class, 1)));
+
+        assertSame(subValue, _map.remove(new LongId(Sub.class, 1)));
+        assertNull(_map.get(sub));
+        assertSame(siblingValue, _map.get(sibling));
+        assertNull(_map.put(sub, subValue));
+        assertSame(subValue, _map.get(sub));
+        assertSame(siblingValue, _map.remove(sibling));
+        assertNull(_map.get(sibling));
+        assertEquals(1, _map.size());
+    }
+
+    @Test
+    public void testIdsOfExactTypes() {
+        Object sub = new LongId(Sub.class, 1);
+        Object subValue = new Object();
+        assertNull(_map.put(sub, subValue));
+        assertSame(subValue, _map.get(new LongId(Base.class, 1)));
+        // an id of the exact type does not match an id of a subclass
+        assertNull(_map.get(new LongId(Base.class, 1, false)));
+
+        Object base = new LongId(Base.class, 1, false);
+        Object value = new Object();
+        assertNull(_map.put(base, value));
+        assertEquals(2, _map.size());
+        assertSame(value, _map.get(new LongId(Base.class, 1, false)));
+        assertSame(subValue, _map.get(new LongId(Sub.class, 1)));
+
+        assertSame(subValue, _map.remove(sub));
+        assertSame(value, _map.get(base));
+        assertEquals(1, _map.size());
+    }
+
+    @Test
+    public void testSerialization()
+        throws Exception {
+        Random rand = new Random(0);
+        Object key;
+        for (int i = 0; i < 500; i++) {
+            key = newKey(rand, 100);
+            // values that serialize to equal copies
+            _expected.put(key, i);
+            _map.put(key, i);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(_map);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(
+            new ByteArrayInputStream(bytes.toByteArray()));
+        Map<?, ?> copy = (Map<?, ?>) in.readObject();
+
+        assertEquals(_expected.size(), copy.size());
+        for (Map.Entry<Object, Object> entry : _expected.entrySet())
+            assertEquals(entry.getValue(), copy.get(entry.getKey()));
+    }
+}
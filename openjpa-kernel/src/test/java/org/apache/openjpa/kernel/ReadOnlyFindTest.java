@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.kernel;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.enhance.PersistenceCapable;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.util.LongId;
+import org.apache.openjpa.util.ObjectNotFoundException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Finds under a read-only fetch configuration: every result, whether
+ * loaded or already known to the broker, is passed to the find callbacks.
+ */
+public class ReadOnlyFindTest {
+
+    private final Object _oid = new LongId(Object.class, 1);
+    private final RecordingCallbacks _call = new RecordingCallbacks();
+    private DelegatingStoreManager _store;
+    private StateManagerImpl _sm;
+    private PersistenceCapable _pc;
+    private BrokerImpl _broker;
+    private FetchConfiguration _fetch;
+
+    @Before
+    public void setUp() {
+        AbstractBrokerFactory factory = Mockito.mock(
+            AbstractBrokerFactory.class, Mockito.RETURNS_DEEP_STUBS);
+        OpenJPAConfiguration conf = Mockito.mock(OpenJPAConfiguration.class,
+            Mockito.RETURNS_DEEP_STUBS);
+        when(factory.getConfiguration()).thenReturn(conf);
+        when(conf.getFetchGroupsList()).thenReturn(new String[0]);
+        when(conf.supportedOptions()).thenReturn(Collections.singleton(
+            OpenJPAConfiguration.OPTION_NONTRANS_READ));
+
+        _store = Mockito.mock(DelegatingStoreManager.class);
+        when(_store.newFetchConfiguration()).
+            thenReturn(new FetchConfigurationImpl());
+
+        _pc = Mockito.mock(PersistenceCapable.class);
+        ClassMetaData meta = Mockito.mock(ClassMetaData.class);
+        when(meta.getProxyFields()).thenReturn(new FieldMetaData[0]);
+        _sm = Mockito.mock(StateManagerImpl.class);
+        when(_sm.getObjectId()).thenReturn(_oid);
+        when(_sm.getMetaData()).thenReturn(meta);
+        when(_sm.getManagedInstance()).thenReturn(_pc);
+        when(_sm.getPersistenceCapable()).thenReturn(_pc);
+        when(_sm.getLoaded()).thenReturn(new BitSet());
+
+        _broker = new BrokerImpl() {
+            @Override
+            protected StateManagerImpl newStateManagerImpl(Object oid,
+                ClassMetaData meta) {
+                return _sm;
+            }
+        };
+        _broker.initialize(factory, _store, false, 0, false);
+        _broker.setNontransactionalRead(true);
+        _fetch = _broker.getFetchConfiguration();
+        _fetch.setReadOnly(true);
+    }
+
+    /**
+     * Make the store load the instance, running the given action while it
+     * is loading.
+     */
+    private void load(final boolean exists, final Runnable whileLoading) {
+        when(_store.initialize(eq(_sm), any(PCState.class),
+            any(FetchConfiguration.class), any())).thenAnswer(
+            new Answer<Boolean>() {
+                @Override
+                public Boolean answer(InvocationOnMock inv) {
+                    if (!exists)
+                        return false;
+                    _broker.addReadOnly(_sm);
+                    when(_pc.pcGetStateManager()).thenReturn(_sm);
+                    if (whileLoading != null)
+                        whileLoading.run();
+                    return true;
+                }
+            });
+        // detaching clears the state manager of the instance
+        Mockito.doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock inv) {
+                when(_pc.pcGetStateManager()).thenReturn(null);
+                return null;
+            }
+        }).when(_pc).pcReplaceStateManager(null);
+    }
+
+    private Object find(int flags) {
+        return _broker.find(_oid, _fetch, null, null, flags, _call);
+    }
+
+    @Test
+    public void testMissLoadsAndDetaches() {
+        load(true, null);
+        assertSame(_pc, find(0));
+        verify(_sm).load(eq(_fetch), anyInt(), any(BitSet.class), any(),
+            anyBoolean());
+        verify(_pc).pcReplaceStateManager(null);
+        assertEquals(1, _call.returned.size());
+        assertSame(_sm, _call.returned.get(0));
+    }
+
+    @Test
+    public void testHitReturnedThroughCallbacks() {
+        load(true, null);
+        assertSame(_pc, find(0));
+        assertSame(_pc, find(0));
+        verify(_store, times(1)).initialize(eq(_sm), any(PCState.class),
+            any(FetchConfiguration.class), any());
+
+        // the detached instance is handed over in a state manager of its own
+        assertEquals(2, _call.returned.size());
+        OpenJPAStateManager hit = _call.returned.get(1);
+        assertTrue(hit instanceof DetachedValueStateManager);
+        assertSame(_pc, hit.getManagedInstance());
+    }
+
+    @Test
+    public void testHitWhileLoadingReturnedThroughCallbacks() {
+        // a relation back to the instance being loaded
+        final Object[] nested = new Object[1];
+        load(true, new Runnable() {
+            @Override
+            public void run() {
+                nested[0] = find(0);
+            }
+        });
+        assertSame(_pc, find(0));
+        assertSame(_pc, nested[0]);
+        assertEquals(2, _call.returned.size());
+        assertSame(_sm, _call.returned.get(0));
+        assertSame(_sm, _call.returned.get(1));
+    }
+
+    @Test
+    public void testMissingId() {
+        load(false, null);
+        assertNull(find(0));
+        assertEquals(1, _call.returned.size());
+        assertNull(_call.returned.get(0));
+
+        try {
+            find(StoreContext.OID_NOVALIDATE);
+            fail("missing instance should not be found");
+        } catch (ObjectNotFoundException onfe) {
+        }
+    }
+
+    /**
+     * Callbacks that record the state managers of the returned instances.
+     */
+    private static class RecordingCallbacks implements FindCallbacks {
+
+        final List<OpenJPAStateManager> returned = new ArrayList<>();
+
+        @Override
+        public Object processArgument(Object oid) {
+            return oid;
+        }
+
+        @Override
+        public Object processReturn(Object oid, OpenJPAStateManager sm) {
+            returned.add(sm);
+            return (sm == null) ? null : sm.getManagedInstance();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.kernel;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.meta.JavaTypes;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+
+/**
+ * Dirty checks of mutable fields of instances whose changes are not
+ * intercepted, under the default restore state that does not save them.
+ */
+public class SaveFieldManagerTest {
+
+    private static final int DATE = 0;
+    private static final int ARRAY = 1;
+    private static final int SET = 2;
+    private static final int LIST = 3;
+    private static final int MAP = 4;
+
+    private final Object[] _values = new Object[5];
+    private StateManagerImpl _sm;
+
+    @Before
+    public void setUp() {
+        int[] types = { JavaTypes.DATE, JavaTypes.ARRAY, JavaTypes.COLLECTION,
+            JavaTypes.COLLECTION, JavaTypes.MAP };
+        FieldMetaData[] fmds = new FieldMetaData[types.length];
+        ClassMetaData meta = Mockito.mock(ClassMetaData.class);
+        for (int i = 0; i < types.length; i++) {
+            fmds[i] = Mockito.mock(FieldMetaData.class);
+            when(fmds[i].getDeclaredTypeCode()).thenReturn(types[i]);
+            when(fmds[i].getInverseMetaDatas()).
+                thenReturn(new FieldMetaData[0]);
+            when(meta.getField(i)).thenReturn(fmds[i]);
+        }
+        when(meta.getFields()).thenReturn(fmds);
+
+        BrokerImpl broker = Mockito.mock(BrokerImpl.class);
+        when(broker.getRestoreState()).
+            thenReturn(RestoreState.RESTORE_IMMUTABLE);
+
+        BitSet loaded = new BitSet();
+        loaded.set(0, types.length);
+
+        _sm = Mockito.mock(StateManagerImpl.class);
+        when(_sm.getMetaData()).thenReturn(meta);
+        when(_sm.getBroker()).thenReturn(broker);
+        when(_sm.getLoaded()).thenReturn(loaded);
+        when(_sm.isNew()).thenReturn(true);
+        when(_sm.isIntercepting()).thenReturn(false);
+        when(_sm.fetchField(anyInt(), eq(false))).thenAnswer(
+            new Answer<Object>() {
+                @Override
+                public Object answer(InvocationOnMock inv) {
+                    return _values[(Integer) inv.getArguments()[0]];
+                }
+            });
+    }
+
+    private SaveFieldManager save() {
+        SaveFieldManager saved = new SaveFieldManager(_sm, null, null);
+        for (int i = 0; i < _values.length; i++)
+            assertFalse(saved.saveField(i));
+        return saved;
+    }
+
+    @Test
+    public void testUnchangedValuesAreEqual() {
+        _values[DATE] = new Date(1000);
+        _values[ARRAY] = new int[]{ 0, 31 };
+        _values[SET] = new HashSet<>(Arrays.asList(1, 4));
+        _values[LIST] = new ArrayList<>(Arrays.asList("a", "b"));
+        _values[MAP] = new HashMap<>();
+        SaveFieldManager saved = save();
+
+        for (int i = 0; i < _values.length; i++)
+            assertTrue(saved.isFieldEqual(i, _values[i]));
+        // equal content in a different instance is not a change
+        assertTrue(saved.isFieldEqual(ARRAY, new int[]{ 0, 31 }));
+        assertTrue(saved.isFieldEqual(SET,
+            new HashSet<>(Arrays.asList(4, 1))));
+    }
+
+    @Test
+    public void testNullValues() {
+        SaveFieldManager saved = save();
+        for (int i = 0; i < _values.length; i++)
+            assertTrue(saved.isFieldEqual(i, null));
+        assertFalse(saved.isFieldEqual(DATE, new Date(0)));
+        assertFalse(saved.isFieldEqual(SET, new HashSet<>()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testInPlaceChangesWithCollidingHashes() {
+        // each change below keeps the size and the hash code of the value
+        _values[ARRAY] = new int[]{ 0, 31 };
+        _values[SET] = new HashSet<>(Arrays.asList(1, 4));
+        _values[LIST] = new ArrayList<>(Arrays.asList("Aa", "x"));
+        Map<Integer, Integer> map = new HashMap<>();
+        map.put(1, 0);
+        _values[MAP] = map;
+        SaveFieldManager saved = save();
+
+        int[] arr = (int[]) _values[ARRAY];
+        arr[0] = 1;
+        arr[1] = 0;
+        assertEquals(Arrays.hashCode(new int[]{ 0, 31 }), Arrays.hashCode(arr));
+        assertFalse(saved.isFieldEqual(ARRAY, arr));
+
+        Set<Integer> set = (Set<Integer>) _values[SET];
+        int hash = set.hashCode();
+        set.clear();
+        set.add(2);
+        set.add(3);
+        assertEquals(hash, set.hashCode());
+        assertFalse(saved.isFieldEqual(SET, set));
+
+        List<String> list = (List<String>) _values[LIST];
+        hash = list.hashCode();
+        list.set(0, "BB");
+        assertEquals(hash, list.hashCode());
+        assertFalse(saved.isFieldEqual(LIST, list));
+
+        hash = map.hashCode();
+        map.clear();
+        map.put(0, 1);
+        assertEquals(hash, map.hashCode());
+        assertFalse(saved.isFieldEqual(MAP, map));
+    }
+
+    @Test
+    public void testInPlaceDateChanges() {
+        Timestamp ts = new Timestamp(1000);
+        _values[DATE] = ts;
+        SaveFieldManager saved = save();
+
+        ts.setNanos(1);
+        assertFalse(saved.isFieldEqual(DATE, ts));
+        ts.setNanos(0);
+        assertTrue(saved.isFieldEqual(DATE, ts));
+        ts.setTime(2000);
+        assertFalse(saved.isFieldEqual(DATE, ts));
+        // a date equal to the timestamp's millis is still a change of type
+        assertFalse(saved.isFieldEqual(DATE, new Date(1000)));
+    }
+
+    @Test
+    public void testNestedArrayChanges() {
+        int[][] arr = { { 1, 2 }, { 3 } };
+        _values[ARRAY] = arr;
+        SaveFieldManager saved = save();
+
+        assertTrue(saved.isFieldEqual(ARRAY, arr));
+        arr[1][0] = 4;
+        assertFalse(saved.isFieldEqual(ARRAY, arr));
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.meta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.openjpa.lib.log.NoneLogFactory;
+import org.apache.openjpa.lib.meta.ClassAnnotationIndex;
+import org.apache.openjpa.lib.meta.ClassAnnotationMetaDataFilter;
+import org.apache.openjpa.lib.meta.MetaDataFilter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scanning of directories and jars for annotated types, with and without
+ * their {@link ClassAnnotationIndex}.
+ */
+public class AnnotationIndexScanTest {
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Indexed {
+    }
+
+    @Indexed
+    public static class Annotated {
+    }
+
+    public static class Plain {
+    }
+
+    private static final String STALE = "org.example.Stale";
+
+    @Rule
+    public TemporaryFolder _tmp = new TemporaryFolder();
+
+    @Test
+    public void testIndexIgnoredByDefault()
+        throws IOException {
+        File dir = newClassesDir(staleIndex());
+        ScanningFactory factory = new ScanningFactory(dir);
+        assertFalse(factory.getUseAnnotationIndex());
+        // the classes are scanned, so a class missing from the index is found
+        assertEquals(Collections.singleton(Annotated.class.getName()),
+            factory.scan());
+    }
+
+    @Test
+    public void testIndexReadWhenEnabled()
+        throws IOException {
+        File dir = newClassesDir(staleIndex());
+        ScanningFactory factory = new ScanningFactory(dir);
+        factory.setUseAnnotationIndex(true);
+        assertEquals(Collections.singleton(STALE), factory.scan());
+    }
+
+    @Test
+    public void testIndexOfClassesDirectory()
+        throws IOException {
+        File dir = newClassesDir(null);
+        ClassAnnotationIndex.write(dir, Arrays.asList(
+            classFile(dir, Annotated.class), classFile(dir, Plain.class)));
+        ScanningFactory factory = new ScanningFactory(dir);
+        factory.setUseAnnotationIndex(true);
+        assertEquals(Collections.singleton(Annotated.class.getName()),
+            factory.scan());
+    }
+
+    @Test
+    public void testJarIndex()
+        throws IOException {
+        File jar = newJar(staleIndex());
+        ScanningFactory factory = new ScanningFactory(jar);
+        assertEquals(Collections.singleton(Annotated.class.getName()),
+            factory.scan());
+
+        factory = new ScanningFactory(jar);
+        factory.setUseAnnotationIndex(true);
+        assertEquals(Collections.singleton(STALE), factory.scan());
+    }
+
+    @Test
+    public void testDirectoryWithoutIndex()
+        throws IOException {
+        ScanningFactory factory = new ScanningFactory(newClassesDir(null));
+        factory.setUseAnnotationIndex(true);
+        assertEquals(Collections.singleton(Annotated.class.getName()),
+            factory.scan());
+    }
+
+    /**
+     * Return an index listing only a class which is not in the directory
+     * or jar, as written before the classes changed.
+     */
+    private static ClassAnnotationIndex staleIndex() {
+        ClassAnnotationIndex index = new ClassAnnotationIndex();
+        index.add(STALE, Collections.singleton(Indexed.class.getName()));
+        return index;
+    }
+
+    /**
+     * Create a classes directory holding the test classes and the given
+     * index, if any.
+     */
+    private File newClassesDir(ClassAnnotationIndex index)
+        throws IOException {
+        File dir = _tmp.newFolder();
+        for (Class<?> cls : new Class<?>[]{ Annotated.class, Plain.class }) {
+            File file = classFile(dir, cls);
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), classBytes(cls));
+        }
+        if (index != null) {
+            File file = new File(dir, ClassAnnotationIndex.RESOURCE);
+            file.getParentFile().mkdirs();
+            try (OutputStream out = new FileOutputStream(file)) {
+                index.write(out);
+            }
+        }
+        return dir;
+    }
+
+    /**
+     * Create a jar holding the test classes and the given index.
+     */
+    private File newJar(ClassAnnotationIndex index)
+        throws IOException {
+        File jar = _tmp.newFile("classes.jar");
+        try (ZipOutputStream out = new ZipOutputStream(
+            new FileOutputStream(jar))) {
+            for (Class<?> cls : new Class<?>[]{ Annotated.class,
+                Plain.class }) {
+                out.putNextEntry(new ZipEntry(resourceName(cls)));
+                out.write(classBytes(cls));
+                out.closeEntry();
+            }
+            out.putNextEntry(new ZipEntry(ClassAnnotationIndex.RESOURCE));
+            index.write(out);
+            out.closeEntry();
+        }
+        return jar;
+    }
+
+    private static File classFile(File dir, Class<?> cls) {
+        return new File(dir, resourceName(cls));
+    }
+
+    private static String resourceName(Class<?> cls) {
+        return cls.getName().replace('.', '/') + ".class";
+    }
+
+    private static byte[] classBytes(Class<?> cls)
+        throws IOException {
+        try (InputStream in = cls.getClassLoader().getResourceAsStream(
+            resourceName(cls))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[1024];
+            for (int n; (n = in.read(buf)) != -1;)
+                out.write(buf, 0, n);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Factory scanning a single directory or jar for classes annotated
+     * with {@link Indexed}.
+     */
+    private static class ScanningFactory extends AbstractCFMetaDataFactory {
+
+        ScanningFactory(File file) {
+            files = Collections.singleton(file);
+            log = NoneLogFactory.NoneLog.getInstance();
+        }
+
+        Set<String> scan()
+            throws IOException {
+            return new HashSet<>(parsePersistentTypeNames(
+                getClass().getClassLoader()));
+        }
+
+        @Override
+        protected MetaDataFilter newMetaDataFilter() {
+            return new ClassAnnotationMetaDataFilter(Indexed.class);
+        }
+
+        @Override
+        protected File defaultSourceFile(ClassMetaData meta) {
+            return null;
+        }
+
+        @Override
+        protected File defaultSourceFile(QueryMetaData query,
+            Map clsNames) {
+            return null;
+        }
+
+        @Override
+        protected File defaultSourceFile(SequenceMetaData seq,
+            Map clsNames) {
+            return null;
+        }
+
+        @Override
+        protected Parser newParser(boolean loading) {
+            return null;
+        }
+
+        @Override
+        protected Serializer newSerializer() {
+            return null;
+        }
+
+        @Override
+        protected Serializer newAnnotationSerializer() {
+            return null;
+        }
+
+        @Override
+        public void load(Class<?> cls, int mode, ClassLoader envLoader) {
+        }
+
+        @Override
+        public MetaDataDefaults getDefaults() {
+            return null;
+        }
+
+        @Override
+        public void loadXMLMetaData(Class<?> cls) {
+        }
+
+        @Override
+        public String getMetaModelClassName(String managedClassName) {
+            return null;
+        }
+
+        @Override
+        public String getManagedClassName(String metamodelClassName) {
+            return null;
+        }
+
+        @Override
+        public boolean isMetaClass(Class<?> c) {
+            return false;
+        }
+
+        @Override
+        public Class<?> getManagedClass(Class<?> c) {
+            return null;
+        }
+    }
+}
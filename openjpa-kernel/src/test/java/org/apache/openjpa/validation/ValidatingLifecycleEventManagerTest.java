@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.enhance.PersistenceCapable;
+import org.apache.openjpa.event.LifecycleCallbacks;
+import org.apache.openjpa.event.LifecycleEvent;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
+import org.apache.openjpa.kernel.PCState;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.meta.LifecycleMetaData;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.when;
+
+/**
+ * Pre-update validation with and without the dirty fields only option.
+ */
+public class ValidatingLifecycleEventManagerTest {
+
+    private static final String[] FIELDS = { "name", "code", "notes" };
+    private static final int NAME = 0;
+    private static final int CODE = 1;
+    private static final int NOTES = 2;
+
+    private final RecordingValidator _validator = new RecordingValidator();
+    private final BitSet _dirty = new BitSet();
+    private final BitSet _loaded = new BitSet();
+    private ClassMetaData _meta;
+    private PersistenceCapable _pc;
+    private ValidatingLifecycleEventManager _mgr;
+
+    @Before
+    public void setUp() {
+        FieldMetaData[] fmds = new FieldMetaData[FIELDS.length];
+        for (int i = 0; i < fmds.length; i++) {
+            fmds[i] = Mockito.mock(FieldMetaData.class,
+                Mockito.RETURNS_DEEP_STUBS);
+            when(fmds[i].getName()).thenReturn(FIELDS[i]);
+        }
+        _meta = Mockito.mock(ClassMetaData.class, Mockito.RETURNS_DEEP_STUBS);
+        when(_meta.getFields()).thenReturn(fmds);
+        LifecycleMetaData lmd = _meta.getLifecycleMetaData();
+        when(lmd.getCallbacks(anyInt())).
+            thenReturn(new LifecycleCallbacks[0]);
+
+        OpenJPAStateManager sm = Mockito.mock(OpenJPAStateManager.class);
+        when(sm.getPCState()).thenReturn(PCState.PDIRTY);
+        when(sm.getDirty()).thenReturn(_dirty);
+        when(sm.getLoaded()).thenReturn(_loaded);
+        when(sm.getMetaData()).thenReturn(_meta);
+        _pc = Mockito.mock(PersistenceCapable.class);
+        when(_pc.pcGetStateManager()).thenReturn(sm);
+        _loaded.set(0, FIELDS.length);
+
+        OpenJPAConfiguration conf = Mockito.mock(OpenJPAConfiguration.class);
+        when(conf.getValidatorInstance()).thenReturn(_validator);
+        _mgr = new ValidatingLifecycleEventManager();
+        _mgr.setConfiguration(conf);
+        _mgr.endConfiguration();
+
+        // the unchanged code field holds an invalid value
+        _validator.invalid.add(FIELDS[CODE]);
+    }
+
+    private Exception[] update() {
+        _validator.validated.clear();
+        return _mgr.fireEvent(_pc, _meta, LifecycleEvent.BEFORE_UPDATE);
+    }
+
+    @Test
+    public void testAllFieldsValidatedByDefault() {
+        _dirty.set(NAME);
+        Exception[] ex = update();
+        assertEquals(1, ex.length);
+        assertTrue(ex[0] instanceof ValidationException);
+        assertEquals(Arrays.asList(RecordingValidator.ALL),
+            _validator.validated);
+    }
+
+    @Test
+    public void testOnlyDirtyFieldsValidated() {
+        _mgr.setValidateDirtyFieldsOnly(true);
+        _dirty.set(NAME);
+        _dirty.set(NOTES);
+        assertEquals(0, update().length);
+        assertEquals(Arrays.asList(FIELDS[NAME], FIELDS[NOTES]),
+            _validator.validated);
+    }
+
+    @Test
+    public void testInvalidDirtyFieldReported() {
+        _mgr.setValidateDirtyFieldsOnly(true);
+        _dirty.set(CODE);
+        Exception[] ex = update();
+        assertEquals(1, ex.length);
+        assertTrue(ex[0] instanceof ValidationException);
+        assertEquals(Arrays.asList(FIELDS[CODE]), _validator.validated);
+    }
+
+    @Test
+    public void testUnloadedDirtyFieldsSkipped() {
+        _mgr.setValidateDirtyFieldsOnly(true);
+        _dirty.set(NAME);
+        _dirty.set(CODE);
+        _loaded.clear(CODE);
+        assertEquals(0, update().length);
+        assertEquals(Arrays.asList(FIELDS[NAME]), _validator.validated);
+    }
+
+    @Test
+    public void testOtherEventsValidateAllFields() {
+        _mgr.setValidateDirtyFieldsOnly(true);
+        _dirty.set(NAME);
+        _validator.validated.clear();
+        Exception[] ex = _mgr.fireEvent(_pc, _meta,
+            LifecycleEvent.BEFORE_PERSIST);
+        assertEquals(1, ex.length);
+        assertEquals(Arrays.asList(RecordingValidator.ALL),
+            _validator.validated);
+    }
+
+    /**
+     * Validator that records what it validates and rejects the values of
+     * the properties marked invalid.
+     */
+    private static class RecordingValidator extends AbstractValidator {
+
+        static final String ALL = "*";
+
+        final List<String> invalid = new ArrayList<>();
+        final List<String> validated = new ArrayList<>();
+
+        @Override
+        public <T> ValidationException validate(T arg0, int event) {
+            validated.add(ALL);
+            return invalid.isEmpty() ? null : newException();
+        }
+
+        @Override
+        public <T> ValidationException validateProperty(T arg0,
+            String property, int event) {
+            validated.add(property);
+            return invalid.contains(property) ? newException() : null;
+        }
+
+        @Override
+        public <T> ValidationException validateValue(Class<T> arg0,
+            String arg1, Object arg2, int event) {
+            return null;
+        }
+
+        @Override
+        public <T> boolean validating(T arg0, int event) {
+            return true;
+        }
+
+        private static ValidationException newException() {
+            return new ValidationException(new RuntimeException("invalid"));
+        }
+    }
+}
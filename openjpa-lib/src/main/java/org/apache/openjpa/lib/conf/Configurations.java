@@ -333,37 +333,46 @@ public class Configurations {
      * It can point to either a file or a resource name.
      */
     public static void populateConfiguration(Configuration conf, Options opts) {
+        ConfigurationProvider provider = loadConfigurationProvider(opts);
+        if (provider != null)
+            provider.setInto(conf);
+        opts.setInto(conf);
+    }
+
+    /**
+     * Return the provider for the resource named by the <code>properties</code>
+     * or <code>p</code> option, removing the option from <code>opts</code>.
+     * If neither option is given, the default provider is returned, which
+     * may be null.
+     */
+    public static ConfigurationProvider loadConfigurationProvider(
+        Options opts) {
         String props = opts.removeProperty("properties", "p", null);
-        ConfigurationProvider provider;
-        if (!StringUtil.isEmpty(props)) {
-            Map<String, String> result = parseConfigResource(props);
-            String path = result.get(CONFIG_RESOURCE_PATH);
-            String anchor = result.get(CONFIG_RESOURCE_ANCHOR);
+        if (StringUtil.isEmpty(props))
+            return ProductDerivations.loadDefaults(null);
 
-            File file = new File(path);
+        Map<String, String> result = parseConfigResource(props);
+        String path = result.get(CONFIG_RESOURCE_PATH);
+        String anchor = result.get(CONFIG_RESOURCE_ANCHOR);
+
+        ConfigurationProvider provider;
+        File file = new File(path);
+        if ((AccessController.doPrivileged(J2DoPrivHelper
+            .isFileAction(file))).booleanValue())
+            provider = ProductDerivations.load(file, anchor, null);
+        else {
+            file = new File("META-INF" + File.separatorChar + path);
             if ((AccessController.doPrivileged(J2DoPrivHelper
                 .isFileAction(file))).booleanValue())
                 provider = ProductDerivations.load(file, anchor, null);
-            else {
-                file = new File("META-INF" + File.separatorChar + path);
-                if ((AccessController.doPrivileged(J2DoPrivHelper
-                    .isFileAction(file))).booleanValue())
-                    provider = ProductDerivations.load(file, anchor, null);
-                else
-                    provider = ProductDerivations.load(path, anchor, null);
-            }
-            if (provider != null)
-                provider.setInto(conf);
             else
-                throw new MissingResourceException(_loc.get("no-provider",
-                    props).getMessage(), Configurations.class.getName(),
-                    props);
-        } else {
-            provider = ProductDerivations.loadDefaults(null);
-            if (provider != null)
-                provider.setInto(conf);
+                provider = ProductDerivations.load(path, anchor, null);
         }
-        opts.setInto(conf);
+        if (provider == null)
+            throw new MissingResourceException(_loc.get("no-provider",
+                props).getMessage(), Configurations.class.getName(),
+                props);
+        return provider;
     }
 
     public static Map<String, String> parseConfigResource(String props) {
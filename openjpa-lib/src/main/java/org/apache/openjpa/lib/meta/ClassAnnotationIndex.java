@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.lib.meta;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.openjpa.lib.util.StringUtil;
+
+import serp.bytecode.lowlevel.ConstantPoolTable;
+
+/**
+ * Index of the class level annotations of the classes in a directory or
+ * jar, written at build time to {@link #RESOURCE} so that the
+ * classes do not have to be opened and parsed one by one when scanning
+ * for annotated types at runtime. Every line of the index names a class
+ * followed by the runtime visible annotation types on the class,
+ * separated by blanks; classes without such annotations are not listed.
+ * An index is only as current as the build that wrote it and has to be
+ * written again whenever classes are added, removed or changed.
+ *
+ * @see ClassAnnotationMetaDataFilter
+ */
+public class ClassAnnotationIndex {
+
+    /**
+     * The resource path of the index in a directory or jar.
+     */
+    public static final String RESOURCE =
+        "META-INF/openjpa/class-annotations.idx";
+
+    private static final String HEADER = "# OpenJPA class annotation index";
+
+    private final Map<String, String[]> _annos = new LinkedHashMap<>();
+
+    /**
+     * Record the annotations of the given class. Classes without
+     * annotations are ignored.
+     */
+    public void add(String className, Collection<String> annos) {
+        if (!annos.isEmpty())
+            _annos.put(className, annos.toArray(new String[annos.size()]));
+    }
+
+    /**
+     * Record the annotations of the class in the given class file.
+     *
+     * @throws ClassFormatError if the content is not a well-formed class file
+     */
+    public void add(byte[] content) {
+        List<String> annos = ClassAnnotationMetaDataFilter.
+            getAnnotationTypeNames(content);
+        if (annos.isEmpty())
+            return;
+
+        ConstantPoolTable table = new ConstantPoolTable(content);
+        int idx = table.getEndIndex();
+        idx += 2; // access flags
+        int clsEntry = table.readUnsignedShort(idx);
+        int utfEntry = table.readUnsignedShort(table.get(clsEntry));
+        add(table.readString(table.get(utfEntry)).replace('/', '.'), annos);
+    }
+
+    /**
+     * Return the names of the indexed classes.
+     */
+    public Collection<String> getClassNames() {
+        return _annos.keySet();
+    }
+
+    /**
+     * Return the names of the indexed classes carrying at least one of the
+     * given annotation types, in index order.
+     */
+    public List<String> getClassNames(String[] annoTypes) {
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<String, String[]> entry : _annos.entrySet()) {
+            for (String anno : entry.getValue()) {
+                if (contains(annoTypes, anno)) {
+                    names.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        return names;
+    }
+
+    private static boolean contains(String[] strs, String str) {
+        for (int i = 0; i < strs.length; i++)
+            if (strs[i].equals(str))
+                return true;
+        return false;
+    }
+
+    /**
+     * Read an index written by {@link #write}.
+     */
+    public static ClassAnnotationIndex read(InputStream in)
+        throws IOException {
+        ClassAnnotationIndex index = new ClassAnnotationIndex();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+            StandardCharsets.UTF_8));
+        String[] tokens;
+        for (String line; (line = reader.readLine()) != null;) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            tokens = StringUtil.split(line, " ", 0);
+            if (tokens.length > 1)
+                index.add(tokens[0], Arrays.asList(tokens).
+                    subList(1, tokens.length));
+        }
+        return index;
+    }
+
+    /**
+     * Write this index to the given stream. The stream is not closed.
+     */
+    public void write(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out,
+            StandardCharsets.UTF_8));
+        writer.write(HEADER);
+        writer.write('\n');
+        for (Map.Entry<String, String[]> entry : _annos.entrySet()) {
+            writer.write(entry.getKey());
+            for (String anno : entry.getValue()) {
+                writer.write(' ');
+                writer.write(anno);
+            }
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Index the given class files and write the index to {@link #RESOURCE}
+     * in the given output directory.
+     *
+     * @return the index file
+     */
+    public static File write(File dir, Collection<File> classFiles)
+        throws IOException {
+        ClassAnnotationIndex index = new ClassAnnotationIndex();
+        for (File file : classFiles) {
+            try {
+                index.add(Files.readAllBytes(file.toPath()));
+            } catch (ClassFormatError cfe) {
+                throw new IOException(file.getAbsolutePath(), cfe);
+            }
+        }
+
+        File out = new File(dir, RESOURCE);
+        File parent = out.getParentFile();
+        if (!parent.exists() && !parent.mkdirs())
+            throw new IOException(parent.getAbsolutePath());
+        try (OutputStream os = new FileOutputStream(out)) {
+            index.write(os);
+        }
+        return out;
+    }
+
+    /**
+     * Index the classes in each of the given directories and write the
+     * index into the directory.
+     */
+    public static void main(String[] args) throws IOException {
+        for (String arg : args) {
+            File dir = new File(arg);
+            List<File> files = new ArrayList<>();
+            collectClassFiles(dir, files);
+            write(dir, files);
+        }
+    }
+
+    private static void collectClassFiles(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null)
+            return;
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory())
+                collectClassFiles(child, files);
+            else if (child.getName().endsWith(".class"))
+                files.add(child);
+        }
+    }
+
+    /**
+     * Read the index in the given directory, or return null if it has none.
+     */
+    public static ClassAnnotationIndex read(File dir) throws IOException {
+        File file = new File(dir, RESOURCE);
+        if (!file.isFile())
+            return null;
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in);
+        }
+    }
+}
@@ -19,6 +19,9 @@
 package org.apache.openjpa.lib.meta;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.openjpa.lib.log.Log;
 import org.apache.openjpa.lib.util.Localizer;
@@ -56,6 +59,17 @@ public class ClassAnnotationMetaDataFilter implements MetaDataFilter {
             _annos[i] = "L" + annos[i].getName().replace('.', '/') + ";";
     }
 
+    /**
+     * Return the names of the annotation types this filter matches.
+     */
+    public String[] getAnnotationTypeNames() {
+        String[] names = new String[_annos.length];
+        for (int i = 0; i < _annos.length; i++)
+            names[i] = _annos[i].substring(1, _annos[i].length() - 1).
+                replace('/', '.');
+        return names;
+    }
+
     @Override
     public boolean matches(Resource rsrc) throws IOException {
         if (_annos.length == 0 || !rsrc.getName().endsWith(".class"))
@@ -63,35 +77,9 @@ public class ClassAnnotationMetaDataFilter implements MetaDataFilter {
 
         try {
             ConstantPoolTable table = new ConstantPoolTable(rsrc.getContent());
-            int idx = table.getEndIndex();
-            idx += 6; // skip access, cls, super
-
-            // skip interfaces
-            int interfaces = table.readUnsignedShort(idx);
-            idx += 2 + interfaces * 2;
-
-            // skip fields and methods
-            int fields = table.readUnsignedShort(idx);
-            idx += 2;
-            for (int i = 0; i < fields; i++)
-                idx += skipFieldOrMethod(table, idx);
-            int methods = table.readUnsignedShort(idx);
-            idx += 2;
-            for (int i = 0; i < methods; i++)
-                idx += skipFieldOrMethod(table, idx);
-
-            // look for annotation attrs
-            int attrs = table.readUnsignedShort(idx);
-            idx += 2;
-            int name;
-            for (int i = 0; i < attrs; i++) {
-                name = table.readUnsignedShort(idx);
-                idx += 2;
-                if ("RuntimeVisibleAnnotations".equals(table.readString
-                    (table.get(name))))
-                    return matchAnnotations(table, idx + 4);
-                idx += 4 + table.readInt(idx);
-            }
+            int idx = findAnnotations(table);
+            if (idx != -1)
+                return matchAnnotations(table, idx);
         } catch (ArrayIndexOutOfBoundsException e) {
             /*
              * This ArrayIndexOutOfBoundsException indicates an incorrectly
@@ -107,6 +95,83 @@ public class ClassAnnotationMetaDataFilter implements MetaDataFilter {
         return false;
     }
 
+    /**
+     * Return the names of the runtime visible annotation types of the class
+     * in the given class file.
+     *
+     * @throws ClassFormatError if the content is not a well-formed class file
+     */
+    public static List<String> getAnnotationTypeNames(byte[] content) {
+        try {
+            ConstantPoolTable table = new ConstantPoolTable(content);
+            int idx = findAnnotations(table);
+            if (idx == -1)
+                return Collections.emptyList();
+
+            int annos = table.readUnsignedShort(idx);
+            idx += 2;
+            List<String> names = new ArrayList<>(annos);
+            String type;
+            int props;
+            for (int i = 0; i < annos; i++) {
+                type = table.readString(table.get(table.readUnsignedShort
+                    (idx)));
+                idx += 2;
+                names.add(type.substring(1, type.length() - 1).
+                    replace('/', '.'));
+
+                props = table.readUnsignedShort(idx);
+                idx += 2;
+                for (int j = 0; j < props; j++) {
+                    idx += 2; // name
+                    idx += skipAnnotationPropertyValue(table, idx);
+                }
+            }
+            return names;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            Error cfe = new ClassFormatError();
+            cfe.initCause(e);
+            throw cfe;
+        }
+    }
+
+    /**
+     * Return the index of the class level runtime visible annotations in the
+     * given class file, or -1 if the class has none.
+     */
+    private static int findAnnotations(ConstantPoolTable table) {
+        int idx = table.getEndIndex();
+        idx += 6; // skip access, cls, super
+
+        // skip interfaces
+        int interfaces = table.readUnsignedShort(idx);
+        idx += 2 + interfaces * 2;
+
+        // skip fields and methods
+        int fields = table.readUnsignedShort(idx);
+        idx += 2;
+        for (int i = 0; i < fields; i++)
+            idx += skipFieldOrMethod(table, idx);
+        int methods = table.readUnsignedShort(idx);
+        idx += 2;
+        for (int i = 0; i < methods; i++)
+            idx += skipFieldOrMethod(table, idx);
+
+        // look for annotation attrs
+        int attrs = table.readUnsignedShort(idx);
+        idx += 2;
+        int name;
+        for (int i = 0; i < attrs; i++) {
+            name = table.readUnsignedShort(idx);
+            idx += 2;
+            if ("RuntimeVisibleAnnotations".equals(table.readString
+                (table.get(name))))
+                return idx + 4;
+            idx += 4 + table.readInt(idx);
+        }
+        return -1;
+    }
+
     /**
      * Return whether the given annotations match our candidates.
      */
@@ -22,12 +22,20 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -43,7 +51,9 @@ public class ZipFileMetaDataIterator
 
     private final ZipFile _file;
     private final MetaDataFilter _filter;
-    private final Enumeration<? extends ZipEntry> _entries;
+    private Enumeration<? extends ZipEntry> _entries;
+    private final int _threads;
+    private boolean _filtered = false;
     private ZipEntry _entry = null;
     private ZipEntry _last = null;
 
@@ -52,6 +62,17 @@ public class ZipFileMetaDataIterator
      */
     public ZipFileMetaDataIterator(URL url, MetaDataFilter filter)
         throws IOException {
+        this(url, filter, 1);
+    }
+
+    /**
+     * Constructor; supply zip/jar URL, optional file filter and the number
+     * of threads used to apply the filter.
+     *
+     * @see #ZipFileMetaDataIterator(ZipFile, MetaDataFilter, int)
+     */
+    public ZipFileMetaDataIterator(URL url, MetaDataFilter filter,
+        int threads) throws IOException {
         if (url == null) {
             _file = null;
         } else {
@@ -66,31 +87,93 @@ public class ZipFileMetaDataIterator
         }
         _filter = filter;
         _entries = (_file == null) ? null : _file.entries();
+        _threads = (threads < 1) ? Runtime.getRuntime().availableProcessors()
+            : threads;
     }
 
     /**
      * Constructor; supply zip file and optional file filter.
      */
     public ZipFileMetaDataIterator(ZipFile file, MetaDataFilter filter) {
+        this(file, filter, 1);
+    }
+
+    /**
+     * Constructor; supply zip file, optional file filter and the number of
+     * threads used to apply the filter. With more than one thread, all
+     * entries are read and filtered up front, and the filter must be safe
+     * for concurrent use. The matching entries are returned in zip order.
+     * Values less than one use one thread per available processor.
+     */
+    public ZipFileMetaDataIterator(ZipFile file, MetaDataFilter filter,
+        int threads) {
         _file = file;
         _filter = filter;
         _entries = (file == null) ? null : file.entries();
+        _threads = (threads < 1) ? Runtime.getRuntime().availableProcessors()
+            : threads;
     }
 
     @Override
     public boolean hasNext() throws IOException {
         if (_entries == null)
             return false;
+        if (!_filtered && _threads > 1 && _filter != null) {
+            _entries = filterEntries();
+            _filtered = true;
+        }
 
         // search for next metadata file
         while (_entry == null && _entries.hasMoreElements()) {
             _entry = _entries.nextElement();
-            if (_filter != null && !_filter.matches(this))
+            if (!_filtered && _filter != null && !_filter.matches(this))
                 _entry = null;
         }
         return _entry != null;
     }
 
+    /**
+     * Apply the filter to all entries on {@link #_threads} threads and return
+     * the matching ones.
+     */
+    private Enumeration<ZipEntry> filterEntries() throws IOException {
+        List<ZipEntry> entries = new ArrayList<>();
+        while (_entries.hasMoreElements())
+            entries.add(_entries.nextElement());
+
+        List<Callable<Boolean>> tasks = new ArrayList<>(entries.size());
+        for (final ZipEntry entry : entries) {
+            tasks.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws IOException {
+                    return _filter.matches(new EntryResource(_file, entry));
+                }
+            });
+        }
+
+        List<ZipEntry> matches = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(Math.min(_threads,
+            Math.max(1, entries.size())));
+        try {
+            List<Future<Boolean>> results = pool.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++)
+                if (results.get(i).get())
+                    matches.add(entries.get(i));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException)
+                throw (IOException) ee.getCause();
+            if (ee.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ee.getCause();
+            throw new IOException(ee.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return Collections.enumeration(matches);
+    }
+
     @Override
     public String next() throws IOException {
         if (!hasNext())
@@ -135,11 +218,16 @@ public class ZipFileMetaDataIterator
 
     @Override
     public byte[] getContent() throws IOException {
-        long size = _entry.getSize();
+        return getContent(_file, _entry);
+    }
+
+    private static byte[] getContent(ZipFile file, ZipEntry entry)
+        throws IOException {
+        long size = entry.getSize();
         if (size == 0)
             return new byte[0];
 
-        InputStream in = _file.getInputStream(_entry);
+        InputStream in = file.getInputStream(entry);
         byte[] content;
         if (size < 0) {
             ByteArrayOutputStream bout = new ByteArrayOutputStream();
@@ -158,5 +246,29 @@ public class ZipFileMetaDataIterator
         in.close();
         return content;
     }
-}
 
+    /**
+     * A single entry handed to the filter by a filtering thread.
+     */
+    private static class EntryResource
+        implements MetaDataFilter.Resource {
+
+        private final ZipFile _file;
+        private final ZipEntry _entry;
+
+        public EntryResource(ZipFile file, ZipEntry entry) {
+            _file = file;
+            _entry = entry;
+        }
+
+        @Override
+        public String getName() {
+            return _entry.getName();
+        }
+
+        @Override
+        public byte[] getContent() throws IOException {
+            return ZipFileMetaDataIterator.getContent(_file, _entry);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.lib.util.concurrent;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A map for data that is read far more often than it is written. Reads
+ * go to an immutable snapshot without any locking; every mutation copies
+ * the snapshot, applies the change and publishes the copy. Iterators and
+ * views reflect the snapshot current when they were obtained and do not
+ * support removal. Null keys and values are permitted.
+ */
+public class CopyOnWriteMap<K, V> extends AbstractMap<K, V>
+    implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // never modified once published
+    private volatile Map<K, V> _map;
+
+    public CopyOnWriteMap() {
+        _map = Collections.emptyMap();
+    }
+
+    public CopyOnWriteMap(Map<? extends K, ? extends V> map) {
+        _map = new HashMap<>(map);
+    }
+
+    @Override
+    public int size() {
+        return _map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return _map.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return _map.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return _map.containsValue(value);
+    }
+
+    @Override
+    public V get(Object key) {
+        return _map.get(key);
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+        Map<K, V> map = new HashMap<>(_map);
+        V old = map.put(key, value);
+        _map = map;
+        return old;
+    }
+
+    @Override
+    public synchronized void putAll(Map<? extends K, ? extends V> m) {
+        Map<K, V> map = new HashMap<>(_map);
+        map.putAll(m);
+        _map = map;
+    }
+
+    @Override
+    public synchronized V remove(Object key) {
+        if (!_map.containsKey(key))
+            return null;
+        Map<K, V> map = new HashMap<>(_map);
+        V old = map.remove(key);
+        _map = map;
+        return old;
+    }
+
+    @Override
+    public synchronized void clear() {
+        _map = Collections.emptyMap();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(_map.keySet());
+    }
+
+    @Override
+    public Collection<V> values() {
+        return Collections.unmodifiableCollection(_map.values());
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return Collections.unmodifiableMap(_map).entrySet();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.lib.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CopyOnWriteMapTest {
+
+    @Test
+    public void basicOperations() {
+        CopyOnWriteMap<String, Integer> map = new CopyOnWriteMap<>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put("a", 1));
+        assertEquals(Integer.valueOf(1), map.put("a", 2));
+        assertNull(map.put(null, null));
+        assertTrue(map.containsKey(null));
+        assertTrue(map.containsValue(2));
+        assertEquals(2, map.size());
+        assertNull(map.remove("missing"));
+        assertEquals(Integer.valueOf(2), map.remove("a"));
+        assertEquals(1, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void iteratorIsIsolatedFromLaterWrites() {
+        CopyOnWriteMap<Integer, Integer> map = new CopyOnWriteMap<>();
+        for (int i = 0; i < 10; i++)
+            map.put(i, i);
+
+        Iterator<Map.Entry<Integer, Integer>> entries =
+            map.entrySet().iterator();
+        Iterator<Integer> keys = map.keySet().iterator();
+        Iterator<Integer> values = map.values().iterator();
+
+        // mutate while the iterators are open; none of them may fail or
+        // observe the changes
+        map.remove(0);
+        map.put(100, 100);
+        map.put(5, -5);
+        map.clear();
+
+        int count = 0;
+        while (entries.hasNext()) {
+            Map.Entry<Integer, Integer> e = entries.next();
+            assertEquals(e.getKey(), e.getValue());
+            assertTrue(e.getKey() < 10);
+            count++;
+        }
+        assertEquals(10, count);
+
+        count = 0;
+        while (keys.hasNext()) {
+            assertTrue(keys.next() < 10);
+            count++;
+        }
+        assertEquals(10, count);
+
+        count = 0;
+        while (values.hasNext()) {
+            assertTrue(values.next() >= 0);
+            count++;
+        }
+        assertEquals(10, count);
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void viewsDoNotSupportModification() {
+        CopyOnWriteMap<String, String> map = new CopyOnWriteMap<>();
+        map.put("a", "a");
+
+        Iterator<String> itr = map.keySet().iterator();
+        itr.next();
+        try {
+            itr.remove();
+            fail("iterator removal should not be supported");
+        } catch (UnsupportedOperationException uoe) {
+        }
+        try {
+            map.entrySet().iterator().next().setValue("b");
+            fail("entry mutation should not be supported");
+        } catch (UnsupportedOperationException uoe) {
+        }
+        try {
+            map.values().clear();
+            fail("view mutation should not be supported");
+        } catch (UnsupportedOperationException uoe) {
+        }
+        assertEquals("a", map.get("a"));
+    }
+
+    @Test
+    public void concurrentPutAndRemove() throws Exception {
+        final int threads = 8;
+        final int keys = 500;
+        final CopyOnWriteMap<Integer, Integer> map = new CopyOnWriteMap<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * keys;
+            Thread worker = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        // each thread owns a disjoint key range: it puts
+                        // every key, then removes the odd ones, reading
+                        // its own writes back as it goes
+                        for (int i = offset; i < offset + keys; i++) {
+                            map.put(i, i);
+                            assertEquals(Integer.valueOf(i), map.get(i));
+                        }
+                        for (int i = offset + 1; i < offset + keys; i += 2)
+                            assertEquals(Integer.valueOf(i), map.remove(i));
+                        // iterate concurrently with other writers
+                        for (Map.Entry<Integer, Integer> e : map.entrySet())
+                            assertEquals(e.getKey(), e.getValue());
+                    } catch (Throwable th) {
+                        failure.compareAndSet(null, th);
+                    }
+                }
+            };
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers)
+            worker.join();
+
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+        // no update may be lost to a concurrent copy
+        assertEquals(threads * keys / 2, map.size());
+        for (int i = 0; i < threads * keys; i++)
+            assertEquals(i % 2 == 0, map.containsKey(i));
+    }
+}
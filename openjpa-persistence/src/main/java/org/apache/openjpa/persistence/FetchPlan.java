@@ -339,6 +339,22 @@ public interface FetchPlan {
      */
     FetchPlan setExtendedPathLookup(boolean flag);
 
+    /**
+     * Whether entities are loaded read-only. Read-only entities are
+     * returned detached, without being managed by the entity manager:
+     * their changes are not tracked, no lifecycle callbacks are invoked for
+     * them and only the fields of the fetch plan are loaded. They suit
+     * large results that are only read, such as for reports, and are
+     * usually requested with the <code>openjpa.FetchPlan.ReadOnly</code>
+     * query hint.
+     */
+    boolean getReadOnly();
+
+    /**
+     * Whether entities are loaded read-only.
+     */
+    FetchPlan setReadOnly(boolean readOnly);
+
     /**
      * Gets the current storage mode for data cache.
      *
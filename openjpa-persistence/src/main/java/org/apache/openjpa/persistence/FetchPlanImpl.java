@@ -64,6 +64,8 @@ public class FetchPlanImpl
     static {
         registerHint(new String[]{"openjpa.FetchPlan.ExtendedPathLookup"},
                 new HintValueConverter.StringToBoolean());
+        registerHint(new String[]{"openjpa.ReadOnly", "openjpa.FetchPlan.ReadOnly"},
+                new HintValueConverter.StringToBoolean());
         registerHint(new String[]{"openjpa.FetchBatchSize", "openjpa.FetchPlan.FetchBatchSize"},
                 new HintValueConverter.StringToInteger());
         registerHint(new String[]{"openjpa.MaxFetchDepth", "openjpa.FetchPlan.MaxFetchDepth"},
@@ -390,6 +392,17 @@ public class FetchPlanImpl
         return this;
     }
 
+    @Override
+    public boolean getReadOnly() {
+        return _fetch.getReadOnly();
+    }
+
+    @Override
+    public FetchPlan setReadOnly(boolean readOnly) {
+        _fetch.setReadOnly(readOnly);
+        return this;
+    }
+
     @Override
     public Object getHint(String key) {
         return _fetch.getHint(key);
@@ -113,6 +113,8 @@ public class PersistenceProductDerivation
         _hints.add("javax.persistence.query.timeout");
 
         _hints.add("openjpa.FetchPlan.ExtendedPathLookup");
+        _hints.add("openjpa.ReadOnly");
+        _hints.add("openjpa.FetchPlan.ReadOnly");
         _hints.add("openjpa.FetchBatchSize");
         _hints.add("openjpa.FetchPlan.FetchBatchSize");
         _hints.add("openjpa.MaxFetchDepth");
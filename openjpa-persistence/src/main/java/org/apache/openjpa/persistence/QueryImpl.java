@@ -590,6 +590,10 @@ public class QueryImpl<X> extends AbstractQuery<X> implements Serializable {
             if (pq.isInitialized()) {
                 try {
                     Map rep = pq.reparametrize(params, _em.getBroker());
+                    if (rep == null) {
+                        ignorePreparedQuery();
+                        return false;
+                    }
                     params.clear();
                     params.putAll(rep);
                 } catch (UserException ue) {
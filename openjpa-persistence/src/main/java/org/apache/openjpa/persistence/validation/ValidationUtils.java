@@ -21,9 +21,11 @@ package org.apache.openjpa.persistence.validation;
 import javax.persistence.ValidationMode;
 
 import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.lib.conf.Configurations;
 import org.apache.openjpa.lib.log.Log;
 import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.lib.util.Localizer.Message;
+import org.apache.openjpa.validation.ValidatingLifecycleEventManager;
 import org.apache.openjpa.validation.ValidationUnavailableException;
 
 
@@ -99,8 +101,10 @@ public class ValidationUtils {
                 ValidatorImpl validator = new ValidatorImpl(conf);
                 // set the Validator into the config
                 conf.setValidatorInstance(validator);
-                // update the LifecycleEventManager plugin to use it
-                conf.setLifecycleEventManager("validating");
+                // update the LifecycleEventManager plugin to use it, unless
+                // the validating manager is already configured with options
+                if (!isValidatingPlugin(conf.getLifecycleEventManager()))
+                    conf.setLifecycleEventManager("validating");
                 // all done, so return good rc if anyone cares
                 brc = true;
             } catch (RuntimeException e) {
@@ -131,6 +135,16 @@ public class ValidationUtils {
         return brc;
     }
 
+    /**
+     * Whether the given LifecycleEventManager plugin string names the
+     * validating event manager.
+     */
+    private static boolean isValidatingPlugin(String plugin) {
+        String cls = Configurations.getClassName(plugin);
+        return "validating".equals(cls)
+            || ValidatingLifecycleEventManager.class.getName().equals(cls);
+    }
+
     /**
      * Determines whether an exception is a constraint violation exception via
      * class name. Does not require JSR-303 API to be in classpath.
@@ -20,6 +20,7 @@ package org.apache.openjpa.persistence.validation;
 
 import java.security.AccessController;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -320,6 +321,46 @@ public class ValidatorImpl extends AbstractValidator {
         return null;
     }
 
+    /**
+     * Validates the given properties of a given instance. The violations of
+     * all properties are reported by a single exception.
+     *
+     * @param <T> The instance to validate
+     * @param arg0 The instance to validate
+     * @param properties The properties to validate
+     * @param event The event id
+     * @return ValidationException if the validator produces one or more
+     *         constraint violations.
+     */
+    @Override
+    public <T> ValidationException validateProperties(T arg0,
+        String[] properties, int event) {
+        if (!isValidating(event))
+            return null;
+        Class<?>[] groups = getValidationGroup(event);
+        Set<ConstraintViolation<T>> violations = null;
+        Set<ConstraintViolation<T>> propViolations;
+        for (int i = 0; i < properties.length; i++) {
+            propViolations = _validator.validateProperty(arg0, properties[i],
+                groups);
+            if (propViolations == null || propViolations.isEmpty())
+                continue;
+            if (violations == null)
+                violations = new HashSet<>();
+            violations.addAll(propViolations);
+        }
+        if (violations != null) {
+            return new ValidationException(
+                new ConstraintViolationException(
+                    // A validation constraint failure occurred for class "{0}".
+                    _loc.get("validate-failed",
+                        arg0.getClass().getName()).getMessage(),
+                    (Set)violations),
+                true);
+        }
+        return null;
+    }
+
     /**
      * Validates a value based upon the constraints applied to a given class
      * attribute.
@@ -20,15 +20,43 @@ package org.apache.openjpa.tools.maven;
 
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.AccessController;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.conf.OpenJPAConfigurationImpl;
+import org.apache.openjpa.conf.OpenJPAVersion;
+import org.apache.openjpa.enhance.AsmAdaptor;
 import org.apache.openjpa.enhance.PCEnhancer;
+import org.apache.openjpa.lib.conf.Configurations;
+import org.apache.openjpa.lib.meta.ClassAnnotationIndex;
+import org.apache.openjpa.lib.util.BytecodeWriter;
+import org.apache.openjpa.lib.util.Files;
+import org.apache.openjpa.lib.util.J2DoPrivHelper;
 import org.apache.openjpa.lib.util.Options;
+import org.apache.openjpa.meta.MetaDataModes;
+import org.apache.openjpa.meta.MetaDataRepository;
 import org.codehaus.plexus.util.FileUtils;
 
+import serp.bytecode.BCClass;
+
 /**
  * The base class for all enhancement mojos.
  * @version $Id: AbstractOpenJpaTestEnhancerMojo.java 9137 2009-02-28 21:55:03Z struberg $
@@ -72,6 +100,45 @@ public abstract class AbstractOpenJpaEnhancerMojo extends AbstractOpenJpaMojo {
      */
     private static final String OPTION_USE_TEMP_CLASSLOADER = "tcl";
 
+    /**
+     * The number of threads used to enhance the class files.
+     * A value of <code>0</code> or less uses one thread per available processor.
+     * Each thread runs the enhancer with its own configuration and metadata
+     * repository; the enhanced classes are written once all threads finished.
+     */
+    @Parameter(property="openjpa.enhance.threads", defaultValue="1")
+    protected int threads;
+
+    /**
+     * Whether to skip class files which did not change since they were last
+     * processed by the enhancer.  The content hash of each processed class file,
+     * covering the class files of its superclasses and field types, is recorded
+     * in an index file in the {@link #workDir}, together with a digest of the
+     * enhancer options, the mapping files and the OpenJPA version.
+     * If any of those inputs change, all class files get enhanced again.
+     */
+    @Parameter(property="openjpa.enhance.incremental", defaultValue="true")
+    protected boolean incremental;
+
+    /**
+     * Whether to log the time spent enhancing each class file at info level,
+     * slowest first.  Otherwise the timings are only logged in debug mode.
+     */
+    @Parameter(property="openjpa.enhance.reportTimings", defaultValue="false")
+    protected boolean reportTimings;
+
+    /**
+     * Whether to write an index of the class level annotations of all class
+     * files matched by the includes and excludes to
+     * <code>META-INF/openjpa/class-annotations.idx</code> in the classes
+     * directory.  At runtime the index is read instead of opening every
+     * class file when the directory or the jar built from it is scanned for
+     * persistent types, if the <code>UseAnnotationIndex</code> property of
+     * the metadata factory is enabled.
+     */
+    @Parameter(property="openjpa.enhance.annotationIndex", defaultValue="false")
+    protected boolean annotationIndex;
+
 
     /**
      * {@inheritDoc}
@@ -91,6 +158,26 @@ public abstract class AbstractOpenJpaEnhancerMojo extends AbstractOpenJpaMojo {
         List<File> entities = findEntityClassFiles();
 
         enhance(entities);
+
+        if (annotationIndex) {
+            writeAnnotationIndex(entities);
+        }
+    }
+
+    /**
+     * Write the {@link ClassAnnotationIndex} of the given class files.
+     */
+    private void writeAnnotationIndex(List<File> files) throws MojoExecutionException {
+        long start = System.currentTimeMillis();
+        try {
+            File index = ClassAnnotationIndex.write(getEntityClasses(), files);
+            getLog().info("Indexed annotations of " + files.size() + " class files into '"
+                + index.getAbsolutePath() + "' in " + (System.currentTimeMillis() - start) + " ms");
+        }
+        catch (IOException e) {
+            throw new MojoExecutionException("Error while indexing classes in '"
+                + getEntityClasses().getAbsolutePath() + "'.", e);
+        }
     }
 
     /**
@@ -120,20 +207,284 @@ public abstract class AbstractOpenJpaEnhancerMojo extends AbstractOpenJpaMojo {
     private void enhance(List<File> files) throws MojoExecutionException {
         Options opts = getOptions();
 
-        // list of input files
-        String[] args = getFilePaths(files);
-
-        boolean ok = false;
-
         if (!tmpClassLoader) {
             extendRealmClasspath();
         }
 
-        ok = PCEnhancer.run(args, opts);
+        long start = System.currentTimeMillis();
+        EnhancementIndex index = null;
+        List<File> modified = files;
+        try {
+            if (incremental) {
+                index = new EnhancementIndex(getIndexFile(), getEntityClasses(), getTypeDirectories(),
+                    getInputsDigest(opts));
+                modified = index.getModified(files);
+            }
 
-        if (!ok) {
-            throw new MojoExecutionException("The OpenJPA Enhancer tool detected an error!");
+            Map<File, Long> timings = Collections.emptyMap();
+            if (!modified.isEmpty()) {
+                timings = runEnhancer(modified, opts);
+            }
+
+            if (index != null) {
+                index.retain(files);
+                index.update(modified);
+                index.store();
+            }
+
+            reportTimings(timings);
+        }
+        catch (IOException e) {
+            throw new MojoExecutionException("Error while enhancing classes in '"
+                + getEntityClasses().getAbsolutePath() + "'.", e);
         }
+
+        getLog().info("Enhanced " + modified.size() + " of " + files.size() + " class files in "
+            + (System.currentTimeMillis() - start) + " ms");
     }
 
+    /**
+     * Run the OpenJPA enhancer against the given class files, distributing
+     * them over {@link #threads} worker threads.  The enhanced bytecode is
+     * only written after all workers finished, so that no worker reads a class
+     * file another worker is just rewriting.
+     *
+     * @return the time in milliseconds spent on each class file
+     */
+    private Map<File, Long> runEnhancer(List<File> files, Options opts)
+        throws MojoExecutionException, IOException {
+        int count = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        count = Math.max(1, Math.min(count, files.size()));
+
+        List<List<File>> partitions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            partitions.add(new ArrayList<File>());
+        }
+        for (int i = 0; i < files.size(); i++) {
+            partitions.get(i % count).add(files.get(i));
+        }
+
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        DeferredBytecodeWriter writer = new DeferredBytecodeWriter();
+        Map<File, Long> timings = new ConcurrentHashMap<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>(count);
+            for (List<File> partition : partitions) {
+                results.add(executor.submit(new EnhancerWorker(partition, (Options) opts.clone(),
+                    loader, writer, timings)));
+            }
+            for (Future<Boolean> result : results) {
+                if (!result.get()) {
+                    throw new MojoExecutionException("The OpenJPA Enhancer tool detected an error!");
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while enhancing classes", e);
+        }
+        catch (ExecutionException e) {
+            throw new MojoExecutionException("The OpenJPA Enhancer tool detected an error!", e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        writer.flush();
+        return timings;
+    }
+
+    /**
+     * Log the time spent on each class file, slowest first.
+     */
+    private void reportTimings(Map<File, Long> timings) {
+        if (timings.isEmpty() || !(reportTimings || getLog().isDebugEnabled())) {
+            return;
+        }
+
+        List<Map.Entry<File, Long>> entries = new ArrayList<>(timings.entrySet());
+        Collections.sort(entries, (e1, e2) -> Long.compare(e2.getValue(), e1.getValue()));
+        for (Map.Entry<File, Long> entry : entries) {
+            String msg = entry.getValue() + " ms " + entry.getKey().getAbsolutePath();
+            if (reportTimings) {
+                getLog().info(msg);
+            } else {
+                getLog().debug(msg);
+            }
+        }
+    }
+
+    /**
+     * The file in the {@link #workDir} which stores the enhancement index
+     * for the {@link #getEntityClasses()} directory.
+     */
+    protected File getIndexFile() {
+        return new File(workDir, "enhance-index-" + getEntityClasses().getName() + ".properties");
+    }
+
+    /**
+     * The directories holding the class files of the types that class files
+     * depend on: the {@link #getEntityClasses()} directory, then the
+     * directories on the classpath, such as the classes of other modules of
+     * the build.  Dependencies in jar files are covered by the inputs digest.
+     */
+    private List<File> getTypeDirectories() {
+        List<File> dirs = new ArrayList<>();
+        dirs.add(getEntityClasses());
+        for (String element : getClasspathElements()) {
+            File file = new File(element);
+            if (file.isDirectory() && !file.equals(getEntityClasses())) {
+                dirs.add(file);
+            }
+        }
+        return dirs;
+    }
+
+    /**
+     * Compute a digest over everything besides the class file itself which
+     * influences the outcome of the enhancement: the OpenJPA version, the
+     * tool options (using the content instead of the name of referenced
+     * files), the xml mapping files next to the classes and the dependencies.
+     */
+    private String getInputsDigest(Options opts) throws IOException {
+        MessageDigest digest = EnhancementIndex.newDigest();
+        EnhancementIndex.update(digest, OpenJPAVersion.VERSION_ID);
+
+        for (Map.Entry<Object, Object> entry : new TreeMap<>(opts).entrySet()) {
+            EnhancementIndex.update(digest, String.valueOf(entry.getKey()));
+
+            // the persistence.xml might have been copied to a new temporary
+            // file for this execution, so digest its content instead
+            String value = String.valueOf(entry.getValue());
+            int anchor = value.indexOf('#');
+            File file = new File(anchor == -1 ? value : value.substring(0, anchor));
+            if (file.isFile()) {
+                EnhancementIndex.update(digest, file);
+                EnhancementIndex.update(digest, anchor == -1 ? "" : value.substring(anchor));
+            } else {
+                EnhancementIndex.update(digest, value);
+            }
+        }
+
+        for (File xml : FileUtils.getFiles(getEntityClasses(), "**/*.xml", null)) {
+            EnhancementIndex.update(digest, xml.getAbsolutePath());
+            EnhancementIndex.update(digest, xml);
+        }
+
+        for (String element : getClasspathElements()) {
+            File file = new File(element);
+            EnhancementIndex.update(digest, element);
+            if (file.isFile()) {
+                EnhancementIndex.update(digest, file.length() + ":" + file.lastModified());
+            }
+        }
+        return EnhancementIndex.toHex(digest.digest());
+    }
+
+    /**
+     * Enhances a share of the class files, using its own configuration and
+     * metadata repository for each persistence unit.
+     */
+    private class EnhancerWorker implements Callable<Boolean> {
+
+        private final List<File> _files;
+        private final Options _opts;
+        private final ClassLoader _loader;
+        private final DeferredBytecodeWriter _writer;
+        private final Map<File, Long> _timings;
+
+        EnhancerWorker(List<File> files, Options opts, ClassLoader loader, DeferredBytecodeWriter writer,
+            Map<File, Long> timings) {
+            _files = files;
+            _opts = opts;
+            _loader = loader;
+            _writer = writer;
+            _timings = timings;
+        }
+
+        @Override
+        public Boolean call() throws Exception {
+            Thread.currentThread().setContextClassLoader(_loader);
+            return Configurations.runAgainstAllAnchors(_opts, new Configurations.Runnable() {
+                @Override
+                public boolean run(Options opts) throws Exception {
+                    OpenJPAConfiguration conf = new OpenJPAConfigurationImpl();
+                    try {
+                        return enhance(conf, opts);
+                    } finally {
+                        conf.close();
+                    }
+                }
+            });
+        }
+
+        private boolean enhance(OpenJPAConfiguration conf, Options opts) throws IOException {
+            PCEnhancer.Flags flags = new PCEnhancer.Flags();
+            flags.directory = Files.getFile(opts.removeProperty("directory", "d", null), null);
+            flags.addDefaultConstructor = opts.removeBooleanProperty(OPTION_ADD_DEFAULT_CONSTRUCTOR,
+                "adc", flags.addDefaultConstructor);
+            flags.enforcePropertyRestrictions = opts.removeBooleanProperty(OPTION_ENFORCE_PROPERTY_RESTRICTION,
+                "epr", flags.enforcePropertyRestrictions);
+            boolean tcl = opts.removeBooleanProperty("tmpClassLoader", OPTION_USE_TEMP_CLASSLOADER,
+                flags.tmpClassLoader);
+            Configurations.populateConfiguration(conf, opts);
+
+            // create the loader once instead of once per class file
+            ClassLoader loader = conf.getClassResolverInstance().getClassLoader(PCEnhancer.class, null);
+            if (tcl) {
+                loader = AccessController.doPrivileged(J2DoPrivHelper.newTemporaryClassLoaderAction(loader));
+            }
+            flags.tmpClassLoader = false;
+
+            BytecodeWriter writer = _writer.forDirectory(flags.directory == null
+                ? getEntityClasses() : flags.directory);
+            MetaDataRepository repos = conf.newMetaDataRepositoryInstance();
+            repos.setSourceMode(MetaDataModes.MODE_META);
+            for (File file : _files) {
+                long start = System.currentTimeMillis();
+                if (!PCEnhancer.run(conf, new String[]{ file.getAbsolutePath() }, flags, repos, writer,
+                    loader)) {
+                    return false;
+                }
+                _timings.merge(file, System.currentTimeMillis() - start, Long::sum);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Collects the enhanced bytecode of all workers and writes it out once
+     * enhancement finished.
+     */
+    private static class DeferredBytecodeWriter {
+
+        private final Map<File, byte[]> _classes = new ConcurrentHashMap<>();
+
+        /**
+         * Return a writer which places the classes below the given directory.
+         */
+        BytecodeWriter forDirectory(final File dir) {
+            return new BytecodeWriter() {
+                @Override
+                public void write(BCClass bc) throws IOException {
+                    File file = new File(dir, bc.getName().replace('.', File.separatorChar) + ".class");
+                    _classes.put(file, AsmAdaptor.toByteArray(bc, bc.toByteArray()));
+                }
+            };
+        }
+
+        void flush() throws IOException {
+            for (Map.Entry<File, byte[]> entry : _classes.entrySet()) {
+                File dir = entry.getKey().getParentFile();
+                if (!dir.exists() && !dir.mkdirs()) {
+                    throw new IOException("Can't create " + dir.getAbsolutePath());
+                }
+                try (OutputStream out = new FileOutputStream(entry.getKey())) {
+                    out.write(entry.getValue());
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,341 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.tools.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import serp.bytecode.lowlevel.ConstantPoolTable;
+
+/**
+ * Remembers the content hash of every class file the enhancer has processed,
+ * together with a digest of all inputs which influence enhancement
+ * (tool options, mapping files, OpenJPA version).  The hash of a class file
+ * also covers the class files of the types it depends on: its superclasses
+ * and the types of its fields, such as embedded and related types, found in
+ * the type directories.  A class file whose hash still matches the recorded
+ * one has not been recompiled since the last enhancement run, nor have the
+ * types it depends on, and does not need to be processed again.
+ */
+class EnhancementIndex {
+
+    private static final String INPUTS_KEY = "inputs";
+    private static final String CLASS_PREFIX = "class.";
+
+    private final File _file;
+    private final File _baseDir;
+    private final List<File> _typeDirs;
+    private final String _inputs;
+    private final Properties _entries = new Properties();
+
+    // caches of the class files read since the last update
+    private final Map<File, String> _contents = new HashMap<>();
+    private final Map<File, Set<File>> _references = new HashMap<>();
+    private final Map<String, File> _types = new HashMap<>();
+
+    /**
+     * Load the index stored in the given file.  If the stored inputs digest
+     * differs from <code>inputs</code>, all recorded entries are discarded.
+     *
+     * @param file the index file, need not exist
+     * @param baseDir the directory class file keys are relative to
+     * @param typeDirs the directories to look up the class files of the
+     * types class files depend on, in lookup order
+     * @param inputs digest of the enhancement inputs
+     */
+    EnhancementIndex(File file, File baseDir, List<File> typeDirs, String inputs) throws IOException {
+        _file = file;
+        _baseDir = baseDir;
+        _typeDirs = typeDirs;
+        _inputs = inputs;
+
+        if (!_file.isFile())
+            return;
+
+        Properties stored = new Properties();
+        try (InputStream in = new FileInputStream(_file)) {
+            stored.load(in);
+        }
+        if (_inputs.equals(stored.getProperty(INPUTS_KEY))) {
+            stored.remove(INPUTS_KEY);
+            _entries.putAll(stored);
+        }
+    }
+
+    /**
+     * Return the subset of the given class files which were modified since
+     * they were last recorded, or which were never recorded.
+     */
+    List<File> getModified(List<File> files) throws IOException {
+        List<File> modified = new ArrayList<>();
+        for (File file : files) {
+            String hash = _entries.getProperty(getKey(file));
+            if (hash == null || !hash.equals(getHash(file)))
+                modified.add(file);
+        }
+        return modified;
+    }
+
+    /**
+     * Record the current content of the given class files.
+     */
+    void update(List<File> files) throws IOException {
+        // the enhancer rewrote class files since they were read
+        _contents.clear();
+        _references.clear();
+        for (File file : files)
+            _entries.setProperty(getKey(file), getHash(file));
+    }
+
+    /**
+     * Drop all entries for class files which are not part of the given list.
+     */
+    void retain(List<File> files) {
+        Properties retained = new Properties();
+        for (File file : files) {
+            String key = getKey(file);
+            String hash = _entries.getProperty(key);
+            if (hash != null)
+                retained.setProperty(key, hash);
+        }
+        _entries.clear();
+        _entries.putAll(retained);
+    }
+
+    /**
+     * Write the index back to its file.
+     */
+    void store() throws IOException {
+        File dir = _file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs())
+            throw new IOException("Can't create " + dir.getAbsolutePath());
+
+        Properties out = new Properties();
+        out.putAll(_entries);
+        out.setProperty(INPUTS_KEY, _inputs);
+        try (OutputStream os = new FileOutputStream(_file)) {
+            out.store(os, "OpenJPA enhancement index");
+        }
+    }
+
+    private String getKey(File file) {
+        return CLASS_PREFIX + _baseDir.toURI().relativize(file.toURI()).getPath();
+    }
+
+    /**
+     * Return the digest of the given class file and of the class files of
+     * all types it depends on, directly or through other types.
+     */
+    private String getHash(File file) throws IOException {
+        Set<File> dependencies = new LinkedHashSet<>();
+        dependencies.add(file);
+        List<File> pending = new ArrayList<>(dependencies);
+        while (!pending.isEmpty()) {
+            for (File dependency : getReferences(pending.remove(pending.size() - 1))) {
+                if (dependencies.add(dependency))
+                    pending.add(dependency);
+            }
+        }
+        dependencies.remove(file);
+
+        MessageDigest digest = newDigest();
+        update(digest, getContentHash(file));
+        for (File dependency : new TreeSet<>(dependencies)) {
+            update(digest, dependency.getAbsolutePath());
+            update(digest, getContentHash(dependency));
+        }
+        return toHex(digest.digest());
+    }
+
+    private String getContentHash(File file) throws IOException {
+        String hash = _contents.get(file);
+        if (hash == null) {
+            read(file);
+            hash = _contents.get(file);
+        }
+        return hash;
+    }
+
+    /**
+     * Return the class files of the superclass and of the field types of
+     * the class in the given class file.
+     */
+    private Set<File> getReferences(File file) throws IOException {
+        Set<File> references = _references.get(file);
+        if (references == null) {
+            read(file);
+            references = _references.get(file);
+        }
+        return references;
+    }
+
+    private void read(File file) throws IOException {
+        byte[] content = Files.readAllBytes(file.toPath());
+        MessageDigest digest = newDigest();
+        digest.update(content);
+        _contents.put(file, toHex(digest.digest()));
+
+        Set<File> references = new LinkedHashSet<>();
+        try {
+            File type;
+            for (String name : getReferencedTypes(content)) {
+                type = getTypeFile(name);
+                if (type != null)
+                    references.add(type);
+            }
+        } catch (RuntimeException re) {
+            // not a well-formed class file; the enhancer reports it
+        }
+        _references.put(file, references);
+    }
+
+    /**
+     * Return the class file of the type with the given internal name, or
+     * null if it is not in one of the type directories.
+     */
+    private File getTypeFile(String name) {
+        if (_types.containsKey(name))
+            return _types.get(name);
+
+        File type = null;
+        for (File dir : _typeDirs) {
+            File file = new File(dir, name + ".class");
+            if (file.isFile()) {
+                type = file;
+                break;
+            }
+        }
+        _types.put(name, type);
+        return type;
+    }
+
+    /**
+     * Return the internal names of the superclass and of the types used in
+     * the declarations of the fields, including their type arguments, of the
+     * class in the given class file.
+     */
+    static Set<String> getReferencedTypes(byte[] content) {
+        Set<String> names = new LinkedHashSet<>();
+        ConstantPoolTable table = new ConstantPoolTable(content);
+        int idx = table.getEndIndex();
+        idx += 4; // skip access, cls
+        int superEntry = table.readUnsignedShort(idx);
+        if (superEntry != 0)
+            names.add(table.readString(table.get(table.readUnsignedShort(table.get(superEntry)))));
+        idx += 2;
+
+        // skip interfaces
+        int interfaces = table.readUnsignedShort(idx);
+        idx += 2 + interfaces * 2;
+
+        int fields = table.readUnsignedShort(idx);
+        idx += 2;
+        int attrs;
+        int len;
+        for (int i = 0; i < fields; i++) {
+            idx += 4; // skip access, name
+            addTypeNames(table.readString(table.get(table.readUnsignedShort(idx))), names);
+            idx += 2;
+            attrs = table.readUnsignedShort(idx);
+            idx += 2;
+            for (int j = 0; j < attrs; j++) {
+                len = table.readInt(idx + 2);
+                if ("Signature".equals(table.readString(table.get(table.readUnsignedShort(idx)))))
+                    addTypeNames(table.readString(table.get(table.readUnsignedShort(idx + 6))), names);
+                idx += 6 + len;
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Add the internal names of the classes in the given field descriptor
+     * or signature.
+     */
+    private static void addTypeNames(String signature, Set<String> names) {
+        char c;
+        int end;
+        for (int i = 0; i < signature.length(); i++) {
+            c = signature.charAt(i);
+            if (c != 'L' && c != 'T')
+                continue;
+
+            // class types up to their end or type arguments; skip type variables
+            end = i + 1;
+            while (end < signature.length() && signature.charAt(end) != ';' && signature.charAt(end) != '<')
+                end++;
+            if (c == 'L')
+                names.add(signature.substring(i + 1, end));
+            i = end;
+        }
+    }
+
+    /**
+     * Add the content of the given file to the digest.
+     */
+    static void update(MessageDigest digest, File file) throws IOException {
+        byte[] buf = new byte[8192];
+        try (InputStream in = new FileInputStream(file)) {
+            for (int len; (len = in.read(buf)) != -1;)
+                digest.update(buf, 0, len);
+        }
+    }
+
+    /**
+     * Add the given string to the digest.
+     */
+    static void update(MessageDigest digest, String str) {
+        digest.update(str.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JRE is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder buf = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            buf.append(Character.forDigit((b >> 4) & 0xF, 16));
+            buf.append(Character.forDigit(b & 0xF, 16));
+        }
+        return buf.toString();
+    }
+}